@@ -0,0 +1,82 @@
+package com.messageflow.benchmark.app;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.messageflow.api.MessageFlowApplication;
+import com.messageflow.api.services.EmailService;
+import com.messageflow.api.services.IdempotencyCache;
+import com.messageflow.api.services.PayloadWriter;
+import com.messageflow.api.services.RequestValidator;
+import com.messageflow.api.services.SendLogger;
+import com.messageflow.api.services.SmsService;
+import com.messageflow.benchmark.StubUpstream;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.Banner;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+
+/**
+ * The App Service's Spring context, wired exactly as in production but without Tomcat, with the
+ * MessageFlow base URL pointed at an in-process stub. Logging is set to WARN so the benchmarks
+ * measure the send path rather than console output; see {@link LoggingAppServiceState}.
+ */
+@State(Scope.Benchmark)
+public class AppServiceState {
+
+    StubUpstream upstream;
+    ConfigurableApplicationContext context;
+
+    ObjectMapper objectMapper;
+    RequestValidator validator;
+    PayloadWriter payloadWriter;
+    SendLogger sendLogger;
+    EmailService emailService;
+    SmsService smsService;
+    IdempotencyCache idempotencyCache;
+
+    @Setup(Level.Trial)
+    public void start() throws IOException {
+        upstream = StubUpstream.start();
+        context = new SpringApplicationBuilder(MessageFlowApplication.class)
+                .web(WebApplicationType.NONE)
+                .bannerMode(Banner.Mode.OFF)
+                .logStartupInfo(false)
+                .properties(
+                        "messageflow.api.base-url=" + upstream.baseUrl(),
+                        "messageflow.api.authorization=benchmark-authorization",
+                        "messageflow.api.application-key=benchmark-application-key",
+                        "spring.jackson.default-property-inclusion=non_null",
+                        "messageflow.attachments.store.directory=target/attachment-store")
+                .properties(loggingProperties())
+                .properties(properties())
+                .run();
+
+        objectMapper = context.getBean(ObjectMapper.class);
+        validator = context.getBean(RequestValidator.class);
+        payloadWriter = context.getBean(PayloadWriter.class);
+        sendLogger = context.getBean(SendLogger.class);
+        emailService = context.getBean(EmailService.class);
+        smsService = context.getBean(SmsService.class);
+        idempotencyCache = context.getBean(IdempotencyCache.class);
+    }
+
+    protected String[] loggingProperties() {
+        return new String[] {"logging.level.root=WARN"};
+    }
+
+    protected String[] properties() {
+        return new String[0];
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+        upstream.close();
+    }
+}
@@ -0,0 +1,81 @@
+package com.messageflow.benchmark.app;
+
+import com.messageflow.api.models.EmailRequest;
+import com.messageflow.api.models.EmailResponse;
+import com.messageflow.api.services.PayloadWriter;
+import com.messageflow.benchmark.SamplePayloads;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An email with one large attachment, sent to the stub upstream: as base64 inside the JSON
+ * request (bound, then serialized again), against a file uploaded to disk and base64-encoded
+ * while the upstream body is written, as the multipart POST /email does. Compare
+ * gc.alloc.rate.norm: the streamed send should allocate a small fraction of the attachment size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AttachmentStreamingBenchmark {
+
+    @Param({"1024", "10240"})
+    public int attachmentKb;
+
+    private AppServiceState app;
+    private byte[] jsonBody;
+    private byte[] requestBody;
+    private Path file;
+    private List<PayloadWriter.Attachment> attachments;
+
+    @Setup(Level.Trial)
+    public void setUp(AppServiceState app) throws IOException {
+        this.app = app;
+        jsonBody = SamplePayloads.email(1, attachmentKb, 0).getBytes(StandardCharsets.UTF_8);
+        requestBody = SamplePayloads.email(1, 0, 0).getBytes(StandardCharsets.UTF_8);
+
+        byte[] content = new byte[attachmentKb * 1024];
+        new Random(42).nextBytes(content);
+        Files.createDirectories(Path.of("target"));
+        file = Files.createTempFile(Path.of("target"), "attachment-", ".bin");
+        Files.write(file, content);
+        attachments = List.of(new PayloadWriter.Attachment("attachment.bin", "application/octet-stream",
+                content.length, () -> Files.newInputStream(file)));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public EmailResponse sendJson() throws IOException {
+        return app.emailService.sendEmail(app.objectMapper.readValue(jsonBody, EmailRequest.class));
+    }
+
+    @Benchmark
+    public EmailResponse sendStreamed() throws IOException {
+        return app.emailService.sendEmail(app.objectMapper.readValue(requestBody, EmailRequest.class), attachments);
+    }
+}
@@ -0,0 +1,26 @@
+package com.messageflow.benchmark.app;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * App Service context sending outbound payloads uncompressed or gzip-compressed.
+ */
+@State(Scope.Benchmark)
+public class CompressionAppServiceState extends AppServiceState {
+
+    @Param({"none", "gzip"})
+    public String compression;
+
+    @Param({"1", "6"})
+    public int level;
+
+    @Override
+    protected String[] properties() {
+        return new String[] {
+                "messageflow.compression.mode=" + compression,
+                "messageflow.compression.level=" + level
+        };
+    }
+}
@@ -0,0 +1,74 @@
+package com.messageflow.benchmark.app;
+
+import com.messageflow.api.models.EmailRequest;
+import com.messageflow.api.models.EmailResponse;
+import com.messageflow.benchmark.SamplePayloads;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An HTML email to 500 recipients with 100 globalVars, sent to the stub upstream with outbound
+ * compression off or gzip at deflate level 1 or 6. upstreamBytes is the request body bandwidth
+ * (bytes per second as received by the stub); divided by the send rate it gives the bytes per email.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompressionBenchmark {
+
+    @Param({"16", "256"})
+    public int htmlKb;
+
+    private CompressionAppServiceState app;
+    private byte[] body;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Bandwidth {
+        public long upstreamBytes;
+    }
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setUp(CompressionAppServiceState app) throws IOException {
+        this.app = app;
+        StringBuilder html = new StringBuilder("<html><body>");
+        int paragraph = 0;
+        while (html.length() < htmlKb * 1024) {
+            html.append("<p class=\"body\">Paragraph ").append(paragraph++)
+                    .append(" of the newsletter for {{var").append(paragraph % 100)
+                    .append("}}, with the usual text, links and markup around it.</p>\n");
+        }
+        html.append("</body></html>");
+
+        Map<String, Object> request = app.objectMapper.readValue(SamplePayloads.email(500, 0, 100), Map.class);
+        request.put("content", Map.of("html", html.toString(), "text", "Plain text version of the newsletter."));
+        body = app.objectMapper.writeValueAsBytes(request);
+    }
+
+    @Benchmark
+    public EmailResponse send(Bandwidth bandwidth) throws IOException {
+        long before = app.upstream.bytesReceived();
+        EmailResponse response = app.emailService.sendEmail(app.objectMapper.readValue(body, EmailRequest.class));
+        bandwidth.upstreamBytes += app.upstream.bytesReceived() - before;
+        return response;
+    }
+}
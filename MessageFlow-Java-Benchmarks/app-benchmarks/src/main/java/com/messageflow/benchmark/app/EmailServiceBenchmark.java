@@ -0,0 +1,108 @@
+package com.messageflow.benchmark.app;
+
+import com.messageflow.api.models.EmailRequest;
+import com.messageflow.api.models.EmailResponse;
+import com.messageflow.api.services.PayloadWriter;
+import com.messageflow.benchmark.SamplePayloads;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * POST /email hot path in the App Service: Jackson binding, validation, payload serialization
+ * and a full send through RestTemplate to the stub upstream.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EmailServiceBenchmark {
+
+    // Above messageflow.fanout.email-chunk-size (500), so the largest case is split into chunks
+    @Param({"1", "100", "1000"})
+    public int recipients;
+
+    @Param({"0", "64", "1024"})
+    public int attachmentKb;
+
+    @Param({"0", "10", "100"})
+    public int globalVars;
+
+    private AppServiceState app;
+    private byte[] body;
+    private EmailRequest request;
+
+    @Setup
+    public void setUp(AppServiceState app) throws IOException {
+        this.app = app;
+        body = SamplePayloads.email(recipients, attachmentKb, globalVars).getBytes(StandardCharsets.UTF_8);
+        request = app.objectMapper.readValue(body, EmailRequest.class);
+    }
+
+    @Benchmark
+    public EmailRequest deserialize() throws IOException {
+        return app.objectMapper.readValue(body, EmailRequest.class);
+    }
+
+    @Benchmark
+    public String validate() {
+        return app.validator.validateEmail(request);
+    }
+
+    @Benchmark
+    public int payload() throws IOException {
+        try (PayloadWriter.Buffer payload = app.payloadWriter.write(request)) {
+            return payload.size();
+        }
+    }
+
+    /**
+     * The send path before PayloadWriter: request logged as JSON, copied into a map, the map
+     * logged as JSON, then serialized again by RestTemplate. Kept as the baseline for payload().
+     */
+    @Benchmark
+    public int payloadLegacyMap() throws IOException {
+        String logged = app.objectMapper.writeValueAsString(request);
+
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("subject", request.getSubject());
+        payload.put("smtpAccount", request.getSmtpAccount());
+        payload.put("from", request.getFrom());
+        payload.put("to", request.getTo());
+        payload.put("content", request.getContent());
+        if (request.getTags() != null) {
+            payload.put("tags", request.getTags());
+        }
+        if (request.getGlobalVars() != null) {
+            payload.put("globalVars", request.getGlobalVars());
+        }
+        if (request.getAttachments() != null) {
+            payload.put("attachments", request.getAttachments());
+        }
+
+        String jsonPayload = app.objectMapper.writeValueAsString(payload);
+        byte[] wire = app.objectMapper.writeValueAsBytes(payload);
+        return logged.length() + jsonPayload.length() + wire.length;
+    }
+
+    @Benchmark
+    public EmailResponse send() {
+        return app.emailService.sendEmail(request);
+    }
+}
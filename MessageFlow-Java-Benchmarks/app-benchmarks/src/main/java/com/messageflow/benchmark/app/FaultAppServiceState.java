@@ -0,0 +1,49 @@
+package com.messageflow.benchmark.app;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+
+/**
+ * App Service context whose stub upstream answers 503 or slowly, with the upstream circuit breaker
+ * and concurrency limit enabled or disabled, and with or without retries. Calls slower than 100 ms
+ * count as slow and an open circuit is probed again after 1 second, so the breaker opens and
+ * recovers within one iteration.
+ */
+@State(Scope.Benchmark)
+public class FaultAppServiceState extends AppServiceState {
+
+    @Param({"none", "error503", "slow"})
+    public String fault;
+
+    @Param({"true", "false"})
+    public boolean breaker;
+
+    @Param({"1", "3"})
+    public int maxAttempts;
+
+    @Override
+    protected String[] properties() {
+        return new String[] {
+                "messageflow.upstream.breaker.enabled=" + breaker,
+                "messageflow.upstream.breaker.slow-call-ms=100",
+                "messageflow.upstream.breaker.open-seconds=1",
+                "messageflow.retry.max-attempts=" + maxAttempts
+        };
+    }
+
+    @Override
+    @Setup(Level.Trial)
+    public void start() throws IOException {
+        super.start();
+        switch (fault) {
+            case "error503" -> upstream.inject(503, 0);
+            case "slow" -> upstream.inject(200, 500);
+            default -> upstream.inject(200, 0);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.messageflow.benchmark.app;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * App Service context binding the models with Blackbird's generated accessors or with reflection,
+ * optionally without building their serializers and deserializers at startup.
+ */
+@State(Scope.Benchmark)
+public class JsonAppServiceState extends AppServiceState {
+
+    @Param({"false", "true"})
+    public boolean blackbird;
+
+    protected boolean prefetch() {
+        return true;
+    }
+
+    @Override
+    protected String[] properties() {
+        return new String[] {
+                "messageflow.json.blackbird=" + blackbird,
+                "messageflow.json.prefetch=" + prefetch()
+        };
+    }
+}
@@ -0,0 +1,110 @@
+package com.messageflow.benchmark.app;
+
+import com.messageflow.api.models.EmailRequest;
+import com.messageflow.benchmark.SamplePayloads;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson binding of email requests with 1k to 100k recipients in the App Service's shared
+ * ObjectMapper, with Blackbird's generated accessors (blackbird=true) and with reflection
+ * (blackbird=false). contentHash is the idempotency key of the request, serialized straight into
+ * the digest; contentHashBuffered is the previous path through one byte array, kept as a baseline.
+ * firstUse times the first binding and serialization of a 1000-recipient request after startup
+ * in each of 10 new JVMs, with and without the model bindings built at startup (prefetch).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonBindingBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Payload {
+
+        @Param({"1000", "10000", "100000"})
+        public int recipients;
+
+        @Param({"0", "100"})
+        public int globalVars;
+
+        private JsonAppServiceState app;
+        private byte[] body;
+        private EmailRequest request;
+
+        @Setup(Level.Trial)
+        public void setUp(JsonAppServiceState app) throws IOException {
+            this.app = app;
+            body = SamplePayloads.email(recipients, 0, globalVars).getBytes(StandardCharsets.UTF_8);
+            request = app.objectMapper.readValue(body, EmailRequest.class);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class FirstUse extends JsonAppServiceState {
+
+        @Param({"false", "true"})
+        public boolean prefetch;
+
+        private byte[] body;
+
+        // Nothing is bound or serialized before the measured call, apart from the prefetch
+        @Setup(Level.Trial)
+        public void setUpBody() {
+            body = SamplePayloads.email(1000, 0, 10).getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        protected boolean prefetch() {
+            return prefetch;
+        }
+    }
+
+    @Benchmark
+    public EmailRequest deserialize(Payload payload) throws IOException {
+        return payload.app.objectMapper.readValue(payload.body, EmailRequest.class);
+    }
+
+    @Benchmark
+    public void serialize(Payload payload) throws IOException {
+        payload.app.objectMapper.writeValue(OutputStream.nullOutputStream(), payload.request);
+    }
+
+    @Benchmark
+    public String contentHash(Payload payload) {
+        return payload.app.idempotencyCache.key("email", null, null, payload.request);
+    }
+
+    @Benchmark
+    public byte[] contentHashBuffered(Payload payload) throws IOException, NoSuchAlgorithmException {
+        return MessageDigest.getInstance("SHA-256").digest(payload.app.objectMapper.writeValueAsBytes(payload.request));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 1)
+    @Fork(10)
+    public byte[] firstUse(FirstUse state) throws IOException {
+        return state.objectMapper.writeValueAsBytes(state.objectMapper.readValue(state.body, EmailRequest.class));
+    }
+}
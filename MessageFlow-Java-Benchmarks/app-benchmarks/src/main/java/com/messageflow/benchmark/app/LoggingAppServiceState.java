@@ -0,0 +1,24 @@
+package com.messageflow.benchmark.app;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * App Service context with send-path logging at INFO, written through an asynchronous appender to
+ * target/send-path.log, in either messageflow.logging.mode.
+ */
+@State(Scope.Benchmark)
+public class LoggingAppServiceState extends AppServiceState {
+
+    @Param({"verbose", "structured"})
+    public String mode;
+
+    @Override
+    protected String[] loggingProperties() {
+        return new String[] {
+                "logging.config=classpath:logback-benchmark.xml",
+                "messageflow.logging.mode=" + mode
+        };
+    }
+}
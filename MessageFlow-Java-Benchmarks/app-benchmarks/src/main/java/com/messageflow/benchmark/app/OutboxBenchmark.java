@@ -0,0 +1,75 @@
+package com.messageflow.benchmark.app;
+
+import com.messageflow.api.services.Outbox;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Outbox throughput from 32 threads: each operation journals an accepted send and marks it done,
+ * as an async job does. Compares the fsync modes: with batch, concurrent appends share one fsync,
+ * so throughput should stay well above the disk's fsync rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(32)
+@Fork(1)
+public class OutboxBenchmark {
+
+    @Param({"batch", "interval", "none"})
+    public String fsync;
+
+    @Param({"512", "16384"})
+    public int payloadBytes;
+
+    private Path directory;
+    private Outbox outbox;
+    private byte[] payload;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory(Path.of("target"), "outbox-");
+        outbox = new Outbox(new SimpleMeterRegistry(), true, directory.toString(), 64, fsync, 10);
+        payload = new byte[payloadBytes];
+        Arrays.fill(payload, (byte) 'x');
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        outbox.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public void appendAndDone() {
+        UUID id = UUID.randomUUID();
+        outbox.append(id, "sms", System.currentTimeMillis(), payload);
+        outbox.done(id);
+    }
+}
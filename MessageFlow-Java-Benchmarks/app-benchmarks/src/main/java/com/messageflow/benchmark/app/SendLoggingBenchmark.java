@@ -0,0 +1,71 @@
+package com.messageflow.benchmark.app;
+
+import com.messageflow.api.controllers.MessageFlowController;
+import com.messageflow.api.models.EmailRequest;
+import com.messageflow.api.models.EmailResponse;
+import com.messageflow.api.models.SmsRequest;
+import com.messageflow.api.models.SmsResponse;
+import com.messageflow.benchmark.SamplePayloads;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Send throughput with messageflow.logging.mode=verbose (every event logged in full) against
+ * structured (sampled, capped and redacted), both with logging enabled at INFO.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class SendLoggingBenchmark {
+
+    // The controller logs the request before calling the service
+    private static final Logger CONTROLLER_LOGGER = LoggerFactory.getLogger(MessageFlowController.class);
+
+    @Param({"1", "100"})
+    public int recipients;
+
+    @Param({"0", "64"})
+    public int attachmentKb;
+
+    private LoggingAppServiceState app;
+    private SmsRequest smsRequest;
+    private EmailRequest emailRequest;
+
+    @Setup
+    public void setUp(LoggingAppServiceState app) throws IOException {
+        this.app = app;
+        smsRequest = app.objectMapper.readValue(SamplePayloads.sms(recipients), SmsRequest.class);
+        emailRequest = app.objectMapper.readValue(SamplePayloads.email(recipients, attachmentKb, 10), EmailRequest.class);
+    }
+
+    @Benchmark
+    public SmsResponse sendSms() {
+        app.sendLogger.smsRequest(CONTROLLER_LOGGER, smsRequest);
+        return app.smsService.sendSms(smsRequest);
+    }
+
+    @Benchmark
+    public EmailResponse sendEmail() {
+        app.sendLogger.emailRequest(CONTROLLER_LOGGER, emailRequest);
+        return app.emailService.sendEmail(emailRequest);
+    }
+}
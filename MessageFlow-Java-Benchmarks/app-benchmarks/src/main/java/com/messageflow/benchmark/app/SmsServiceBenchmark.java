@@ -0,0 +1,99 @@
+package com.messageflow.benchmark.app;
+
+import com.messageflow.api.models.SmsRequest;
+import com.messageflow.api.models.SmsResponse;
+import com.messageflow.api.services.PayloadWriter;
+import com.messageflow.benchmark.SamplePayloads;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * POST /sms hot path in the App Service: Jackson binding, validation, payload serialization
+ * and a full send through RestTemplate to the stub upstream.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SmsServiceBenchmark {
+
+    // Above messageflow.fanout.sms-chunk-size (1000), so the largest case is split into chunks
+    @Param({"1", "100", "5000"})
+    public int recipients;
+
+    private AppServiceState app;
+    private byte[] body;
+    private SmsRequest request;
+
+    @Setup
+    public void setUp(AppServiceState app) throws IOException {
+        this.app = app;
+        body = SamplePayloads.sms(recipients).getBytes(StandardCharsets.UTF_8);
+        request = app.objectMapper.readValue(body, SmsRequest.class);
+    }
+
+    @Benchmark
+    public SmsRequest deserialize() throws IOException {
+        return app.objectMapper.readValue(body, SmsRequest.class);
+    }
+
+    @Benchmark
+    public String validate() {
+        return app.validator.validateSms(request);
+    }
+
+    @Benchmark
+    public int payload() throws IOException {
+        try (PayloadWriter.Buffer payload = app.payloadWriter.write(request)) {
+            return payload.size();
+        }
+    }
+
+    /**
+     * The send path before PayloadWriter, kept as the baseline for payload().
+     */
+    @Benchmark
+    public int payloadLegacyMap() throws IOException {
+        String logged = app.objectMapper.writeValueAsString(request);
+
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("sender", request.getSender());
+        payload.put("message", request.getMessage());
+        payload.put("phoneNumbers", request.getPhoneNumbers());
+        if (request.getValidity() != null) {
+            payload.put("validity", request.getValidity());
+        }
+        if (request.getType() != null) {
+            payload.put("type", request.getType());
+        }
+        if (request.getExternalId() != null) {
+            payload.put("externalId", request.getExternalId());
+        }
+
+        String jsonPayload = app.objectMapper.writeValueAsString(payload);
+        byte[] wire = app.objectMapper.writeValueAsBytes(payload);
+        return logged.length() + jsonPayload.length() + wire.length;
+    }
+
+    @Benchmark
+    public SmsResponse send() {
+        return app.smsService.sendSms(request);
+    }
+}
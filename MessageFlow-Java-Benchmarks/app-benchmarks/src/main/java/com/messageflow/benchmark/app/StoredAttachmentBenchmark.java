@@ -0,0 +1,77 @@
+package com.messageflow.benchmark.app;
+
+import com.messageflow.api.models.EmailRequest;
+import com.messageflow.api.models.EmailResponse;
+import com.messageflow.api.services.AttachmentStore;
+import com.messageflow.benchmark.SamplePayloads;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An email with one attachment, sent to the stub upstream: inline as base64 in the JSON request,
+ * against a reference to the same file in the attachment store, whose encoded bytes are copied
+ * into the upstream body as they are. With the default store settings the file is served from
+ * memory; compare gc.alloc.rate.norm as well as throughput.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StoredAttachmentBenchmark {
+
+    @Param({"64", "1024"})
+    public int attachmentKb;
+
+    private AppServiceState app;
+    private byte[] inlineBody;
+    private byte[] storedBody;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setUp(AppServiceState app) throws IOException {
+        this.app = app;
+        inlineBody = SamplePayloads.email(1, attachmentKb, 0).getBytes(StandardCharsets.UTF_8);
+
+        byte[] content = new byte[attachmentKb * 1024];
+        new Random(42).nextBytes(content);
+        AttachmentStore.Stored stored = app.context.getBean(AttachmentStore.class)
+                .put(new ByteArrayInputStream(content), Long.MAX_VALUE);
+
+        Map<String, Object> request = app.objectMapper.readValue(SamplePayloads.email(1, 0, 0), Map.class);
+        request.put("attachments", List.of(Map.of(
+                "fileName", "attachment.bin",
+                "fileMimeType", "application/octet-stream",
+                "sha256", stored.sha256())));
+        storedBody = app.objectMapper.writeValueAsBytes(request);
+    }
+
+    @Benchmark
+    public EmailResponse sendInline() throws IOException {
+        return app.emailService.sendEmail(app.objectMapper.readValue(inlineBody, EmailRequest.class));
+    }
+
+    @Benchmark
+    public EmailResponse sendStored() throws IOException {
+        return app.emailService.sendEmail(app.objectMapper.readValue(storedBody, EmailRequest.class));
+    }
+}
@@ -0,0 +1,48 @@
+package com.messageflow.benchmark.app;
+
+import com.messageflow.api.models.SmsRequest;
+import com.messageflow.api.models.SmsResponse;
+import com.messageflow.benchmark.SamplePayloads;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SMS send latency from 32 threads while the stub upstream fails (503) or is slow (500 ms), with
+ * and without the circuit breaker. With the breaker enabled, sends fail fast with
+ * retry_after_seconds once the circuit opens, instead of every caller waiting for the upstream.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(32)
+@Fork(1)
+public class UpstreamFaultBenchmark {
+
+    private FaultAppServiceState app;
+    private SmsRequest request;
+
+    @Setup
+    public void setUp(FaultAppServiceState app) throws IOException {
+        this.app = app;
+        request = app.objectMapper.readValue(SamplePayloads.sms(1), SmsRequest.class);
+    }
+
+    @Benchmark
+    public SmsResponse send() {
+        return app.smsService.sendSms(request);
+    }
+}
@@ -0,0 +1,123 @@
+package com.messageflow.benchmark;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * A local Functions host ({@code func start} from Azure Functions Core Tools, which must be on the
+ * PATH) serving a packaged function app, for measuring cold starts.
+ *
+ * Host output goes to target/func-host.log.
+ */
+public final class FunctionHost implements AutoCloseable {
+
+    private static final Duration POLL_INTERVAL = Duration.ofMillis(20);
+
+    private final Process process;
+    private final int port;
+    private final HttpClient client = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(1))
+            .build();
+
+    private FunctionHost(Process process, int port) {
+        this.process = process;
+        this.port = port;
+    }
+
+    /**
+     * The most recently packaged app under a module's target/azure-functions directory (the
+     * staging directory name includes the build timestamp).
+     */
+    public static Path stagingDirectory(Path azureFunctions) throws IOException {
+        try (Stream<Path> apps = Files.list(azureFunctions)) {
+            return apps.filter(Files::isDirectory)
+                    .max(Comparator.comparingLong(app -> app.toFile().lastModified()))
+                    .orElseThrow(() -> new IllegalStateException("No packaged function app in "
+                            + azureFunctions.toAbsolutePath() + "; run mvn package in the function module first"));
+        }
+    }
+
+    /**
+     * Start the host for the app in appDirectory, with environment added to (or, for null
+     * values, removed from) this process's environment.
+     */
+    public static FunctionHost start(Path appDirectory, Map<String, String> environment) throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+
+        Path log = Path.of("target", "func-host.log");
+        Files.createDirectories(log.getParent());
+        ProcessBuilder builder = new ProcessBuilder("func", "start", "--port", String.valueOf(port))
+                .directory(appDirectory.toFile())
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.appendTo(log.toFile()));
+        builder.environment().put("FUNCTIONS_WORKER_RUNTIME", "java");
+        environment.forEach((name, value) -> {
+            if (value != null) {
+                builder.environment().put(name, value);
+            } else {
+                builder.environment().remove(name);
+            }
+        });
+        return new FunctionHost(builder.start(), port);
+    }
+
+    /**
+     * POST body to path until the function answers, and return the response. Connection errors,
+     * 404 and 503 mean the host or the worker is still starting.
+     */
+    public HttpResponse<String> awaitResponse(String path, String body, Duration timeout)
+            throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + port + path))
+                .header("Content-Type", "application/json")
+                .timeout(timeout)
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (true) {
+            if (!process.isAlive()) {
+                throw new IllegalStateException("Functions host exited with " + process.exitValue()
+                        + "; see target/func-host.log");
+            }
+            try {
+                HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+                if (response.statusCode() != 404 && response.statusCode() != 503) {
+                    return response;
+                }
+            } catch (ConnectException e) {
+                // Not listening yet
+            }
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException("No response from " + request.uri() + " within " + timeout);
+            }
+            Thread.sleep(POLL_INTERVAL.toMillis());
+        }
+    }
+
+    /**
+     * Stop the host and its worker.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        process.descendants().forEach(ProcessHandle::destroy);
+        process.destroy();
+        if (!process.waitFor(10, TimeUnit.SECONDS)) {
+            process.descendants().forEach(ProcessHandle::destroyForcibly);
+            process.destroyForcibly().waitFor();
+        }
+    }
+}
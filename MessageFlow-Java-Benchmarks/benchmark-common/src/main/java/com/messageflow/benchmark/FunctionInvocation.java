@@ -0,0 +1,151 @@
+package com.messageflow.benchmark;
+
+import com.microsoft.azure.functions.ExecutionContext;
+import com.microsoft.azure.functions.HttpMethod;
+import com.microsoft.azure.functions.HttpRequestMessage;
+import com.microsoft.azure.functions.HttpResponseMessage;
+import com.microsoft.azure.functions.HttpStatus;
+import com.microsoft.azure.functions.HttpStatusType;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Minimal Functions host objects, so an HTTP trigger's run method can be called directly.
+ */
+public final class FunctionInvocation {
+
+    private static final Logger CONTEXT_LOGGER = Logger.getLogger("benchmark.function");
+
+    static {
+        CONTEXT_LOGGER.setLevel(Level.WARNING);
+    }
+
+    private FunctionInvocation() {
+    }
+
+    public static HttpRequestMessage<Optional<String>> post(String body) {
+        return new Request(Optional.ofNullable(body));
+    }
+
+    /**
+     * An execution context whose logger drops everything below WARNING.
+     */
+    public static ExecutionContext context() {
+        return context(CONTEXT_LOGGER);
+    }
+
+    public static ExecutionContext context(Logger logger) {
+        return new ExecutionContext() {
+            @Override
+            public Logger getLogger() {
+                return logger;
+            }
+
+            @Override
+            public String getInvocationId() {
+                return "benchmark";
+            }
+
+            @Override
+            public String getFunctionName() {
+                return "benchmark";
+            }
+        };
+    }
+
+    private static final class Request implements HttpRequestMessage<Optional<String>> {
+
+        private final Optional<String> body;
+
+        private Request(Optional<String> body) {
+            this.body = body;
+        }
+
+        @Override
+        public URI getUri() {
+            return URI.create("http://localhost:7071/api/benchmark");
+        }
+
+        @Override
+        public HttpMethod getHttpMethod() {
+            return HttpMethod.POST;
+        }
+
+        @Override
+        public Map<String, String> getHeaders() {
+            return Map.of("content-type", "application/json");
+        }
+
+        @Override
+        public Map<String, String> getQueryParameters() {
+            return Map.of();
+        }
+
+        @Override
+        public Optional<String> getBody() {
+            return body;
+        }
+
+        @Override
+        public HttpResponseMessage.Builder createResponseBuilder(HttpStatus status) {
+            return new ResponseBuilder().status(status);
+        }
+
+        @Override
+        public HttpResponseMessage.Builder createResponseBuilder(HttpStatusType status) {
+            return new ResponseBuilder().status(status);
+        }
+    }
+
+    private static final class ResponseBuilder implements HttpResponseMessage.Builder {
+
+        private final Map<String, String> headers = new HashMap<>();
+        private HttpStatusType status = HttpStatus.OK;
+        private Object body;
+
+        @Override
+        public HttpResponseMessage.Builder status(HttpStatusType status) {
+            this.status = status;
+            return this;
+        }
+
+        @Override
+        public HttpResponseMessage.Builder header(String key, String value) {
+            headers.put(key, value);
+            return this;
+        }
+
+        @Override
+        public HttpResponseMessage.Builder body(Object body) {
+            this.body = body;
+            return this;
+        }
+
+        @Override
+        public HttpResponseMessage build() {
+            HttpStatusType status = this.status;
+            Object body = this.body;
+            return new HttpResponseMessage() {
+                @Override
+                public HttpStatusType getStatus() {
+                    return status;
+                }
+
+                @Override
+                public String getHeader(String key) {
+                    return headers.get(key);
+                }
+
+                @Override
+                public Object getBody() {
+                    return body;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.messageflow.benchmark;
+
+import java.util.Base64;
+import java.util.Random;
+
+/**
+ * Request bodies in the shape clients send to /sms and /email, sized by the benchmark parameters.
+ *
+ * Built as JSON text so every deployable deserializes the same bytes with its own JSON library.
+ */
+public final class SamplePayloads {
+
+    private SamplePayloads() {
+    }
+
+    public static String sms(int recipients) {
+        StringBuilder json = new StringBuilder(64 + recipients * 16);
+        json.append("{\"sender\":\"senderName\",\"message\":\"Benchmark message from API\",\"phoneNumbers\":[");
+        for (int i = 0; i < recipients; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("\"+48").append(100000000 + i).append('"');
+        }
+        json.append("],\"validity\":1,\"type\":0,\"externalId\":\"benchmark-sms\"}");
+        return json.toString();
+    }
+
+    /**
+     * An SMS request that fails the last required-field check (empty phoneNumbers).
+     */
+    public static String invalidSms() {
+        return "{\"sender\":\"senderName\",\"message\":\"Benchmark message from API\",\"phoneNumbers\":[]}";
+    }
+
+    public static String email(int recipients, int attachmentKb, int globalVars) {
+        return email(recipients, attachmentKb, globalVars, true);
+    }
+
+    /**
+     * An email request that fails the last required-field check (no content).
+     */
+    public static String invalidEmail(int recipients, int attachmentKb, int globalVars) {
+        return email(recipients, attachmentKb, globalVars, false);
+    }
+
+    private static String email(int recipients, int attachmentKb, int globalVars, boolean withContent) {
+        StringBuilder json = new StringBuilder(512 + recipients * 48 + globalVars * 32 + attachmentKb * 1400);
+        json.append("{\"subject\":\"Benchmark email\",\"smtpAccount\":\"1.benchmark.smtp\",")
+                .append("\"from\":{\"email\":\"from@example.com\",\"name\":\"Benchmark\"},\"to\":[");
+        for (int i = 0; i < recipients; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"email\":\"user").append(i).append("@example.com\",\"name\":\"User ").append(i).append("\"}");
+        }
+        json.append(']');
+
+        if (withContent) {
+            json.append(",\"content\":{\"html\":\"<h1>Hello!</h1><p>This is a benchmark email.</p>\",")
+                    .append("\"text\":\"Hello! This is a benchmark email.\"}");
+        }
+
+        json.append(",\"tags\":[\"benchmark\"]");
+
+        if (globalVars > 0) {
+            json.append(",\"globalVars\":{");
+            for (int i = 0; i < globalVars; i++) {
+                if (i > 0) {
+                    json.append(',');
+                }
+                json.append("\"var").append(i).append("\":\"value ").append(i).append('"');
+            }
+            json.append('}');
+        }
+
+        if (attachmentKb > 0) {
+            byte[] content = new byte[attachmentKb * 1024];
+            new Random(42).nextBytes(content);
+            json.append(",\"attachments\":[{\"fileName\":\"attachment.bin\",")
+                    .append("\"fileMimeType\":\"application/octet-stream\",\"fileContent\":\"")
+                    .append(Base64.getEncoder().encodeToString(content))
+                    .append("\"}]");
+        }
+
+        json.append('}');
+        return json.toString();
+    }
+}
@@ -0,0 +1,119 @@
+package com.messageflow.benchmark;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * In-process stand-in for the MessageFlow API.
+ *
+ * Answers every POST with 200 {"message":"ok"} after reading the whole request body, so send
+ * benchmarks measure the client side of the round trip without network or upstream variance.
+ * gzip request bodies (Content-Encoding: gzip) are checked by decompressing them; {@link
+ * #bytesReceived()} counts the bytes as they came over the wire.
+ * {@link #inject(int, long)} makes it answer with an error status and/or after a delay instead,
+ * to exercise the upstream circuit breaker and concurrency limit.
+ */
+public final class StubUpstream implements AutoCloseable {
+
+    private static final byte[] RESPONSE = "{\"message\":\"ok\"}".getBytes(StandardCharsets.UTF_8);
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private volatile int status = 200;
+    private volatile long delayMs;
+    private final AtomicLong bytesReceived = new AtomicLong();
+
+    private StubUpstream(HttpServer server, ExecutorService executor) {
+        this.server = server;
+        this.executor = executor;
+    }
+
+    /**
+     * Start a stub on a free loopback port.
+     */
+    public static StubUpstream start() throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "stub-upstream");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        StubUpstream stub = new StubUpstream(server, executor);
+        server.createContext("/", stub::handle);
+        server.start();
+        return stub;
+    }
+
+    /**
+     * Answer every following request with the given status after the given delay.
+     * inject(200, 0) restores normal behaviour.
+     */
+    public void inject(int status, long delayMs) {
+        this.status = status;
+        this.delayMs = delayMs;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            InputStream body = exchange.getRequestBody();
+            long wireBytes = "gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"))
+                    ? readGzip(body)
+                    : body.transferTo(OutputStream.nullOutputStream());
+            bytesReceived.addAndGet(wireBytes);
+            if (delayMs > 0) {
+                try {
+                    Thread.sleep(delayMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, RESPONSE.length);
+            exchange.getResponseBody().write(RESPONSE);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    // Decompress the body to check it is valid gzip; returns the compressed length
+    private static long readGzip(InputStream body) throws IOException {
+        byte[] compressed = body.readAllBytes();
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        return compressed.length;
+    }
+
+    /**
+     * Request body bytes received so far, compressed bodies counted at their compressed size.
+     */
+    public long bytesReceived() {
+        return bytesReceived.get();
+    }
+
+    /**
+     * Base URL to configure in place of https://api.messageflow.com/v2.1.
+     */
+    public String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,131 @@
+package com.messageflow.benchmark.function;
+
+import com.google.gson.Gson;
+import com.messageflow.benchmark.FunctionInvocation;
+import com.messageflow.benchmark.SamplePayloads;
+import com.messageflow.benchmark.StubUpstream;
+import com.messageflow.client.MessageFlowClient;
+import com.messageflow.client.models.EmailRequest;
+import com.messageflow.client.models.EmailResponse;
+import com.messageflow.client.services.EmailService;
+import com.messageflow.client.utils.Config;
+import com.messageflow.client.utils.Json;
+import com.messageflow.function.EmailFunction;
+import com.microsoft.azure.functions.ExecutionContext;
+import com.microsoft.azure.functions.HttpResponseMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * MessageFlowEmailHttpTrigger hot path: Gson binding, validation (a request rejected by the last
+ * required-field check), payload serialization, a send to the stub upstream, and the whole
+ * trigger invocation. Function and service logging is set to WARNING.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EmailFunctionBenchmark {
+
+    private static final Logger FUNCTION_LOGGER = Logger.getLogger("com.messageflow");
+
+    // Above the default FanOut__ChunkSize (500), so the largest case is split into chunks
+    @Param({"1", "100", "1000"})
+    public int recipients;
+
+    // The Functions model has no attachments field; Gson still has to skip over the content
+    @Param({"0", "64", "1024"})
+    public int attachmentKb;
+
+    @Param({"0", "10", "100"})
+    public int globalVars;
+
+    private final Gson gson = Json.gson();
+    private final ExecutionContext context = FunctionInvocation.context();
+
+    private StubUpstream upstream;
+    private EmailFunction function;
+    private EmailService service;
+    private String body;
+    private String invalidBody;
+    private EmailRequest request;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, ReflectiveOperationException {
+        FUNCTION_LOGGER.setLevel(java.util.logging.Level.WARNING);
+        upstream = StubUpstream.start();
+
+        Config.RestApiConfig restApi = new Config.RestApiConfig();
+        restApi.setAuthorization("benchmark-authorization");
+        restApi.setApplicationKey("benchmark-application-key");
+        restApi.setBaseUrl(upstream.baseUrl());
+        Config config = new Config();
+        config.setRestApi(restApi);
+        // Every invocation sends the same body, which the idempotency cache would otherwise answer
+        config.getIdempotency().setEnabled(false);
+        MessageFlowClient client = new MessageFlowClient(config);
+        service = client.getEmailService();
+
+        // The trigger builds its service from the environment on the first invocation
+        function = new EmailFunction();
+        Field serviceField = EmailFunction.class.getDeclaredField("emailService");
+        serviceField.setAccessible(true);
+        serviceField.set(null, service);
+
+        Field cacheField = EmailFunction.class.getDeclaredField("idempotencyCache");
+        cacheField.setAccessible(true);
+        cacheField.set(null, client.getIdempotencyCache());
+
+        body = SamplePayloads.email(recipients, attachmentKb, globalVars);
+        invalidBody = SamplePayloads.invalidEmail(recipients, attachmentKb, globalVars);
+        request = gson.fromJson(body, EmailRequest.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        upstream.close();
+    }
+
+    @Benchmark
+    public EmailRequest deserialize() {
+        return gson.fromJson(body, EmailRequest.class);
+    }
+
+    @Benchmark
+    public HttpResponseMessage validate() {
+        return function.run(FunctionInvocation.post(invalidBody), context);
+    }
+
+    @Benchmark
+    public String payload() {
+        return gson.toJson(request);
+    }
+
+    @Benchmark
+    public EmailResponse send() {
+        return service.sendEmail(request);
+    }
+
+    @Benchmark
+    public HttpResponseMessage invoke() {
+        return function.run(FunctionInvocation.post(body), context);
+    }
+}
@@ -0,0 +1,97 @@
+package com.messageflow.benchmark.function;
+
+import com.messageflow.benchmark.FunctionHost;
+import com.messageflow.benchmark.SamplePayloads;
+import com.messageflow.benchmark.StubUpstream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cold start of the packaged email function: time from starting a local Functions host to the
+ * first MessageFlowEmailHttpTrigger response, with the send going to the stub upstream. Every
+ * iteration starts a new host. cds=true runs the worker with the AppCDS archive built by
+ * mvn package -Pstartup. The app is the latest one under
+ * MessageFlowEmailFunction/target/azure-functions, or -Dmessageflow.function.app.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 5)
+@Fork(1)
+public class EmailFunctionStartupBenchmark {
+
+    private static final String ARCHIVE = "messageflow-email.jsa";
+
+    @Param({"false", "true"})
+    public boolean cds;
+
+    private StubUpstream upstream;
+    private Path app;
+    private String body;
+    private FunctionHost host;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        String appProperty = System.getProperty("messageflow.function.app");
+        app = appProperty != null ? Path.of(appProperty) : FunctionHost.stagingDirectory(Path.of(
+                "../../Send-Email-SMS-Azure-Function-MessageFlow-Java/MessageFlowEmailFunction/target/azure-functions"));
+        if (cds && !Files.exists(app.resolve(ARCHIVE))) {
+            throw new IllegalStateException("No " + ARCHIVE + " in " + app.toAbsolutePath()
+                    + "; package the function with -Pstartup");
+        }
+        upstream = StubUpstream.start();
+        body = SamplePayloads.email(1, 0, 0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        upstream.close();
+    }
+
+    @TearDown(Level.Iteration)
+    public void stopHost() throws InterruptedException {
+        if (host != null) {
+            host.close();
+            host = null;
+        }
+    }
+
+    @Benchmark
+    public int firstResponse() throws IOException, InterruptedException {
+        Map<String, String> environment = new HashMap<>();
+        environment.put("RestApi__Authorization", "benchmark-authorization");
+        environment.put("RestApi__ApplicationKey", "benchmark-application-key");
+        environment.put("RestApi__BaseUrl", upstream.baseUrl());
+        // The queue trigger needs a storage account and is not part of the measured first response
+        environment.put("AzureWebJobs.MessageFlowEmailQueueTrigger.Disabled", "true");
+        environment.put("JAVA_OPTS", cds ? "-XX:SharedArchiveFile=" + app.resolve(ARCHIVE).toAbsolutePath() : null);
+
+        host = FunctionHost.start(app, environment);
+        HttpResponse<String> response = host.awaitResponse("/api/MessageFlowEmailHttpTrigger", body, Duration.ofMinutes(2));
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("First response " + response.statusCode() + ": " + response.body());
+        }
+        return response.statusCode();
+    }
+}
@@ -0,0 +1,100 @@
+package com.messageflow.benchmark.function;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.messageflow.benchmark.SamplePayloads;
+import com.messageflow.client.models.EmailRequest;
+import com.messageflow.client.utils.ModelAdapters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gson binding and serialization of the email request with the streaming adapters of
+ * ModelAdapters (adapters=true, as the functions run) and with Gson's reflective adapter
+ * (adapters=false). firstUse times the first binding and serialization in a new JVM, including
+ * building the adapters and loading their classes, as in the first invocation of a function.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EmailJsonBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Payload {
+
+        @Param({"false", "true"})
+        public boolean adapters;
+
+        @Param({"1", "100", "1000"})
+        public int recipients;
+
+        @Param({"0", "10", "100"})
+        public int globalVars;
+
+        private Gson gson;
+        private String body;
+        private EmailRequest request;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            gson = gson(adapters);
+            body = SamplePayloads.email(recipients, 0, globalVars);
+            request = gson.fromJson(body, EmailRequest.class);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class FirstUse {
+
+        @Param({"false", "true"})
+        public boolean adapters;
+
+        private Gson gson;
+        private String body;
+
+        // Nothing is bound or serialized before the measured call
+        @Setup(Level.Trial)
+        public void setUp() {
+            gson = gson(adapters);
+            body = SamplePayloads.email(100, 0, 10);
+        }
+    }
+
+    private static Gson gson(boolean adapters) {
+        return adapters ? new GsonBuilder().registerTypeAdapterFactory(new ModelAdapters()).create() : new Gson();
+    }
+
+    @Benchmark
+    public EmailRequest deserialize(Payload payload) {
+        return payload.gson.fromJson(payload.body, EmailRequest.class);
+    }
+
+    @Benchmark
+    public String serialize(Payload payload) {
+        return payload.gson.toJson(payload.request);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 1)
+    @Fork(10)
+    public String firstUse(FirstUse state) {
+        return state.gson.toJson(state.gson.fromJson(state.body, EmailRequest.class));
+    }
+}
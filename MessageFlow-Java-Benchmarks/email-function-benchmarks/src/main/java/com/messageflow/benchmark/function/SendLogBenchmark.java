@@ -0,0 +1,109 @@
+package com.messageflow.benchmark.function;
+
+import com.messageflow.benchmark.FunctionInvocation;
+import com.messageflow.benchmark.SamplePayloads;
+import com.messageflow.benchmark.StubUpstream;
+import com.messageflow.client.MessageFlowClient;
+import com.messageflow.client.utils.Config;
+import com.messageflow.function.EmailFunction;
+import com.microsoft.azure.functions.ExecutionContext;
+import com.microsoft.azure.functions.HttpResponseMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.FileHandler;
+import java.util.logging.Logger;
+import java.util.logging.SimpleFormatter;
+
+/**
+ * MessageFlowEmailHttpTrigger throughput with Logging__Mode=verbose (every event logged in full on
+ * the request thread) against structured (sampled, capped, redacted and written asynchronously),
+ * both with logging enabled at INFO and written to target/send-path.log.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class SendLogBenchmark {
+
+    private static final Logger FUNCTION_LOGGER = Logger.getLogger("com.messageflow");
+    private static final Logger CONTEXT_LOGGER = Logger.getLogger("com.messageflow.benchmark.context");
+
+    @Param({"verbose", "structured"})
+    public String mode;
+
+    @Param({"1", "100"})
+    public int recipients;
+
+    @Param({"0", "64"})
+    public int attachmentKb;
+
+    private StubUpstream upstream;
+    private FileHandler logFile;
+    private EmailFunction function;
+    private ExecutionContext context;
+    private String body;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, ReflectiveOperationException {
+        logFile = new FileHandler("target/send-path.log");
+        logFile.setFormatter(new SimpleFormatter());
+        FUNCTION_LOGGER.setUseParentHandlers(false);
+        FUNCTION_LOGGER.addHandler(logFile);
+        FUNCTION_LOGGER.setLevel(java.util.logging.Level.INFO);
+        upstream = StubUpstream.start();
+
+        Config.RestApiConfig restApi = new Config.RestApiConfig();
+        restApi.setAuthorization("benchmark-authorization");
+        restApi.setApplicationKey("benchmark-application-key");
+        restApi.setBaseUrl(upstream.baseUrl());
+        Config config = new Config();
+        config.setRestApi(restApi);
+        config.getLogging().setMode(mode);
+        // Every invocation sends the same body, which the idempotency cache would otherwise answer
+        config.getIdempotency().setEnabled(false);
+        MessageFlowClient client = new MessageFlowClient(config);
+
+        function = new EmailFunction();
+        Field serviceField = EmailFunction.class.getDeclaredField("emailService");
+        serviceField.setAccessible(true);
+        serviceField.set(null, client.getEmailService());
+
+        Field cacheField = EmailFunction.class.getDeclaredField("idempotencyCache");
+        cacheField.setAccessible(true);
+        cacheField.set(null, client.getIdempotencyCache());
+
+        context = FunctionInvocation.context(CONTEXT_LOGGER);
+        body = SamplePayloads.email(recipients, attachmentKb, 10);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        upstream.close();
+        FUNCTION_LOGGER.removeHandler(logFile);
+        logFile.close();
+    }
+
+    @Benchmark
+    public HttpResponseMessage invoke() {
+        return function.run(FunctionInvocation.post(body), context);
+    }
+}
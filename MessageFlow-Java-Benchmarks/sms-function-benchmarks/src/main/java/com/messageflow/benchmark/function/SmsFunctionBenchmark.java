@@ -0,0 +1,124 @@
+package com.messageflow.benchmark.function;
+
+import com.google.gson.Gson;
+import com.messageflow.benchmark.FunctionInvocation;
+import com.messageflow.benchmark.SamplePayloads;
+import com.messageflow.benchmark.StubUpstream;
+import com.messageflow.client.MessageFlowClient;
+import com.messageflow.client.models.SmsRequest;
+import com.messageflow.client.models.SmsResponse;
+import com.messageflow.client.services.SmsService;
+import com.messageflow.client.utils.Config;
+import com.messageflow.client.utils.Json;
+import com.messageflow.function.SmsFunction;
+import com.microsoft.azure.functions.ExecutionContext;
+import com.microsoft.azure.functions.HttpResponseMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * MessageFlowSmsHttpTrigger hot path: Gson binding, validation (a request rejected by the last
+ * required-field check), payload serialization, a send to the stub upstream, and the whole
+ * trigger invocation. Function and service logging is set to WARNING.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SmsFunctionBenchmark {
+
+    private static final Logger FUNCTION_LOGGER = Logger.getLogger("com.messageflow");
+
+    // Above the default FanOut__ChunkSize (1000), so the largest case is split into chunks
+    @Param({"1", "100", "5000"})
+    public int recipients;
+
+    private final Gson gson = Json.gson();
+    private final ExecutionContext context = FunctionInvocation.context();
+
+    private StubUpstream upstream;
+    private SmsFunction function;
+    private SmsService service;
+    private String body;
+    private String invalidBody;
+    private SmsRequest request;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, ReflectiveOperationException {
+        FUNCTION_LOGGER.setLevel(java.util.logging.Level.WARNING);
+        upstream = StubUpstream.start();
+
+        Config.RestApiConfig restApi = new Config.RestApiConfig();
+        restApi.setAuthorization("benchmark-authorization");
+        restApi.setApplicationKey("benchmark-application-key");
+        restApi.setBaseUrl(upstream.baseUrl());
+        Config config = new Config();
+        config.setRestApi(restApi);
+        // Every invocation sends the same body, which the idempotency cache would otherwise answer
+        config.getIdempotency().setEnabled(false);
+        MessageFlowClient client = new MessageFlowClient(config);
+        service = client.getSmsService();
+
+        // The trigger builds its service from the environment on the first invocation
+        function = new SmsFunction();
+        Field serviceField = SmsFunction.class.getDeclaredField("smsService");
+        serviceField.setAccessible(true);
+        serviceField.set(null, service);
+
+        Field cacheField = SmsFunction.class.getDeclaredField("idempotencyCache");
+        cacheField.setAccessible(true);
+        cacheField.set(null, client.getIdempotencyCache());
+
+        body = SamplePayloads.sms(recipients);
+        invalidBody = SamplePayloads.invalidSms();
+        request = gson.fromJson(body, SmsRequest.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        upstream.close();
+    }
+
+    @Benchmark
+    public SmsRequest deserialize() {
+        return gson.fromJson(body, SmsRequest.class);
+    }
+
+    @Benchmark
+    public HttpResponseMessage validate() {
+        return function.run(FunctionInvocation.post(invalidBody), context);
+    }
+
+    @Benchmark
+    public String payload() {
+        return gson.toJson(request);
+    }
+
+    @Benchmark
+    public SmsResponse send() {
+        return service.sendSms(request);
+    }
+
+    @Benchmark
+    public HttpResponseMessage invoke() {
+        return function.run(FunctionInvocation.post(body), context);
+    }
+}
@@ -0,0 +1,181 @@
+package com.messageflow.client;
+
+import com.messageflow.client.services.EmailService;
+import com.messageflow.client.services.SmsService;
+import com.messageflow.client.utils.Config;
+import com.messageflow.client.utils.IdempotencyCache;
+import com.messageflow.client.utils.Metrics;
+import com.messageflow.client.utils.RateLimiter;
+import com.messageflow.client.utils.RequestCompression;
+import com.messageflow.client.utils.RetryPolicy;
+import com.messageflow.client.utils.SendLog;
+import com.messageflow.client.utils.UpstreamGuard;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The MessageFlow API client of a function worker: one OkHttp connection pool, and the rate
+ * limits, circuit breaker, retry budget, idempotency cache and send log around it, shared by the
+ * email and SMS services. A function app that hosts both triggers keeps one set of connections to
+ * MessageFlow, and the limits apply to both channels together.
+ *
+ * {@link #shared()} is the worker's instance, created from {@link Config#loadConfig()} on first use.
+ */
+public class MessageFlowClient {
+
+    private static final RetryPolicy.Responses<Response> RESPONSES = new RetryPolicy.Responses<>() {
+        @Override
+        public int status(Response response) {
+            return response.code();
+        }
+
+        @Override
+        public String header(Response response, String name) {
+            return response.header(name);
+        }
+
+        @Override
+        public void discard(Response response) {
+            response.close();
+        }
+    };
+
+    private static MessageFlowClient shared; // guarded by MessageFlowClient.class
+
+    private final Config config;
+    private final String baseUrl;
+    private final OkHttpClient httpClient;
+    private final Metrics metrics = Metrics.get();
+    private final Map<String, AtomicInteger> upstreamInFlight = Map.of("email", new AtomicInteger(), "sms", new AtomicInteger());
+    private final SendLog sendLog;
+    private final RequestCompression compression;
+    private final RateLimiter rateLimiter;
+    private final UpstreamGuard upstreamGuard;
+    private final RetryPolicy retryPolicy;
+    private final IdempotencyCache idempotencyCache;
+
+    // Created on first use, so an app with one trigger starts no fan-out threads for the other
+    private EmailService emailService; // guarded by this
+    private SmsService smsService; // guarded by this
+
+    public MessageFlowClient(Config config) {
+        if (config.getRestApi().getAuthorization() == null || config.getRestApi().getAuthorization().isEmpty()) {
+            throw new IllegalArgumentException("REST API authorization is missing in configuration");
+        }
+        if (config.getRestApi().getApplicationKey() == null || config.getRestApi().getApplicationKey().isEmpty()) {
+            throw new IllegalArgumentException("REST API application key is missing in configuration");
+        }
+
+        this.config = config;
+        this.baseUrl = config.getRestApi().getBaseUrl();
+        this.httpClient = new OkHttpClient.Builder()
+                .connectTimeout(30, TimeUnit.SECONDS)
+                .readTimeout(30, TimeUnit.SECONDS)
+                .writeTimeout(30, TimeUnit.SECONDS)
+                .build();
+        this.sendLog = new SendLog(config.getLogging());
+        this.compression = new RequestCompression(config.getCompression());
+        this.rateLimiter = new RateLimiter(config.getRateLimit(), metrics);
+        this.upstreamGuard = new UpstreamGuard(config.getUpstream(), metrics);
+        this.retryPolicy = new RetryPolicy(config.getRetry(), metrics);
+        this.idempotencyCache = new IdempotencyCache(config.getIdempotency(), metrics);
+
+        upstreamInFlight.forEach((channel, count) ->
+                metrics.gauge("messageflow.upstream.in.flight", count::get, "channel", channel));
+        metrics.gauge("messageflow.upstream.connections", httpClient.connectionPool()::connectionCount,
+                "state", "total");
+        metrics.gauge("messageflow.upstream.connections", httpClient.connectionPool()::idleConnectionCount,
+                "state", "idle");
+    }
+
+    /**
+     * The client of this worker, created on the first call. Throws when the configuration is
+     * invalid; the next call tries again.
+     */
+    public static synchronized MessageFlowClient shared() {
+        if (shared == null) {
+            shared = new MessageFlowClient(Config.loadConfig());
+        }
+        return shared;
+    }
+
+    public Config getConfig() {
+        return config;
+    }
+
+    public SendLog getSendLog() {
+        return sendLog;
+    }
+
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    public IdempotencyCache getIdempotencyCache() {
+        return idempotencyCache;
+    }
+
+    public synchronized EmailService getEmailService() {
+        if (emailService == null) {
+            emailService = new EmailService(this);
+        }
+        return emailService;
+    }
+
+    public synchronized SmsService getSmsService() {
+        if (smsService == null) {
+            smsService = new SmsService(this);
+        }
+        return smsService;
+    }
+
+    /**
+     * A POST of the JSON payload to the API path, with the credentials and, when enabled, gzip.
+     */
+    public Request request(String path, String json) {
+        return compression.post(new Request.Builder()
+                .url(baseUrl + path)
+                .addHeader("Authorization", config.getRestApi().getAuthorization())
+                .addHeader("Application-Key", config.getRestApi().getApplicationKey())
+                .addHeader("Content-Type", "application/json"), json)
+                .build();
+    }
+
+    /**
+     * Send a request through the rate limits and the upstream guard, retrying transient failures.
+     * The response must be closed by the caller.
+     *
+     * @throws UpstreamGuard.RejectedException when the request was not sent because of a limit
+     */
+    public Response execute(String channel, boolean idempotent, Request request, String sender) throws IOException {
+        return retryPolicy.execute(channel, idempotent, RESPONSES, () -> executeUpstream(channel, request, sender));
+    }
+
+    private Response executeUpstream(String channel, Request request, String sender) throws IOException {
+        // Waits for the rate limits, then fails fast with RejectedException when a limit cannot be
+        // met in time, the circuit is open or the concurrency limit is reached
+        rateLimiter.acquire(channel, config.getRestApi().getApplicationKey(), sender);
+        UpstreamGuard.Permit permit = upstreamGuard.acquire(channel);
+        AtomicInteger inFlight = upstreamInFlight.get(channel);
+        long start = System.nanoTime();
+        String status = Metrics.IO_ERROR;
+        boolean failed = true;
+        inFlight.incrementAndGet();
+        try {
+            Response response = httpClient.newCall(request).execute();
+            status = Metrics.statusClass(response.code());
+            failed = UpstreamGuard.isFailure(response.code());
+            return response;
+        } finally {
+            permit.release(failed);
+            inFlight.decrementAndGet();
+            metrics.timer("messageflow.upstream.requests", "channel", channel, "status", status).recordSince(start);
+        }
+    }
+}
@@ -1,24 +1,44 @@
-package com.messageflow.function.models;
+package com.messageflow.client.models;
 
 import com.google.gson.annotations.SerializedName;
 
-public class EmailResponse {
+public class ChunkResult {
+    private int index;
+    private int recipients;
     private boolean success;
     private String message;
 
     @SerializedName("response_content")
     private String responseContent;
 
-    public EmailResponse() {
+    public ChunkResult() {
     }
 
-    public EmailResponse(boolean success, String message, String responseContent) {
+    public ChunkResult(int index, int recipients, boolean success, String message, String responseContent) {
+        this.index = index;
+        this.recipients = recipients;
         this.success = success;
         this.message = message;
         this.responseContent = responseContent;
     }
 
     // Getters and Setters
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
+    public int getRecipients() {
+        return recipients;
+    }
+
+    public void setRecipients(int recipients) {
+        this.recipients = recipients;
+    }
+
     public boolean isSuccess() {
         return success;
     }
@@ -1,4 +1,4 @@
-package com.messageflow.function.models;
+package com.messageflow.client.models;
 
 import com.google.gson.annotations.SerializedName;
 import java.util.Map;
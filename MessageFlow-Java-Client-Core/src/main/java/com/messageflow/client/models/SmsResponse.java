@@ -0,0 +1,77 @@
+package com.messageflow.client.models;
+
+import com.google.gson.annotations.SerializedName;
+import java.util.List;
+
+public class SmsResponse {
+    private boolean success;
+    private String message;
+
+    @SerializedName("response_content")
+    private String responseContent;
+
+    // Per-chunk outcomes when the recipient list was split into several upstream calls
+    private List<ChunkResult> chunks;
+
+    // Set when the call was rejected without contacting MessageFlow (circuit open, concurrency limit)
+    @SerializedName("retry_after_seconds")
+    private Integer retryAfterSeconds;
+
+    public SmsResponse() {
+    }
+
+    public SmsResponse(boolean success, String message, String responseContent) {
+        this.success = success;
+        this.message = message;
+        this.responseContent = responseContent;
+    }
+
+    // Getters and Setters
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public void setSuccess(boolean success) {
+        this.success = success;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+
+    public String getResponseContent() {
+        return responseContent;
+    }
+
+    public void setResponseContent(String responseContent) {
+        this.responseContent = responseContent;
+    }
+
+    public List<ChunkResult> getChunks() {
+        return chunks;
+    }
+
+    public void setChunks(List<ChunkResult> chunks) {
+        this.chunks = chunks;
+    }
+
+    /**
+     * Whether the send reached any recipient: it succeeded, or some of its chunks did. Sending
+     * the request again would repeat the chunks that went through.
+     */
+    public boolean isDelivered() {
+        return success || (chunks != null && chunks.stream().anyMatch(ChunkResult::isSuccess));
+    }
+
+    public Integer getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+    public void setRetryAfterSeconds(Integer retryAfterSeconds) {
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+}
@@ -0,0 +1,167 @@
+package com.messageflow.client.services;
+
+import com.google.gson.Gson;
+import com.messageflow.client.MessageFlowClient;
+import com.messageflow.client.models.ChunkResult;
+import com.messageflow.client.models.EmailRecipient;
+import com.messageflow.client.models.EmailRequest;
+import com.messageflow.client.models.EmailResponse;
+import com.messageflow.client.utils.Json;
+import com.messageflow.client.utils.SendLog;
+import com.messageflow.client.utils.UpstreamGuard;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+public class EmailService {
+    private static final String EMAIL_API_PATH = "/email";
+    private static final int DEFAULT_CHUNK_SIZE = 500;
+
+    private final MessageFlowClient client;
+    private final Gson gson;
+    private final Logger logger;
+    private final SendLog sendLog;
+    private final ExecutorService fanOutExecutor;
+
+    public EmailService(MessageFlowClient client) {
+        this.client = client;
+        this.gson = Json.gson();
+        this.logger = Logger.getLogger(EmailService.class.getName());
+        this.sendLog = client.getSendLog();
+        this.fanOutExecutor = Executors.newFixedThreadPool(client.getConfig().getFanOut().getParallelism(), runnable -> {
+            Thread thread = new Thread(runnable, "email-fanout");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public SendLog getSendLog() {
+        return sendLog;
+    }
+
+    /**
+     * Send an email. "to" lists longer than the configured chunk size are split into chunks
+     * sent as separate upstream calls in parallel, and the outcomes merged into one response.
+     */
+    public EmailResponse sendEmail(EmailRequest request) {
+        int chunkSize = client.getConfig().getFanOut().getChunkSize() > 0
+                ? client.getConfig().getFanOut().getChunkSize() : DEFAULT_CHUNK_SIZE;
+        List<EmailRecipient> to = request.getTo();
+        if (to == null || to.size() <= chunkSize) {
+            return sendChunk(request);
+        }
+
+        List<EmailRequest> chunks = new ArrayList<>();
+        for (int from = 0; from < to.size(); from += chunkSize) {
+            List<EmailRecipient> part = to.subList(from, Math.min(from + chunkSize, to.size()));
+            chunks.add(copyForChunk(request, part, chunks.size()));
+        }
+
+        logger.info("Splitting email to " + to.size() + " recipients into " + chunks.size() +
+                " chunks of up to " + chunkSize);
+
+        List<Future<EmailResponse>> futures = new ArrayList<>(chunks.size());
+        for (EmailRequest chunk : chunks) {
+            futures.add(fanOutExecutor.submit(() -> sendChunk(chunk)));
+        }
+
+        List<ChunkResult> chunkResults = new ArrayList<>(chunks.size());
+        int failed = 0;
+        for (int i = 0; i < futures.size(); i++) {
+            EmailResponse response;
+            try {
+                response = futures.get(i).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                response = new EmailResponse(false, "Interrupted while sending chunk", e.toString());
+            } catch (ExecutionException e) {
+                response = new EmailResponse(false, "Error: " + e.getCause().getMessage(), e.getCause().toString());
+            }
+
+            chunkResults.add(new ChunkResult(i, chunks.get(i).getTo().size(),
+                    response.isSuccess(), response.getMessage(), response.getResponseContent()));
+            if (!response.isSuccess()) {
+                failed++;
+            }
+        }
+
+        EmailResponse merged = failed == 0
+                ? new EmailResponse(true, "Email sent successfully in " + chunks.size() + " chunks", "")
+                : new EmailResponse(false, failed + " of " + chunks.size() + " chunks failed", "");
+        merged.setChunks(chunkResults);
+        return merged;
+    }
+
+    private EmailRequest copyForChunk(EmailRequest request, List<EmailRecipient> to, int chunkIndex) {
+        EmailRequest chunk = new EmailRequest();
+        chunk.setSubject(request.getSubject());
+        chunk.setSmtpAccount(request.getSmtpAccount());
+        chunk.setFrom(request.getFrom());
+        chunk.setTo(to);
+        chunk.setContent(request.getContent());
+        chunk.setTags(request.getTags());
+        chunk.setReplyTo(request.getReplyTo());
+        chunk.setHeaders(request.getHeaders());
+        chunk.setGlobalVars(request.getGlobalVars());
+        if (chunkIndex == 0) {
+            // cc/bcc receive one copy, not one per chunk
+            chunk.setCc(request.getCc());
+            chunk.setBcc(request.getBcc());
+        }
+        return chunk;
+    }
+
+    private EmailResponse sendChunk(EmailRequest request) {
+        sendLog.log(logger, SendLog.Event.REQUEST,
+                () -> "EmailService.sendEmail called with request: " + gson.toJson(request), null);
+
+        try {
+            // Prepare payload
+            String jsonPayload = gson.toJson(request);
+            sendLog.log(logger, SendLog.Event.PAYLOAD,
+                    () -> "Email API Request Payload: " + jsonPayload,
+                    () -> "event=email.payload chars=" + jsonPayload.length() + " body=" + sendLog.body(jsonPayload));
+
+            // Prepare request
+            Request httpRequest = client.request(EMAIL_API_PATH, jsonPayload);
+
+            sendLog.log(logger, SendLog.Event.REQUEST, () -> "Sending HTTP request to: " + httpRequest.url(), null);
+
+            // Send request. Emails carry no idempotency key, so only failures where nothing was sent are retried
+            try (Response response = client.execute("email", false, httpRequest, request.getSmtpAccount())) {
+                String responseContent = response.body() != null ? response.body().string() : "";
+                int status = response.code();
+                SendLog.Event event = response.isSuccessful() ? SendLog.Event.RESPONSE : SendLog.Event.FAILURE;
+                sendLog.log(logger, event,
+                        () -> "Email API Response Status: " + status,
+                        () -> "event=email.response status=" + status + " body=" + sendLog.body(responseContent));
+                sendLog.log(logger, event, () -> "Email API Response Content: " + responseContent, null);
+
+                if (response.isSuccessful()) {
+                    return new EmailResponse(true, "Email sent successfully", responseContent);
+                } else {
+                    return new EmailResponse(false, "HTTP Error: " + response.code(), responseContent);
+                }
+            }
+
+        } catch (UpstreamGuard.RejectedException e) {
+            EmailResponse rejected = new EmailResponse(false, e.getMessage(), "");
+            rejected.setRetryAfterSeconds(e.getRetryAfterSeconds());
+            return rejected;
+        } catch (IOException e) {
+            logger.severe("HTTP request failed: " + e.getMessage());
+            return new EmailResponse(false, "HTTP request failed: " + e.getMessage(), e.toString());
+        } catch (Exception e) {
+            logger.severe("Error sending email: " + e.getMessage());
+            return new EmailResponse(false, "Error: " + e.getMessage(), e.toString());
+        }
+    }
+}
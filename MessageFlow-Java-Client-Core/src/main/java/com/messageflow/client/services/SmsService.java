@@ -0,0 +1,171 @@
+package com.messageflow.client.services;
+
+import com.google.gson.Gson;
+import com.messageflow.client.MessageFlowClient;
+import com.messageflow.client.models.ChunkResult;
+import com.messageflow.client.models.SmsRequest;
+import com.messageflow.client.models.SmsResponse;
+import com.messageflow.client.utils.Json;
+import com.messageflow.client.utils.SendLog;
+import com.messageflow.client.utils.UpstreamGuard;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+public class SmsService {
+    private static final String SMS_API_PATH = "/sms";
+    private static final int DEFAULT_CHUNK_SIZE = 1000;
+
+    private final MessageFlowClient client;
+    private final Gson gson;
+    private final Logger logger;
+    private final SendLog sendLog;
+    private final ExecutorService fanOutExecutor;
+
+    public SmsService(MessageFlowClient client) {
+        this.client = client;
+        this.gson = Json.gson();
+        this.logger = Logger.getLogger(SmsService.class.getName());
+        this.sendLog = client.getSendLog();
+        this.fanOutExecutor = Executors.newFixedThreadPool(client.getConfig().getFanOut().getParallelism(), runnable -> {
+            Thread thread = new Thread(runnable, "sms-fanout");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public SendLog getSendLog() {
+        return sendLog;
+    }
+
+    /**
+     * Send an SMS. Recipient lists longer than the configured chunk size are split into chunks
+     * sent as separate upstream calls in parallel, and the outcomes merged into one response.
+     */
+    public SmsResponse sendSms(SmsRequest request) {
+        if (client.getRetryPolicy().isEnabled() && (request.getExternalId() == null || request.getExternalId().isEmpty())) {
+            // Retried calls resend the same externalId, so MessageFlow can drop duplicates of a call that went through
+            request.setExternalId(UUID.randomUUID().toString());
+        }
+
+        int chunkSize = client.getConfig().getFanOut().getChunkSize() > 0
+                ? client.getConfig().getFanOut().getChunkSize() : DEFAULT_CHUNK_SIZE;
+        List<String> phoneNumbers = request.getPhoneNumbers();
+        if (phoneNumbers == null || phoneNumbers.size() <= chunkSize) {
+            return sendChunk(request);
+        }
+
+        List<SmsRequest> chunks = new ArrayList<>();
+        for (int from = 0; from < phoneNumbers.size(); from += chunkSize) {
+            List<String> part = phoneNumbers.subList(from, Math.min(from + chunkSize, phoneNumbers.size()));
+            chunks.add(copyForChunk(request, part, chunks.size()));
+        }
+
+        logger.info("Splitting SMS to " + phoneNumbers.size() + " recipients into " + chunks.size() +
+                " chunks of up to " + chunkSize);
+
+        List<Future<SmsResponse>> futures = new ArrayList<>(chunks.size());
+        for (SmsRequest chunk : chunks) {
+            futures.add(fanOutExecutor.submit(() -> sendChunk(chunk)));
+        }
+
+        List<ChunkResult> chunkResults = new ArrayList<>(chunks.size());
+        int failed = 0;
+        for (int i = 0; i < futures.size(); i++) {
+            SmsResponse response;
+            try {
+                response = futures.get(i).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                response = new SmsResponse(false, "Interrupted while sending chunk", e.toString());
+            } catch (ExecutionException e) {
+                response = new SmsResponse(false, "Error: " + e.getCause().getMessage(), e.getCause().toString());
+            }
+
+            chunkResults.add(new ChunkResult(i, chunks.get(i).getPhoneNumbers().size(),
+                    response.isSuccess(), response.getMessage(), response.getResponseContent()));
+            if (!response.isSuccess()) {
+                failed++;
+            }
+        }
+
+        SmsResponse merged = failed == 0
+                ? new SmsResponse(true, "SMS sent successfully in " + chunks.size() + " chunks", "")
+                : new SmsResponse(false, failed + " of " + chunks.size() + " chunks failed", "");
+        merged.setChunks(chunkResults);
+        return merged;
+    }
+
+    private SmsRequest copyForChunk(SmsRequest request, List<String> phoneNumbers, int chunkIndex) {
+        SmsRequest chunk = new SmsRequest();
+        chunk.setSender(request.getSender());
+        chunk.setMessage(request.getMessage());
+        chunk.setPhoneNumbers(phoneNumbers);
+        chunk.setValidity(request.getValidity());
+        chunk.setScheduleTime(request.getScheduleTime());
+        chunk.setType(request.getType());
+        chunk.setShortLink(request.getShortLink());
+        chunk.setWebhookUrl(request.getWebhookUrl());
+        if (request.getExternalId() != null) {
+            // Keep chunk IDs distinct so upstream does not treat chunks as duplicates of each other
+            chunk.setExternalId(request.getExternalId() + "-" + (chunkIndex + 1));
+        }
+        return chunk;
+    }
+
+    private SmsResponse sendChunk(SmsRequest request) {
+        sendLog.log(logger, SendLog.Event.REQUEST,
+                () -> "SmsService.sendSms called with request: " + gson.toJson(request), null);
+
+        try {
+            // Prepare payload
+            String jsonPayload = gson.toJson(request);
+            sendLog.log(logger, SendLog.Event.PAYLOAD,
+                    () -> "SMS API Request Payload: " + jsonPayload,
+                    () -> "event=sms.payload chars=" + jsonPayload.length() + " body=" + sendLog.body(jsonPayload));
+
+            // Prepare request
+            Request httpRequest = client.request(SMS_API_PATH, jsonPayload);
+
+            sendLog.log(logger, SendLog.Event.REQUEST, () -> "Sending HTTP request to: " + httpRequest.url(), null);
+
+            // Send request, retrying transient failures
+            try (Response response = client.execute("sms", request.getExternalId() != null,
+                    httpRequest, request.getSender())) {
+                String responseContent = response.body() != null ? response.body().string() : "";
+                int status = response.code();
+                SendLog.Event event = response.isSuccessful() ? SendLog.Event.RESPONSE : SendLog.Event.FAILURE;
+                sendLog.log(logger, event,
+                        () -> "SMS API Response Status: " + status,
+                        () -> "event=sms.response status=" + status + " body=" + sendLog.body(responseContent));
+                sendLog.log(logger, event, () -> "SMS API Response Content: " + responseContent, null);
+
+                if (response.isSuccessful()) {
+                    return new SmsResponse(true, "SMS sent successfully", responseContent);
+                } else {
+                    return new SmsResponse(false, "HTTP Error: " + response.code(), responseContent);
+                }
+            }
+
+        } catch (UpstreamGuard.RejectedException e) {
+            SmsResponse rejected = new SmsResponse(false, e.getMessage(), "");
+            rejected.setRetryAfterSeconds(e.getRetryAfterSeconds());
+            return rejected;
+        } catch (IOException e) {
+            logger.severe("HTTP request failed: " + e.getMessage());
+            return new SmsResponse(false, "HTTP request failed: " + e.getMessage(), e.toString());
+        } catch (Exception e) {
+            logger.severe("Error sending SMS: " + e.getMessage());
+            return new SmsResponse(false, "Error: " + e.getMessage(), e.toString());
+        }
+    }
+}
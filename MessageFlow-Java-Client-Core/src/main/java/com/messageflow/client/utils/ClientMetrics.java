@@ -0,0 +1,21 @@
+package com.messageflow.client.utils;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Where the rate limiter, upstream guard, retry policy and idempotency cache record their meters.
+ *
+ * The functions use the in-process {@link Metrics} registry; the App Service binds this to
+ * Micrometer. Tags are key/value pairs, e.g. ("channel", "sms", "reason", "rate_limit").
+ */
+public interface ClientMetrics {
+
+    void increment(String name, String... tags);
+
+    void record(String name, long nanos, String... tags);
+
+    /**
+     * Register a gauge read whenever the metrics are collected.
+     */
+    void gauge(String name, LongSupplier value, String... tags);
+}
@@ -0,0 +1,754 @@
+package com.messageflow.client.utils;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.logging.Logger;
+
+public class Config {
+    private static final Logger logger = Logger.getLogger(Config.class.getName());
+    private static final String DEFAULT_BASE_URL = "https://api.messageflow.com/v2.1";
+    private RestApiConfig restApi;
+    private FanOutConfig fanOut = new FanOutConfig();
+    private LoggingConfig logging = new LoggingConfig();
+    private UpstreamConfig upstream = new UpstreamConfig();
+    private RetryConfig retry = new RetryConfig();
+    private IdempotencyConfig idempotency = new IdempotencyConfig();
+    private RateLimitConfig rateLimit = new RateLimitConfig();
+    private CompressionConfig compression = new CompressionConfig();
+
+    public static class RestApiConfig {
+        private String authorization;
+        private String application_key;
+        private String base_url = DEFAULT_BASE_URL;
+
+        public String getAuthorization() {
+            return authorization;
+        }
+
+        public void setAuthorization(String authorization) {
+            this.authorization = authorization;
+        }
+
+        public String getApplicationKey() {
+            return application_key;
+        }
+
+        public void setApplicationKey(String application_key) {
+            this.application_key = application_key;
+        }
+
+        public String getBaseUrl() {
+            return base_url != null && !base_url.isEmpty() ? base_url : DEFAULT_BASE_URL;
+        }
+
+        public void setBaseUrl(String base_url) {
+            this.base_url = base_url;
+        }
+    }
+
+    public static class FanOutConfig {
+        // 0 for the channel's default: 500 email recipients or 1000 SMS phone numbers per call
+        private int chunk_size = 0;
+        private int parallelism = 4;
+
+        public int getChunkSize() {
+            return chunk_size;
+        }
+
+        public void setChunkSize(int chunk_size) {
+            this.chunk_size = chunk_size;
+        }
+
+        public int getParallelism() {
+            return parallelism;
+        }
+
+        public void setParallelism(int parallelism) {
+            this.parallelism = parallelism;
+        }
+    }
+
+    public static class LoggingConfig {
+        private String mode = "verbose";
+        private double sample_request = 1.0;
+        private double sample_payload = 0.01;
+        private double sample_response = 0.1;
+        private int max_body_chars = 1024;
+        private int async_queue_size = 8192;
+
+        public String getMode() {
+            return mode;
+        }
+
+        public void setMode(String mode) {
+            this.mode = mode;
+        }
+
+        public double getSampleRequest() {
+            return sample_request;
+        }
+
+        public void setSampleRequest(double sample_request) {
+            this.sample_request = sample_request;
+        }
+
+        public double getSamplePayload() {
+            return sample_payload;
+        }
+
+        public void setSamplePayload(double sample_payload) {
+            this.sample_payload = sample_payload;
+        }
+
+        public double getSampleResponse() {
+            return sample_response;
+        }
+
+        public void setSampleResponse(double sample_response) {
+            this.sample_response = sample_response;
+        }
+
+        public int getMaxBodyChars() {
+            return max_body_chars;
+        }
+
+        public void setMaxBodyChars(int max_body_chars) {
+            this.max_body_chars = max_body_chars;
+        }
+
+        public int getAsyncQueueSize() {
+            return async_queue_size;
+        }
+
+        public void setAsyncQueueSize(int async_queue_size) {
+            this.async_queue_size = async_queue_size;
+        }
+    }
+
+    public static class UpstreamConfig {
+        private boolean enabled = true;
+        private int window_size = 100;
+        private int minimum_calls = 20;
+        private int failure_rate_threshold = 50;
+        private int slow_call_rate_threshold = 80;
+        private long slow_call_ms = 3000;
+        private long open_seconds = 30;
+        private int half_open_calls = 5;
+        private int limit_initial = 100;
+        private int limit_min = 5;
+        private int limit_max = 200;
+        private double limit_backoff_ratio = 0.9;
+        private double limit_rtt_tolerance = 2.0;
+        private long limit_max_wait_ms = 100;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getWindowSize() {
+            return window_size;
+        }
+
+        public void setWindowSize(int window_size) {
+            this.window_size = window_size;
+        }
+
+        public int getMinimumCalls() {
+            return minimum_calls;
+        }
+
+        public void setMinimumCalls(int minimum_calls) {
+            this.minimum_calls = minimum_calls;
+        }
+
+        public int getFailureRateThreshold() {
+            return failure_rate_threshold;
+        }
+
+        public void setFailureRateThreshold(int failure_rate_threshold) {
+            this.failure_rate_threshold = failure_rate_threshold;
+        }
+
+        public int getSlowCallRateThreshold() {
+            return slow_call_rate_threshold;
+        }
+
+        public void setSlowCallRateThreshold(int slow_call_rate_threshold) {
+            this.slow_call_rate_threshold = slow_call_rate_threshold;
+        }
+
+        public long getSlowCallMs() {
+            return slow_call_ms;
+        }
+
+        public void setSlowCallMs(long slow_call_ms) {
+            this.slow_call_ms = slow_call_ms;
+        }
+
+        public long getOpenSeconds() {
+            return open_seconds;
+        }
+
+        public void setOpenSeconds(long open_seconds) {
+            this.open_seconds = open_seconds;
+        }
+
+        public int getHalfOpenCalls() {
+            return half_open_calls;
+        }
+
+        public void setHalfOpenCalls(int half_open_calls) {
+            this.half_open_calls = half_open_calls;
+        }
+
+        public int getLimitInitial() {
+            return limit_initial;
+        }
+
+        public void setLimitInitial(int limit_initial) {
+            this.limit_initial = limit_initial;
+        }
+
+        public int getLimitMin() {
+            return limit_min;
+        }
+
+        public void setLimitMin(int limit_min) {
+            this.limit_min = limit_min;
+        }
+
+        public int getLimitMax() {
+            return limit_max;
+        }
+
+        public void setLimitMax(int limit_max) {
+            this.limit_max = limit_max;
+        }
+
+        public double getLimitBackoffRatio() {
+            return limit_backoff_ratio;
+        }
+
+        public void setLimitBackoffRatio(double limit_backoff_ratio) {
+            this.limit_backoff_ratio = limit_backoff_ratio;
+        }
+
+        public double getLimitRttTolerance() {
+            return limit_rtt_tolerance;
+        }
+
+        public void setLimitRttTolerance(double limit_rtt_tolerance) {
+            this.limit_rtt_tolerance = limit_rtt_tolerance;
+        }
+
+        public long getLimitMaxWaitMs() {
+            return limit_max_wait_ms;
+        }
+
+        public void setLimitMaxWaitMs(long limit_max_wait_ms) {
+            this.limit_max_wait_ms = limit_max_wait_ms;
+        }
+    }
+
+    public static class RetryConfig {
+        private int max_attempts = 3;
+        private long initial_backoff_ms = 200;
+        private long max_backoff_ms = 5000;
+        private double budget_ratio = 0.1;
+        private double budget_max_tokens = 10;
+
+        public int getMaxAttempts() {
+            return max_attempts;
+        }
+
+        public void setMaxAttempts(int max_attempts) {
+            this.max_attempts = max_attempts;
+        }
+
+        public long getInitialBackoffMs() {
+            return initial_backoff_ms;
+        }
+
+        public void setInitialBackoffMs(long initial_backoff_ms) {
+            this.initial_backoff_ms = initial_backoff_ms;
+        }
+
+        public long getMaxBackoffMs() {
+            return max_backoff_ms;
+        }
+
+        public void setMaxBackoffMs(long max_backoff_ms) {
+            this.max_backoff_ms = max_backoff_ms;
+        }
+
+        public double getBudgetRatio() {
+            return budget_ratio;
+        }
+
+        public void setBudgetRatio(double budget_ratio) {
+            this.budget_ratio = budget_ratio;
+        }
+
+        public double getBudgetMaxTokens() {
+            return budget_max_tokens;
+        }
+
+        public void setBudgetMaxTokens(double budget_max_tokens) {
+            this.budget_max_tokens = budget_max_tokens;
+        }
+    }
+
+    public static class IdempotencyConfig {
+        private boolean enabled = true;
+        private boolean content_hash = true;
+        private long ttl_seconds = 300;
+        private int max_entries = 10000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public boolean isContentHash() {
+            return content_hash;
+        }
+
+        public void setContentHash(boolean content_hash) {
+            this.content_hash = content_hash;
+        }
+
+        public long getTtlSeconds() {
+            return ttl_seconds;
+        }
+
+        public void setTtlSeconds(long ttl_seconds) {
+            this.ttl_seconds = ttl_seconds;
+        }
+
+        public int getMaxEntries() {
+            return max_entries;
+        }
+
+        public void setMaxEntries(int max_entries) {
+            this.max_entries = max_entries;
+        }
+    }
+
+    public static class RateLimitConfig {
+        private double application_rate = 0;
+        private double application_burst = 0;
+        private double sender_rate = 0;
+        private double sender_burst = 0;
+        private long max_wait_ms = 1000;
+
+        public double getApplicationRate() {
+            return application_rate;
+        }
+
+        public void setApplicationRate(double application_rate) {
+            this.application_rate = application_rate;
+        }
+
+        public double getApplicationBurst() {
+            return application_burst;
+        }
+
+        public void setApplicationBurst(double application_burst) {
+            this.application_burst = application_burst;
+        }
+
+        public double getSenderRate() {
+            return sender_rate;
+        }
+
+        public void setSenderRate(double sender_rate) {
+            this.sender_rate = sender_rate;
+        }
+
+        public double getSenderBurst() {
+            return sender_burst;
+        }
+
+        public void setSenderBurst(double sender_burst) {
+            this.sender_burst = sender_burst;
+        }
+
+        public long getMaxWaitMs() {
+            return max_wait_ms;
+        }
+
+        public void setMaxWaitMs(long max_wait_ms) {
+            this.max_wait_ms = max_wait_ms;
+        }
+    }
+
+    public static class CompressionConfig {
+        private String mode = "none";
+        private int min_bytes = 16384;
+        private int level = 1;
+
+        public String getMode() {
+            return mode;
+        }
+
+        public void setMode(String mode) {
+            this.mode = mode;
+        }
+
+        public int getMinBytes() {
+            return min_bytes;
+        }
+
+        public void setMinBytes(int min_bytes) {
+            this.min_bytes = min_bytes;
+        }
+
+        public int getLevel() {
+            return level;
+        }
+
+        public void setLevel(int level) {
+            this.level = level;
+        }
+    }
+
+    public RestApiConfig getRestApi() {
+        return restApi;
+    }
+
+    public void setRestApi(RestApiConfig restApi) {
+        this.restApi = restApi;
+    }
+
+    public FanOutConfig getFanOut() {
+        return fanOut;
+    }
+
+    public void setFanOut(FanOutConfig fanOut) {
+        this.fanOut = fanOut;
+    }
+
+    public LoggingConfig getLogging() {
+        return logging;
+    }
+
+    public void setLogging(LoggingConfig logging) {
+        this.logging = logging;
+    }
+
+    public UpstreamConfig getUpstream() {
+        return upstream;
+    }
+
+    public void setUpstream(UpstreamConfig upstream) {
+        this.upstream = upstream;
+    }
+
+    public RetryConfig getRetry() {
+        return retry;
+    }
+
+    public void setRetry(RetryConfig retry) {
+        this.retry = retry;
+    }
+
+    public IdempotencyConfig getIdempotency() {
+        return idempotency;
+    }
+
+    public void setIdempotency(IdempotencyConfig idempotency) {
+        this.idempotency = idempotency;
+    }
+
+    public RateLimitConfig getRateLimit() {
+        return rateLimit;
+    }
+
+    public void setRateLimit(RateLimitConfig rateLimit) {
+        this.rateLimit = rateLimit;
+    }
+
+    public CompressionConfig getCompression() {
+        return compression;
+    }
+
+    public void setCompression(CompressionConfig compression) {
+        this.compression = compression;
+    }
+
+    /**
+     * Load configuration from environment variables, or config file
+     */
+    public static Config loadConfig() {
+        Config config = new Config();
+        RestApiConfig restApiConfig = new RestApiConfig();
+
+        // First try environment variables (for Azure deployment)
+        String envAuthorization = System.getenv("RestApi__Authorization");
+        String envApplicationKey = System.getenv("RestApi__ApplicationKey");
+
+        if (envAuthorization != null && !envAuthorization.isEmpty() &&
+                envApplicationKey != null && !envApplicationKey.isEmpty()) {
+            logger.info("Configuration loaded from environment variables");
+            restApiConfig.setAuthorization(envAuthorization);
+            restApiConfig.setApplicationKey(envApplicationKey);
+            config.setRestApi(restApiConfig);
+            applyEnvironmentOverrides(config);
+            return config;
+        }
+
+        // Try config.json (fallback for deployment)
+        try (FileReader reader = new FileReader("config.json")) {
+            Config fileConfig = Json.gson().fromJson(reader, Config.class);
+            if (fileConfig.getRestApi() != null &&
+                    fileConfig.getRestApi().getAuthorization() != null &&
+                    fileConfig.getRestApi().getApplicationKey() != null) {
+                logger.info("Configuration loaded from config.json");
+                if (fileConfig.getFanOut() == null) {
+                    fileConfig.setFanOut(new FanOutConfig());
+                }
+                if (fileConfig.getLogging() == null) {
+                    fileConfig.setLogging(new LoggingConfig());
+                }
+                if (fileConfig.getUpstream() == null) {
+                    fileConfig.setUpstream(new UpstreamConfig());
+                }
+                if (fileConfig.getRetry() == null) {
+                    fileConfig.setRetry(new RetryConfig());
+                }
+                if (fileConfig.getIdempotency() == null) {
+                    fileConfig.setIdempotency(new IdempotencyConfig());
+                }
+                if (fileConfig.getRateLimit() == null) {
+                    fileConfig.setRateLimit(new RateLimitConfig());
+                }
+                if (fileConfig.getCompression() == null) {
+                    fileConfig.setCompression(new CompressionConfig());
+                }
+                applyEnvironmentOverrides(fileConfig);
+                return fileConfig;
+            }
+        } catch (IOException e) {
+            logger.warning("Could not load config.json: " + e.getMessage());
+        }
+
+        // No valid configuration found
+        logger.severe("No valid configuration found in environment variables or config.json");
+        restApiConfig.setAuthorization(null);
+        restApiConfig.setApplicationKey(null);
+        config.setRestApi(restApiConfig);
+        return config;
+    }
+
+    /**
+     * Optional tuning settings, read from environment variables when present
+     */
+    private static void applyEnvironmentOverrides(Config config) {
+        String baseUrl = System.getenv("RestApi__BaseUrl");
+        if (baseUrl != null && !baseUrl.isEmpty()) {
+            config.getRestApi().setBaseUrl(baseUrl);
+        }
+
+        String chunkSize = System.getenv("FanOut__ChunkSize");
+        if (chunkSize != null && !chunkSize.isEmpty()) {
+            config.getFanOut().setChunkSize(Integer.parseInt(chunkSize));
+        }
+
+        String parallelism = System.getenv("FanOut__Parallelism");
+        if (parallelism != null && !parallelism.isEmpty()) {
+            config.getFanOut().setParallelism(Integer.parseInt(parallelism));
+        }
+
+        String loggingMode = System.getenv("Logging__Mode");
+        if (loggingMode != null && !loggingMode.isEmpty()) {
+            config.getLogging().setMode(loggingMode);
+        }
+
+        String sampleRequest = System.getenv("Logging__SampleRequest");
+        if (sampleRequest != null && !sampleRequest.isEmpty()) {
+            config.getLogging().setSampleRequest(Double.parseDouble(sampleRequest));
+        }
+
+        String samplePayload = System.getenv("Logging__SamplePayload");
+        if (samplePayload != null && !samplePayload.isEmpty()) {
+            config.getLogging().setSamplePayload(Double.parseDouble(samplePayload));
+        }
+
+        String sampleResponse = System.getenv("Logging__SampleResponse");
+        if (sampleResponse != null && !sampleResponse.isEmpty()) {
+            config.getLogging().setSampleResponse(Double.parseDouble(sampleResponse));
+        }
+
+        String maxBodyChars = System.getenv("Logging__MaxBodyChars");
+        if (maxBodyChars != null && !maxBodyChars.isEmpty()) {
+            config.getLogging().setMaxBodyChars(Integer.parseInt(maxBodyChars));
+        }
+
+        String asyncQueueSize = System.getenv("Logging__AsyncQueueSize");
+        if (asyncQueueSize != null && !asyncQueueSize.isEmpty()) {
+            config.getLogging().setAsyncQueueSize(Integer.parseInt(asyncQueueSize));
+        }
+
+        String breakerEnabled = System.getenv("Upstream__BreakerEnabled");
+        if (breakerEnabled != null && !breakerEnabled.isEmpty()) {
+            config.getUpstream().setEnabled(Boolean.parseBoolean(breakerEnabled));
+        }
+
+        String windowSize = System.getenv("Upstream__WindowSize");
+        if (windowSize != null && !windowSize.isEmpty()) {
+            config.getUpstream().setWindowSize(Integer.parseInt(windowSize));
+        }
+
+        String minimumCalls = System.getenv("Upstream__MinimumCalls");
+        if (minimumCalls != null && !minimumCalls.isEmpty()) {
+            config.getUpstream().setMinimumCalls(Integer.parseInt(minimumCalls));
+        }
+
+        String failureRateThreshold = System.getenv("Upstream__FailureRateThreshold");
+        if (failureRateThreshold != null && !failureRateThreshold.isEmpty()) {
+            config.getUpstream().setFailureRateThreshold(Integer.parseInt(failureRateThreshold));
+        }
+
+        String slowCallRateThreshold = System.getenv("Upstream__SlowCallRateThreshold");
+        if (slowCallRateThreshold != null && !slowCallRateThreshold.isEmpty()) {
+            config.getUpstream().setSlowCallRateThreshold(Integer.parseInt(slowCallRateThreshold));
+        }
+
+        String slowCallMs = System.getenv("Upstream__SlowCallMs");
+        if (slowCallMs != null && !slowCallMs.isEmpty()) {
+            config.getUpstream().setSlowCallMs(Long.parseLong(slowCallMs));
+        }
+
+        String openSeconds = System.getenv("Upstream__OpenSeconds");
+        if (openSeconds != null && !openSeconds.isEmpty()) {
+            config.getUpstream().setOpenSeconds(Long.parseLong(openSeconds));
+        }
+
+        String halfOpenCalls = System.getenv("Upstream__HalfOpenCalls");
+        if (halfOpenCalls != null && !halfOpenCalls.isEmpty()) {
+            config.getUpstream().setHalfOpenCalls(Integer.parseInt(halfOpenCalls));
+        }
+
+        String limitInitial = System.getenv("Upstream__LimitInitial");
+        if (limitInitial != null && !limitInitial.isEmpty()) {
+            config.getUpstream().setLimitInitial(Integer.parseInt(limitInitial));
+        }
+
+        String limitMin = System.getenv("Upstream__LimitMin");
+        if (limitMin != null && !limitMin.isEmpty()) {
+            config.getUpstream().setLimitMin(Integer.parseInt(limitMin));
+        }
+
+        String limitMax = System.getenv("Upstream__LimitMax");
+        if (limitMax != null && !limitMax.isEmpty()) {
+            config.getUpstream().setLimitMax(Integer.parseInt(limitMax));
+        }
+
+        String limitBackoffRatio = System.getenv("Upstream__LimitBackoffRatio");
+        if (limitBackoffRatio != null && !limitBackoffRatio.isEmpty()) {
+            config.getUpstream().setLimitBackoffRatio(Double.parseDouble(limitBackoffRatio));
+        }
+
+        String limitRttTolerance = System.getenv("Upstream__LimitRttTolerance");
+        if (limitRttTolerance != null && !limitRttTolerance.isEmpty()) {
+            config.getUpstream().setLimitRttTolerance(Double.parseDouble(limitRttTolerance));
+        }
+
+        String limitMaxWaitMs = System.getenv("Upstream__LimitMaxWaitMs");
+        if (limitMaxWaitMs != null && !limitMaxWaitMs.isEmpty()) {
+            config.getUpstream().setLimitMaxWaitMs(Long.parseLong(limitMaxWaitMs));
+        }
+
+        String maxAttempts = System.getenv("Retry__MaxAttempts");
+        if (maxAttempts != null && !maxAttempts.isEmpty()) {
+            config.getRetry().setMaxAttempts(Integer.parseInt(maxAttempts));
+        }
+
+        String initialBackoffMs = System.getenv("Retry__InitialBackoffMs");
+        if (initialBackoffMs != null && !initialBackoffMs.isEmpty()) {
+            config.getRetry().setInitialBackoffMs(Long.parseLong(initialBackoffMs));
+        }
+
+        String maxBackoffMs = System.getenv("Retry__MaxBackoffMs");
+        if (maxBackoffMs != null && !maxBackoffMs.isEmpty()) {
+            config.getRetry().setMaxBackoffMs(Long.parseLong(maxBackoffMs));
+        }
+
+        String budgetRatio = System.getenv("Retry__BudgetRatio");
+        if (budgetRatio != null && !budgetRatio.isEmpty()) {
+            config.getRetry().setBudgetRatio(Double.parseDouble(budgetRatio));
+        }
+
+        String budgetMaxTokens = System.getenv("Retry__BudgetMaxTokens");
+        if (budgetMaxTokens != null && !budgetMaxTokens.isEmpty()) {
+            config.getRetry().setBudgetMaxTokens(Double.parseDouble(budgetMaxTokens));
+        }
+
+        String idempotencyEnabled = System.getenv("Idempotency__Enabled");
+        if (idempotencyEnabled != null && !idempotencyEnabled.isEmpty()) {
+            config.getIdempotency().setEnabled(Boolean.parseBoolean(idempotencyEnabled));
+        }
+
+        String contentHash = System.getenv("Idempotency__ContentHash");
+        if (contentHash != null && !contentHash.isEmpty()) {
+            config.getIdempotency().setContentHash(Boolean.parseBoolean(contentHash));
+        }
+
+        String ttlSeconds = System.getenv("Idempotency__TtlSeconds");
+        if (ttlSeconds != null && !ttlSeconds.isEmpty()) {
+            config.getIdempotency().setTtlSeconds(Long.parseLong(ttlSeconds));
+        }
+
+        String maxEntries = System.getenv("Idempotency__MaxEntries");
+        if (maxEntries != null && !maxEntries.isEmpty()) {
+            config.getIdempotency().setMaxEntries(Integer.parseInt(maxEntries));
+        }
+
+        String applicationRate = System.getenv("RateLimit__ApplicationRate");
+        if (applicationRate != null && !applicationRate.isEmpty()) {
+            config.getRateLimit().setApplicationRate(Double.parseDouble(applicationRate));
+        }
+
+        String applicationBurst = System.getenv("RateLimit__ApplicationBurst");
+        if (applicationBurst != null && !applicationBurst.isEmpty()) {
+            config.getRateLimit().setApplicationBurst(Double.parseDouble(applicationBurst));
+        }
+
+        String senderRate = System.getenv("RateLimit__SenderRate");
+        if (senderRate != null && !senderRate.isEmpty()) {
+            config.getRateLimit().setSenderRate(Double.parseDouble(senderRate));
+        }
+
+        String senderBurst = System.getenv("RateLimit__SenderBurst");
+        if (senderBurst != null && !senderBurst.isEmpty()) {
+            config.getRateLimit().setSenderBurst(Double.parseDouble(senderBurst));
+        }
+
+        String maxWaitMs = System.getenv("RateLimit__MaxWaitMs");
+        if (maxWaitMs != null && !maxWaitMs.isEmpty()) {
+            config.getRateLimit().setMaxWaitMs(Long.parseLong(maxWaitMs));
+        }
+
+        String compressionMode = System.getenv("Compression__Mode");
+        if (compressionMode != null && !compressionMode.isEmpty()) {
+            config.getCompression().setMode(compressionMode);
+        }
+
+        String compressionMinBytes = System.getenv("Compression__MinBytes");
+        if (compressionMinBytes != null && !compressionMinBytes.isEmpty()) {
+            config.getCompression().setMinBytes(Integer.parseInt(compressionMinBytes));
+        }
+
+        String compressionLevel = System.getenv("Compression__Level");
+        if (compressionLevel != null && !compressionLevel.isEmpty()) {
+            config.getCompression().setLevel(Integer.parseInt(compressionLevel));
+        }
+    }
+}
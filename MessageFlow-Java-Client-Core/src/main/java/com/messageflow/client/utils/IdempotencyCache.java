@@ -0,0 +1,192 @@
+package com.messageflow.client.utils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * Suppresses duplicate sends of the same SMS or email within one process.
+ *
+ * A send is identified by its Idempotency-Key header, else its externalId, else (when content-hash
+ * is true) a SHA-256 hash of the request. While the first send with a key is running, duplicates
+ * wait for it and get its response. A response accepted by the caller's {@code keep} predicate is
+ * then returned to duplicates for ttl-seconds without calling MessageFlow; the callers keep every
+ * send that reached a recipient, including those of which only some chunks were sent. Other
+ * responses are not kept, so a resend after a failure is sent again.
+ *
+ * At most max-entries keys are kept; the oldest are dropped first. The settings are Idempotency__*
+ * in the functions and messageflow.idempotency.* in the App Service.
+ */
+public class IdempotencyCache {
+
+    public static final String HEADER = "Idempotency-Key";
+
+    private final Logger logger = Logger.getLogger(IdempotencyCache.class.getName());
+    private final ClientMetrics metrics;
+    private final boolean enabled;
+    private final boolean contentHash;
+    private final long ttlNanos;
+    private final Map<String, Entry> entries;
+
+    public IdempotencyCache(Config.IdempotencyConfig config, ClientMetrics metrics) {
+        this.metrics = metrics;
+        this.enabled = config.isEnabled();
+        this.contentHash = config.isContentHash();
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(config.getTtlSeconds());
+        int maxEntries = Math.max(1, config.getMaxEntries());
+        this.entries = new LinkedHashMap<>(16, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Value of the Idempotency-Key header, matched case-insensitively.
+     */
+    public static String header(Map<String, String> headers) {
+        if (headers == null) {
+            return null;
+        }
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            if (HEADER.equalsIgnoreCase(header.getKey())) {
+                return header.getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Key for a send, or null when it should not be deduplicated. The request is the received body
+     * or the parsed request; it is only serialized, by {@link #hash}, when it is hashed.
+     */
+    public String key(String channel, String idempotencyKey, String externalId, Object request) {
+        if (!enabled) {
+            return null;
+        }
+        if (idempotencyKey != null && !idempotencyKey.isBlank()) {
+            return channel + ":key:" + idempotencyKey;
+        }
+        if (externalId != null && !externalId.isBlank()) {
+            return channel + ":externalId:" + externalId;
+        }
+        if (!contentHash || request == null) {
+            return null;
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            hash(request, digest);
+            return channel + ":sha256:" + HexFormat.of().formatHex(digest.digest());
+        } catch (IOException | NoSuchAlgorithmException e) {
+            logger.warning("Could not hash " + channel + " request, sending without deduplication: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Feed the bytes of a request into the digest, by default those of {@link #content}. Override
+     * to serialize large requests straight into the digest.
+     */
+    protected void hash(Object request, MessageDigest digest) throws IOException {
+        digest.update(content(request));
+    }
+
+    /**
+     * The bytes hashed for a request: a String as UTF-8, a byte array as it is. Override to
+     * serialize parsed requests.
+     */
+    protected byte[] content(Object request) throws IOException {
+        if (request instanceof byte[]) {
+            return (byte[]) request;
+        }
+        return request.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Run the send for a key once. Duplicates wait for the running send or get its kept response.
+     * Responses rejected by {@code keep} are returned to the waiting duplicates but not kept.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String key, Supplier<T> send, Predicate<T> keep) {
+        if (key == null) {
+            return send.get();
+        }
+
+        Entry entry;
+        boolean owner = false;
+        synchronized (entries) {
+            long now = System.nanoTime();
+            evictExpired(now);
+            entry = entries.get(key);
+            if (entry != null && entry.result.isDone() && entry.expiresAt - now <= 0) {
+                entries.remove(key);
+                entry = null;
+            }
+            if (entry == null) {
+                entry = new Entry();
+                entries.put(key, entry);
+                owner = true;
+            }
+        }
+
+        String channel = key.substring(0, key.indexOf(':'));
+        if (!owner) {
+            metrics.increment(entry.result.isDone() ? "messageflow.idempotency.hits" : "messageflow.idempotency.waits",
+                    "channel", channel);
+            logger.info("Duplicate send suppressed: " + channel);
+            return (T) entry.result.join();
+        }
+
+        T result;
+        try {
+            result = send.get();
+        } catch (RuntimeException | Error e) {
+            synchronized (entries) {
+                entries.remove(key, entry);
+            }
+            entry.result.completeExceptionally(e);
+            throw e;
+        }
+
+        boolean kept = keep.test(result);
+        synchronized (entries) {
+            if (kept) {
+                entry.expiresAt = System.nanoTime() + ttlNanos;
+            } else {
+                entries.remove(key, entry);
+            }
+        }
+        entry.result.complete(result);
+        return result;
+    }
+
+    // Entries are in insertion order, so expired entries are found from the head. Entries of sends
+    // still running have no expiry and stop the scan; they are picked up on a later call.
+    private void evictExpired(long now) {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (!entry.result.isDone() || entry.expiresAt - now > 0) {
+                return;
+            }
+            iterator.remove();
+        }
+    }
+
+    private static final class Entry {
+        private final CompletableFuture<Object> result = new CompletableFuture<>();
+        // Guarded by the entries lock; set once the result is kept
+        private long expiresAt;
+    }
+}
@@ -0,0 +1,26 @@
+package com.messageflow.client.utils;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+/**
+ * The Gson instance shared by the functions, the MessageFlow client and the configuration loader.
+ *
+ * The request and response models are read and written by the streaming adapters of
+ * {@link ModelAdapters}. Other classes, such as the configuration, use Gson's reflective adapter,
+ * which Gson builds the first time a class is used and caches per instance, so with one instance
+ * each of them is introspected once per worker rather than once per Gson.
+ */
+public final class Json {
+
+    private static final Gson GSON = new GsonBuilder()
+            .registerTypeAdapterFactory(new ModelAdapters())
+            .create();
+
+    private Json() {
+    }
+
+    public static Gson gson() {
+        return GSON;
+    }
+}
@@ -0,0 +1,177 @@
+package com.messageflow.client.utils;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * In-process metrics registry for the function host (timers, counters and gauges), one per worker
+ * and shared by all functions of the app.
+ *
+ * Meters are identified by a name and optional key/value tags, e.g.
+ * messageflow.upstream.requests{channel=sms,status=2xx}. Values are cumulative since the worker
+ * started and are returned by {@link #snapshot()}, which the metrics function serves as JSON.
+ * Timer percentiles come from a log-linear histogram (four buckets per power of two microseconds),
+ * so they overstate by at most 25%.
+ */
+public final class Metrics implements ClientMetrics {
+
+    public static final String IO_ERROR = "IO_ERROR";
+
+    private static final Metrics INSTANCE = new Metrics();
+
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+    private Metrics() {
+    }
+
+    public static Metrics get() {
+        return INSTANCE;
+    }
+
+    public Timer timer(String name, String... tags) {
+        return timers.computeIfAbsent(key(name, tags), k -> new Timer());
+    }
+
+    @Override
+    public void increment(String name, String... tags) {
+        counters.computeIfAbsent(key(name, tags), k -> new LongAdder()).increment();
+    }
+
+    @Override
+    public void record(String name, long nanos, String... tags) {
+        timer(name, tags).record(nanos);
+    }
+
+    /**
+     * Register a gauge read at snapshot time. Registering the same name and tags again replaces it.
+     */
+    @Override
+    public void gauge(String name, LongSupplier value, String... tags) {
+        gauges.put(key(name, tags), value);
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> timerValues = new TreeMap<>();
+        timers.forEach((key, timer) -> timerValues.put(key, timer.snapshot()));
+
+        Map<String, Long> counterValues = new TreeMap<>();
+        counters.forEach((key, counter) -> counterValues.put(key, counter.sum()));
+
+        Map<String, Long> gaugeValues = new TreeMap<>();
+        gauges.forEach((key, gauge) -> gaugeValues.put(key, gauge.getAsLong()));
+
+        Map<String, Object> snapshot = new TreeMap<>();
+        snapshot.put("timers", timerValues);
+        snapshot.put("counters", counterValues);
+        snapshot.put("gauges", gaugeValues);
+        return snapshot;
+    }
+
+    public static String statusClass(int statusCode) {
+        return (statusCode / 100) + "xx";
+    }
+
+    private static String key(String name, String... tags) {
+        if (tags.length == 0) {
+            return name;
+        }
+        StringBuilder key = new StringBuilder(name).append('{');
+        for (int i = 0; i + 1 < tags.length; i += 2) {
+            if (i > 0) {
+                key.append(',');
+            }
+            key.append(tags[i]).append('=').append(tags[i + 1]);
+        }
+        return key.append('}').toString();
+    }
+
+    public static final class Timer {
+
+        private static final int BUCKETS = 160;
+
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+        private Timer() {
+        }
+
+        public void record(long nanos) {
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+            buckets.incrementAndGet(bucket(TimeUnit.NANOSECONDS.toMicros(nanos)));
+        }
+
+        public void recordSince(long startNanos) {
+            record(System.nanoTime() - startNanos);
+        }
+
+        Map<String, Object> snapshot() {
+            long[] counts = new long[BUCKETS];
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = buckets.get(i);
+                total += counts[i];
+            }
+
+            long samples = count.sum();
+            double maxMs = millis(maxNanos.get());
+            Map<String, Object> snapshot = new TreeMap<>();
+            snapshot.put("count", samples);
+            snapshot.put("meanMs", samples == 0 ? 0.0 : millis(totalNanos.sum() / samples));
+            snapshot.put("maxMs", maxMs);
+            snapshot.put("p50Ms", Math.min(maxMs, percentile(counts, total, 0.50)));
+            snapshot.put("p95Ms", Math.min(maxMs, percentile(counts, total, 0.95)));
+            snapshot.put("p99Ms", Math.min(maxMs, percentile(counts, total, 0.99)));
+            return snapshot;
+        }
+
+        private static double percentile(long[] counts, long total, double quantile) {
+            if (total == 0) {
+                return 0.0;
+            }
+            long rank = (long) Math.ceil(quantile * total);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return upperBoundMicros(i) / 1000.0;
+                }
+            }
+            return upperBoundMicros(counts.length - 1) / 1000.0;
+        }
+
+        private static double millis(long nanos) {
+            return nanos / 1_000_000.0;
+        }
+
+        // Values below 4us get their own bucket; above that, each power of two is split in four
+        private static int bucket(long micros) {
+            if (micros < 4) {
+                return (int) Math.max(0, micros);
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(micros);
+            int sub = (int) (micros >>> (exponent - 2)) & 3;
+            return Math.min(BUCKETS - 1, (exponent - 1) * 4 + sub);
+        }
+
+        private static long upperBoundMicros(int bucket) {
+            if (bucket < 4) {
+                return bucket;
+            }
+            int exponent = bucket / 4 + 1;
+            int sub = bucket % 4;
+            return ((5L + sub) << (exponent - 2)) - 1;
+        }
+    }
+}
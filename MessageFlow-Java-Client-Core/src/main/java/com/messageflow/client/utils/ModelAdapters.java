@@ -0,0 +1,553 @@
+package com.messageflow.client.utils;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.messageflow.client.models.ChunkResult;
+import com.messageflow.client.models.EmailContent;
+import com.messageflow.client.models.EmailRecipient;
+import com.messageflow.client.models.EmailRequest;
+import com.messageflow.client.models.EmailResponse;
+import com.messageflow.client.models.SmsRequest;
+import com.messageflow.client.models.SmsResponse;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streaming Gson adapters for the request and response models, registered on {@link Json#gson()}.
+ *
+ * Gson's reflective adapter introspects a class the first time it is used and reads and writes
+ * every field through reflection, boxing as it goes. These adapters read and write the fields
+ * through the getters and setters instead, with the same JSON names, field order and leniency:
+ * unknown fields are skipped, numbers and booleans are accepted as strings, and null fields are
+ * not written. Values of vars and globalVars are free-form and go through Gson's Object adapter,
+ * so they are read as strings, doubles, booleans, lists and maps as before.
+ */
+public final class ModelAdapters implements TypeAdapterFactory {
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+        Class<? super T> raw = type.getRawType();
+        TypeAdapter<?> adapter;
+        if (raw == SmsRequest.class) {
+            adapter = new SmsRequestAdapter();
+        } else if (raw == EmailRequest.class) {
+            adapter = new EmailRequestAdapter(gson.getAdapter(Object.class));
+        } else if (raw == EmailRecipient.class) {
+            adapter = new EmailRecipientAdapter(gson.getAdapter(Object.class));
+        } else if (raw == EmailContent.class) {
+            adapter = new EmailContentAdapter();
+        } else if (raw == SmsResponse.class) {
+            adapter = new SmsResponseAdapter();
+        } else if (raw == EmailResponse.class) {
+            adapter = new EmailResponseAdapter();
+        } else if (raw == ChunkResult.class) {
+            adapter = new ChunkResultAdapter();
+        } else {
+            return null;
+        }
+        return (TypeAdapter<T>) adapter.nullSafe();
+    }
+
+    private static final class SmsRequestAdapter extends TypeAdapter<SmsRequest> {
+
+        @Override
+        public void write(JsonWriter out, SmsRequest value) throws IOException {
+            out.beginObject();
+            writeString(out, "sender", value.getSender());
+            writeString(out, "message", value.getMessage());
+            writeStrings(out, "phoneNumbers", value.getPhoneNumbers());
+            writeNumber(out, "validity", value.getValidity());
+            writeNumber(out, "scheduleTime", value.getScheduleTime());
+            writeNumber(out, "type", value.getType());
+            writeBoolean(out, "shortLink", value.getShortLink());
+            writeString(out, "webhookUrl", value.getWebhookUrl());
+            writeString(out, "externalId", value.getExternalId());
+            out.endObject();
+        }
+
+        @Override
+        public SmsRequest read(JsonReader in) throws IOException {
+            SmsRequest request = new SmsRequest();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "sender" -> request.setSender(readString(in));
+                    case "message" -> request.setMessage(readString(in));
+                    case "phoneNumbers" -> request.setPhoneNumbers(readStrings(in));
+                    case "validity" -> request.setValidity(readInteger(in));
+                    case "scheduleTime" -> request.setScheduleTime(readLong(in));
+                    case "type" -> request.setType(readInteger(in));
+                    case "shortLink" -> request.setShortLink(readBoolean(in));
+                    case "webhookUrl" -> request.setWebhookUrl(readString(in));
+                    case "externalId" -> request.setExternalId(readString(in));
+                    default -> in.skipValue();
+                }
+            }
+            in.endObject();
+            return request;
+        }
+    }
+
+    private static final class EmailRequestAdapter extends TypeAdapter<EmailRequest> {
+        private final EmailRecipientAdapter recipients;
+        private final EmailContentAdapter content = new EmailContentAdapter();
+        private final TypeAdapter<Object> objects;
+
+        EmailRequestAdapter(TypeAdapter<Object> objects) {
+            this.recipients = new EmailRecipientAdapter(objects);
+            this.objects = objects;
+        }
+
+        @Override
+        public void write(JsonWriter out, EmailRequest value) throws IOException {
+            out.beginObject();
+            writeString(out, "subject", value.getSubject());
+            writeString(out, "smtpAccount", value.getSmtpAccount());
+            writeRecipient(out, "from", value.getFrom());
+            writeRecipients(out, "to", value.getTo());
+            if (value.getContent() != null) {
+                content.write(out.name("content"), value.getContent());
+            }
+            writeStrings(out, "tags", value.getTags());
+            writeRecipients(out, "cc", value.getCc());
+            writeRecipients(out, "bcc", value.getBcc());
+            writeRecipient(out, "replyTo", value.getReplyTo());
+            if (value.getHeaders() != null) {
+                out.name("headers").beginObject();
+                for (Map.Entry<String, String> header : value.getHeaders().entrySet()) {
+                    writeString(out, header.getKey(), header.getValue());
+                }
+                out.endObject();
+            }
+            writeObjects(out, "globalVars", value.getGlobalVars(), objects);
+            out.endObject();
+        }
+
+        private void writeRecipient(JsonWriter out, String name, EmailRecipient recipient) throws IOException {
+            if (recipient != null) {
+                recipients.write(out.name(name), recipient);
+            }
+        }
+
+        private void writeRecipients(JsonWriter out, String name, List<EmailRecipient> list) throws IOException {
+            if (list == null) {
+                return;
+            }
+            out.name(name).beginArray();
+            for (EmailRecipient recipient : list) {
+                if (recipient == null) {
+                    out.nullValue();
+                } else {
+                    recipients.write(out, recipient);
+                }
+            }
+            out.endArray();
+        }
+
+        @Override
+        public EmailRequest read(JsonReader in) throws IOException {
+            EmailRequest request = new EmailRequest();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "subject" -> request.setSubject(readString(in));
+                    case "smtpAccount" -> request.setSmtpAccount(readString(in));
+                    case "from" -> request.setFrom(readRecipient(in));
+                    case "to" -> request.setTo(readRecipients(in));
+                    case "content" -> request.setContent(peekNull(in) ? null : content.read(in));
+                    case "tags" -> request.setTags(readStrings(in));
+                    case "cc" -> request.setCc(readRecipients(in));
+                    case "bcc" -> request.setBcc(readRecipients(in));
+                    case "replyTo" -> request.setReplyTo(readRecipient(in));
+                    case "headers" -> request.setHeaders(readStringMap(in));
+                    case "globalVars" -> request.setGlobalVars(readObjects(in, objects));
+                    default -> in.skipValue();
+                }
+            }
+            in.endObject();
+            return request;
+        }
+
+        private EmailRecipient readRecipient(JsonReader in) throws IOException {
+            return peekNull(in) ? null : recipients.read(in);
+        }
+
+        private List<EmailRecipient> readRecipients(JsonReader in) throws IOException {
+            if (peekNull(in)) {
+                return null;
+            }
+            List<EmailRecipient> list = new ArrayList<>();
+            in.beginArray();
+            while (in.hasNext()) {
+                list.add(readRecipient(in));
+            }
+            in.endArray();
+            return list;
+        }
+    }
+
+    private static final class EmailRecipientAdapter extends TypeAdapter<EmailRecipient> {
+        private final TypeAdapter<Object> objects;
+
+        EmailRecipientAdapter(TypeAdapter<Object> objects) {
+            this.objects = objects;
+        }
+
+        @Override
+        public void write(JsonWriter out, EmailRecipient value) throws IOException {
+            out.beginObject();
+            writeString(out, "email", value.getEmail());
+            writeString(out, "name", value.getName());
+            writeString(out, "messageId", value.getMessageId());
+            writeObjects(out, "vars", value.getVars(), objects);
+            out.endObject();
+        }
+
+        @Override
+        public EmailRecipient read(JsonReader in) throws IOException {
+            EmailRecipient recipient = new EmailRecipient();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "email" -> recipient.setEmail(readString(in));
+                    case "name" -> recipient.setName(readString(in));
+                    case "messageId" -> recipient.setMessageId(readString(in));
+                    case "vars" -> recipient.setVars(readObjects(in, objects));
+                    default -> in.skipValue();
+                }
+            }
+            in.endObject();
+            return recipient;
+        }
+    }
+
+    private static final class EmailContentAdapter extends TypeAdapter<EmailContent> {
+
+        @Override
+        public void write(JsonWriter out, EmailContent value) throws IOException {
+            out.beginObject();
+            writeString(out, "html", value.getHtml());
+            writeString(out, "text", value.getText());
+            writeString(out, "templateId", value.getTemplateId());
+            out.endObject();
+        }
+
+        @Override
+        public EmailContent read(JsonReader in) throws IOException {
+            EmailContent content = new EmailContent();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "html" -> content.setHtml(readString(in));
+                    case "text" -> content.setText(readString(in));
+                    case "templateId" -> content.setTemplateId(readString(in));
+                    default -> in.skipValue();
+                }
+            }
+            in.endObject();
+            return content;
+        }
+    }
+
+    private static final class SmsResponseAdapter extends TypeAdapter<SmsResponse> {
+        private final ChunkResultAdapter chunks = new ChunkResultAdapter();
+
+        @Override
+        public void write(JsonWriter out, SmsResponse value) throws IOException {
+            out.beginObject();
+            out.name("success").value(value.isSuccess());
+            writeString(out, "message", value.getMessage());
+            writeString(out, "response_content", value.getResponseContent());
+            chunks.writeList(out, value.getChunks());
+            writeNumber(out, "retry_after_seconds", value.getRetryAfterSeconds());
+            out.endObject();
+        }
+
+        @Override
+        public SmsResponse read(JsonReader in) throws IOException {
+            SmsResponse response = new SmsResponse();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "success" -> response.setSuccess(readBoolean(in, response.isSuccess()));
+                    case "message" -> response.setMessage(readString(in));
+                    case "response_content" -> response.setResponseContent(readString(in));
+                    case "chunks" -> response.setChunks(chunks.readList(in));
+                    case "retry_after_seconds" -> response.setRetryAfterSeconds(readInteger(in));
+                    default -> in.skipValue();
+                }
+            }
+            in.endObject();
+            return response;
+        }
+    }
+
+    private static final class EmailResponseAdapter extends TypeAdapter<EmailResponse> {
+        private final ChunkResultAdapter chunks = new ChunkResultAdapter();
+
+        @Override
+        public void write(JsonWriter out, EmailResponse value) throws IOException {
+            out.beginObject();
+            out.name("success").value(value.isSuccess());
+            writeString(out, "message", value.getMessage());
+            writeString(out, "response_content", value.getResponseContent());
+            chunks.writeList(out, value.getChunks());
+            writeNumber(out, "retry_after_seconds", value.getRetryAfterSeconds());
+            out.endObject();
+        }
+
+        @Override
+        public EmailResponse read(JsonReader in) throws IOException {
+            EmailResponse response = new EmailResponse();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "success" -> response.setSuccess(readBoolean(in, response.isSuccess()));
+                    case "message" -> response.setMessage(readString(in));
+                    case "response_content" -> response.setResponseContent(readString(in));
+                    case "chunks" -> response.setChunks(chunks.readList(in));
+                    case "retry_after_seconds" -> response.setRetryAfterSeconds(readInteger(in));
+                    default -> in.skipValue();
+                }
+            }
+            in.endObject();
+            return response;
+        }
+    }
+
+    private static final class ChunkResultAdapter extends TypeAdapter<ChunkResult> {
+
+        @Override
+        public void write(JsonWriter out, ChunkResult value) throws IOException {
+            out.beginObject();
+            out.name("index").value(value.getIndex());
+            out.name("recipients").value(value.getRecipients());
+            out.name("success").value(value.isSuccess());
+            writeString(out, "message", value.getMessage());
+            writeString(out, "response_content", value.getResponseContent());
+            out.endObject();
+        }
+
+        @Override
+        public ChunkResult read(JsonReader in) throws IOException {
+            ChunkResult result = new ChunkResult();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "index" -> result.setIndex(readInt(in, result.getIndex()));
+                    case "recipients" -> result.setRecipients(readInt(in, result.getRecipients()));
+                    case "success" -> result.setSuccess(readBoolean(in, result.isSuccess()));
+                    case "message" -> result.setMessage(readString(in));
+                    case "response_content" -> result.setResponseContent(readString(in));
+                    default -> in.skipValue();
+                }
+            }
+            in.endObject();
+            return result;
+        }
+
+        void writeList(JsonWriter out, List<ChunkResult> list) throws IOException {
+            if (list == null) {
+                return;
+            }
+            out.name("chunks").beginArray();
+            for (ChunkResult result : list) {
+                if (result == null) {
+                    out.nullValue();
+                } else {
+                    write(out, result);
+                }
+            }
+            out.endArray();
+        }
+
+        List<ChunkResult> readList(JsonReader in) throws IOException {
+            if (peekNull(in)) {
+                return null;
+            }
+            List<ChunkResult> list = new ArrayList<>();
+            in.beginArray();
+            while (in.hasNext()) {
+                list.add(peekNull(in) ? null : read(in));
+            }
+            in.endArray();
+            return list;
+        }
+    }
+
+    // Writing: null values are skipped, as Gson does without serializeNulls
+
+    private static void writeString(JsonWriter out, String name, String value) throws IOException {
+        if (value != null) {
+            out.name(name).value(value);
+        }
+    }
+
+    private static void writeNumber(JsonWriter out, String name, Number value) throws IOException {
+        if (value != null) {
+            out.name(name).value(value);
+        }
+    }
+
+    private static void writeBoolean(JsonWriter out, String name, Boolean value) throws IOException {
+        if (value != null) {
+            out.name(name).value(value);
+        }
+    }
+
+    private static void writeStrings(JsonWriter out, String name, List<String> values) throws IOException {
+        if (values == null) {
+            return;
+        }
+        out.name(name).beginArray();
+        for (String value : values) {
+            out.value(value);
+        }
+        out.endArray();
+    }
+
+    private static void writeObjects(JsonWriter out, String name, Map<String, Object> values,
+                                     TypeAdapter<Object> objects) throws IOException {
+        if (values == null) {
+            return;
+        }
+        out.name(name).beginObject();
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            Object value = entry.getValue();
+            if (value instanceof String string) {
+                // Most variables; skips the Object adapter's lookup of the adapter for the value's class
+                out.name(entry.getKey()).value(string);
+            } else if (value != null) {
+                objects.write(out.name(entry.getKey()), value);
+            }
+        }
+        out.endObject();
+    }
+
+    // Reading: the same conversions as Gson's built-in adapters
+
+    /**
+     * Consume a JSON null, or return false when the next value is not null.
+     */
+    private static boolean peekNull(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return true;
+        }
+        return false;
+    }
+
+    private static String readString(JsonReader in) throws IOException {
+        JsonToken token = in.peek();
+        if (token == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        if (token == JsonToken.BOOLEAN) {
+            return Boolean.toString(in.nextBoolean());
+        }
+        return in.nextString();
+    }
+
+    private static Integer readInteger(JsonReader in) throws IOException {
+        if (peekNull(in)) {
+            return null;
+        }
+        try {
+            return in.nextInt();
+        } catch (NumberFormatException e) {
+            throw new JsonSyntaxException(e);
+        }
+    }
+
+    private static Long readLong(JsonReader in) throws IOException {
+        if (peekNull(in)) {
+            return null;
+        }
+        try {
+            return in.nextLong();
+        } catch (NumberFormatException e) {
+            throw new JsonSyntaxException(e);
+        }
+    }
+
+    private static Boolean readBoolean(JsonReader in) throws IOException {
+        JsonToken token = in.peek();
+        if (token == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        if (token == JsonToken.STRING) {
+            return Boolean.parseBoolean(in.nextString());
+        }
+        return in.nextBoolean();
+    }
+
+    // A null for a primitive field leaves its current value, like Gson's reflective adapter
+
+    private static int readInt(JsonReader in, int current) throws IOException {
+        Integer value = readInteger(in);
+        return value != null ? value : current;
+    }
+
+    private static boolean readBoolean(JsonReader in, boolean current) throws IOException {
+        Boolean value = readBoolean(in);
+        return value != null ? value : current;
+    }
+
+    private static List<String> readStrings(JsonReader in) throws IOException {
+        if (peekNull(in)) {
+            return null;
+        }
+        List<String> list = new ArrayList<>();
+        in.beginArray();
+        while (in.hasNext()) {
+            list.add(readString(in));
+        }
+        in.endArray();
+        return list;
+    }
+
+    private static Map<String, String> readStringMap(JsonReader in) throws IOException {
+        if (peekNull(in)) {
+            return null;
+        }
+        Map<String, String> map = new LinkedHashMap<>();
+        in.beginObject();
+        while (in.hasNext()) {
+            String key = in.nextName();
+            if (map.put(key, readString(in)) != null) {
+                throw new JsonSyntaxException("duplicate key: " + key);
+            }
+        }
+        in.endObject();
+        return map;
+    }
+
+    private static Map<String, Object> readObjects(JsonReader in, TypeAdapter<Object> objects) throws IOException {
+        if (peekNull(in)) {
+            return null;
+        }
+        Map<String, Object> map = new LinkedHashMap<>();
+        in.beginObject();
+        while (in.hasNext()) {
+            String key = in.nextName();
+            if (map.put(key, objects.read(in)) != null) {
+                throw new JsonSyntaxException("duplicate key: " + key);
+            }
+        }
+        in.endObject();
+        return map;
+    }
+}
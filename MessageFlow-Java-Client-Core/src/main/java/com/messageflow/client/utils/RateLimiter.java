@@ -0,0 +1,152 @@
+package com.messageflow.client.utils;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Token-bucket rate limits on calls to the MessageFlow API, so that bursts are smoothed out here
+ * instead of being answered with 429 by MessageFlow.
+ *
+ * Every call takes a token from the bucket of the application key (application-rate calls per
+ * second, bursts of up to application-burst), shared by both channels, and from the bucket of its
+ * sender: the SMS sender or the email smtpAccount (sender-rate and sender-burst). A call that finds
+ * a bucket empty waits for its token, in arrival order; when the wait would exceed max-wait-ms it
+ * is rejected with {@link UpstreamGuard.RejectedException} instead. A rate of 0 disables that limit.
+ *
+ * The settings are RateLimit__* in the functions and messageflow.rate-limit.* in the App Service.
+ * Limits are per process: with several instances, divide the account's limits between them.
+ */
+public class RateLimiter {
+
+    // Idle buckets are dropped once there are more sender buckets than this
+    private static final int MAX_BUCKETS = 10_000;
+
+    private final Logger logger = Logger.getLogger(RateLimiter.class.getName());
+    private final ClientMetrics metrics;
+    private final double applicationRate;
+    private final double applicationBurst;
+    private final double senderRate;
+    private final double senderBurst;
+    private final long maxWaitNanos;
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+    public RateLimiter(Config.RateLimitConfig config, ClientMetrics metrics) {
+        this.metrics = metrics;
+        this.applicationRate = config.getApplicationRate();
+        this.applicationBurst = burst(applicationRate, config.getApplicationBurst());
+        this.senderRate = config.getSenderRate();
+        this.senderBurst = burst(senderRate, config.getSenderBurst());
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(config.getMaxWaitMs());
+    }
+
+    // Without an explicit burst, a bucket holds one second's worth of tokens
+    private static double burst(double rate, double burst) {
+        return burst > 0 ? burst : Math.max(1, rate);
+    }
+
+    /**
+     * Wait until a call for this application key and sender may be sent, or fail fast with
+     * RejectedException when that would take longer than max-wait-ms. The sender may be null.
+     */
+    public void acquire(String channel, String applicationKey, String sender) {
+        long now = System.nanoTime();
+        Bucket application = applicationRate > 0
+                ? bucket("application:" + applicationKey, applicationRate, applicationBurst, now) : null;
+        Bucket senderBucket = senderRate > 0 && sender != null && !sender.isEmpty()
+                ? bucket(channel + ":" + sender, senderRate, senderBurst, now) : null;
+
+        long applicationWait = application != null ? application.reserve(now, maxWaitNanos) : 0;
+        if (applicationWait < 0) {
+            throw reject(channel, "application key", -applicationWait);
+        }
+        long senderWait = senderBucket != null ? senderBucket.reserve(now, maxWaitNanos) : 0;
+        if (senderWait < 0) {
+            // The call is not sent, so its application token is returned
+            if (application != null) {
+                application.cancel();
+            }
+            throw reject(channel, "sender", -senderWait);
+        }
+
+        long wait = Math.max(applicationWait, senderWait);
+        if (wait > 0) {
+            metrics.record("messageflow.ratelimit.wait", wait, "channel", channel);
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new UpstreamGuard.RejectedException("Interrupted while waiting for the MessageFlow rate limit", 1);
+            }
+        }
+    }
+
+    private UpstreamGuard.RejectedException reject(String channel, String limit, long waitNanos) {
+        metrics.increment("messageflow.upstream.rejected", "channel", channel, "reason", "rate_limit");
+        logger.warning("Rejected " + channel + " call: " + limit + " rate limit reached");
+        return new UpstreamGuard.RejectedException("MessageFlow " + limit + " rate limit reached, retry later",
+                (int) Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + 999_999_999L)));
+    }
+
+    private Bucket bucket(String key, double rate, double burst, long now) {
+        if (buckets.size() > MAX_BUCKETS) {
+            // A bucket that has refilled completely behaves like a new one
+            buckets.values().removeIf(bucket -> bucket.isFull(now));
+        }
+        return buckets.computeIfAbsent(key, k -> new Bucket(rate, burst, now));
+    }
+
+    /**
+     * Tokens may go negative: each waiting call has reserved a token that is yet to be refilled,
+     * so later calls queue behind it.
+     */
+    private static final class Bucket {
+
+        private final double tokensPerNano;
+        private final double capacity;
+        private double tokens;
+        private long refilledAt;
+
+        private Bucket(double rate, double capacity, long now) {
+            this.tokensPerNano = rate / TimeUnit.SECONDS.toNanos(1);
+            this.capacity = capacity;
+            this.tokens = capacity;
+            this.refilledAt = now;
+        }
+
+        /**
+         * Reserve one token and return how long to wait for it, or, when that is longer than
+         * maxWaitNanos, reserve nothing and return minus the wait.
+         */
+        synchronized long reserve(long now, long maxWaitNanos) {
+            refill(now);
+            if (tokens >= 1) {
+                tokens -= 1;
+                return 0;
+            }
+            long wait = (long) Math.ceil((1 - tokens) / tokensPerNano);
+            if (wait > maxWaitNanos) {
+                return -wait;
+            }
+            tokens -= 1;
+            return wait;
+        }
+
+        synchronized void cancel() {
+            tokens = Math.min(capacity, tokens + 1);
+        }
+
+        synchronized boolean isFull(long now) {
+            refill(now);
+            return tokens >= capacity;
+        }
+
+        private void refill(long now) {
+            if (now - refilledAt > 0) {
+                tokens = Math.min(capacity, tokens + (now - refilledAt) * tokensPerNano);
+                refilledAt = now;
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.messageflow.client.utils;
+
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Optional gzip compression of MessageFlow request bodies.
+ *
+ * With Compression__Mode=gzip, payloads of at least Compression__MinBytes are compressed at
+ * Compression__Level and sent with Content-Encoding: gzip; payloads that would not shrink are sent
+ * as they are. The body is compressed once and resent unchanged on retries. Responses need nothing
+ * here: OkHttp requests them with Accept-Encoding: gzip and decompresses them transparently.
+ */
+public class RequestCompression {
+
+    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+
+    private final boolean gzip;
+    private final int minBytes;
+    private final int level;
+
+    public RequestCompression(Config.CompressionConfig config) {
+        String mode = config.getMode() == null ? "none" : config.getMode().trim().toLowerCase();
+        if (!mode.equals("gzip") && !mode.equals("none")) {
+            throw new IllegalArgumentException("Compression__Mode must be none or gzip: " + config.getMode());
+        }
+        this.gzip = mode.equals("gzip");
+        this.minBytes = config.getMinBytes();
+        this.level = config.getLevel();
+    }
+
+    /**
+     * POST the JSON payload, compressed when enabled and large enough.
+     */
+    public Request.Builder post(Request.Builder builder, String json) {
+        if (gzip && json.length() >= minBytes) {
+            byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+            byte[] compressed = compress(bytes);
+            if (compressed.length < bytes.length) {
+                return builder.header("Content-Encoding", "gzip").post(RequestBody.create(compressed, JSON));
+            }
+            return builder.post(RequestBody.create(bytes, JSON));
+        }
+        return builder.post(RequestBody.create(json, JSON));
+    }
+
+    private byte[] compress(byte[] bytes) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4 + 64);
+        try (GZIPOutputStream gzipOut = new GZIPOutputStream(out) {
+            {
+                def.setLevel(level);
+            }
+        }) {
+            gzipOut.write(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+}
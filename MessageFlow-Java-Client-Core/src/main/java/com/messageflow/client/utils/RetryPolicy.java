@@ -0,0 +1,196 @@
+package com.messageflow.client.utils;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.UnknownHostException;
+import java.net.http.HttpConnectTimeoutException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.Logger;
+
+/**
+ * Retries MessageFlow calls that failed for a transient reason, with exponential backoff, full
+ * jitter and a retry budget shared by all sends of the process.
+ *
+ * Only failures where a retry cannot cause a duplicate send are retried for every request:
+ * connections that could not be opened, and 429 or 503 responses. Failures where the request may
+ * already have been processed (502, 504, connection reset, timeouts) are retried only for
+ * idempotent requests, i.e. SMS sends with an externalId.
+ *
+ * The budget is a token bucket: every send adds budget-ratio tokens, up to budget-max-tokens, and
+ * every retry takes one. When the bucket is empty failures are returned as they are, so during an
+ * outage retries add at most budget-ratio to the upstream load.
+ *
+ * The policy works with any HTTP client: {@link Responses} reads its responses, and
+ * {@link #isConnectFailure} can be extended with the client's own exceptions. The settings are
+ * Retry__* in the functions and messageflow.retry.* in the App Service.
+ */
+public class RetryPolicy {
+
+    /**
+     * One upstream call.
+     */
+    public interface Call<R, E extends Exception> {
+        R execute() throws E;
+    }
+
+    /**
+     * How the policy reads the responses of one HTTP client.
+     */
+    public interface Responses<R> {
+
+        int status(R response);
+
+        String header(R response, String name);
+
+        /**
+         * Release a response that is not returned because the call is retried.
+         */
+        default void discard(R response) {
+        }
+    }
+
+    private final Logger logger = Logger.getLogger(RetryPolicy.class.getName());
+    private final ClientMetrics metrics;
+    private final int maxAttempts;
+    private final long initialBackoffMs;
+    private final long maxBackoffMs;
+    private final double budgetRatio;
+    private final double budgetMaxTokens;
+
+    // Guarded by this
+    private double budgetTokens;
+
+    public RetryPolicy(Config.RetryConfig config, ClientMetrics metrics) {
+        this.metrics = metrics;
+        this.maxAttempts = Math.max(1, config.getMaxAttempts());
+        this.initialBackoffMs = config.getInitialBackoffMs();
+        this.maxBackoffMs = Math.max(initialBackoffMs, config.getMaxBackoffMs());
+        this.budgetRatio = config.getBudgetRatio();
+        this.budgetMaxTokens = config.getBudgetMaxTokens();
+        this.budgetTokens = budgetMaxTokens;
+    }
+
+    public boolean isEnabled() {
+        return maxAttempts > 1;
+    }
+
+    /**
+     * Run an upstream call, retrying it while it fails for a retryable reason and attempts and
+     * budget remain. Rejections by {@link UpstreamGuard} are never retried; an interrupt while
+     * waiting to retry is reported as one. The last response or failure is returned or thrown as
+     * it is.
+     */
+    public <R, E extends Exception> R execute(String channel, boolean idempotent, Responses<R> responses,
+                                              Call<R, E> call) throws E {
+        deposit();
+
+        for (int attempt = 1; ; attempt++) {
+            R response = null;
+            Exception error = null;
+            String reason;
+            try {
+                response = call.execute();
+                reason = retryableStatus(responses.status(response), idempotent);
+            } catch (UpstreamGuard.RejectedException e) {
+                throw e;
+            } catch (Exception e) {
+                error = e;
+                reason = retryableError(e, idempotent);
+            }
+
+            if (reason == null || attempt >= maxAttempts) {
+                return result(response, error);
+            }
+            if (!withdraw()) {
+                metrics.increment("messageflow.retry.budget.exhausted", "channel", channel);
+                return result(response, error);
+            }
+
+            long delayMs = backoffMs(attempt, response != null ? responses.header(response, "Retry-After") : null);
+            if (response != null) {
+                responses.discard(response);
+            }
+            logger.warning("Retrying " + channel + " call in " + delayMs + "ms after " + reason +
+                    " (attempt " + (attempt + 1) + " of " + maxAttempts + ")");
+            metrics.increment("messageflow.retry.attempts", "channel", channel, "reason", reason);
+            try {
+                Thread.sleep(delayMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new UpstreamGuard.RejectedException("Interrupted while waiting to retry the MessageFlow call", 1);
+            }
+        }
+    }
+
+    // The call only throws E or unchecked exceptions, so rethrowing the failure as E is safe
+    @SuppressWarnings("unchecked")
+    private static <R, E extends Exception> R result(R response, Exception error) throws E {
+        if (error != null) {
+            throw (E) error;
+        }
+        return response;
+    }
+
+    private static String retryableStatus(int statusCode, boolean idempotent) {
+        if (statusCode == 429 || statusCode == 503) {
+            return String.valueOf(statusCode);
+        }
+        if (idempotent && (statusCode == 502 || statusCode == 504)) {
+            return String.valueOf(statusCode);
+        }
+        return null;
+    }
+
+    private String retryableError(Exception error, boolean idempotent) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            // The request was never sent
+            if (isConnectFailure(cause)) {
+                return "connect_failure";
+            }
+            // The request may have reached MessageFlow
+            if (idempotent && cause instanceof IOException) {
+                return "io_error";
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Whether a failure means the request was never sent, so it is safe to retry any request.
+     */
+    protected boolean isConnectFailure(Throwable cause) {
+        return cause instanceof ConnectException || cause instanceof HttpConnectTimeoutException
+                || cause instanceof UnknownHostException || cause instanceof NoRouteToHostException;
+    }
+
+    /**
+     * Full jitter: a random delay up to min(max-backoff, initial-backoff * 2^(attempt-1)), or the
+     * upstream's Retry-After when it is longer (still capped at max-backoff).
+     */
+    private long backoffMs(int attempt, String retryAfter) {
+        long cap = Math.min(maxBackoffMs, initialBackoffMs << Math.min(attempt - 1, 20));
+        long delay = ThreadLocalRandom.current().nextLong(cap + 1);
+
+        if (retryAfter != null) {
+            try {
+                delay = Math.max(delay, Math.min(maxBackoffMs, Long.parseLong(retryAfter.trim()) * 1000));
+            } catch (NumberFormatException e) {
+                // HTTP-date form, ignored
+            }
+        }
+        return delay;
+    }
+
+    private synchronized void deposit() {
+        budgetTokens = Math.min(budgetMaxTokens, budgetTokens + budgetRatio);
+    }
+
+    private synchronized boolean withdraw() {
+        if (budgetTokens < 1) {
+            return false;
+        }
+        budgetTokens -= 1;
+        return true;
+    }
+}
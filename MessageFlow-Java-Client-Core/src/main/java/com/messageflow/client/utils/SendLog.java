@@ -0,0 +1,117 @@
+package com.messageflow.client.utils;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * Logging for the send path (incoming request, outbound payload, upstream response).
+ *
+ * In verbose mode (the default) every event is logged in full on the calling thread, as before.
+ * In structured mode each event is one key=value line, sampled per event type, with bodies capped
+ * and phone numbers, email addresses and credentials masked; messages are built and written on a
+ * background thread through this class's own logger, since the caller's logger (a Function's
+ * invocation logger) may no longer be valid by then, and dropped when its queue is full. Failed
+ * upstream calls are never sampled or dropped: they are logged on the calling thread.
+ */
+public class SendLog {
+
+    public enum Event { REQUEST, PAYLOAD, RESPONSE, FAILURE }
+
+    private static final Pattern EMAIL = Pattern.compile("[A-Za-z0-9._%+-]+@([A-Za-z0-9-]+\\.)+[A-Za-z]{2,}");
+    private static final Pattern PHONE = Pattern.compile("\\+?\\d[\\d ()-]{5,}(\\d{3})");
+    private static final Pattern CREDENTIAL = Pattern.compile(
+            "(?i)(\"?(?:authorization|application[-_]?key|api[-_]?key|password|secret|token)\"?\\s*[:=]\\s*\"?)[^\"\\s,}]+");
+
+    // Logger for structured events written after the calling invocation may have returned
+    private static final Logger asyncLogger = Logger.getLogger(SendLog.class.getName());
+
+    private final boolean verbose;
+    private final Config.LoggingConfig config;
+    private final ThreadPoolExecutor writer;
+
+    public SendLog(Config.LoggingConfig config) {
+        this.config = config;
+        this.verbose = !"structured".equalsIgnoreCase(config.getMode());
+        this.writer = verbose ? null : new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, config.getAsyncQueueSize())),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "send-log");
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.DiscardPolicy());
+    }
+
+    /**
+     * Log one send-path event. In verbose mode the verbose message is logged (if not null);
+     * in structured mode the structured message of a failure is logged on the calling thread, and
+     * that of any other event built and logged asynchronously when sampled.
+     */
+    public void log(Logger logger, Event event, Supplier<String> verboseMessage, Supplier<String> structuredMessage) {
+        if (verbose) {
+            if (verboseMessage != null && logger.isLoggable(Level.INFO)) {
+                logger.info(verboseMessage.get());
+            }
+        } else if (structuredMessage != null) {
+            if (event == Event.FAILURE) {
+                if (logger.isLoggable(Level.INFO)) {
+                    logger.info(structuredMessage.get());
+                }
+            } else if (asyncLogger.isLoggable(Level.INFO) && sampled(event)) {
+                writer.execute(() -> asyncLogger.info(structuredMessage.get()));
+            }
+        }
+    }
+
+    /**
+     * Cap a body at the configured length and mask phone numbers, email addresses and credentials.
+     */
+    public String body(String text) {
+        if (text == null) {
+            return "null";
+        }
+
+        String capped = text;
+        int maxBodyChars = config.getMaxBodyChars();
+        if (text.length() > maxBodyChars) {
+            int end = maxBodyChars;
+            // Do not leave a partial, unmatchable email or phone number at the cut
+            while (end > 0 && isTokenChar(text.charAt(end - 1))) {
+                end--;
+            }
+            capped = text.substring(0, end) + "...(" + text.length() + " chars)";
+        }
+
+        String redacted = CREDENTIAL.matcher(capped).replaceAll("$1***");
+        redacted = EMAIL.matcher(redacted).replaceAll(match -> "***@" + match.group().substring(match.group().indexOf('@') + 1));
+        return PHONE.matcher(redacted).replaceAll("***$1");
+    }
+
+    private boolean sampled(Event event) {
+        double rate;
+        switch (event) {
+            case REQUEST:
+                rate = config.getSampleRequest();
+                break;
+            case PAYLOAD:
+                rate = config.getSamplePayload();
+                break;
+            case RESPONSE:
+                rate = config.getSampleResponse();
+                break;
+            default:
+                rate = 1.0;
+        }
+        return rate >= 1.0 || ThreadLocalRandom.current().nextDouble() < rate;
+    }
+
+    private static boolean isTokenChar(char c) {
+        return Character.isLetterOrDigit(c) || "@.+-_%".indexOf(c) >= 0;
+    }
+}
@@ -0,0 +1,325 @@
+package com.messageflow.client.utils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+
+/**
+ * Circuit breaker and adaptive concurrency limit around calls to the MessageFlow API, shared by
+ * the SMS and email senders of a process.
+ *
+ * The breaker keeps the outcome of the last window-size calls. Once at least minimum-calls are
+ * recorded and the share of failed calls (connection errors, 429, 5xx) or of slow calls (slower
+ * than slow-call-ms) reaches its threshold, the circuit opens and calls are rejected without
+ * contacting MessageFlow for open-seconds. After that, half-open-calls probe calls are let through:
+ * if all of them succeed the circuit closes, otherwise it opens again.
+ *
+ * Independently, the number of concurrent calls is capped by a gradient limit, within
+ * [limit-min, limit-max]. Every successful call compares its latency with the minimum latency
+ * observed over the last few hundred calls: while calls are about as fast as that minimum (within
+ * limit-rtt-tolerance times) the limit grows by about the square root of itself, and as latency
+ * rises above it the limit shrinks in proportion, so the limit settles where queueing starts
+ * upstream. Every failed call multiplies the limit by limit-backoff-ratio. A call over the limit
+ * waits up to limit-max-wait-ms for a running call to finish, then is rejected instead of
+ * queueing behind a degraded upstream.
+ *
+ * The settings are Upstream__* in the functions and messageflow.upstream.* in the App Service.
+ */
+public class UpstreamGuard {
+
+    public enum State { CLOSED, HALF_OPEN, OPEN }
+
+    private static final byte OK = 0;
+    private static final byte FAILED = 1;
+    private static final byte SLOW = 2;
+
+    // The minimum latency is taken over this many calls, so it follows a lasting change upstream
+    private static final int MIN_RTT_CALLS = 500;
+    // Share of each new gradient estimate in the limit
+    private static final double SMOOTHING = 0.2;
+
+    private final Logger logger = Logger.getLogger(UpstreamGuard.class.getName());
+    private final ClientMetrics metrics;
+    private final boolean enabled;
+    private final int minimumCalls;
+    private final int failureRateThreshold;
+    private final int slowCallRateThreshold;
+    private final long slowCallNanos;
+    private final long openNanos;
+    private final int halfOpenCalls;
+    private final double minLimit;
+    private final double maxLimit;
+    private final double backoffRatio;
+    private final double rttTolerance;
+    private final long maxWaitNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+
+    // Guarded by lock
+    private final byte[] window;
+    private int windowNext;
+    private int windowCount;
+    private int failedCalls;
+    private int slowCalls;
+    private volatile State state = State.CLOSED;
+    private long openedAt;
+    private int probesStarted;
+    private int probesSucceeded;
+    private volatile double limit;
+    private int inFlight;
+    private long minRttNanos = Long.MAX_VALUE;
+    private long windowMinRttNanos = Long.MAX_VALUE;
+    private int rttCalls;
+
+    public UpstreamGuard(Config.UpstreamConfig config, ClientMetrics metrics) {
+        this.metrics = metrics;
+        this.enabled = config.isEnabled();
+        this.window = new byte[Math.max(1, config.getWindowSize())];
+        this.minimumCalls = Math.min(Math.max(1, config.getMinimumCalls()), window.length);
+        this.failureRateThreshold = config.getFailureRateThreshold();
+        this.slowCallRateThreshold = config.getSlowCallRateThreshold();
+        this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(config.getSlowCallMs());
+        this.openNanos = TimeUnit.SECONDS.toNanos(config.getOpenSeconds());
+        this.halfOpenCalls = Math.max(1, config.getHalfOpenCalls());
+        this.minLimit = Math.max(1, config.getLimitMin());
+        this.maxLimit = Math.max(minLimit, config.getLimitMax());
+        this.backoffRatio = config.getLimitBackoffRatio();
+        this.rttTolerance = Math.max(1, config.getLimitRttTolerance());
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, config.getLimitMaxWaitMs()));
+        this.limit = Math.min(maxLimit, Math.max(minLimit, config.getLimitInitial()));
+
+        metrics.gauge("messageflow.upstream.circuit.state", () -> state.ordinal());
+        metrics.gauge("messageflow.upstream.concurrency.limit", () -> (long) limit);
+    }
+
+    /**
+     * Whether an upstream response counts as a failure for the breaker and the concurrency limit.
+     * Other 4xx responses are caused by the request and say nothing about upstream health.
+     */
+    public static boolean isFailure(int statusCode) {
+        return statusCode == 429 || statusCode >= 500;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * Take a permit for one upstream call. Fails fast when the circuit is open, and after waiting
+     * up to limit-max-wait-ms when the concurrency limit is reached. Every permit must be
+     * released. The channel only tags the rejection metric.
+     */
+    public Permit acquire(String channel) {
+        if (!enabled) {
+            return new Permit(false);
+        }
+
+        lock.lock();
+        try {
+            long deadline = 0;
+            boolean waiting = false;
+            while (true) {
+                long now = System.nanoTime();
+                if (state == State.OPEN) {
+                    long remaining = openedAt + openNanos - now;
+                    if (remaining > 0) {
+                        throw reject(channel, "circuit_open", "MessageFlow API is unavailable (circuit breaker open), retry later",
+                                (int) Math.max(1, TimeUnit.NANOSECONDS.toSeconds(remaining + 999_999_999L)));
+                    }
+                    transition(State.HALF_OPEN, "open period elapsed");
+                }
+
+                if (state == State.HALF_OPEN) {
+                    if (probesStarted >= halfOpenCalls) {
+                        throw reject(channel, "circuit_open", "MessageFlow API is unavailable (circuit breaker half-open), retry later", 1);
+                    }
+                    probesStarted++;
+                    inFlight++;
+                    return new Permit(true);
+                }
+
+                if (inFlight < (int) limit) {
+                    inFlight++;
+                    return new Permit(false);
+                }
+
+                if (!waiting) {
+                    deadline = now + maxWaitNanos;
+                    waiting = true;
+                }
+                long remaining = deadline - now;
+                if (remaining <= 0) {
+                    throw reject(channel, "concurrency_limit", "Too many concurrent MessageFlow API calls (limit " + (int) limit + "), retry later", 1);
+                }
+                try {
+                    released.awaitNanos(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RejectedException("Interrupted while waiting for a MessageFlow API call slot", 1);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private RejectedException reject(String channel, String reason, String message, int retryAfterSeconds) {
+        metrics.increment("messageflow.upstream.rejected", "channel", channel, "reason", reason);
+        return new RejectedException(message, retryAfterSeconds);
+    }
+
+    private void release(Permit permit, boolean failed) {
+        long rtt = System.nanoTime() - permit.startNanos;
+        lock.lock();
+        try {
+            int before = (int) limit;
+            inFlight--;
+            adjustLimit(rtt, failed);
+            if ((int) limit > before) {
+                released.signalAll();
+            } else {
+                released.signal();
+            }
+            recordOutcome(permit, failed, rtt >= slowCallNanos);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void adjustLimit(long rtt, boolean failed) {
+        if (failed) {
+            limit = Math.max(minLimit, limit * backoffRatio);
+            return;
+        }
+
+        windowMinRttNanos = Math.min(windowMinRttNanos, rtt);
+        if (++rttCalls >= MIN_RTT_CALLS) {
+            minRttNanos = windowMinRttNanos;
+            windowMinRttNanos = Long.MAX_VALUE;
+            rttCalls = 0;
+        } else {
+            minRttNanos = Math.min(minRttNanos, rtt);
+        }
+
+        double gradient = Math.max(0.5, Math.min(1.0, rttTolerance * minRttNanos / Math.max(1, rtt)));
+        // Without queueing upstream, grow only while the limit is actually used
+        if (gradient == 1.0 && (inFlight + 1) * 2 < limit) {
+            return;
+        }
+        double estimate = limit * gradient + Math.sqrt(limit);
+        limit = Math.min(maxLimit, Math.max(minLimit, limit * (1 - SMOOTHING) + estimate * SMOOTHING));
+    }
+
+    private void recordOutcome(Permit permit, boolean failed, boolean slow) {
+        if (permit.probe) {
+            if (state != State.HALF_OPEN) {
+                return;
+            }
+            if (failed || slow) {
+                open(failed ? "probe call failed" : "probe call was slow");
+            } else if (++probesSucceeded >= halfOpenCalls) {
+                resetWindow();
+                transition(State.CLOSED, probesSucceeded + " probe calls succeeded");
+            }
+            return;
+        }
+
+        // Calls that were already running when the circuit opened are not recorded
+        if (state != State.CLOSED) {
+            return;
+        }
+        record(failed ? FAILED : slow ? SLOW : OK);
+        if (windowCount >= minimumCalls) {
+            int failureRate = failedCalls * 100 / windowCount;
+            int slowCallRate = slowCalls * 100 / windowCount;
+            if (failureRate >= failureRateThreshold || slowCallRate >= slowCallRateThreshold) {
+                open("failureRate=" + failureRate + "%, slowCallRate=" + slowCallRate + "% over " + windowCount + " calls");
+            }
+        }
+    }
+
+    private void record(byte outcome) {
+        if (windowCount == window.length) {
+            byte evicted = window[windowNext];
+            if (evicted == FAILED) {
+                failedCalls--;
+            } else if (evicted == SLOW) {
+                slowCalls--;
+            }
+        } else {
+            windowCount++;
+        }
+        window[windowNext] = outcome;
+        windowNext = (windowNext + 1) % window.length;
+        if (outcome == FAILED) {
+            failedCalls++;
+        } else if (outcome == SLOW) {
+            slowCalls++;
+        }
+    }
+
+    private void resetWindow() {
+        windowNext = 0;
+        windowCount = 0;
+        failedCalls = 0;
+        slowCalls = 0;
+    }
+
+    private void open(String reason) {
+        openedAt = System.nanoTime();
+        transition(State.OPEN, reason);
+        // Calls waiting for the concurrency limit are rejected now rather than at their deadline
+        released.signalAll();
+    }
+
+    private void transition(State next, String reason) {
+        if (next == State.HALF_OPEN) {
+            probesStarted = 0;
+            probesSucceeded = 0;
+        }
+        logger.warning("MessageFlow circuit breaker " + state + " -> " + next + ": " + reason);
+        state = next;
+    }
+
+    /**
+     * A running upstream call. Release it with the call's outcome once the response is received.
+     */
+    public final class Permit {
+
+        private final boolean probe;
+        private final long startNanos = System.nanoTime();
+        private boolean released;
+
+        private Permit(boolean probe) {
+            this.probe = probe;
+        }
+
+        public void release(boolean failed) {
+            if (enabled && !released) {
+                released = true;
+                UpstreamGuard.this.release(this, failed);
+            }
+        }
+    }
+
+    /**
+     * Thrown by {@link #acquire(String)} and {@link RateLimiter} when a call is rejected without
+     * contacting MessageFlow.
+     */
+    public static final class RejectedException extends RuntimeException {
+
+        private final int retryAfterSeconds;
+
+        public RejectedException(String message, int retryAfterSeconds) {
+            // Rejections are expected under load, no stack trace needed
+            super(message, null, false, false);
+            this.retryAfterSeconds = retryAfterSeconds;
+        }
+
+        public int getRetryAfterSeconds() {
+            return retryAfterSeconds;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.messageflow.client.utils;
+
+import com.google.gson.Gson;
+import com.messageflow.client.models.ChunkResult;
+import com.messageflow.client.models.EmailContent;
+import com.messageflow.client.models.EmailRecipient;
+import com.messageflow.client.models.EmailRequest;
+import com.messageflow.client.models.EmailResponse;
+import com.messageflow.client.models.SmsRequest;
+import com.messageflow.client.models.SmsResponse;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * The streaming adapters must produce the same JSON as Gson's reflective adapter, byte for byte,
+ * and read the same models from it.
+ */
+class ModelAdaptersTest {
+
+    private final Gson reflective = new Gson();
+    private final Gson adapters = Json.gson();
+
+    private void assertSameJson(Object model) {
+        assertEquals(reflective.toJson(model), adapters.toJson(model));
+    }
+
+    private <T> void assertSameRead(String json, Class<T> type) {
+        assertEquals(reflective.toJson(reflective.fromJson(json, type)), reflective.toJson(adapters.fromJson(json, type)));
+    }
+
+    private static EmailRecipient recipient(String email, Map<String, Object> vars) {
+        return new EmailRecipient(email, "Name " + email, null, vars);
+    }
+
+    private static SmsRequest smsRequest() {
+        SmsRequest request = new SmsRequest();
+        request.setSender("Sender");
+        request.setMessage("Hello \"quoted\" é中\n");
+        request.setPhoneNumbers(List.of("48500000001", "48500000002"));
+        request.setValidity(3600);
+        request.setScheduleTime(1_700_000_000_000L);
+        request.setType(1);
+        request.setShortLink(true);
+        request.setWebhookUrl("https://example.com/hook?a=1&b=<2>");
+        request.setExternalId("ext-1");
+        return request;
+    }
+
+    private static EmailRequest emailRequest() {
+        Map<String, Object> vars = new LinkedHashMap<>();
+        vars.put("name", "Ann");
+        vars.put("count", 3.5);
+        vars.put("vip", true);
+        vars.put("missing", null);
+        vars.put("items", List.of("a", "b"));
+        vars.put("address", Map.of("city", "Warsaw"));
+
+        List<EmailRecipient> to = new ArrayList<>();
+        to.add(recipient("a@example.com", vars));
+        to.add(recipient("b@example.com", null));
+
+        EmailRequest request = new EmailRequest();
+        request.setSubject("Subject");
+        request.setSmtpAccount("1.account.smtp");
+        request.setFrom(recipient("from@example.com", null));
+        request.setTo(to);
+        request.setContent(new EmailContent("<p>Hi {{name}}</p>", "Hi", null));
+        request.setTags(List.of("tag"));
+        request.setCc(List.of(recipient("cc@example.com", null)));
+        request.setBcc(List.of(recipient("bcc@example.com", null)));
+        request.setReplyTo(recipient("reply@example.com", null));
+        request.setHeaders(Map.of("X-Campaign", "spring"));
+        request.setGlobalVars(new LinkedHashMap<>(Map.of("footer", "Bye")));
+        return request;
+    }
+
+    private static List<ChunkResult> chunks() {
+        return List.of(new ChunkResult(0, 500, true, "ok", "{\"id\":1}"),
+                new ChunkResult(1, 20, false, "failed", null));
+    }
+
+    @Test
+    void writesRequestsLikeReflectiveGson() {
+        assertSameJson(smsRequest());
+        assertSameJson(emailRequest());
+        assertSameJson(new SmsRequest());
+        assertSameJson(new EmailRequest());
+    }
+
+    @Test
+    void writesResponsesLikeReflectiveGson() {
+        SmsResponse sms = new SmsResponse(false, "partly sent", "{\"error\":true}");
+        sms.setChunks(chunks());
+        sms.setRetryAfterSeconds(5);
+        assertSameJson(sms);
+
+        EmailResponse email = new EmailResponse(true, "sent", null);
+        email.setChunks(chunks());
+        assertSameJson(email);
+        assertSameJson(new EmailResponse());
+    }
+
+    @Test
+    void readsWhatItWrites() {
+        assertSameRead(reflective.toJson(smsRequest()), SmsRequest.class);
+        assertSameRead(reflective.toJson(emailRequest()), EmailRequest.class);
+
+        SmsResponse sms = new SmsResponse(false, "partly sent", null);
+        sms.setChunks(chunks());
+        assertSameRead(reflective.toJson(sms), SmsResponse.class);
+    }
+
+    @Test
+    void readsLeniently() {
+        assertSameRead("{\"sender\":\"S\",\"validity\":\"60\",\"scheduleTime\":\"1700000000000\","
+                + "\"shortLink\":\"true\",\"message\":true,\"unknown\":{\"a\":[1,2]},\"externalId\":null}", SmsRequest.class);
+        assertSameRead("{\"subject\":\"S\",\"to\":[{\"email\":\"a@example.com\",\"vars\":{\"n\":1,\"l\":[1,\"x\"],\"m\":null}}],"
+                + "\"globalVars\":{\"g\":{\"k\":false}},\"extra\":1}", EmailRequest.class);
+        assertSameRead("{\"success\":\"true\",\"chunks\":[{\"index\":\"1\",\"recipients\":2,\"response_content\":\"x\"}]}",
+                EmailResponse.class);
+    }
+}
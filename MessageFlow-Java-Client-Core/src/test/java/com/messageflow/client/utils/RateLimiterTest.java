@@ -0,0 +1,68 @@
+package com.messageflow.client.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RateLimiterTest {
+
+    private final RecordingMetrics metrics = new RecordingMetrics();
+
+    private RateLimiter limiter(double applicationRate, double senderRate, long maxWaitMs) {
+        Config.RateLimitConfig config = new Config.RateLimitConfig();
+        config.setApplicationRate(applicationRate);
+        config.setApplicationBurst(1);
+        config.setSenderRate(senderRate);
+        config.setSenderBurst(1);
+        config.setMaxWaitMs(maxWaitMs);
+        return new RateLimiter(config, metrics);
+    }
+
+    @Test
+    void senderOnlyLimitRejectsWithoutApplicationBucket() {
+        RateLimiter limiter = limiter(0, 0.1, 0);
+
+        limiter.acquire("sms", "key", "sender");
+        UpstreamGuard.RejectedException e = assertThrows(UpstreamGuard.RejectedException.class,
+                () -> limiter.acquire("sms", "key", "sender"));
+
+        assertTrue(e.getRetryAfterSeconds() >= 1);
+        assertEquals(1, metrics.count("messageflow.upstream.rejected", "channel", "sms", "reason", "rate_limit"));
+    }
+
+    @Test
+    void senderLimitIsPerSenderAndChannel() {
+        RateLimiter limiter = limiter(0, 0.1, 0);
+
+        limiter.acquire("sms", "key", "a");
+        assertDoesNotThrow(() -> limiter.acquire("sms", "key", "b"));
+        assertDoesNotThrow(() -> limiter.acquire("email", "key", "a"));
+        assertDoesNotThrow(() -> limiter.acquire("sms", "key", null));
+    }
+
+    @Test
+    void senderRejectionReturnsApplicationToken() {
+        RateLimiter limiter = limiter(0.1, 0.1, 0);
+
+        limiter.acquire("sms", "key", "a");
+        assertThrows(UpstreamGuard.RejectedException.class, () -> limiter.acquire("sms", "key", "a"));
+        // Only the application token of the first call is taken
+        assertThrows(UpstreamGuard.RejectedException.class, () -> limiter.acquire("sms", "key", "b"));
+        assertEquals(2, metrics.count("messageflow.upstream.rejected", "channel", "sms", "reason", "rate_limit"));
+    }
+
+    @Test
+    void waitsForTokenWithinMaxWait() {
+        RateLimiter limiter = limiter(0, 20, 1000);
+
+        limiter.acquire("sms", "key", "a");
+        long start = System.nanoTime();
+        limiter.acquire("sms", "key", "a");
+        long waitedMs = (System.nanoTime() - start) / 1_000_000;
+
+        assertTrue(waitedMs >= 30, "waited " + waitedMs + " ms");
+    }
+}
@@ -0,0 +1,40 @@
+package com.messageflow.client.utils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.LongSupplier;
+
+/**
+ * ClientMetrics that keeps the name and tags of every counter increment, and the registered
+ * gauges by name, for assertions.
+ */
+class RecordingMetrics implements ClientMetrics {
+
+    final List<String> increments = new CopyOnWriteArrayList<>();
+    final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+    @Override
+    public void increment(String name, String... tags) {
+        increments.add(name + String.join(",", tags));
+    }
+
+    @Override
+    public void record(String name, long nanos, String... tags) {
+    }
+
+    @Override
+    public void gauge(String name, LongSupplier value, String... tags) {
+        gauges.put(name, value);
+    }
+
+    long count(String name, String... tags) {
+        String key = name + String.join(",", tags);
+        return increments.stream().filter(key::equals).count();
+    }
+
+    long gauge(String name) {
+        return gauges.get(name).getAsLong();
+    }
+}
@@ -0,0 +1,150 @@
+package com.messageflow.client.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RetryPolicyTest {
+
+    // Responses are status codes, with a Retry-After of 1 second on 429
+    private static final RetryPolicy.Responses<Integer> STATUS = new RetryPolicy.Responses<>() {
+        @Override
+        public int status(Integer response) {
+            return response;
+        }
+
+        @Override
+        public String header(Integer response, String name) {
+            return response == 429 && "Retry-After".equals(name) ? "1" : null;
+        }
+    };
+
+    private final RecordingMetrics metrics = new RecordingMetrics();
+    private final AtomicInteger calls = new AtomicInteger();
+
+    private RetryPolicy policy(int maxAttempts, long maxBackoffMs, double budgetMaxTokens) {
+        Config.RetryConfig config = new Config.RetryConfig();
+        config.setMaxAttempts(maxAttempts);
+        config.setInitialBackoffMs(1);
+        config.setMaxBackoffMs(maxBackoffMs);
+        config.setBudgetRatio(0);
+        config.setBudgetMaxTokens(budgetMaxTokens);
+        return new RetryPolicy(config, metrics);
+    }
+
+    private RetryPolicy policy() {
+        return policy(3, 1, 10);
+    }
+
+    private RetryPolicy.Call<Integer, IOException> responds(int... statuses) {
+        return () -> statuses[Math.min(calls.getAndIncrement(), statuses.length - 1)];
+    }
+
+    private RetryPolicy.Call<Integer, IOException> throwsThenResponds(IOException error, int status) {
+        return () -> {
+            if (calls.getAndIncrement() == 0) {
+                throw error;
+            }
+            return status;
+        };
+    }
+
+    @Test
+    void retriesUnavailableUntilSuccess() throws IOException {
+        assertEquals(200, policy().execute("sms", false, STATUS, responds(503, 503, 200)));
+        assertEquals(3, calls.get());
+        assertEquals(2, metrics.count("messageflow.retry.attempts", "channel", "sms", "reason", "503"));
+    }
+
+    @Test
+    void returnsLastResponseAfterMaxAttempts() throws IOException {
+        assertEquals(503, policy().execute("sms", false, STATUS, responds(503)));
+        assertEquals(3, calls.get());
+    }
+
+    @Test
+    void retriesAmbiguousFailuresOnlyWhenIdempotent() throws IOException {
+        assertEquals(502, policy().execute("email", false, STATUS, responds(502, 200)));
+        assertEquals(1, calls.get());
+
+        calls.set(0);
+        assertEquals(200, policy().execute("sms", true, STATUS, responds(504, 200)));
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void doesNotRetryClientErrors() throws IOException {
+        assertEquals(400, policy().execute("sms", true, STATUS, responds(400, 200)));
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void retriesConnectFailures() throws IOException {
+        IOException refused = new IOException("wrapped", new ConnectException("refused"));
+        assertEquals(200, policy().execute("email", false, STATUS, throwsThenResponds(refused, 200)));
+        assertEquals(1, metrics.count("messageflow.retry.attempts", "channel", "email", "reason", "connect_failure"));
+    }
+
+    @Test
+    void retriesIoErrorsOnlyWhenIdempotent() throws IOException {
+        IOException reset = new IOException("connection reset");
+        IOException thrown = assertThrows(IOException.class,
+                () -> policy().execute("email", false, STATUS, throwsThenResponds(reset, 200)));
+        assertEquals(reset, thrown);
+
+        calls.set(0);
+        assertEquals(200, policy().execute("sms", true, STATUS, throwsThenResponds(reset, 200)));
+    }
+
+    @Test
+    void neverRetriesRejections() {
+        RetryPolicy.Call<Integer, IOException> rejected = () -> {
+            calls.incrementAndGet();
+            throw new UpstreamGuard.RejectedException("open", 5);
+        };
+        assertThrows(UpstreamGuard.RejectedException.class, () -> policy().execute("sms", true, STATUS, rejected));
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void stopsRetryingWhenBudgetIsSpent() throws IOException {
+        RetryPolicy policy = policy(5, 1, 1);
+
+        assertEquals(503, policy.execute("sms", false, STATUS, responds(503)));
+        assertEquals(2, calls.get());
+        assertEquals(1, metrics.count("messageflow.retry.budget.exhausted", "channel", "sms"));
+
+        calls.set(0);
+        assertEquals(503, policy.execute("sms", false, STATUS, responds(503)));
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void waitsForRetryAfterUpToMaxBackoff() throws IOException {
+        RetryPolicy policy = policy(2, 100, 10);
+
+        long start = System.nanoTime();
+        assertEquals(200, policy.execute("sms", false, STATUS, responds(429, 200)));
+        long waitedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // Retry-After: 1 is capped at max-backoff-ms
+        assertTrue(waitedMs >= 100 && waitedMs < 1000, "waited " + waitedMs + " ms");
+    }
+
+    @Test
+    void singleAttemptDisablesRetries() throws IOException {
+        RetryPolicy policy = policy(1, 1, 10);
+
+        assertFalse(policy.isEnabled());
+        assertEquals(503, policy.execute("sms", true, STATUS, responds(503, 200)));
+        assertEquals(1, calls.get());
+    }
+}
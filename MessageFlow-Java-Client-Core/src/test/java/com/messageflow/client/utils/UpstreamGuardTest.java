@@ -0,0 +1,186 @@
+package com.messageflow.client.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UpstreamGuardTest {
+
+    private static final String LIMIT = "messageflow.upstream.concurrency.limit";
+
+    private final RecordingMetrics metrics = new RecordingMetrics();
+
+    private static Config.UpstreamConfig config() {
+        Config.UpstreamConfig config = new Config.UpstreamConfig();
+        config.setWindowSize(10);
+        config.setMinimumCalls(4);
+        config.setFailureRateThreshold(50);
+        config.setSlowCallRateThreshold(100);
+        config.setOpenSeconds(30);
+        config.setHalfOpenCalls(2);
+        return config;
+    }
+
+    private static void fail(UpstreamGuard guard, int calls) {
+        for (int i = 0; i < calls; i++) {
+            guard.acquire("sms").release(true);
+        }
+    }
+
+    @Test
+    void opensOnceFailureRateReachesThreshold() {
+        UpstreamGuard guard = new UpstreamGuard(config(), metrics);
+
+        guard.acquire("sms").release(false);
+        guard.acquire("sms").release(false);
+        fail(guard, 1);
+        assertEquals(UpstreamGuard.State.CLOSED, guard.getState());
+        fail(guard, 1);
+        assertEquals(UpstreamGuard.State.OPEN, guard.getState());
+
+        UpstreamGuard.RejectedException e = assertThrows(UpstreamGuard.RejectedException.class,
+                () -> guard.acquire("email"));
+        assertTrue(e.getRetryAfterSeconds() > 1 && e.getRetryAfterSeconds() <= 30);
+        assertEquals(1, metrics.count("messageflow.upstream.rejected", "channel", "email", "reason", "circuit_open"));
+    }
+
+    @Test
+    void closesAfterHalfOpenProbesSucceed() {
+        Config.UpstreamConfig config = config();
+        config.setOpenSeconds(0);
+        UpstreamGuard guard = new UpstreamGuard(config, metrics);
+        fail(guard, 4);
+
+        UpstreamGuard.Permit first = guard.acquire("sms");
+        UpstreamGuard.Permit second = guard.acquire("sms");
+        assertEquals(UpstreamGuard.State.HALF_OPEN, guard.getState());
+        // Only half-open-calls probes at a time
+        assertThrows(UpstreamGuard.RejectedException.class, () -> guard.acquire("sms"));
+
+        first.release(false);
+        assertEquals(UpstreamGuard.State.HALF_OPEN, guard.getState());
+        second.release(false);
+        assertEquals(UpstreamGuard.State.CLOSED, guard.getState());
+        assertDoesNotThrow(() -> guard.acquire("sms").release(false));
+    }
+
+    @Test
+    void reopensWhenProbeFails() {
+        Config.UpstreamConfig config = config();
+        config.setOpenSeconds(0);
+        UpstreamGuard guard = new UpstreamGuard(config, metrics);
+        fail(guard, 4);
+
+        guard.acquire("sms").release(true);
+        assertEquals(UpstreamGuard.State.OPEN, guard.getState());
+    }
+
+    @Test
+    void callsStartedBeforeOpeningAreNotRecorded() {
+        Config.UpstreamConfig config = config();
+        config.setOpenSeconds(0);
+        UpstreamGuard guard = new UpstreamGuard(config, metrics);
+        UpstreamGuard.Permit running = guard.acquire("sms");
+        fail(guard, 4);
+
+        UpstreamGuard.Permit probe = guard.acquire("sms");
+        running.release(true);
+        assertEquals(UpstreamGuard.State.HALF_OPEN, guard.getState());
+        probe.release(false);
+    }
+
+    @Test
+    void rejectsAtConcurrencyLimitAfterMaxWait() {
+        Config.UpstreamConfig config = config();
+        config.setLimitInitial(2);
+        config.setLimitMin(2);
+        config.setLimitMax(2);
+        config.setLimitMaxWaitMs(50);
+        UpstreamGuard guard = new UpstreamGuard(config, metrics);
+        guard.acquire("sms");
+        guard.acquire("sms");
+
+        long start = System.nanoTime();
+        assertThrows(UpstreamGuard.RejectedException.class, () -> guard.acquire("sms"));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+        assertEquals(1, metrics.count("messageflow.upstream.rejected", "channel", "sms", "reason", "concurrency_limit"));
+    }
+
+    @Test
+    void waitingCallTakesReleasedPermit() throws Exception {
+        Config.UpstreamConfig config = config();
+        config.setLimitInitial(1);
+        config.setLimitMin(1);
+        config.setLimitMax(1);
+        config.setLimitMaxWaitMs(10_000);
+        UpstreamGuard guard = new UpstreamGuard(config, metrics);
+        UpstreamGuard.Permit running = guard.acquire("sms");
+
+        CompletableFuture<UpstreamGuard.Permit> waiting = CompletableFuture.supplyAsync(() -> guard.acquire("sms"));
+        Thread.sleep(50);
+        assertFalse(waiting.isDone());
+
+        running.release(false);
+        waiting.get(5, TimeUnit.SECONDS).release(false);
+    }
+
+    @Test
+    void limitBacksOffOnFailureAndGrowsWhileUsed() {
+        Config.UpstreamConfig config = config();
+        config.setMinimumCalls(10);
+        config.setLimitInitial(10);
+        config.setLimitMin(1);
+        config.setLimitMax(100);
+        config.setLimitBackoffRatio(0.5);
+        // Latency jitter of calls that do nothing must not count as queueing
+        config.setLimitRttTolerance(1_000_000);
+        UpstreamGuard guard = new UpstreamGuard(config, metrics);
+
+        fail(guard, 1);
+        assertEquals(5, metrics.gauge(LIMIT));
+
+        UpstreamGuard.Permit[] permits = new UpstreamGuard.Permit[5];
+        for (int i = 0; i < permits.length; i++) {
+            permits[i] = guard.acquire("sms");
+        }
+        for (UpstreamGuard.Permit permit : permits) {
+            permit.release(false);
+        }
+        assertTrue(metrics.gauge(LIMIT) > 5, "limit " + metrics.gauge(LIMIT));
+    }
+
+    @Test
+    void unusedLimitDoesNotGrow() {
+        Config.UpstreamConfig config = config();
+        config.setLimitInitial(10);
+        config.setLimitRttTolerance(1_000_000);
+        UpstreamGuard guard = new UpstreamGuard(config, metrics);
+
+        for (int i = 0; i < 100; i++) {
+            guard.acquire("sms").release(false);
+        }
+        assertEquals(10, metrics.gauge(LIMIT));
+    }
+
+    @Test
+    void disabledGuardNeverRejects() {
+        Config.UpstreamConfig config = config();
+        config.setEnabled(false);
+        config.setLimitInitial(1);
+        config.setLimitMin(1);
+        config.setLimitMax(1);
+        UpstreamGuard guard = new UpstreamGuard(config, metrics);
+
+        fail(guard, 10);
+        guard.acquire("sms");
+        assertDoesNotThrow(() -> guard.acquire("sms"));
+        assertEquals(UpstreamGuard.State.CLOSED, guard.getState());
+    }
+}
@@ -2,8 +2,6 @@ package com.messageflow.api;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
-import org.springframework.context.annotation.Bean;
-import org.springframework.web.client.RestTemplate;
 
 @SpringBootApplication
 public class MessageFlowApplication {
@@ -11,9 +9,4 @@ public class MessageFlowApplication {
     public static void main(String[] args) {
         SpringApplication.run(MessageFlowApplication.class, args);
     }
-
-    @Bean
-    public RestTemplate restTemplate() {
-        return new RestTemplate();
-    }
 }
@@ -0,0 +1,139 @@
+package com.messageflow.api.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.httpcomponents.hc5.PoolingHttpClientConnectionManagerMetricsBinder;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.web.client.DefaultResponseErrorHandler;
+import org.springframework.web.client.RestTemplate;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+
+/**
+ * Outbound HTTP client used for all calls to the MessageFlow API.
+ *
+ * Two protocols are supported via messageflow.http.protocol:
+ * - http1 (default): Apache HttpClient with a keep-alive connection pool
+ * - h2: JDK HttpClient negotiating HTTP/2, multiplexing requests over one connection
+ *
+ * With spring.threads.virtual.enabled=true, requests are handled on virtual threads and the
+ * blocking upstream call no longer holds a platform thread; the h2 client also runs its
+ * response handling on virtual threads.
+ */
+@Configuration
+public class HttpClientConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(HttpClientConfig.class);
+
+    private final Environment environment;
+
+    @Value("${messageflow.http.protocol:http1}")
+    private String protocol;
+
+    @Value("${messageflow.http.max-connections-total:200}")
+    private int maxConnectionsTotal;
+
+    @Value("${messageflow.http.max-connections-per-route:200}")
+    private int maxConnectionsPerRoute;
+
+    @Value("${messageflow.http.connect-timeout-ms:5000}")
+    private long connectTimeoutMs;
+
+    @Value("${messageflow.http.read-timeout-ms:30000}")
+    private long readTimeoutMs;
+
+    @Value("${messageflow.http.idle-eviction-seconds:30}")
+    private long idleEvictionSeconds;
+
+    @Value("${messageflow.http.connection-ttl-seconds:300}")
+    private long connectionTtlSeconds;
+
+    public HttpClientConfig(Environment environment) {
+        this.environment = environment;
+    }
+
+    @Bean
+    public RestTemplate restTemplate(ClientHttpRequestFactory messageFlowRequestFactory) {
+        RestTemplate restTemplate = new RestTemplate(messageFlowRequestFactory);
+
+        // Upstream 4xx/5xx are returned as regular responses and mapped by the services,
+        // instead of being thrown as HttpClientErrorException/HttpServerErrorException
+        restTemplate.setErrorHandler(new DefaultResponseErrorHandler() {
+            @Override
+            public boolean hasError(ClientHttpResponse response) {
+                return false;
+            }
+        });
+        return restTemplate;
+    }
+
+    @Bean
+    public ClientHttpRequestFactory messageFlowRequestFactory(MeterRegistry meterRegistry) {
+        boolean virtualThreads = Threading.VIRTUAL.isActive(environment);
+
+        if ("h2".equalsIgnoreCase(protocol)) {
+            logger.info("Using HTTP/2 client: connectTimeout={}ms, readTimeout={}ms, virtualThreads={}",
+                    connectTimeoutMs, readTimeoutMs, virtualThreads);
+
+            HttpClient.Builder builder = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_2)
+                    .connectTimeout(Duration.ofMillis(connectTimeoutMs));
+            if (virtualThreads) {
+                builder.executor(Executors.newVirtualThreadPerTaskExecutor());
+            }
+            HttpClient httpClient = builder.build();
+
+            JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(httpClient);
+            requestFactory.setReadTimeout(Duration.ofMillis(readTimeoutMs));
+            return requestFactory;
+        }
+
+        // With virtual threads the pool size, not the Tomcat thread count, caps concurrent upstream calls
+        logger.info("Using pooled HTTP/1.1 client: maxTotal={}, maxPerRoute={}, connectTimeout={}ms, readTimeout={}ms, virtualThreads={}",
+                maxConnectionsTotal, maxConnectionsPerRoute, connectTimeoutMs, readTimeoutMs, virtualThreads);
+
+        PoolingHttpClientConnectionManager connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(maxConnectionsTotal)
+                .setMaxConnPerRoute(maxConnectionsPerRoute)
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.ofMilliseconds(connectTimeoutMs))
+                        .setSocketTimeout(Timeout.ofMilliseconds(readTimeoutMs))
+                        .setTimeToLive(TimeValue.ofSeconds(connectionTtlSeconds))
+                        .setValidateAfterInactivity(TimeValue.ofSeconds(2))
+                        .build())
+                .build();
+        // httpcomponents.httpclient.pool.* (leased, available, pending, max) tagged httpclient=messageflow
+        new PoolingHttpClientConnectionManagerMetricsBinder(connectionManager, "messageflow").bindTo(meterRegistry);
+
+        CloseableHttpClient httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectionRequestTimeout(Timeout.ofMilliseconds(connectTimeoutMs))
+                        .setResponseTimeout(Timeout.ofMilliseconds(readTimeoutMs))
+                        .build())
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.ofSeconds(idleEvictionSeconds))
+                .build();
+
+        return new HttpComponentsClientHttpRequestFactory(httpClient);
+    }
+}
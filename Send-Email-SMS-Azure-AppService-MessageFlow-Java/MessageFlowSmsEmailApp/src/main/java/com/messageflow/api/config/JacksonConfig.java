@@ -0,0 +1,69 @@
+package com.messageflow.api.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import com.messageflow.api.models.EmailRequest;
+import com.messageflow.api.models.EmailResponse;
+import com.messageflow.api.models.JobStatus;
+import com.messageflow.api.models.LineResult;
+import com.messageflow.api.models.MessageTemplate;
+import com.messageflow.api.models.SmsRequest;
+import com.messageflow.api.models.SmsResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.List;
+
+/**
+ * JSON binding of the request and response models, on the ObjectMapper Spring Boot configures and
+ * shares between the HTTP message converters and the services.
+ *
+ * With messageflow.json.blackbird=true, the Blackbird module replaces Jackson's reflective calls
+ * to the models' constructors, getters and setters with lambdas generated when each
+ * (de)serializer is built. With messageflow.json.prefetch=true, the serializers and deserializers
+ * of the models are built at startup, Blackbird's lambdas included, instead of by the first
+ * request of each kind.
+ */
+@Configuration
+public class JacksonConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(JacksonConfig.class);
+
+    // Models bound at the top level; the models nested in them are resolved along with them
+    private static final List<Class<?>> MODELS = List.of(SmsRequest.class, EmailRequest.class,
+            MessageTemplate.class, SmsResponse.class, EmailResponse.class, JobStatus.class, LineResult.class);
+
+    // Registered into the shared ObjectMapper by Spring Boot's Jackson auto-configuration
+    @Bean
+    @ConditionalOnProperty(name = "messageflow.json.blackbird", havingValue = "true", matchIfMissing = true)
+    public BlackbirdModule blackbirdModule() {
+        return new BlackbirdModule();
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "messageflow.json.prefetch", havingValue = "true", matchIfMissing = true)
+    public SmartInitializingSingleton jsonPrefetch(ObjectMapper objectMapper) {
+        return () -> {
+            long start = System.nanoTime();
+            prefetch(objectMapper);
+            logger.info("Prefetched JSON bindings of {} models in {} ms (blackbird={})", MODELS.size(),
+                    (System.nanoTime() - start) / 1_000_000,
+                    objectMapper.getRegisteredModuleIds().contains(BlackbirdModule.class.getName()));
+        };
+    }
+
+    /**
+     * Build the serializers and deserializers of the models into the caches of a mapper. A copy
+     * of the shared mapper starts with empty caches and needs its own call.
+     */
+    public static void prefetch(ObjectMapper objectMapper) {
+        for (Class<?> model : MODELS) {
+            objectMapper.readerFor(model);
+            objectMapper.writerFor(model);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.messageflow.api.config;
+
+import jakarta.servlet.MultipartConfigElement;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Multipart uploads for POST /email with files as attachments.
+ *
+ * Every part is written to a temporary file as it arrives (no in-memory threshold), so uploaded
+ * files never sit in the heap; they are read back from disk while being sent. The upload limits
+ * follow messageflow.attachments.max-request-bytes, with room for the JSON request part, and
+ * replace the spring.servlet.multipart.* size settings.
+ */
+@Configuration
+public class MultipartConfig {
+
+    // Allowance for the "request" part and the multipart framing
+    private static final long REQUEST_PART_BYTES = 1024 * 1024;
+
+    @Bean
+    public MultipartConfigElement multipartConfigElement(
+            @Value("${messageflow.attachments.max-request-bytes:26214400}") long maxRequestBytes,
+            @Value("${messageflow.attachments.upload-directory:}") String uploadDirectory) {
+        return new MultipartConfigElement(uploadDirectory, maxRequestBytes, maxRequestBytes + REQUEST_PART_BYTES, 0);
+    }
+}
@@ -1,22 +1,40 @@
 package com.messageflow.api.controllers;
 
 import com.messageflow.api.models.*;
+import com.messageflow.api.services.AttachmentGuard;
+import com.messageflow.api.services.AttachmentStore;
+import com.messageflow.api.services.BatchService;
 import com.messageflow.api.services.EmailService;
+import com.messageflow.api.services.IdempotencyCache;
+import com.messageflow.api.services.JobService;
+import com.messageflow.api.services.PayloadWriter;
+import com.messageflow.api.services.RequestValidator;
+import com.messageflow.api.services.SendLogger;
+import com.messageflow.api.services.SendScheduler;
 import com.messageflow.api.services.SmsService;
+import com.messageflow.api.services.TemplateStore;
+import com.messageflow.api.services.UpstreamGuard;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
 
 @RestController
 public class MessageFlowController {
 
     private static final Logger logger = LoggerFactory.getLogger(MessageFlowController.class);
+    private static final String IDEMPOTENCY_KEY = "Idempotency-Key";
     private static final String HEALTH_MESSAGE = "MessageFlow SMS/Email API app is running. Use POST /sms or POST /email endpoints.";
 
     @Autowired
@@ -25,6 +43,36 @@ public class MessageFlowController {
     @Autowired
     private EmailService emailService;
 
+    @Autowired
+    private JobService jobService;
+
+    @Autowired
+    private RequestValidator requestValidator;
+
+    @Autowired
+    private BatchService batchService;
+
+    @Autowired
+    private SendLogger sendLogger;
+
+    @Autowired
+    private IdempotencyCache idempotencyCache;
+
+    @Autowired
+    private SendScheduler sendScheduler;
+
+    @Autowired
+    private TemplateStore templateStore;
+
+    @Autowired
+    private AttachmentGuard attachmentGuard;
+
+    @Autowired
+    private AttachmentStore attachmentStore;
+
+    @Value("${messageflow.batch.max-size:1000}")
+    private int maxBatchSize;
+
     @GetMapping("/")
     public String healthCheck() {
         return HEALTH_MESSAGE;
@@ -36,36 +84,31 @@ public class MessageFlowController {
     }
 
     @PostMapping("/sms")
-    public ResponseEntity<SmsResponse> sendSms(@RequestBody SmsRequest request) {
+    public ResponseEntity<SmsResponse> sendSms(@RequestBody SmsRequest request,
+                                               @RequestHeader(value = IDEMPOTENCY_KEY, required = false) String idempotencyKey) {
         try {
             logger.info("Received SMS request");
 
             // Validate required fields
-            if (request.getSender() == null || request.getSender().isEmpty()) {
-                return ResponseEntity.badRequest()
-                        .body(new SmsResponse(false, "Missing required field: sender"));
-            }
-
-            if (request.getMessage() == null || request.getMessage().isEmpty()) {
-                return ResponseEntity.badRequest()
-                        .body(new SmsResponse(false, "Missing required field: message"));
+            String validationError = requestValidator.validateSms(request);
+            if (validationError != null) {
+                return ResponseEntity.badRequest().body(new SmsResponse(false, validationError));
             }
 
-            if (request.getPhoneNumbers() == null || request.getPhoneNumbers().isEmpty()) {
-                return ResponseEntity.badRequest()
-                        .body(new SmsResponse(false,
-                                "Missing required field: phoneNumbers (must be a non-empty array)"));
-            }
+            sendLogger.smsRequest(logger, request);
 
-            logger.info("Phone numbers received: {}", request.getPhoneNumbers());
-            logger.info("Created SMS request: sender={}, message={}, phoneNumbers={}",
-                    request.getSender(), request.getMessage(), request.getPhoneNumbers());
+            // Send SMS, unless the same SMS was already sent or is being sent
+            String key = idempotencyCache.key("sms", idempotencyKey, request.getExternalId(), request);
+            SmsResponse response = idempotencyCache.execute(key, () -> smsService.sendSms(request),
+                    sent -> delivered(sent.isSuccess(), sent.getChunks()));
 
-            // Send SMS
-            SmsResponse response = smsService.sendSms(request);
+            if (response.getRetryAfterSeconds() != null) {
+                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                        .header(HttpHeaders.RETRY_AFTER, String.valueOf(response.getRetryAfterSeconds()))
+                        .body(response);
+            }
 
-            HttpStatus status = response.isSuccess() ? HttpStatus.OK : HttpStatus.INTERNAL_SERVER_ERROR;
-            return ResponseEntity.status(status).body(response);
+            return ResponseEntity.status(status(response.isSuccess(), response.getChunks())).body(response);
 
         } catch (Exception e) {
             logger.error("Error processing SMS request: {}", e.getMessage());
@@ -75,49 +118,311 @@ public class MessageFlowController {
     }
 
     @PostMapping("/email")
-    public ResponseEntity<EmailResponse> sendEmail(@RequestBody EmailRequest request) {
+    public ResponseEntity<EmailResponse> sendEmail(@RequestBody EmailRequest request,
+                                                   @RequestHeader(value = IDEMPOTENCY_KEY, required = false) String idempotencyKey) {
         try {
             logger.info("Received Email request");
 
             // Validate required fields
-            if (request.getSubject() == null || request.getSubject().isEmpty()) {
-                return ResponseEntity.badRequest()
-                        .body(new EmailResponse(false, "Missing required field: subject"));
+            String validationError = requestValidator.validateEmail(request);
+            if (validationError != null) {
+                return ResponseEntity.badRequest().body(new EmailResponse(false, validationError));
             }
 
-            if (request.getSmtpAccount() == null || request.getSmtpAccount().isEmpty()) {
-                return ResponseEntity.badRequest()
-                        .body(new EmailResponse(false, "Missing required field: smtpAccount"));
-            }
+            sendLogger.emailRequest(logger, request);
 
-            if (request.getFrom() == null || request.getFrom().getEmail() == null) {
-                return ResponseEntity.badRequest()
-                        .body(new EmailResponse(false, "Missing required field: from (with email)"));
-            }
+            // Send email, unless the same email was already sent or is being sent
+            String key = idempotencyCache.key("email", idempotencyKey, null, request);
+            return emailResponse(idempotencyCache.execute(key, () -> emailService.sendEmail(request), MessageFlowController::delivered));
 
-            if (request.getTo() == null || request.getTo().isEmpty()) {
-                return ResponseEntity.badRequest()
-                        .body(new EmailResponse(false, "Missing required field: to (must be a non-empty array)"));
-            }
+        } catch (AttachmentGuard.TooLargeException e) {
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(new EmailResponse(false, e.getMessage()));
+        } catch (UpstreamGuard.RejectedException e) {
+            return emailResponse(rejected(e));
+        } catch (Exception e) {
+            logger.error("Error processing email request: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(new EmailResponse(false, "An error occurred: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * An email with its attachments uploaded as files: a "request" part with the usual JSON
+     * (without attachments, other than stored ones) and one "attachments" part per file. The files are streamed into the
+     * MessageFlow request instead of being decoded and re-encoded in memory.
+     */
+    @PostMapping(value = "/email", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<EmailResponse> sendEmailWithFiles(@RequestPart("request") EmailRequest request,
+                                                            @RequestPart(value = "attachments", required = false) List<MultipartFile> files,
+                                                            @RequestHeader(value = IDEMPOTENCY_KEY, required = false) String idempotencyKey) {
+        try {
+            logger.info("Received Email request with {} files", files == null ? 0 : files.size());
 
-            if (request.getContent() == null) {
+            String validationError = requestValidator.validateEmail(request);
+            if (validationError != null) {
+                return ResponseEntity.badRequest().body(new EmailResponse(false, validationError));
+            }
+            // Stored attachments may be referenced alongside the files, but not sent inline
+            if (AttachmentGuard.decodedBytes(request.getAttachments()) > 0) {
                 return ResponseEntity.badRequest()
-                        .body(new EmailResponse(false, "Missing required field: content"));
+                        .body(new EmailResponse(false, "Send attachments either in the request or as files, not both"));
             }
 
-            logger.info("Created Email request: subject={}, from={}, to={}",
-                    request.getSubject(), request.getFrom().getEmail(), request.getTo().size());
+            List<PayloadWriter.Attachment> attachments = new ArrayList<>();
+            if (files != null) {
+                for (MultipartFile file : files) {
+                    String contentType = file.getContentType() != null ? file.getContentType() : MediaType.APPLICATION_OCTET_STREAM_VALUE;
+                    attachments.add(new PayloadWriter.Attachment(file.getOriginalFilename(), contentType, file.getSize(), file::getInputStream));
+                }
+            }
 
-            // Send email
-            EmailResponse response = emailService.sendEmail(request);
+            sendLogger.emailRequest(logger, request);
 
-            HttpStatus status = response.isSuccess() ? HttpStatus.OK : HttpStatus.INTERNAL_SERVER_ERROR;
-            return ResponseEntity.status(status).body(response);
+            // Only an explicit Idempotency-Key deduplicates: a content hash would not cover the files
+            String key = idempotencyKey != null ? idempotencyCache.key("email", idempotencyKey, null, null) : null;
+            return emailResponse(idempotencyCache.execute(key, () -> emailService.sendEmail(request, attachments), MessageFlowController::delivered));
 
+        } catch (AttachmentGuard.TooLargeException e) {
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(new EmailResponse(false, e.getMessage()));
+        } catch (UpstreamGuard.RejectedException e) {
+            return emailResponse(rejected(e));
         } catch (Exception e) {
             logger.error("Error processing email request: {}", e.getMessage());
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                     .body(new EmailResponse(false, "An error occurred: " + e.getMessage()));
         }
     }
+
+    private static EmailResponse rejected(UpstreamGuard.RejectedException e) {
+        EmailResponse response = new EmailResponse(false, e.getMessage());
+        response.setRetryAfterSeconds(e.getRetryAfterSeconds());
+        return response;
+    }
+
+    private static ResponseEntity<EmailResponse> emailResponse(EmailResponse response) {
+        if (response.getRetryAfterSeconds() != null) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(response.getRetryAfterSeconds()))
+                    .body(response);
+        }
+
+        return ResponseEntity.status(status(response.isSuccess(), response.getChunks())).body(response);
+    }
+
+    private static boolean delivered(EmailResponse response) {
+        return delivered(response.isSuccess(), response.getChunks());
+    }
+
+    /**
+     * Whether a send reached any recipient. Such responses are kept for duplicates even when some
+     * chunks failed: sending the request again would repeat the chunks that went through.
+     */
+    private static boolean delivered(boolean success, List<ChunkResult> chunks) {
+        return success || (chunks != null && chunks.stream().anyMatch(ChunkResult::isSuccess));
+    }
+
+    // 207 when only some chunks were sent, so clients do not resend the whole request
+    private static HttpStatus status(boolean success, List<ChunkResult> chunks) {
+        if (success) {
+            return HttpStatus.OK;
+        }
+        return delivered(false, chunks) ? HttpStatus.MULTI_STATUS : HttpStatus.INTERNAL_SERVER_ERROR;
+    }
+
+    @PostMapping(value = "/sms", params = {"async=true", "!sendAt"})
+    public ResponseEntity<?> sendSmsAsync(@RequestBody SmsRequest request) {
+        logger.info("Received async SMS request");
+
+        String validationError = requestValidator.validateSms(request);
+        if (validationError != null) {
+            return ResponseEntity.badRequest().body(new SmsResponse(false, validationError));
+        }
+
+        JobStatus job = jobService.submitSms(request);
+        if (job == null) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body(new SmsResponse(false, "Dispatch queue is full, please retry later"));
+        }
+
+        return ResponseEntity.accepted().location(URI.create("/jobs/" + job.getJobId())).body(job);
+    }
+
+    @PostMapping(value = "/email", params = {"async=true", "!sendAt"})
+    public ResponseEntity<?> sendEmailAsync(@RequestBody EmailRequest request) {
+        logger.info("Received async Email request");
+
+        String validationError = requestValidator.validateEmail(request);
+        if (validationError != null) {
+            return ResponseEntity.badRequest().body(new EmailResponse(false, validationError));
+        }
+
+        try {
+            attachmentGuard.checkSize(AttachmentGuard.decodedBytes(request.getAttachments()));
+        } catch (AttachmentGuard.TooLargeException e) {
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(new EmailResponse(false, e.getMessage()));
+        }
+
+        JobStatus job = jobService.submitEmail(request);
+        if (job == null) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body(new EmailResponse(false, "Dispatch queue is full, please retry later"));
+        }
+
+        return ResponseEntity.accepted().location(URI.create("/jobs/" + job.getJobId())).body(job);
+    }
+
+    @PostMapping(value = "/sms", params = "sendAt")
+    public ResponseEntity<?> scheduleSms(@RequestBody SmsRequest request, @RequestParam("sendAt") long sendAt) {
+        logger.info("Received scheduled SMS request");
+
+        String validationError = requestValidator.validateSms(request);
+        if (validationError != null) {
+            return ResponseEntity.badRequest().body(new SmsResponse(false, validationError));
+        }
+
+        JobStatus job = sendScheduler.scheduleSms(request, sendAt);
+        if (job == null) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body(new SmsResponse(false, "Too many scheduled sends, please retry later"));
+        }
+
+        return ResponseEntity.accepted().location(URI.create("/jobs/" + job.getJobId())).body(job);
+    }
+
+    @PostMapping(value = "/email", params = "sendAt")
+    public ResponseEntity<?> scheduleEmail(@RequestBody EmailRequest request, @RequestParam("sendAt") long sendAt) {
+        logger.info("Received scheduled Email request");
+
+        String validationError = requestValidator.validateEmail(request);
+        if (validationError != null) {
+            return ResponseEntity.badRequest().body(new EmailResponse(false, validationError));
+        }
+
+        try {
+            attachmentGuard.checkSize(AttachmentGuard.decodedBytes(request.getAttachments()));
+        } catch (AttachmentGuard.TooLargeException e) {
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(new EmailResponse(false, e.getMessage()));
+        }
+
+        JobStatus job = sendScheduler.scheduleEmail(request, sendAt);
+        if (job == null) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body(new EmailResponse(false, "Too many scheduled sends, please retry later"));
+        }
+
+        return ResponseEntity.accepted().location(URI.create("/jobs/" + job.getJobId())).body(job);
+    }
+
+    @PostMapping("/sms/batch")
+    public ResponseEntity<?> sendSmsBatch(@RequestBody List<SmsRequest> requests) {
+        logger.info("Received SMS batch request: {} items", requests == null ? 0 : requests.size());
+
+        if (requests == null || requests.isEmpty()) {
+            return ResponseEntity.badRequest()
+                    .body(new SmsResponse(false, "Request body must be a non-empty array"));
+        }
+
+        if (requests.size() > maxBatchSize) {
+            return ResponseEntity.badRequest()
+                    .body(new SmsResponse(false, "Batch size exceeds maximum of " + maxBatchSize));
+        }
+
+        return ResponseEntity.ok(batchService.sendSmsBatch(requests));
+    }
+
+    @PostMapping("/email/batch")
+    public ResponseEntity<?> sendEmailBatch(@RequestBody List<EmailRequest> requests) {
+        logger.info("Received Email batch request: {} items", requests == null ? 0 : requests.size());
+
+        if (requests == null || requests.isEmpty()) {
+            return ResponseEntity.badRequest()
+                    .body(new EmailResponse(false, "Request body must be a non-empty array"));
+        }
+
+        if (requests.size() > maxBatchSize) {
+            return ResponseEntity.badRequest()
+                    .body(new EmailResponse(false, "Batch size exceeds maximum of " + maxBatchSize));
+        }
+
+        return ResponseEntity.ok(batchService.sendEmailBatch(requests));
+    }
+
+    @GetMapping("/jobs/{id}")
+    public ResponseEntity<JobStatus> getJob(@PathVariable("id") String id) {
+        // The scheduler first: a released job is queued before the scheduler forgets it
+        JobStatus job = sendScheduler.getJob(id);
+        if (job == null) {
+            job = jobService.getJob(id);
+        }
+        if (job == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(job);
+    }
+
+    @PutMapping("/templates/{id}")
+    public ResponseEntity<?> putTemplate(@PathVariable("id") String id, @RequestBody MessageTemplate template) {
+        if (!TemplateStore.isValidId(id)) {
+            return ResponseEntity.badRequest()
+                    .body(new EmailResponse(false, "Template id must be 1-128 letters, digits, '.', '_' or '-'"));
+        }
+        if (template == null || (template.getHtml() == null && template.getText() == null && template.getMessage() == null)) {
+            return ResponseEntity.badRequest()
+                    .body(new EmailResponse(false, "Template must have html, text or message"));
+        }
+
+        templateStore.put(id, template);
+        return ResponseEntity.noContent().build();
+    }
+
+    @GetMapping("/templates/{id}")
+    public ResponseEntity<MessageTemplate> getTemplate(@PathVariable("id") String id) {
+        MessageTemplate template = templateStore.read(id);
+        if (template == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(template);
+    }
+
+    @DeleteMapping("/templates/{id}")
+    public ResponseEntity<Void> deleteTemplate(@PathVariable("id") String id) {
+        if (!templateStore.delete(id)) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.noContent().build();
+    }
+
+    /**
+     * Store a file (the raw request body) to be referenced from emails by its SHA-256 hash:
+     * {"fileName": ..., "fileMimeType": ..., "sha256": ...} in place of "fileContent".
+     */
+    @PostMapping("/attachments")
+    public ResponseEntity<?> putAttachment(InputStream content) {
+        try {
+            AttachmentStore.Stored stored = attachmentStore.put(content, attachmentGuard.maxRequestBytes());
+            return ResponseEntity.created(URI.create("/attachments/" + stored.sha256())).body(stored);
+        } catch (AttachmentGuard.TooLargeException e) {
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(new EmailResponse(false, e.getMessage()));
+        } catch (Exception e) {
+            logger.error("Error storing attachment: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(new EmailResponse(false, "An error occurred: " + e.getMessage()));
+        }
+    }
+
+    @RequestMapping(value = "/attachments/{sha256}", method = RequestMethod.HEAD)
+    public ResponseEntity<Void> hasAttachment(@PathVariable("sha256") String sha256) {
+        if (!attachmentStore.exists(sha256)) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok().build();
+    }
+
+    @DeleteMapping("/jobs/{id}")
+    public ResponseEntity<Void> cancelJob(@PathVariable("id") String id) {
+        if (!sendScheduler.cancel(id)) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.noContent().build();
+    }
 }
@@ -0,0 +1,44 @@
+package com.messageflow.api.controllers;
+
+import com.messageflow.api.services.StreamService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+
+/**
+ * NDJSON streaming endpoints: one SMS or email request per line in, one result per line out.
+ * Results are written while the request body is still being read.
+ */
+@RestController
+public class StreamController {
+
+    private static final Logger logger = LoggerFactory.getLogger(StreamController.class);
+    private static final String NDJSON = "application/x-ndjson";
+
+    @Autowired
+    private StreamService streamService;
+
+    @PostMapping(value = "/sms/stream", consumes = NDJSON, produces = NDJSON)
+    public void streamSms(HttpServletRequest request, HttpServletResponse response)
+            throws IOException, InterruptedException {
+        logger.info("Received SMS stream");
+        response.setContentType(NDJSON);
+        long lines = streamService.streamSms(request.getInputStream(), response.getOutputStream());
+        logger.info("SMS stream completed: {} lines", lines);
+    }
+
+    @PostMapping(value = "/email/stream", consumes = NDJSON, produces = NDJSON)
+    public void streamEmail(HttpServletRequest request, HttpServletResponse response)
+            throws IOException, InterruptedException {
+        logger.info("Received Email stream");
+        response.setContentType(NDJSON);
+        long lines = streamService.streamEmail(request.getInputStream(), response.getOutputStream());
+        logger.info("Email stream completed: {} lines", lines);
+    }
+}
@@ -10,6 +10,9 @@ public class EmailContent {
     @JsonProperty("templateId")
     private String templateId;
 
+    // Local template rendered into html and text before sending; not sent upstream
+    private String template;
+
     // Constructors
     public EmailContent() {
     }
@@ -43,4 +46,12 @@ public class EmailContent {
     public void setTemplateId(String templateId) {
         this.templateId = templateId;
     }
+
+    public String getTemplate() {
+        return template;
+    }
+
+    public void setTemplate(String template) {
+        this.template = template;
+    }
 }
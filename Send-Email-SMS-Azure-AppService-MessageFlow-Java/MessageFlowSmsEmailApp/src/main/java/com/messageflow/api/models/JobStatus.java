@@ -0,0 +1,109 @@
+package com.messageflow.api.models;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class JobStatus {
+
+    public static final String SCHEDULED = "scheduled";
+    public static final String QUEUED = "queued";
+    public static final String RUNNING = "running";
+    public static final String COMPLETED = "completed";
+
+    @JsonProperty("jobId")
+    private String jobId;
+
+    private String type;
+    private String status;
+
+    @JsonProperty("submittedAt")
+    private long submittedAt;
+
+    @JsonProperty("completedAt")
+    private Long completedAt;
+
+    // Set while a scheduled job waits for its send time
+    @JsonProperty("sendAt")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Long sendAt;
+
+    // SmsResponse or EmailResponse once the job has completed
+    private Object result;
+
+    // Constructors
+    public JobStatus() {
+    }
+
+    public JobStatus(String jobId, String type, String status, long submittedAt) {
+        this.jobId = jobId;
+        this.type = type;
+        this.status = status;
+        this.submittedAt = submittedAt;
+    }
+
+    public JobStatus(String jobId, String type, String status, long submittedAt, Long completedAt, Object result) {
+        this.jobId = jobId;
+        this.type = type;
+        this.status = status;
+        this.submittedAt = submittedAt;
+        this.completedAt = completedAt;
+        this.result = result;
+    }
+
+    // Getters and Setters
+    public String getJobId() {
+        return jobId;
+    }
+
+    public void setJobId(String jobId) {
+        this.jobId = jobId;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public long getSubmittedAt() {
+        return submittedAt;
+    }
+
+    public void setSubmittedAt(long submittedAt) {
+        this.submittedAt = submittedAt;
+    }
+
+    public Long getCompletedAt() {
+        return completedAt;
+    }
+
+    public void setCompletedAt(Long completedAt) {
+        this.completedAt = completedAt;
+    }
+
+    public Long getSendAt() {
+        return sendAt;
+    }
+
+    public void setSendAt(Long sendAt) {
+        this.sendAt = sendAt;
+    }
+
+    public Object getResult() {
+        return result;
+    }
+
+    public void setResult(Object result) {
+        this.result = result;
+    }
+}
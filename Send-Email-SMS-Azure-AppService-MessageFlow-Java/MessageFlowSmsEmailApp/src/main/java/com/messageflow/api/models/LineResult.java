@@ -0,0 +1,36 @@
+package com.messageflow.api.models;
+
+public class LineResult {
+
+    // 1-based line number in the submitted NDJSON stream
+    private long line;
+
+    // SmsResponse or EmailResponse for that line
+    private Object result;
+
+    // Constructors
+    public LineResult() {
+    }
+
+    public LineResult(long line, Object result) {
+        this.line = line;
+        this.result = result;
+    }
+
+    // Getters and Setters
+    public long getLine() {
+        return line;
+    }
+
+    public void setLine(long line) {
+        this.line = line;
+    }
+
+    public Object getResult() {
+        return result;
+    }
+
+    public void setResult(Object result) {
+        this.result = result;
+    }
+}
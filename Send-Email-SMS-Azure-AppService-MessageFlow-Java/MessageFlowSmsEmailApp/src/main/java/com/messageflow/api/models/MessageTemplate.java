@@ -0,0 +1,53 @@
+package com.messageflow.api.models;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * A template stored with PUT /templates/{id}. Email requests use subject, html and text; SMS
+ * requests use message. Parts that are not set are left as they are in the request.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class MessageTemplate {
+
+    private String subject;
+    private String html;
+    private String text;
+    private String message;
+
+    // Constructors
+    public MessageTemplate() {
+    }
+
+    // Getters and Setters
+    public String getSubject() {
+        return subject;
+    }
+
+    public void setSubject(String subject) {
+        this.subject = subject;
+    }
+
+    public String getHtml() {
+        return html;
+    }
+
+    public void setHtml(String html) {
+        this.html = html;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public void setText(String text) {
+        this.text = text;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+}
@@ -2,6 +2,7 @@ package com.messageflow.api.models;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
 import java.util.List;
+import java.util.Map;
 
 public class SmsRequest {
 
@@ -27,6 +28,11 @@ public class SmsRequest {
     @JsonProperty("externalId")
     private String externalId;
 
+    // Local template rendered into message before sending, with vars; neither is sent upstream
+    private String template;
+
+    private Map<String, Object> vars;
+
     // Constructors
     public SmsRequest() {
     }
@@ -109,4 +115,20 @@ public class SmsRequest {
     public void setExternalId(String externalId) {
         this.externalId = externalId;
     }
+
+    public String getTemplate() {
+        return template;
+    }
+
+    public void setTemplate(String template) {
+        this.template = template;
+    }
+
+    public Map<String, Object> getVars() {
+        return vars;
+    }
+
+    public void setVars(Map<String, Object> vars) {
+        this.vars = vars;
+    }
 }
@@ -1,6 +1,8 @@
 package com.messageflow.api.models;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.List;
 
 public class SmsResponse {
 
@@ -10,6 +12,15 @@ public class SmsResponse {
     @JsonProperty("response_content")
     private String responseContent;
 
+    // Per-chunk outcomes when the recipient list was split into several upstream calls
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private List<ChunkResult> chunks;
+
+    // Set when the call was rejected without contacting MessageFlow (circuit open, concurrency limit)
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonProperty("retry_after_seconds")
+    private Integer retryAfterSeconds;
+
     // Constructors
     public SmsResponse() {
     }
@@ -50,4 +61,20 @@ public class SmsResponse {
     public void setResponseContent(String responseContent) {
         this.responseContent = responseContent;
     }
+
+    public List<ChunkResult> getChunks() {
+        return chunks;
+    }
+
+    public void setChunks(List<ChunkResult> chunks) {
+        this.chunks = chunks;
+    }
+
+    public Integer getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+    public void setRetryAfterSeconds(Integer retryAfterSeconds) {
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
 }
@@ -0,0 +1,115 @@
+package com.messageflow.api.services;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Limits on the attachment bytes of emails, so that large emails sent in parallel cannot exhaust
+ * the memory of a small instance.
+ *
+ * An email whose attachments exceed messageflow.attachments.max-request-bytes is refused with
+ * {@link TooLargeException}. The emails being sent at the same time may hold at most
+ * messageflow.attachments.max-in-flight-bytes of attachments between them; beyond that, an email
+ * is rejected with {@link UpstreamGuard.RejectedException} and should be retried shortly.
+ */
+@Component
+public class AttachmentGuard {
+
+    private static final Logger logger = LoggerFactory.getLogger(AttachmentGuard.class);
+
+    // Permits are KiB, so that budgets above 2 GiB fit in a Semaphore
+    private static final int KIB = 1024;
+
+    private final long maxRequestBytes;
+    private final int budgetKib;
+    private final Semaphore budget;
+    private final MeterRegistry meterRegistry;
+
+    public AttachmentGuard(MeterRegistry meterRegistry,
+                           @Value("${messageflow.attachments.max-request-bytes:26214400}") long maxRequestBytes,
+                           @Value("${messageflow.attachments.max-in-flight-bytes:104857600}") long maxInFlightBytes) {
+        this.meterRegistry = meterRegistry;
+        this.maxRequestBytes = maxRequestBytes;
+        this.budgetKib = (int) Math.min(Integer.MAX_VALUE, Math.max(1, maxInFlightBytes / KIB));
+        this.budget = new Semaphore(budgetKib);
+        Gauge.builder("messageflow.attachments.in.flight", budget, b -> (double) (budgetKib - b.availablePermits()) * KIB)
+                .description("Attachment bytes of the emails being sent")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    public long maxRequestBytes() {
+        return maxRequestBytes;
+    }
+
+    /**
+     * Reserve room for an email's attachments until the permit is closed.
+     *
+     * @throws TooLargeException when the attachments exceed the per-request limit
+     * @throws UpstreamGuard.RejectedException when too many attachment bytes are in flight
+     */
+    public Permit acquire(long bytes) {
+        if (bytes <= 0) {
+            return () -> { };
+        }
+        checkSize(bytes);
+        int kib = (int) Math.min(budgetKib, (bytes + KIB - 1) / KIB);
+        if (!budget.tryAcquire(kib)) {
+            meterRegistry.counter("messageflow.attachments.rejected", "reason", "in_flight").increment();
+            logger.warn("Rejected email with {} attachment bytes: instance attachment budget in use", bytes);
+            throw new UpstreamGuard.RejectedException("Too many attachments being sent, retry later", 1);
+        }
+        return () -> budget.release(kib);
+    }
+
+    /**
+     * Refuse an email before it is queued when its attachments could never be sent.
+     *
+     * @throws TooLargeException when the attachments exceed the per-request limit
+     */
+    public void checkSize(long bytes) {
+        if (bytes > maxRequestBytes) {
+            meterRegistry.counter("messageflow.attachments.rejected", "reason", "too_large").increment();
+            throw new TooLargeException("Attachments exceed the limit of " + maxRequestBytes + " bytes");
+        }
+    }
+
+    /**
+     * Decoded size of base64 attachments in a JSON request ("fileContent").
+     */
+    public static long decodedBytes(List<Map<String, Object>> attachments) {
+        if (attachments == null) {
+            return 0;
+        }
+        long bytes = 0;
+        for (Map<String, Object> attachment : attachments) {
+            if (attachment != null && attachment.get("fileContent") instanceof String content) {
+                bytes += content.length() / 4L * 3;
+            }
+        }
+        return bytes;
+    }
+
+    public interface Permit extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    /**
+     * The attachments of one email exceed messageflow.attachments.max-request-bytes.
+     */
+    public static class TooLargeException extends RuntimeException {
+
+        public TooLargeException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package com.messageflow.api.services;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Content-addressed store of email attachments, so that a file sent with many emails is uploaded
+ * once with POST /attachments and then referenced by its SHA-256 hash.
+ *
+ * Files are kept base64-encoded, exactly as they go into the MessageFlow request, so sending a
+ * stored attachment is a plain copy with no decoding or encoding. Every file is written to
+ * messageflow.attachments.store.directory, up to messageflow.attachments.store.disk-bytes in total.
+ * Recently used files up to a quarter of messageflow.attachments.store.memory-bytes each are also
+ * kept in memory, up to memory-bytes in total. Both tiers evict the least recently used files
+ * first. A file evicted from disk must be uploaded again; HEAD /attachments/{sha256} tells whether
+ * it is still stored.
+ */
+@Component
+public class AttachmentStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(AttachmentStore.class);
+
+    private static final Pattern SHA256 = Pattern.compile("[0-9a-f]{64}");
+    private static final String SUFFIX = ".b64";
+
+    private final Path directory;
+    private final long memoryBytes;
+    private final long diskBytes;
+    private final MeterRegistry meterRegistry;
+
+    // Guarded by this; values are the encoded lengths
+    private final LinkedHashMap<String, Long> disk = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, byte[]> memory = new LinkedHashMap<>(16, 0.75f, true);
+    private long diskUsed;
+    private long memoryUsed;
+
+    public AttachmentStore(MeterRegistry meterRegistry,
+                           @Value("${messageflow.attachments.store.directory:attachment-store}") String directory,
+                           @Value("${messageflow.attachments.store.memory-bytes:67108864}") long memoryBytes,
+                           @Value("${messageflow.attachments.store.disk-bytes:1073741824}") long diskBytes) {
+        this.meterRegistry = meterRegistry;
+        this.directory = Path.of(directory);
+        this.memoryBytes = memoryBytes;
+        this.diskBytes = diskBytes;
+        Gauge.builder("messageflow.attachments.store.memory", this, store -> store.used(true))
+                .description("Encoded bytes of the attachments kept in memory")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("messageflow.attachments.store.disk", this, store -> store.used(false))
+                .description("Encoded bytes of the attachments kept on disk")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+
+        try {
+            load();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open attachment store in " + this.directory.toAbsolutePath(), e);
+        }
+    }
+
+    public static boolean isValidHash(String sha256) {
+        return sha256 != null && SHA256.matcher(sha256).matches();
+    }
+
+    // Files left from a previous run are indexed, oldest first, so they are evicted first
+    private void load() throws IOException {
+        Files.createDirectories(directory);
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(".tmp")) {
+                    Files.deleteIfExists(file);
+                } else if (name.endsWith(SUFFIX) && isValidHash(name.substring(0, name.length() - SUFFIX.length()))) {
+                    files.add(file);
+                }
+            }
+        }
+        files.sort(Comparator.comparing(file -> file.toFile().lastModified()));
+        synchronized (this) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                long length = Files.size(file);
+                disk.put(name.substring(0, name.length() - SUFFIX.length()), length);
+                diskUsed += length;
+            }
+            evict();
+        }
+        logger.info("Attachment store: directory={}, files={}, disk={} bytes",
+                directory.toAbsolutePath(), disk.size(), diskUsed);
+    }
+
+    /**
+     * Store a file, base64-encoding it while it is read. Storing a file that is already stored
+     * only refreshes it.
+     *
+     * @throws AttachmentGuard.TooLargeException when the file is longer than maxBytes
+     */
+    public Stored put(InputStream content, long maxBytes) throws IOException {
+        MessageDigest sha256;
+        try {
+            sha256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        Path temporary = Files.createTempFile(directory, "upload-", ".tmp");
+        try {
+            long size;
+            try (OutputStream file = Files.newOutputStream(temporary);
+                 OutputStream encoded = Base64.getEncoder().wrap(file);
+                 DigestOutputStream digest = new DigestOutputStream(encoded, sha256)) {
+                size = copy(content, digest, maxBytes);
+            }
+            String hash = HexFormat.of().formatHex(sha256.digest());
+            long length = Files.size(temporary);
+
+            synchronized (this) {
+                // get, not containsKey, so the stored file counts as recently used
+                if (disk.get(hash) != null) {
+                    return new Stored(hash, size);
+                }
+                Files.move(temporary, file(hash), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                disk.put(hash, length);
+                diskUsed += length;
+                evict();
+            }
+            logger.info("Stored attachment {} ({} bytes)", hash, size);
+            return new Stored(hash, size);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private static long copy(InputStream in, OutputStream out, long maxBytes) throws IOException {
+        byte[] buffer = new byte[8192];
+        long total = 0;
+        int read;
+        while ((read = in.read(buffer)) >= 0) {
+            total += read;
+            if (total > maxBytes) {
+                throw new AttachmentGuard.TooLargeException("Attachment exceeds the limit of " + maxBytes + " bytes");
+            }
+            out.write(buffer, 0, read);
+        }
+        return total;
+    }
+
+    public synchronized boolean exists(String sha256) {
+        return isValidHash(sha256) && disk.containsKey(sha256);
+    }
+
+    /**
+     * A stored file as an attachment that is sent without re-encoding, or null when it is not
+     * stored (any more).
+     */
+    public PayloadWriter.Attachment attachment(String sha256, String fileName, String mimeType) {
+        if (!isValidHash(sha256)) {
+            return null;
+        }
+        byte[] cached;
+        long length;
+        synchronized (this) {
+            cached = memory.get(sha256);
+            Long stored = disk.get(sha256);
+            if (stored == null) {
+                meterRegistry.counter("messageflow.attachments.store.requests", "result", "miss").increment();
+                return null;
+            }
+            length = stored;
+        }
+
+        if (cached == null && length <= memoryBytes / 4) {
+            try {
+                cached = Files.readAllBytes(file(sha256));
+            } catch (IOException e) {
+                logger.warn("Could not read stored attachment {}: {}", sha256, e.getMessage());
+                return null;
+            }
+            synchronized (this) {
+                if (disk.containsKey(sha256) && memory.putIfAbsent(sha256, cached) == null) {
+                    memoryUsed += cached.length;
+                    evict();
+                }
+            }
+            meterRegistry.counter("messageflow.attachments.store.requests", "result", "disk").increment();
+        } else {
+            meterRegistry.counter("messageflow.attachments.store.requests", "result", cached != null ? "memory" : "disk").increment();
+        }
+
+        byte[] encoded = cached;
+        Path file = file(sha256);
+        return PayloadWriter.Attachment.base64(fileName, mimeType, length,
+                encoded != null ? () -> new ByteArrayInputStream(encoded) : () -> Files.newInputStream(file));
+    }
+
+    // Called with the lock held
+    private void evict() {
+        for (Iterator<Map.Entry<String, byte[]>> it = memory.entrySet().iterator(); memoryUsed > memoryBytes && it.hasNext(); ) {
+            memoryUsed -= it.next().getValue().length;
+            it.remove();
+        }
+        for (Iterator<Map.Entry<String, Long>> it = disk.entrySet().iterator(); diskUsed > diskBytes && it.hasNext(); ) {
+            Map.Entry<String, Long> eldest = it.next();
+            it.remove();
+            diskUsed -= eldest.getValue();
+            byte[] cached = memory.remove(eldest.getKey());
+            if (cached != null) {
+                memoryUsed -= cached.length;
+            }
+            try {
+                // A send already reading the file keeps it open until it is done
+                Files.deleteIfExists(file(eldest.getKey()));
+            } catch (IOException e) {
+                logger.warn("Could not delete stored attachment {}: {}", eldest.getKey(), e.getMessage());
+            }
+        }
+    }
+
+    private synchronized long used(boolean inMemory) {
+        return inMemory ? memoryUsed : diskUsed;
+    }
+
+    private Path file(String sha256) {
+        return directory.resolve(sha256 + SUFFIX);
+    }
+
+    /**
+     * A stored file: its hash and decoded size.
+     */
+    public record Stored(String sha256, long size) {
+    }
+}
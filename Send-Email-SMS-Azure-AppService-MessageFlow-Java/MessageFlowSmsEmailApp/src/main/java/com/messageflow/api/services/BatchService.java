@@ -0,0 +1,58 @@
+package com.messageflow.api.services;
+
+import com.messageflow.api.models.EmailRequest;
+import com.messageflow.api.models.EmailResponse;
+import com.messageflow.api.models.SmsRequest;
+import com.messageflow.api.models.SmsResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+/**
+ * Sends a batch of independent SMS or email requests concurrently.
+ *
+ * Each batch is processed by at most messageflow.batch.parallelism workers. Results are aligned by
+ * index with the submitted items; invalid items are answered with their validation error and not sent.
+ */
+@Service
+public class BatchService {
+
+    private final SmsService smsService;
+    private final EmailService emailService;
+    private final RequestValidator requestValidator;
+    private final ParallelDispatcher dispatcher;
+    private final int parallelism;
+
+    public BatchService(SmsService smsService,
+                        EmailService emailService,
+                        RequestValidator requestValidator,
+                        ParallelDispatcher dispatcher,
+                        @Value("${messageflow.batch.parallelism:16}") int parallelism) {
+        this.smsService = smsService;
+        this.emailService = emailService;
+        this.requestValidator = requestValidator;
+        this.dispatcher = dispatcher;
+        this.parallelism = parallelism;
+    }
+
+    public List<SmsResponse> sendSmsBatch(List<SmsRequest> requests) {
+        return dispatcher.dispatch(requests, parallelism, request -> {
+            String validationError = requestValidator.validateSms(request);
+            if (validationError != null) {
+                return new SmsResponse(false, validationError);
+            }
+            return smsService.sendSms(request);
+        }, e -> new SmsResponse(false, "An error occurred: " + e.getMessage()));
+    }
+
+    public List<EmailResponse> sendEmailBatch(List<EmailRequest> requests) {
+        return dispatcher.dispatch(requests, parallelism, request -> {
+            String validationError = requestValidator.validateEmail(request);
+            if (validationError != null) {
+                return new EmailResponse(false, validationError);
+            }
+            return emailService.sendEmail(request);
+        }, e -> new EmailResponse(false, "An error occurred: " + e.getMessage()));
+    }
+}
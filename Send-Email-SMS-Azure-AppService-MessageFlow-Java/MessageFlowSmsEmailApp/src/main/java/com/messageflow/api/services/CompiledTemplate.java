@@ -0,0 +1,163 @@
+package com.messageflow.api.services;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A template parsed once into alternating literal text and variable references, so rendering is a
+ * single pass that appends into one buffer sized for the template, with no scanning or
+ * intermediate strings per recipient.
+ *
+ * {{name}} is replaced by the value of name, {{{name}}} by the value without HTML escaping. In HTML
+ * templates {{name}} values are HTML-escaped; in text templates both forms are the same. A variable
+ * with no value renders as nothing. Instances are immutable and safe to share between threads.
+ */
+public final class CompiledTemplate {
+
+    // Room reserved in the render buffer for each variable's value
+    private static final int VALUE_CHARS = 16;
+
+    // literals[i] comes before names[i]; the last literal ends the template
+    private final String[] literals;
+    private final String[] names;
+    private final boolean[] escaped;
+    private final Set<String> variables;
+    private final int literalLength;
+
+    private CompiledTemplate(List<String> literals, List<String> names, List<Boolean> escaped) {
+        this.literals = literals.toArray(new String[0]);
+        this.names = names.toArray(new String[0]);
+        this.escaped = new boolean[names.size()];
+        for (int i = 0; i < this.escaped.length; i++) {
+            this.escaped[i] = escaped.get(i);
+        }
+        this.variables = Collections.unmodifiableSet(new LinkedHashSet<>(names));
+        int length = 0;
+        for (String literal : this.literals) {
+            length += literal.length();
+        }
+        this.literalLength = length;
+    }
+
+    /**
+     * Parse a template. An opening brace pair without a matching close is kept as literal text.
+     */
+    public static CompiledTemplate compile(String source, boolean html) {
+        List<String> literals = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        List<Boolean> escaped = new ArrayList<>();
+
+        StringBuilder literal = new StringBuilder();
+        int position = 0;
+        while (position < source.length()) {
+            int open = source.indexOf("{{", position);
+            if (open < 0) {
+                break;
+            }
+            boolean raw = source.startsWith("{{{", open);
+            String close = raw ? "}}}" : "}}";
+            int nameStart = open + (raw ? 3 : 2);
+            int end = source.indexOf(close, nameStart);
+            String name = end < 0 ? "" : source.substring(nameStart, end).trim();
+            if (name.isEmpty() || name.indexOf('{') >= 0) {
+                literal.append(source, position, open + 2);
+                position = open + 2;
+                continue;
+            }
+            literal.append(source, position, open);
+            literals.add(literal.toString());
+            literal.setLength(0);
+            names.add(name);
+            escaped.add(html && !raw);
+            position = end + close.length();
+        }
+        literal.append(source, position, source.length());
+        literals.add(literal.toString());
+        return new CompiledTemplate(literals, names, escaped);
+    }
+
+    /**
+     * The names of the variables referenced by this template.
+     */
+    public Set<String> variables() {
+        return variables;
+    }
+
+    /**
+     * Whether this template references any of the given variables.
+     */
+    public boolean usesAny(Map<String, ?> vars) {
+        if (vars == null || vars.isEmpty()) {
+            return false;
+        }
+        for (String name : names) {
+            if (vars.containsKey(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Render with the given variables. A recipient's vars take precedence over globalVars; either
+     * may be null.
+     */
+    public String render(Map<String, ?> globalVars, Map<String, ?> vars) {
+        if (names.length == 0) {
+            return literals[0];
+        }
+        // Sends run on virtual threads, so a per-thread buffer would rarely be reused
+        StringBuilder out = new StringBuilder(literalLength + VALUE_CHARS * names.length);
+        renderTo(out, globalVars, vars);
+        return out.toString();
+    }
+
+    /**
+     * Append the rendered template to out.
+     */
+    public void renderTo(StringBuilder out, Map<String, ?> globalVars, Map<String, ?> vars) {
+        for (int i = 0; i < names.length; i++) {
+            out.append(literals[i]);
+            Object value = vars != null ? vars.get(names[i]) : null;
+            if (value == null && globalVars != null) {
+                value = globalVars.get(names[i]);
+            }
+            if (value != null) {
+                appendValue(out, value, escaped[i]);
+            }
+        }
+        out.append(literals[names.length]);
+    }
+
+    private static void appendValue(StringBuilder out, Object value, boolean escape) {
+        if (value instanceof Integer || value instanceof Long) {
+            out.append(((Number) value).longValue());
+            return;
+        }
+        CharSequence text = value instanceof CharSequence chars ? chars : String.valueOf(value);
+        if (!escape) {
+            out.append(text);
+            return;
+        }
+        int start = 0;
+        for (int i = 0; i < text.length(); i++) {
+            String entity = switch (text.charAt(i)) {
+                case '&' -> "&amp;";
+                case '<' -> "&lt;";
+                case '>' -> "&gt;";
+                case '"' -> "&quot;";
+                case '\'' -> "&#39;";
+                default -> null;
+            };
+            if (entity != null) {
+                out.append(text, start, i).append(entity);
+                start = i + 1;
+            }
+        }
+        out.append(text, start, text.length());
+    }
+}
@@ -1,25 +1,35 @@
 package com.messageflow.api.services;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.messageflow.api.models.ChunkResult;
+import com.messageflow.api.models.EmailContent;
+import com.messageflow.api.models.EmailRecipient;
 import com.messageflow.api.models.EmailRequest;
 import com.messageflow.api.models.EmailResponse;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.HttpClientErrorException;
-import org.springframework.web.client.HttpServerErrorException;
 import org.springframework.web.client.RestTemplate;
 
-import java.util.HashMap;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.IntStream;
 
 @Service
 public class EmailService {
 
     private static final Logger logger = LoggerFactory.getLogger(EmailService.class);
-    private static final String EMAIL_API_URL = "https://api.messageflow.com/v2.1/email";
+    private static final String EMAIL_API_PATH = "/email";
+
+    @Value("${messageflow.api.base-url:https://api.messageflow.com/v2.1}")
+    private String baseUrl;
 
     @Value("${messageflow.api.authorization}")
     private String authorization;
@@ -27,18 +37,234 @@ public class EmailService {
     @Value("${messageflow.api.application-key}")
     private String applicationKey;
 
+    @Value("${messageflow.fanout.email-chunk-size:500}")
+    private int chunkSize;
+
+    @Value("${messageflow.fanout.parallelism:4}")
+    private int fanOutParallelism;
+
     private final RestTemplate restTemplate;
     private final ObjectMapper objectMapper;
+    private final ParallelDispatcher dispatcher;
+    private final PayloadWriter payloadWriter;
+    private final SendLogger sendLogger;
+    private final SendMetrics sendMetrics;
+    private final UpstreamGuard upstreamGuard;
+    private final RetryPolicy retryPolicy;
+    private final RateLimiter rateLimiter;
+    private final TemplateStore templateStore;
+    private final AttachmentStore attachmentStore;
+    private final AttachmentGuard attachmentGuard;
 
-    public EmailService(RestTemplate restTemplate, ObjectMapper objectMapper) {
+    public EmailService(RestTemplate restTemplate, ObjectMapper objectMapper, ParallelDispatcher dispatcher,
+                        PayloadWriter payloadWriter, SendLogger sendLogger, SendMetrics sendMetrics,
+                        UpstreamGuard upstreamGuard, RetryPolicy retryPolicy, RateLimiter rateLimiter,
+                        TemplateStore templateStore, AttachmentStore attachmentStore, AttachmentGuard attachmentGuard) {
         this.restTemplate = restTemplate;
         this.objectMapper = objectMapper;
+        this.dispatcher = dispatcher;
+        this.payloadWriter = payloadWriter;
+        this.sendLogger = sendLogger;
+        this.sendMetrics = sendMetrics;
+        this.upstreamGuard = upstreamGuard;
+        this.retryPolicy = retryPolicy;
+        this.rateLimiter = rateLimiter;
+        this.templateStore = templateStore;
+        this.attachmentStore = attachmentStore;
+        this.attachmentGuard = attachmentGuard;
     }
 
+    /**
+     * Send an email. "to" lists longer than messageflow.fanout.email-chunk-size are split into
+     * chunks sent as separate upstream calls in parallel, and the outcomes merged into one response.
+     *
+     * With content.template, the stored template is rendered with globalVars first. When it also
+     * uses recipients' vars, each recipient gets their own rendering and upstream call instead, for
+     * at most messageflow.templates.max-personalized-recipients recipients.
+     *
+     * Attachments given by "sha256" instead of "fileContent" are taken from the attachment store.
+     * Inline attachments and uploaded files count against the limits of {@link AttachmentGuard}
+     * while the email is being sent; over the per-email limit, this throws
+     * {@link AttachmentGuard.TooLargeException}.
+     */
     public EmailResponse sendEmail(EmailRequest request) {
-        try {
-            logger.info("EmailService.sendEmail called with request: {}", objectMapper.writeValueAsString(request));
+        return sendEmail(request, List.of());
+    }
+
+    /**
+     * Send an email with uploaded files as attachments, base64-encoded on the fly into each upstream
+     * call. The files are read again for every chunk and retry.
+     */
+    public EmailResponse sendEmail(EmailRequest request, List<PayloadWriter.Attachment> files) {
+        long bytes = AttachmentGuard.decodedBytes(request.getAttachments());
+        for (PayloadWriter.Attachment file : files) {
+            bytes += file.size();
+        }
+        try (AttachmentGuard.Permit permit = attachmentGuard.acquire(bytes)) {
+            return send(request, files);
+        } catch (UpstreamGuard.RejectedException ex) {
+            EmailResponse rejected = new EmailResponse(false, ex.getMessage());
+            rejected.setRetryAfterSeconds(ex.getRetryAfterSeconds());
+            return rejected;
+        }
+    }
+
+    private EmailResponse send(EmailRequest request, List<PayloadWriter.Attachment> files) {
+        if (hasStoredAttachments(request.getAttachments())) {
+            List<PayloadWriter.Attachment> attachments = new ArrayList<>();
+            for (Map<String, Object> attachment : request.getAttachments()) {
+                if (attachment == null) {
+                    continue;
+                }
+                PayloadWriter.Attachment resolved = resolve(attachment);
+                if (resolved == null) {
+                    return new EmailResponse(false, "Unknown attachment: " + attachment.get("sha256"));
+                }
+                attachments.add(resolved);
+            }
+            attachments.addAll(files);
+            files = attachments;
+            request = copyForChunk(request, request.getTo(), 0);
+            request.setAttachments(null);
+        }
+
+        EmailContent content = request.getContent();
+        if (content != null && content.getTemplate() != null) {
+            TemplateStore.Compiled template;
+            List<EmailRecipient> recipients = request.getTo();
+            try {
+                template = templateStore.get(content.getTemplate());
+                templateStore.checkRecipients(content.getTemplate(), template, recipients);
+            } catch (TemplateStore.TemplateException e) {
+                return new EmailResponse(false, e.getMessage());
+            }
+            if (recipients != null && template.isPersonalized(recipients)) {
+                return sendPersonalized(template, request, files);
+            }
+            Map<String, Object> vars = recipients != null && recipients.size() == 1 ? recipients.get(0).getVars() : null;
+            request = render(template, request, recipients, 0, vars);
+        }
+
+        List<EmailRecipient> to = request.getTo();
+        if (to == null || to.size() <= chunkSize) {
+            return sendChunk(request, files);
+        }
+
+        List<EmailRequest> chunks = new ArrayList<>();
+        for (int from = 0; from < to.size(); from += chunkSize) {
+            List<EmailRecipient> part = to.subList(from, Math.min(from + chunkSize, to.size()));
+            chunks.add(copyForChunk(request, part, chunks.size()));
+        }
+
+        logger.info("Splitting email to {} recipients into {} chunks of up to {}",
+                to.size(), chunks.size(), chunkSize);
+
+        List<PayloadWriter.Attachment> chunkFiles = files;
+        List<EmailResponse> responses = dispatcher.dispatch(chunks, fanOutParallelism, chunk -> sendChunk(chunk, chunkFiles),
+                e -> new EmailResponse(false, "Error: " + e.getMessage(), e.getMessage()));
+        return merge(responses, i -> chunks.get(i).getTo().size());
+    }
+
+    private static boolean hasStoredAttachments(List<Map<String, Object>> attachments) {
+        if (attachments != null) {
+            for (Map<String, Object> attachment : attachments) {
+                if (attachment != null && attachment.get("sha256") != null) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
 
+    /**
+     * A JSON attachment as a streamed one. Stored files are copied from the store as they were
+     * encoded on upload; inline ones are already base64 as well. fileName and fileMimeType are
+     * required by RequestValidator, since the store keeps only the content.
+     */
+    private PayloadWriter.Attachment resolve(Map<String, Object> attachment) {
+        String fileName = (String) attachment.get("fileName");
+        String mimeType = (String) attachment.get("fileMimeType");
+        if (attachment.get("sha256") instanceof String sha256) {
+            return attachmentStore.attachment(sha256, fileName, mimeType);
+        }
+        byte[] content = String.valueOf(attachment.get("fileContent")).getBytes(StandardCharsets.US_ASCII);
+        return PayloadWriter.Attachment.base64(fileName, mimeType, content.length, () -> new ByteArrayInputStream(content));
+    }
+
+    /**
+     * One upstream call per recipient. Each copy is rendered just before it is sent, so only the
+     * calls in flight hold a rendered body.
+     */
+    private EmailResponse sendPersonalized(TemplateStore.Compiled template, EmailRequest request,
+                                           List<PayloadWriter.Attachment> files) {
+        List<EmailRecipient> to = request.getTo();
+        logger.info("Sending personalized email to {} recipients", to.size());
+
+        List<Integer> indexes = IntStream.range(0, to.size()).boxed().toList();
+        List<EmailResponse> responses = dispatcher.dispatch(indexes, fanOutParallelism,
+                i -> sendChunk(render(template, request, List.of(to.get(i)), i, to.get(i).getVars()), files),
+                e -> new EmailResponse(false, "Error: " + e.getMessage(), e.getMessage()));
+        return merge(responses, i -> 1);
+    }
+
+    private EmailRequest render(TemplateStore.Compiled template, EmailRequest request, List<EmailRecipient> to,
+                                int chunkIndex, Map<String, Object> vars) {
+        Map<String, Object> globalVars = request.getGlobalVars();
+        EmailContent content = request.getContent();
+        EmailContent rendered = new EmailContent(
+                template.html() != null ? template.html().render(globalVars, vars) : content.getHtml(),
+                template.text() != null ? template.text().render(globalVars, vars) : content.getText());
+        rendered.setTemplateId(content.getTemplateId());
+
+        EmailRequest copy = copyForChunk(request, to, chunkIndex);
+        copy.setContent(rendered);
+        if (template.subject() != null) {
+            copy.setSubject(template.subject().render(globalVars, vars));
+        }
+        return copy;
+    }
+
+    private EmailResponse merge(List<EmailResponse> responses, IntUnaryOperator recipients) {
+        List<ChunkResult> chunkResults = new ArrayList<>(responses.size());
+        int failed = 0;
+        for (int i = 0; i < responses.size(); i++) {
+            EmailResponse response = responses.get(i);
+            chunkResults.add(new ChunkResult(i, recipients.applyAsInt(i),
+                    response.isSuccess(), response.getMessage(), response.getResponseContent()));
+            if (!response.isSuccess()) {
+                failed++;
+            }
+        }
+
+        EmailResponse merged = failed == 0
+                ? new EmailResponse(true, "Email sent successfully in " + responses.size() + " chunks")
+                : new EmailResponse(false, failed + " of " + responses.size() + " chunks failed");
+        merged.setChunks(chunkResults);
+        return merged;
+    }
+
+    private EmailRequest copyForChunk(EmailRequest request, List<EmailRecipient> to, int chunkIndex) {
+        EmailRequest chunk = new EmailRequest();
+        chunk.setSubject(request.getSubject());
+        chunk.setSmtpAccount(request.getSmtpAccount());
+        chunk.setFrom(request.getFrom());
+        chunk.setTo(to);
+        chunk.setContent(request.getContent());
+        chunk.setTags(request.getTags());
+        chunk.setReplyTo(request.getReplyTo());
+        chunk.setHeaders(request.getHeaders());
+        chunk.setGlobalVars(request.getGlobalVars());
+        chunk.setAttachments(request.getAttachments());
+        if (chunkIndex == 0) {
+            // cc/bcc receive one copy, not one per chunk
+            chunk.setCc(request.getCc());
+            chunk.setBcc(request.getBcc());
+        }
+        return chunk;
+    }
+
+    private EmailResponse sendChunk(EmailRequest request, List<PayloadWriter.Attachment> files) {
+        try {
             // Validate configuration
             if (authorization == null || authorization.isEmpty()) {
                 throw new IllegalStateException("REST API authorization is missing in configuration");
@@ -53,56 +279,20 @@ public class EmailService {
             headers.set("Authorization", authorization);
             headers.set("Application-Key", applicationKey);
 
-            logger.info("Headers set - Authorization: {}..., Application-Key: {}...",
-                    authorization.substring(0, Math.min(10, authorization.length())),
-                    applicationKey.substring(0, Math.min(10, applicationKey.length())));
+            sendLogger.credentials(logger, authorization, applicationKey);
 
-            // Prepare payload
-            Map<String, Object> payload = new HashMap<>();
-            payload.put("subject", request.getSubject());
-            payload.put("smtpAccount", request.getSmtpAccount());
-            payload.put("from", request.getFrom());
-            payload.put("to", request.getTo());
-            payload.put("content", request.getContent());
+            // Serialize the request once, straight into a pooled buffer that is written onto the wire
+            // followed by any uploaded files
+            ResponseEntity<String> response;
+            try (PayloadWriter.Payload payload = payloadWriter.write(request, files)) {
+                sendLogger.payload(logger, "email", payload, baseUrl + EMAIL_API_PATH);
 
-            if (request.getTags() != null) {
-                payload.put("tags", request.getTags());
-            }
-            if (request.getCc() != null) {
-                payload.put("cc", request.getCc());
-            }
-            if (request.getBcc() != null) {
-                payload.put("bcc", request.getBcc());
-            }
-            if (request.getReplyTo() != null) {
-                payload.put("replyTo", request.getReplyTo());
+                // Emails carry no idempotency key, so only failures where nothing was sent are retried
+                response = retryPolicy.execute("email", false, () -> callUpstream(payload, headers, request.getSmtpAccount()));
             }
-            if (request.getHeaders() != null) {
-                payload.put("headers", request.getHeaders());
-            }
-            if (request.getGlobalVars() != null) {
-                payload.put("globalVars", request.getGlobalVars());
-            }
-            if (request.getAttachments() != null) {
-                payload.put("attachments", request.getAttachments());
-            }
-
-            String jsonPayload = objectMapper.writeValueAsString(payload);
-            logger.info("Email API Request Payload: {}", jsonPayload);
-            logger.info("Sending HTTP request to: {}", EMAIL_API_URL);
-
-            // Send request
-            HttpEntity<Map<String, Object>> entity = new HttpEntity<>(payload, headers);
-            ResponseEntity<String> response = restTemplate.exchange(
-                    EMAIL_API_URL,
-                    HttpMethod.POST,
-                    entity,
-                    String.class
-            );
 
             String responseContent = response.getBody();
-            logger.info("Email API Response Status: {}", response.getStatusCode());
-            logger.info("Email API Response Content: {}", responseContent);
+            sendLogger.response(logger, "email", response.getStatusCode().value(), responseContent);
 
             // Parse response
             if (response.getStatusCode() == HttpStatus.OK) {
@@ -119,12 +309,36 @@ public class EmailService {
                 return new EmailResponse(false, "HTTP Error: " + response.getStatusCode(), responseContent);
             }
 
-        } catch (HttpClientErrorException | HttpServerErrorException ex) {
-            logger.error("HTTP request failed: {}", ex.getMessage());
-            return new EmailResponse(false, "HTTP Error: " + ex.getStatusCode(), ex.getResponseBodyAsString());
+        } catch (UpstreamGuard.RejectedException ex) {
+            EmailResponse rejected = new EmailResponse(false, ex.getMessage());
+            rejected.setRetryAfterSeconds(ex.getRetryAfterSeconds());
+            return rejected;
         } catch (Exception ex) {
             logger.error("Error sending email: {}", ex.getMessage());
             return new EmailResponse(false, "Error: " + ex.getMessage(), ex.getMessage());
         }
     }
+
+    private ResponseEntity<String> callUpstream(PayloadWriter.Payload payload, HttpHeaders headers, String sender) {
+        // Waits for the rate limits, then fails fast with RejectedException when a limit cannot be
+        // met in time, the circuit is open or the concurrency limit is reached
+        rateLimiter.acquire("email", applicationKey, sender);
+        UpstreamGuard.Permit permit = upstreamGuard.acquire("email");
+        Timer.Sample upstream = sendMetrics.startUpstream("email");
+        String status = SendMetrics.IO_ERROR;
+        boolean failed = true;
+        try {
+            ResponseEntity<String> response = restTemplate.execute(
+                    baseUrl + EMAIL_API_PATH,
+                    HttpMethod.POST,
+                    payload.requestCallback(headers),
+                    PayloadWriter::readResponse);
+            status = SendMetrics.statusClass(response.getStatusCode().value());
+            failed = UpstreamGuard.isFailure(response.getStatusCode().value());
+            return response;
+        } finally {
+            permit.release(failed);
+            sendMetrics.stopUpstream(upstream, "email", status);
+        }
+    }
 }
@@ -0,0 +1,59 @@
+package com.messageflow.api.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.messageflow.client.utils.Config;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+
+/**
+ * The client core's suppression of duplicate sends of the same SMS or email, configured with
+ * messageflow.idempotency.*.
+ *
+ * A send is identified by its Idempotency-Key header, else its externalId, else (when
+ * messageflow.idempotency.content-hash=true) a SHA-256 hash of the request as serialized by
+ * Jackson, straight into the digest, so a request with a large recipient list is never held as
+ * one byte array. While the first send with a key is running, duplicates wait for it and get its
+ * response. When the send reached any recipient, duplicates get the same response for
+ * messageflow.idempotency.ttl-seconds without calling MessageFlow. This includes 207 responses, of
+ * which only some chunks were sent, since a resend would repeat those chunks. Sends that reached no
+ * recipient are not kept, so a resend after a failure is sent again.
+ *
+ * Only the synchronous POST /sms and POST /email use the cache. Batch, streaming, async and
+ * scheduled sends are not deduplicated.
+ *
+ * At most messageflow.idempotency.max-entries keys are kept; the oldest are dropped first.
+ */
+@Component
+public class IdempotencyCache extends com.messageflow.client.utils.IdempotencyCache {
+
+    private final ObjectMapper objectMapper;
+
+    public IdempotencyCache(ObjectMapper objectMapper,
+                            SendMetrics metrics,
+                            @Value("${messageflow.idempotency.enabled:true}") boolean enabled,
+                            @Value("${messageflow.idempotency.content-hash:true}") boolean contentHash,
+                            @Value("${messageflow.idempotency.ttl-seconds:300}") long ttlSeconds,
+                            @Value("${messageflow.idempotency.max-entries:10000}") int maxEntries) {
+        super(config(enabled, contentHash, ttlSeconds, maxEntries), metrics);
+        this.objectMapper = objectMapper;
+    }
+
+    private static Config.IdempotencyConfig config(boolean enabled, boolean contentHash, long ttlSeconds, int maxEntries) {
+        Config.IdempotencyConfig config = new Config.IdempotencyConfig();
+        config.setEnabled(enabled);
+        config.setContentHash(contentHash);
+        config.setTtlSeconds(ttlSeconds);
+        config.setMaxEntries(maxEntries);
+        return config;
+    }
+
+    @Override
+    protected void hash(Object request, MessageDigest digest) throws IOException {
+        objectMapper.writeValue(new DigestOutputStream(OutputStream.nullOutputStream(), digest), request);
+    }
+}
@@ -0,0 +1,246 @@
+package com.messageflow.api.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.messageflow.api.models.EmailRequest;
+import com.messageflow.api.models.EmailResponse;
+import com.messageflow.api.models.JobStatus;
+import com.messageflow.api.models.SmsRequest;
+import com.messageflow.api.models.SmsResponse;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Accept-and-dispatch execution of SMS and email sends.
+ *
+ * Jobs are placed on a bounded in-process queue drained by a fixed-size worker pool, so a slow
+ * upstream only delays the job, not the HTTP client that submitted it. Finished jobs are kept
+ * for messageflow.async.job-retention-seconds so their result can be read from GET /jobs/{id}.
+ *
+ * With messageflow.outbox.enabled, every job is journaled in the {@link Outbox} before it is
+ * acknowledged and marked done when it finishes. Jobs still pending when the instance stopped are
+ * queued again on startup, under their original job ID.
+ */
+@Service
+public class JobService {
+
+    private static final Logger logger = LoggerFactory.getLogger(JobService.class);
+
+    private final SmsService smsService;
+    private final EmailService emailService;
+    private final Outbox outbox;
+    private final ObjectMapper objectMapper;
+    private final ThreadPoolExecutor workers;
+    private final ScheduledExecutorService cleaner;
+    private final Map<String, JobStatus> jobs = new ConcurrentHashMap<>();
+    private final long retentionMillis;
+
+    public JobService(SmsService smsService,
+                      EmailService emailService,
+                      Outbox outbox,
+                      ObjectMapper objectMapper,
+                      Environment environment,
+                      MeterRegistry meterRegistry,
+                      @Value("${messageflow.async.workers:32}") int workerCount,
+                      @Value("${messageflow.async.queue-capacity:10000}") int queueCapacity,
+                      @Value("${messageflow.async.job-retention-seconds:3600}") long retentionSeconds) {
+        this.smsService = smsService;
+        this.emailService = emailService;
+        this.outbox = outbox;
+        this.objectMapper = objectMapper;
+        this.retentionMillis = TimeUnit.SECONDS.toMillis(retentionSeconds);
+
+        ThreadFactory threadFactory = Threading.VIRTUAL.isActive(environment)
+                ? Thread.ofVirtual().name("job-worker-", 0).factory()
+                : Thread.ofPlatform().name("job-worker-", 0).daemon(true).factory();
+        this.workers = new ThreadPoolExecutor(workerCount, workerCount, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+        // executor.queued, executor.active, executor.queue.remaining, ... tagged name=messageflow.async
+        new ExecutorServiceMetrics(workers, "messageflow.async", List.of()).bindTo(meterRegistry);
+
+        this.cleaner = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("job-cleaner").daemon(true).factory());
+        this.cleaner.scheduleWithFixedDelay(this::evictExpiredJobs, 1, 1, TimeUnit.MINUTES);
+
+        logger.info("Async dispatch enabled: workers={}, queueCapacity={}, retention={}s",
+                workerCount, queueCapacity, retentionSeconds);
+
+        List<Outbox.Entry> recovered = outbox.recover();
+        if (!recovered.isEmpty()) {
+            Thread.ofPlatform().name("outbox-replay").daemon(true).start(() -> replay(recovered));
+        }
+    }
+
+    /**
+     * Queue an SMS send. Returns the queued job, or null when the queue is full.
+     */
+    public JobStatus submitSms(SmsRequest request) {
+        if (outbox.isEnabled() && (request.getExternalId() == null || request.getExternalId().isEmpty())) {
+            // Journaled with the request, so a job replayed after a restart keeps its externalId
+            // and MessageFlow can drop it if the first attempt went through
+            request.setExternalId(UUID.randomUUID().toString());
+        }
+        return submit("sms", request, () -> smsService.sendSms(request));
+    }
+
+    /**
+     * Queue an email send. Returns the queued job, or null when the queue is full.
+     */
+    public JobStatus submitEmail(EmailRequest request) {
+        return submit("email", request, () -> emailService.sendEmail(request));
+    }
+
+    public JobStatus getJob(String jobId) {
+        return jobs.get(jobId);
+    }
+
+    private JobStatus submit(String type, Object request, Supplier<Object> send) {
+        UUID id = UUID.randomUUID();
+        long submittedAt = System.currentTimeMillis();
+        if (outbox.isEnabled()) {
+            try {
+                outbox.append(id, type, submittedAt, objectMapper.writeValueAsBytes(request));
+            } catch (JsonProcessingException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        try {
+            return dispatch(id, type, submittedAt, send);
+        } catch (RejectedExecutionException e) {
+            outbox.done(id);
+            logger.warn("Async dispatch queue is full, rejecting {} job", type);
+            return null;
+        }
+    }
+
+    private JobStatus dispatch(UUID id, String type, long submittedAt, Supplier<Object> send) {
+        String jobId = id.toString();
+        JobStatus queued = new JobStatus(jobId, type, JobStatus.QUEUED, submittedAt);
+        jobs.put(jobId, queued);
+
+        try {
+            workers.execute(() -> {
+                jobs.put(jobId, new JobStatus(jobId, type, JobStatus.RUNNING, submittedAt));
+                Object result;
+                try {
+                    result = send.get();
+                } catch (RuntimeException e) {
+                    logger.error("Async {} job {} failed", type, jobId, e);
+                    result = "sms".equals(type)
+                            ? new SmsResponse(false, "An error occurred: " + e.getMessage())
+                            : new EmailResponse(false, "An error occurred: " + e.getMessage());
+                } finally {
+                    // Failed sends are done too: their result is reported here, and the retry
+                    // policy has already retried what was worth retrying. A job that threw would
+                    // throw again if it were replayed after a restart.
+                    outbox.done(id);
+                }
+                jobs.put(jobId, new JobStatus(jobId, type, JobStatus.COMPLETED, submittedAt,
+                        System.currentTimeMillis(), result));
+            });
+        } catch (RejectedExecutionException e) {
+            jobs.remove(jobId);
+            throw e;
+        }
+
+        return queued;
+    }
+
+    /**
+     * Queue a job released by the {@link SendScheduler}, waiting for room in the queue when it is
+     * full. The payload is the serialized SmsRequest or EmailRequest. Returns false when the app is
+     * shutting down and the job was not queued.
+     */
+    public boolean submitScheduled(UUID id, String type, long submittedAt, byte[] payload) {
+        outbox.append(id, type, submittedAt, payload);
+        return enqueue(id, type, submittedAt, payload);
+    }
+
+    private void replay(List<Outbox.Entry> entries) {
+        logger.info("Replaying {} jobs from the outbox", entries.size());
+        for (Outbox.Entry entry : entries) {
+            if (!enqueue(entry.id(), entry.channel(), entry.submittedAt(), entry.payload())) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Queue a serialized job, waiting for room in the queue when it is full.
+     */
+    private boolean enqueue(UUID id, String type, long submittedAt, byte[] payload) {
+        Supplier<Object> send;
+        try {
+            if ("sms".equals(type)) {
+                SmsRequest request = objectMapper.readValue(payload, SmsRequest.class);
+                send = () -> smsService.sendSms(request);
+            } else {
+                EmailRequest request = objectMapper.readValue(payload, EmailRequest.class);
+                send = () -> emailService.sendEmail(request);
+            }
+        } catch (IOException e) {
+            logger.error("Dropping unreadable {} job {}: {}", type, id, e.getMessage());
+            outbox.done(id);
+            return true;
+        }
+
+        while (true) {
+            try {
+                dispatch(id, type, submittedAt, send);
+                return true;
+            } catch (RejectedExecutionException e) {
+                if (workers.isShutdown()) {
+                    return false;
+                }
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+    }
+
+    private void evictExpiredJobs() {
+        long cutoff = System.currentTimeMillis() - retentionMillis;
+        jobs.values().removeIf(job -> job.getCompletedAt() != null && job.getCompletedAt() < cutoff);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        cleaner.shutdownNow();
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(30, TimeUnit.SECONDS)) {
+                logger.warn("Async dispatch did not drain within 30s, {} jobs dropped", workers.shutdownNow().size());
+            }
+        } catch (InterruptedException e) {
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
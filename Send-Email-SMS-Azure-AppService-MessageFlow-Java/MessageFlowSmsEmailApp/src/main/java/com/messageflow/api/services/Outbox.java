@@ -0,0 +1,577 @@
+package com.messageflow.api.services;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only journal of accepted async sends, so that jobs queued or running when the instance
+ * stops are sent after it restarts.
+ *
+ * The journal is a sequence of memory-mapped segment files of messageflow.outbox.segment-size-mb
+ * in messageflow.outbox.directory. A send is appended before it is acknowledged and marked done
+ * once its job has finished; on startup the sends that were never marked done are returned by
+ * {@link #recover()}. Each record is [length][CRC32C][type][job id][submittedAt][payload], so a
+ * record torn by a crash is detected and ignored.
+ *
+ * Sends held by the {@link SendScheduler} are journaled when they are scheduled, with their sendAt
+ * before the payload, and returned by {@link #recoverScheduled()} on startup. When a scheduled
+ * send is due, the record of its job replaces the scheduled one.
+ *
+ * Writes go to the page cache, which survives a crash of the process. messageflow.outbox.fsync
+ * sets when they are also forced to disk, to survive a crash of the host:
+ * - batch: append waits for the next fsync. A single flusher thread forces everything appended so
+ *   far, so concurrent appends share one fsync (group commit).
+ * - interval: fsync every fsync-interval-ms without waiting; a host crash loses at most that much.
+ * - none: left to the operating system.
+ *
+ * Segments are deleted from the oldest once none of their sends is pending. When the oldest
+ * segment holds less than a quarter live data, its pending sends are copied into the current
+ * segment so that it can be deleted (compaction). Deleting only from the oldest keeps every done
+ * marker until the send it refers to is gone.
+ */
+@Component
+public class Outbox {
+
+    private static final Logger logger = LoggerFactory.getLogger(Outbox.class);
+
+    public enum Fsync { BATCH, INTERVAL, NONE }
+
+    private static final byte SMS = 1;
+    private static final byte EMAIL = 2;
+    private static final byte DONE = 3;
+    private static final byte SCHEDULED_SMS = 4;
+    private static final byte SCHEDULED_EMAIL = 5;
+
+    // length and checksum, then type, job id and submittedAt
+    private static final int HEADER_BYTES = 8;
+    private static final int FIXED_BODY_BYTES = 1 + 16 + 8;
+    private static final double COMPACT_BELOW_LIVE_RATIO = 0.25;
+    private static final String SEGMENT_PREFIX = "outbox-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final boolean enabled;
+    private final Path directory;
+    private final int segmentBytes;
+    private final Fsync fsync;
+    private final long fsyncIntervalNanos;
+    private final Timer appendTimer;
+    private final Timer fsyncTimer;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition appended = lock.newCondition();
+    private final Condition synced = lock.newCondition();
+
+    // Guarded by lock
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    private final Map<UUID, Location> pending = new HashMap<>();
+    private final Set<Segment> dirty = new LinkedHashSet<>();
+    private final List<Path> undeleted = new ArrayList<>();
+    private List<Entry> recovered = List.of();
+    private List<Entry> recoveredScheduled = List.of();
+    private Segment current;
+    private long nextSegment;
+    private long appendedRecords;
+    private long syncedRecords;
+    private boolean closed;
+
+    private Thread flusher;
+
+    public Outbox(MeterRegistry meterRegistry,
+                  @Value("${messageflow.outbox.enabled:false}") boolean enabled,
+                  @Value("${messageflow.outbox.directory:outbox}") String directory,
+                  @Value("${messageflow.outbox.segment-size-mb:64}") int segmentSizeMb,
+                  @Value("${messageflow.outbox.fsync:batch}") String fsync,
+                  @Value("${messageflow.outbox.fsync-interval-ms:10}") long fsyncIntervalMs) {
+        this.enabled = enabled;
+        this.directory = Path.of(directory);
+        this.segmentBytes = (int) Math.min(Integer.MAX_VALUE, Math.max(1, segmentSizeMb) * 1024L * 1024L);
+        this.fsync = Fsync.valueOf(fsync.trim().toUpperCase(Locale.ROOT));
+        this.fsyncIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, fsyncIntervalMs));
+        this.appendTimer = Timer.builder("messageflow.outbox.append")
+                .description("Time to journal an accepted send, including the wait for fsync in batch mode")
+                .register(meterRegistry);
+        this.fsyncTimer = Timer.builder("messageflow.outbox.fsync")
+                .description("Duration of each outbox fsync")
+                .register(meterRegistry);
+        Gauge.builder("messageflow.outbox.pending", this, Outbox::pendingCount)
+                .description("Accepted sends not yet marked done")
+                .register(meterRegistry);
+        Gauge.builder("messageflow.outbox.segments", this, Outbox::segmentCount)
+                .description("Outbox segment files")
+                .register(meterRegistry);
+
+        if (!enabled) {
+            return;
+        }
+        try {
+            open();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open outbox in " + this.directory.toAbsolutePath(), e);
+        }
+        if (this.fsync != Fsync.NONE) {
+            flusher = Thread.ofPlatform().name("outbox-flusher").daemon(true).start(this::flushLoop);
+        }
+        logger.info("Outbox enabled: directory={}, segmentSize={}MB, fsync={}, recovered={}, scheduled={}",
+                this.directory.toAbsolutePath(), segmentSizeMb, this.fsync, recovered.size(), recoveredScheduled.size());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Sends that were accepted but not marked done before the last shutdown. Returned once.
+     */
+    public List<Entry> recover() {
+        lock.lock();
+        try {
+            List<Entry> entries = recovered;
+            recovered = List.of();
+            return entries;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Scheduled sends that were not due, cancelled or marked done before the last shutdown, in
+     * the order they were submitted. Returned once.
+     */
+    public List<Entry> recoverScheduled() {
+        lock.lock();
+        try {
+            List<Entry> entries = recoveredScheduled;
+            recoveredScheduled = List.of();
+            return entries;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Journal an accepted send. In batch fsync mode this returns once the record is on disk.
+     */
+    public void append(UUID id, String channel, long submittedAt, byte[] payload) {
+        if (enabled) {
+            append(id, encode("sms".equals(channel) ? SMS : EMAIL, id, submittedAt, 0, payload));
+        }
+    }
+
+    /**
+     * Journal a send held until sendAt, like {@link #append}. Cancelling it is marking it done.
+     */
+    public void appendScheduled(UUID id, String channel, long submittedAt, long sendAt, byte[] payload) {
+        if (enabled) {
+            append(id, encode("sms".equals(channel) ? SCHEDULED_SMS : SCHEDULED_EMAIL, id, submittedAt, sendAt, payload));
+        }
+    }
+
+    private void append(UUID id, byte[] record) {
+        long start = System.nanoTime();
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Outbox is closed");
+            }
+            Location previous = pending.remove(id);
+            if (previous != null) {
+                previous.segment.remove(id, previous.length);
+            }
+            pending.put(id, write(id, record));
+            long sequence = ++appendedRecords;
+            if (fsync == Fsync.BATCH) {
+                appended.signal();
+                while (syncedRecords < sequence && !closed) {
+                    synced.awaitUninterruptibly();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write to outbox", e);
+        } finally {
+            lock.unlock();
+        }
+        appendTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Mark a send done, so that it is not sent again after a restart. Done markers are not waited
+     * for: a marker lost in a host crash only means the send is repeated.
+     */
+    public void done(UUID id) {
+        if (!enabled) {
+            return;
+        }
+        byte[] record = encode(DONE, id, 0, 0, new byte[0]);
+        lock.lock();
+        try {
+            Location location = pending.remove(id);
+            if (location == null || closed) {
+                return;
+            }
+            // Detached first, so that a compaction triggered by this write does not copy it
+            location.segment.remove(id, location.length);
+            write(null, record);
+            appendedRecords++;
+            deleteDrainedSegments();
+        } catch (IOException e) {
+            logger.warn("Could not mark outbox entry {} done: {}", id, e.getMessage());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static boolean isScheduled(byte type) {
+        return type == SCHEDULED_SMS || type == SCHEDULED_EMAIL;
+    }
+
+    private static byte[] encode(byte type, UUID id, long submittedAt, long sendAt, byte[] payload) {
+        int bodyLength = FIXED_BODY_BYTES + (isScheduled(type) ? 8 : 0) + payload.length;
+        ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + bodyLength);
+        record.putInt(bodyLength);
+        record.putInt(0);
+        record.put(type);
+        record.putLong(id.getMostSignificantBits());
+        record.putLong(id.getLeastSignificantBits());
+        record.putLong(submittedAt);
+        if (isScheduled(type)) {
+            record.putLong(sendAt);
+        }
+        record.put(payload);
+
+        CRC32C crc = new CRC32C();
+        crc.update(record.array(), HEADER_BYTES, bodyLength);
+        record.putInt(4, (int) crc.getValue());
+        return record.array();
+    }
+
+    // Called with lock held
+    private Location write(UUID id, byte[] record) throws IOException {
+        if (current == null || current.position + record.length > current.buffer.capacity()) {
+            roll(record.length);
+        }
+        Location location = new Location(current, current.position, record.length);
+        current.buffer.put(current.position, record);
+        current.position += record.length;
+        if (id != null) {
+            current.add(id, record.length);
+        }
+        dirty.add(current);
+        return location;
+    }
+
+    // Called with lock held
+    private void roll(int minBytes) throws IOException {
+        current = createSegment(Math.max(segmentBytes, minBytes));
+        segments.addLast(current);
+        compact(minBytes);
+        deleteDrainedSegments();
+    }
+
+    /**
+     * Copy the pending sends of sparsely used segments at the head into the current segment,
+     * leaving room for the record being written.
+     */
+    private void compact(int reserveBytes) throws IOException {
+        for (Segment segment : segments) {
+            if (segment == current || segment.liveBytes >= segment.buffer.capacity() * COMPACT_BELOW_LIVE_RATIO
+                    || current.position + segment.liveBytes + reserveBytes > current.buffer.capacity()) {
+                return;
+            }
+            for (UUID id : new ArrayList<>(segment.ids)) {
+                Location location = pending.get(id);
+                byte[] record = new byte[location.length];
+                segment.buffer.get(location.offset, record);
+                pending.put(id, write(id, record));
+                segment.remove(id, location.length);
+            }
+        }
+    }
+
+    private void deleteDrainedSegments() {
+        while (segments.size() > 1 && segments.peekFirst().ids.isEmpty()) {
+            Segment segment = segments.removeFirst();
+            dirty.remove(segment);
+            undeleted.add(segment.path);
+        }
+        // Files that are still mapped cannot be deleted on Windows; they are retried on later calls
+        undeleted.removeIf(path -> {
+            try {
+                Files.deleteIfExists(path);
+                return true;
+            } catch (IOException e) {
+                return false;
+            }
+        });
+    }
+
+    private Segment createSegment(int bytes) throws IOException {
+        Path path = directory.resolve(String.format("%s%016d%s", SEGMENT_PREFIX, nextSegment++, SEGMENT_SUFFIX));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return new Segment(path, channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes));
+        }
+    }
+
+    /**
+     * Replay the existing segments, then start a new one; recovered segments are never appended to.
+     */
+    private void open() throws IOException {
+        Files.createDirectories(directory);
+        List<Path> paths = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            files.forEach(paths::add);
+        }
+        paths.sort(null);
+
+        for (Path path : paths) {
+            String name = path.getFileName().toString();
+            long number = Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+            nextSegment = Math.max(nextSegment, number + 1);
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                Segment segment = new Segment(path, channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size()));
+                segments.addLast(segment);
+                replay(segment);
+            }
+        }
+
+        List<Entry> entries = new ArrayList<>(pending.size());
+        List<Entry> scheduled = new ArrayList<>();
+        pending.forEach((id, location) -> {
+            Entry entry = decode(id, location);
+            (entry.scheduled() ? scheduled : entries).add(entry);
+        });
+        entries.sort((a, b) -> Long.compare(a.submittedAt(), b.submittedAt()));
+        scheduled.sort((a, b) -> Long.compare(a.submittedAt(), b.submittedAt()));
+        recovered = entries;
+        recoveredScheduled = scheduled;
+
+        lock.lock();
+        try {
+            roll(0);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void replay(Segment segment) {
+        MappedByteBuffer buffer = segment.buffer;
+        int position = 0;
+        while (position + HEADER_BYTES + FIXED_BODY_BYTES <= buffer.capacity()) {
+            int bodyLength = buffer.getInt(position);
+            if (bodyLength < FIXED_BODY_BYTES || bodyLength > buffer.capacity() - position - HEADER_BYTES) {
+                break;
+            }
+            CRC32C crc = new CRC32C();
+            crc.update(buffer.slice(position + HEADER_BYTES, bodyLength));
+            if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+                // Torn or never written: the end of this segment's records
+                break;
+            }
+
+            int recordLength = HEADER_BYTES + bodyLength;
+            byte type = buffer.get(position + HEADER_BYTES);
+            UUID id = new UUID(buffer.getLong(position + HEADER_BYTES + 1), buffer.getLong(position + HEADER_BYTES + 9));
+            Location previous = pending.remove(id);
+            if (previous != null) {
+                previous.segment.remove(id, previous.length);
+            }
+            if (type != DONE) {
+                pending.put(id, new Location(segment, position, recordLength));
+                segment.add(id, recordLength);
+            }
+            position += recordLength;
+        }
+        segment.position = position;
+        segment.forcedTo = position;
+    }
+
+    private static Entry decode(UUID id, Location location) {
+        MappedByteBuffer buffer = location.segment.buffer;
+        int body = location.offset + HEADER_BYTES;
+        byte type = buffer.get(body);
+        long submittedAt = buffer.getLong(body + 17);
+        int payloadOffset = FIXED_BODY_BYTES;
+        long sendAt = 0;
+        if (isScheduled(type)) {
+            sendAt = buffer.getLong(body + FIXED_BODY_BYTES);
+            payloadOffset += 8;
+        }
+        byte[] payload = new byte[location.length - HEADER_BYTES - payloadOffset];
+        buffer.get(body + payloadOffset, payload);
+        return new Entry(id, type == SMS || type == SCHEDULED_SMS ? "sms" : "email", isScheduled(type),
+                submittedAt, sendAt, payload);
+    }
+
+    private void flushLoop() {
+        while (true) {
+            long target;
+            List<Segment> toForce;
+            List<Integer> forceTo = new ArrayList<>();
+            lock.lock();
+            try {
+                if (fsync == Fsync.INTERVAL) {
+                    appended.awaitNanos(fsyncIntervalNanos);
+                } else {
+                    while (appendedRecords == syncedRecords && !closed) {
+                        appended.await();
+                    }
+                }
+                if (closed) {
+                    return;
+                }
+                target = appendedRecords;
+                toForce = new ArrayList<>(dirty);
+                for (Segment segment : toForce) {
+                    forceTo.add(segment.position);
+                }
+                dirty.clear();
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            // Appends continue while the flusher forces; they are picked up by the next fsync
+            long start = System.nanoTime();
+            for (int i = 0; i < toForce.size(); i++) {
+                toForce.get(i).force(forceTo.get(i));
+            }
+            if (!toForce.isEmpty()) {
+                fsyncTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+
+            lock.lock();
+            try {
+                syncedRecords = Math.max(syncedRecords, target);
+                synced.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        if (!enabled) {
+            return;
+        }
+        lock.lock();
+        try {
+            closed = true;
+            appended.signalAll();
+            synced.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (flusher != null) {
+            try {
+                flusher.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        lock.lock();
+        try {
+            for (Segment segment : segments) {
+                segment.force(segment.position);
+            }
+            dirty.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int pendingCount() {
+        lock.lock();
+        try {
+            return pending.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int segmentCount() {
+        lock.lock();
+        try {
+            return segments.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * An accepted send read back from the journal. sendAt is only set for scheduled sends.
+     */
+    public record Entry(UUID id, String channel, boolean scheduled, long submittedAt, long sendAt, byte[] payload) {
+    }
+
+    private record Location(Segment segment, int offset, int length) {
+    }
+
+    private static final class Segment {
+
+        private final Path path;
+        private final MappedByteBuffer buffer;
+        // Guarded by the outbox lock
+        private final Set<UUID> ids = new HashSet<>();
+        private long liveBytes;
+        private int position;
+        // Only touched by the flusher, or on close after the flusher stopped
+        private int forcedTo;
+
+        private Segment(Path path, MappedByteBuffer buffer) {
+            this.path = path;
+            this.buffer = buffer;
+        }
+
+        private void add(UUID id, int length) {
+            if (ids.add(id)) {
+                liveBytes += length;
+            }
+        }
+
+        private void remove(UUID id, int length) {
+            if (ids.remove(id)) {
+                liveBytes -= length;
+            }
+        }
+
+        private void force(int to) {
+            if (to > forcedTo) {
+                buffer.force(forcedTo, to - forcedTo);
+                forcedTo = to;
+            }
+        }
+    }
+}
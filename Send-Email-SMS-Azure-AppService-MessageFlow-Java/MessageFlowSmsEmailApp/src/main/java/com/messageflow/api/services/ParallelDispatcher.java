@@ -0,0 +1,78 @@
+package com.messageflow.api.services;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Runs a function over a list of items with bounded parallelism and returns the results in item order.
+ *
+ * At most {@code parallelism} workers are started per call; they pull items from a shared cursor,
+ * so a large list never queues one task per item. Workers run on virtual threads when
+ * spring.threads.virtual.enabled=true. Nested calls (a batch item that fans out into chunks) are
+ * safe because the executor is not bounded.
+ */
+@Component
+public class ParallelDispatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(ParallelDispatcher.class);
+
+    private final ExecutorService executor;
+
+    public ParallelDispatcher(Environment environment) {
+        this.executor = Threading.VIRTUAL.isActive(environment)
+                ? Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("dispatch-worker-", 0).factory())
+                : Executors.newCachedThreadPool(Thread.ofPlatform().name("dispatch-worker-", 0).daemon(true).factory());
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T, R> List<R> dispatch(List<T> items, int parallelism, Function<T, R> task, Function<Exception, R> onError) {
+        Object[] results = new Object[items.size()];
+        AtomicInteger cursor = new AtomicInteger();
+
+        Runnable worker = () -> {
+            int index;
+            while ((index = cursor.getAndIncrement()) < items.size()) {
+                try {
+                    results[index] = task.apply(items.get(index));
+                } catch (Exception e) {
+                    logger.error("Error processing item {}: {}", index, e.getMessage());
+                    results[index] = onError.apply(e);
+                }
+            }
+        };
+
+        int workerCount = Math.max(1, Math.min(parallelism, items.size()));
+        List<CompletableFuture<Void>> workers = new ArrayList<>(workerCount);
+        for (int i = 0; i < workerCount; i++) {
+            workers.add(CompletableFuture.runAsync(worker, executor));
+        }
+        CompletableFuture.allOf(workers.toArray(new CompletableFuture[0])).join();
+
+        return (List<R>) Arrays.asList(results);
+    }
+
+    /**
+     * Run a single task on the dispatch executor. Callers are responsible for bounding concurrency.
+     */
+    public void execute(Runnable task) {
+        executor.execute(task);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,444 @@
+package com.messageflow.api.services;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.messageflow.api.config.JacksonConfig;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.StreamingHttpOutputMessage;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RequestCallback;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Serializes outbound MessageFlow payloads straight from the request model into pooled byte buffers.
+ *
+ * The model is written once; the same bytes are logged and copied onto the wire by
+ * {@link Buffer#requestCallback(HttpHeaders)}, so no intermediate Map or String is built.
+ * Buffers are returned to the pool on {@link Buffer#close()}; buffers that grew above
+ * messageflow.serialization.max-pooled-buffer-bytes are dropped instead, so one large request
+ * does not keep its memory for the lifetime of the app.
+ *
+ * Email payloads with uploaded or stored files are written by {@link #write(Object, List)}: only
+ * the request itself is buffered, and each file is base64-encoded on the fly (or, when stored
+ * already encoded, copied) while the body is sent.
+ *
+ * With messageflow.compression.mode=gzip, buffered payloads of at least
+ * messageflow.compression.min-bytes are gzip-compressed once, after serialization, and sent with
+ * Content-Encoding: gzip; every attempt reuses the compressed bytes. Payloads with streamed files
+ * are sent uncompressed. Upstream responses are requested with Accept-Encoding: gzip and read by
+ * {@link #readResponse(ClientHttpResponse)}.
+ */
+@Component
+public class PayloadWriter {
+
+    private static final int INITIAL_BUFFER_BYTES = 8192;
+    private static final byte[] ATTACHMENTS_START = ",\"attachments\":[".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] ATTACHMENT_END = "\"}".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] ATTACHMENTS_END = "]}".getBytes(StandardCharsets.US_ASCII);
+    private static final String GZIP = "gzip";
+
+    private final ObjectMapper objectMapper;
+    private final BlockingQueue<Buffer> pool;
+    private final int maxPooledBufferBytes;
+    private final boolean gzip;
+    private final int minCompressBytes;
+    private final int compressionLevel;
+
+    public PayloadWriter(ObjectMapper objectMapper,
+                         @Value("${messageflow.serialization.buffer-pool-size:64}") int poolSize,
+                         @Value("${messageflow.serialization.max-pooled-buffer-bytes:1048576}") int maxPooledBufferBytes,
+                         @Value("${messageflow.compression.mode:none}") String compressionMode,
+                         @Value("${messageflow.compression.min-bytes:16384}") int minCompressBytes,
+                         @Value("${messageflow.compression.level:1}") int compressionLevel,
+                         @Value("${messageflow.json.prefetch:true}") boolean prefetch) {
+        // Optional fields are omitted from the payload regardless of spring.jackson settings
+        this.objectMapper = objectMapper.copy()
+                .setSerializationInclusion(JsonInclude.Include.NON_NULL)
+                .configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+        if (prefetch) {
+            JacksonConfig.prefetch(this.objectMapper);
+        }
+        this.pool = new ArrayBlockingQueue<>(Math.max(1, poolSize));
+        this.maxPooledBufferBytes = maxPooledBufferBytes;
+        this.gzip = switch (compressionMode.trim().toLowerCase()) {
+            case GZIP -> true;
+            case "none" -> false;
+            default -> throw new IllegalArgumentException("messageflow.compression.mode must be none or gzip: " + compressionMode);
+        };
+        this.minCompressBytes = minCompressBytes;
+        this.compressionLevel = compressionLevel;
+    }
+
+    /**
+     * Serialize a payload into a pooled buffer, compressed when configured. Close the buffer once
+     * the request has been sent.
+     */
+    public Buffer write(Object payload) throws IOException {
+        Buffer buffer = serialize(payload);
+        if (gzip && buffer.size() >= minCompressBytes) {
+            buffer.compress(compressionLevel);
+        }
+        return buffer;
+    }
+
+    private Buffer serialize(Object payload) throws IOException {
+        Buffer buffer = pool.poll();
+        if (buffer == null) {
+            buffer = new Buffer(this);
+        }
+        buffer.released = false;
+        buffer.compressedLength = -1;
+        try {
+            objectMapper.writeValue(buffer, payload);
+            return buffer;
+        } catch (IOException | RuntimeException e) {
+            buffer.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Serialize an email payload whose attachments are streamed from the given files. The payload
+     * must not have attachments of its own. Close the payload once the request has been sent.
+     */
+    public Payload write(Object payload, List<Attachment> attachments) throws IOException {
+        if (attachments.isEmpty()) {
+            return write(payload);
+        }
+        List<byte[]> headers = new ArrayList<>(attachments.size());
+        for (Attachment attachment : attachments) {
+            headers.add(("{\"fileName\":" + objectMapper.writeValueAsString(attachment.fileName())
+                    + ",\"fileMimeType\":" + objectMapper.writeValueAsString(attachment.mimeType())
+                    + ",\"fileContent\":\"").getBytes(StandardCharsets.UTF_8));
+        }
+        return new AttachmentPayload(serialize(payload), attachments, headers);
+    }
+
+    private void release(Buffer buffer) {
+        if (buffer.capacity() <= maxPooledBufferBytes) {
+            buffer.reset();
+            if (pool.offer(buffer)) {
+                return;
+            }
+        }
+        buffer.discard();
+    }
+
+    /**
+     * Read an upstream response as a String. The HTTP/1.1 client decompresses responses itself;
+     * the HTTP/2 client does not, so a body still marked Content-Encoding: gzip is decompressed here.
+     * Use as the ResponseExtractor of RestTemplate.execute.
+     */
+    public static ResponseEntity<String> readResponse(ClientHttpResponse response) throws IOException {
+        HttpHeaders headers = response.getHeaders();
+        byte[] body = response.getBody().readAllBytes();
+        if (GZIP.equalsIgnoreCase(headers.getFirst(HttpHeaders.CONTENT_ENCODING))) {
+            if (body.length > 0) {
+                try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+                    body = in.readAllBytes();
+                }
+            }
+            HttpHeaders decoded = new HttpHeaders();
+            decoded.putAll(headers);
+            decoded.remove(HttpHeaders.CONTENT_ENCODING);
+            decoded.remove(HttpHeaders.CONTENT_LENGTH);
+            headers = decoded;
+        }
+        MediaType contentType = headers.getContentType();
+        Charset charset = contentType != null && contentType.getCharset() != null ? contentType.getCharset() : StandardCharsets.UTF_8;
+        return ResponseEntity.status(response.getStatusCode()).headers(headers)
+                .body(body.length > 0 ? new String(body, charset) : null);
+    }
+
+    private static void prepare(ClientHttpRequest request, HttpHeaders headers, long contentLength, boolean gzipped) {
+        request.getHeaders().putAll(headers);
+        if (!request.getHeaders().containsKey(HttpHeaders.ACCEPT_ENCODING)) {
+            request.getHeaders().set(HttpHeaders.ACCEPT_ENCODING, GZIP);
+        }
+        if (gzipped) {
+            request.getHeaders().set(HttpHeaders.CONTENT_ENCODING, GZIP);
+        }
+        request.getHeaders().setContentLength(contentLength);
+    }
+
+    /**
+     * An outbound payload, written onto the wire by {@link #requestCallback(HttpHeaders)}.
+     */
+    public interface Payload extends AutoCloseable {
+
+        /**
+         * Bytes sent on the wire, after compression.
+         */
+        long contentLength();
+
+        /**
+         * Decode the payload for logging. Allocates a String, so guard calls with a log level check.
+         */
+        String asString();
+
+        /**
+         * RestTemplate callback that sends the given headers and writes this payload as the body.
+         * The payload must stay open until RestTemplate.execute returns.
+         */
+        RequestCallback requestCallback(HttpHeaders headers);
+
+        @Override
+        void close();
+    }
+
+    /**
+     * A file sent as an email attachment. The content is opened again for every attempt to send it,
+     * and must have exactly size bytes. Content that is already base64 is copied as it is.
+     */
+    public record Attachment(String fileName, String mimeType, long size, boolean base64, Content content) {
+
+        public Attachment(String fileName, String mimeType, long size, Content content) {
+            this(fileName, mimeType, size, false, content);
+        }
+
+        public static Attachment base64(String fileName, String mimeType, long encodedSize, Content content) {
+            return new Attachment(fileName, mimeType, encodedSize, true, content);
+        }
+
+        long encodedSize() {
+            return base64 ? size : 4 * ((size + 2) / 3);
+        }
+
+        @FunctionalInterface
+        public interface Content {
+            InputStream open() throws IOException;
+        }
+    }
+
+    public static final class Buffer extends ByteArrayOutputStream implements Payload {
+
+        // gzip header: deflate, no flags, no mtime, unknown OS
+        private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+        private static final int GZIP_TRAILER_BYTES = 8;
+
+        private final PayloadWriter owner;
+        private boolean released;
+        // Kept with the buffer in the pool, so compression allocates nothing once warmed up
+        private Deflater deflater;
+        private byte[] compressed = new byte[0];
+        private int compressedLength = -1;
+
+        private Buffer(PayloadWriter owner) {
+            super(INITIAL_BUFFER_BYTES);
+            this.owner = owner;
+        }
+
+        int capacity() {
+            return Math.max(buf.length, compressed.length);
+        }
+
+        /**
+         * gzip the serialized payload into the second array. Payloads that do not shrink are sent as they are.
+         */
+        void compress(int level) {
+            if (deflater == null) {
+                deflater = new Deflater(level, true);
+            } else {
+                deflater.reset();
+            }
+            if (compressed.length < count / 2 + GZIP_HEADER.length + GZIP_TRAILER_BYTES) {
+                compressed = new byte[count / 2 + GZIP_HEADER.length + GZIP_TRAILER_BYTES];
+            }
+            System.arraycopy(GZIP_HEADER, 0, compressed, 0, GZIP_HEADER.length);
+            int length = GZIP_HEADER.length;
+            deflater.setInput(buf, 0, count);
+            deflater.finish();
+            while (!deflater.finished()) {
+                if (length + GZIP_TRAILER_BYTES >= count) {
+                    return;
+                }
+                if (length == compressed.length) {
+                    compressed = Arrays.copyOf(compressed, compressed.length * 2);
+                }
+                length += deflater.deflate(compressed, length, compressed.length - length);
+            }
+            if (length + GZIP_TRAILER_BYTES >= count) {
+                return;
+            }
+            if (compressed.length < length + GZIP_TRAILER_BYTES) {
+                compressed = Arrays.copyOf(compressed, length + GZIP_TRAILER_BYTES);
+            }
+            CRC32 crc = new CRC32();
+            crc.update(buf, 0, count);
+            writeIntLe(compressed, length, (int) crc.getValue());
+            writeIntLe(compressed, length + 4, count);
+            compressedLength = length + GZIP_TRAILER_BYTES;
+        }
+
+        private static void writeIntLe(byte[] bytes, int offset, int value) {
+            bytes[offset] = (byte) value;
+            bytes[offset + 1] = (byte) (value >>> 8);
+            bytes[offset + 2] = (byte) (value >>> 16);
+            bytes[offset + 3] = (byte) (value >>> 24);
+        }
+
+        private void writeWireTo(OutputStream out) throws IOException {
+            if (compressedLength >= 0) {
+                out.write(compressed, 0, compressedLength);
+            } else {
+                writeTo(out);
+            }
+        }
+
+        // Frees the native memory of the deflater of a buffer that is not pooled again
+        private void discard() {
+            if (deflater != null) {
+                deflater.end();
+                deflater = null;
+            }
+        }
+
+        // Write the JSON object without its closing brace, so more fields can follow
+        void writeOpenTo(OutputStream out) throws IOException {
+            if (count == 0 || buf[count - 1] != '}') {
+                throw new IOException("Payload is not a JSON object");
+            }
+            out.write(buf, 0, count - 1);
+        }
+
+        @Override
+        public long contentLength() {
+            return compressedLength >= 0 ? compressedLength : count;
+        }
+
+        @Override
+        public String asString() {
+            return toString(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public RequestCallback requestCallback(HttpHeaders headers) {
+            return request -> {
+                prepare(request, headers, contentLength(), compressedLength >= 0);
+                if (request instanceof StreamingHttpOutputMessage streaming) {
+                    streaming.setBody(this::writeWireTo);
+                } else {
+                    writeWireTo(request.getBody());
+                }
+            };
+        }
+
+        @Override
+        public void close() {
+            if (!released) {
+                released = true;
+                owner.release(this);
+            }
+        }
+    }
+
+    /**
+     * The buffered request followed by an "attachments" array whose file contents are read and
+     * base64-encoded while the body is written. The exact length is known up front, so the body is
+     * sent with a Content-Length rather than chunked.
+     */
+    private static final class AttachmentPayload implements Payload {
+
+        private final Buffer request;
+        private final List<Attachment> attachments;
+        private final List<byte[]> headers;
+        private final long contentLength;
+
+        private AttachmentPayload(Buffer request, List<Attachment> attachments, List<byte[]> headers) {
+            this.request = request;
+            this.attachments = attachments;
+            this.headers = headers;
+            long length = request.size() - 1 + ATTACHMENTS_START.length + ATTACHMENTS_END.length
+                    + attachments.size() - 1;
+            for (int i = 0; i < attachments.size(); i++) {
+                length += headers.get(i).length + attachments.get(i).encodedSize() + ATTACHMENT_END.length;
+            }
+            this.contentLength = length;
+        }
+
+        @Override
+        public long contentLength() {
+            return contentLength;
+        }
+
+        @Override
+        public String asString() {
+            // The file contents are not logged
+            return request.asString() + " + " + attachments.size() + " streamed attachments";
+        }
+
+        @Override
+        public RequestCallback requestCallback(HttpHeaders headers) {
+            return request -> {
+                prepare(request, headers, contentLength, false);
+                if (request instanceof StreamingHttpOutputMessage streaming) {
+                    streaming.setBody(this::writeTo);
+                } else {
+                    writeTo(request.getBody());
+                }
+            };
+        }
+
+        private void writeTo(OutputStream out) throws IOException {
+            request.writeOpenTo(out);
+            out.write(ATTACHMENTS_START);
+            // Closing the encoder writes its padding; the body itself must stay open
+            OutputStream unclosable = new FilterOutputStream(out) {
+                @Override
+                public void write(byte[] bytes, int offset, int length) throws IOException {
+                    out.write(bytes, offset, length);
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+            for (int i = 0; i < attachments.size(); i++) {
+                if (i > 0) {
+                    out.write(',');
+                }
+                out.write(headers.get(i));
+                Attachment attachment = attachments.get(i);
+                long copied;
+                try (InputStream in = attachment.content().open();
+                     OutputStream base64 = attachment.base64() ? unclosable : Base64.getEncoder().wrap(unclosable)) {
+                    copied = in.transferTo(base64);
+                }
+                if (copied != attachment.size()) {
+                    throw new IOException("Attachment " + attachment.fileName() + " has " + copied
+                            + " bytes, expected " + attachment.size());
+                }
+                out.write(ATTACHMENT_END);
+            }
+            out.write(ATTACHMENTS_END);
+        }
+
+        @Override
+        public void close() {
+            request.close();
+        }
+    }
+}
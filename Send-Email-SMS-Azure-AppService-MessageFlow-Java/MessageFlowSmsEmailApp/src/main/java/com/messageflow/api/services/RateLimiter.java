@@ -0,0 +1,49 @@
+package com.messageflow.api.services;
+
+import com.messageflow.client.utils.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * The client core's token-bucket rate limits on calls to the MessageFlow API, configured with
+ * messageflow.rate-limit.*.
+ *
+ * Every call takes a token from the bucket of the application key
+ * (messageflow.rate-limit.application.rate calls per second, bursts of up to application.burst)
+ * and from the bucket of its sender: the SMS sender or the email smtpAccount (sender.rate and
+ * sender.burst). A call that finds a bucket empty waits for its token, in arrival order; when the
+ * wait would exceed max-wait-ms it is rejected with {@link UpstreamGuard.RejectedException}
+ * instead. A rate of 0 disables that limit.
+ *
+ * Limits are per instance: with several instances, divide the account's limits between them.
+ */
+@Component
+public class RateLimiter extends com.messageflow.client.utils.RateLimiter {
+
+    private static final Logger logger = LoggerFactory.getLogger(RateLimiter.class);
+
+    public RateLimiter(SendMetrics metrics,
+                       @Value("${messageflow.rate-limit.application.rate:0}") double applicationRate,
+                       @Value("${messageflow.rate-limit.application.burst:0}") double applicationBurst,
+                       @Value("${messageflow.rate-limit.sender.rate:0}") double senderRate,
+                       @Value("${messageflow.rate-limit.sender.burst:0}") double senderBurst,
+                       @Value("${messageflow.rate-limit.max-wait-ms:1000}") long maxWaitMs) {
+        super(config(applicationRate, applicationBurst, senderRate, senderBurst, maxWaitMs), metrics);
+
+        logger.info("Rate limits: application={}/s (burst {}), sender={}/s (burst {}), maxWait={}ms",
+                applicationRate, applicationBurst, senderRate, senderBurst, maxWaitMs);
+    }
+
+    private static Config.RateLimitConfig config(double applicationRate, double applicationBurst,
+                                                 double senderRate, double senderBurst, long maxWaitMs) {
+        Config.RateLimitConfig config = new Config.RateLimitConfig();
+        config.setApplicationRate(applicationRate);
+        config.setApplicationBurst(applicationBurst);
+        config.setSenderRate(senderRate);
+        config.setSenderBurst(senderBurst);
+        config.setMaxWaitMs(maxWaitMs);
+        return config;
+    }
+}
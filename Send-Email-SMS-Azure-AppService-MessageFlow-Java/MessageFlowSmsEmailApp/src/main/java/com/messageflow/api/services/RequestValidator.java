@@ -0,0 +1,131 @@
+package com.messageflow.api.services;
+
+import com.messageflow.api.models.EmailContent;
+import com.messageflow.api.models.EmailRequest;
+import com.messageflow.api.models.SmsRequest;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * Required-field validation shared by all endpoints that accept SMS and email requests.
+ * Each method returns the error message for the first missing field, or null when the request is valid.
+ */
+@Component
+public class RequestValidator {
+
+    private final SendMetrics sendMetrics;
+    private final TemplateStore templateStore;
+    private final AttachmentStore attachmentStore;
+
+    public RequestValidator(SendMetrics sendMetrics, TemplateStore templateStore, AttachmentStore attachmentStore) {
+        this.sendMetrics = sendMetrics;
+        this.templateStore = templateStore;
+        this.attachmentStore = attachmentStore;
+    }
+
+    public String validateSms(SmsRequest request) {
+        String error = checkSms(request);
+        if (error != null) {
+            sendMetrics.validationFailure("sms");
+        }
+        return error;
+    }
+
+    public String validateEmail(EmailRequest request) {
+        String error = checkEmail(request);
+        if (error != null) {
+            sendMetrics.validationFailure("email");
+        }
+        return error;
+    }
+
+    private String checkSms(SmsRequest request) {
+        if (request == null) {
+            return "Request body is empty";
+        }
+
+        if (request.getSender() == null || request.getSender().isEmpty()) {
+            return "Missing required field: sender";
+        }
+
+        if (request.getTemplate() != null) {
+            if (!templateStore.exists(request.getTemplate())) {
+                return "Unknown template: " + request.getTemplate();
+            }
+        } else if (request.getMessage() == null || request.getMessage().isEmpty()) {
+            return "Missing required field: message";
+        }
+
+        if (request.getPhoneNumbers() == null || request.getPhoneNumbers().isEmpty()) {
+            return "Missing required field: phoneNumbers (must be a non-empty array)";
+        }
+
+        return null;
+    }
+
+    private String checkEmail(EmailRequest request) {
+        if (request == null) {
+            return "Request body is empty";
+        }
+
+        EmailContent content = request.getContent();
+        String template = content != null ? content.getTemplate() : null;
+        if (template != null && !templateStore.exists(template)) {
+            return "Unknown template: " + template;
+        }
+        if (template != null) {
+            try {
+                templateStore.checkRecipients(template, templateStore.get(template), request.getTo());
+            } catch (TemplateStore.TemplateException e) {
+                return e.getMessage();
+            }
+        }
+
+        // A template may provide the subject
+        if (template == null && (request.getSubject() == null || request.getSubject().isEmpty())) {
+            return "Missing required field: subject";
+        }
+
+        if (request.getSmtpAccount() == null || request.getSmtpAccount().isEmpty()) {
+            return "Missing required field: smtpAccount";
+        }
+
+        if (request.getFrom() == null || request.getFrom().getEmail() == null) {
+            return "Missing required field: from (with email)";
+        }
+
+        if (request.getTo() == null || request.getTo().isEmpty()) {
+            return "Missing required field: to (must be a non-empty array)";
+        }
+
+        if (content == null) {
+            return "Missing required field: content";
+        }
+
+        if (request.getAttachments() != null) {
+            for (int i = 0; i < request.getAttachments().size(); i++) {
+                Map<String, Object> attachment = request.getAttachments().get(i);
+                if (attachment == null) {
+                    continue;
+                }
+                // Stored files keep no metadata, so every attachment names itself
+                for (String field : new String[]{"fileName", "fileMimeType"}) {
+                    if (!(attachment.get(field) instanceof String value) || value.isEmpty()) {
+                        return "Missing required field: attachments[" + i + "]." + field;
+                    }
+                }
+                if (attachment.get("sha256") != null) {
+                    if (!attachmentStore.exists(String.valueOf(attachment.get("sha256")))) {
+                        return "Unknown attachment: " + attachment.get("sha256");
+                    }
+                } else if (!(attachment.get("fileContent") instanceof String fileContent) || fileContent.isEmpty()) {
+                    // Inline attachments carry their own base64 content
+                    return "Missing required field: attachments[" + i + "].fileContent (or sha256)";
+                }
+            }
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,70 @@
+package com.messageflow.api.services;
+
+import com.messageflow.client.utils.Config;
+import org.apache.hc.client5.http.ConnectTimeoutException;
+import org.apache.hc.core5.http.ConnectionRequestTimeoutException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import java.util.function.Supplier;
+
+/**
+ * The client core's retry policy for RestTemplate calls, configured with messageflow.retry.*:
+ * transient failures are retried with exponential backoff, full jitter and a retry budget shared
+ * by all sends.
+ *
+ * Failures where the request may already have been processed (502, 504, connection reset, read
+ * timeout) are retried only for idempotent requests, i.e. SMS sends with an externalId. RestTemplate
+ * wraps I/O failures, so they are classified by their causes, including HttpClient's connect and
+ * connection-pool timeouts, which mean the request was never sent.
+ */
+@Component
+public class RetryPolicy extends com.messageflow.client.utils.RetryPolicy {
+
+    private static final Responses<ResponseEntity<String>> RESPONSES = new Responses<>() {
+        @Override
+        public int status(ResponseEntity<String> response) {
+            return response.getStatusCode().value();
+        }
+
+        @Override
+        public String header(ResponseEntity<String> response, String name) {
+            return response.getHeaders().getFirst(name);
+        }
+    };
+
+    public RetryPolicy(SendMetrics metrics,
+                       @Value("${messageflow.retry.max-attempts:3}") int maxAttempts,
+                       @Value("${messageflow.retry.initial-backoff-ms:200}") long initialBackoffMs,
+                       @Value("${messageflow.retry.max-backoff-ms:5000}") long maxBackoffMs,
+                       @Value("${messageflow.retry.budget-ratio:0.1}") double budgetRatio,
+                       @Value("${messageflow.retry.budget-max-tokens:10}") double budgetMaxTokens) {
+        super(config(maxAttempts, initialBackoffMs, maxBackoffMs, budgetRatio, budgetMaxTokens), metrics);
+    }
+
+    private static Config.RetryConfig config(int maxAttempts, long initialBackoffMs, long maxBackoffMs,
+                                             double budgetRatio, double budgetMaxTokens) {
+        Config.RetryConfig config = new Config.RetryConfig();
+        config.setMaxAttempts(maxAttempts);
+        config.setInitialBackoffMs(initialBackoffMs);
+        config.setMaxBackoffMs(maxBackoffMs);
+        config.setBudgetRatio(budgetRatio);
+        config.setBudgetMaxTokens(budgetMaxTokens);
+        return config;
+    }
+
+    /**
+     * Run a RestTemplate call, retrying it while it fails for a retryable reason and attempts and
+     * budget remain. Rejections by {@link UpstreamGuard} are never retried.
+     */
+    public ResponseEntity<String> execute(String channel, boolean idempotent, Supplier<ResponseEntity<String>> call) {
+        return execute(channel, idempotent, RESPONSES, call::get);
+    }
+
+    @Override
+    protected boolean isConnectFailure(Throwable cause) {
+        return super.isConnectFailure(cause) || cause instanceof ConnectTimeoutException
+                || cause instanceof ConnectionRequestTimeoutException;
+    }
+}
@@ -0,0 +1,135 @@
+package com.messageflow.api.services;
+
+import com.messageflow.api.models.EmailRequest;
+import com.messageflow.api.models.SmsRequest;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Pattern;
+
+/**
+ * Logging for the send path (incoming request, outbound payload, upstream response).
+ *
+ * messageflow.logging.mode=verbose logs every event with full bodies, phone numbers and credential
+ * prefixes, as the app always did. structured logs one key=value line per event, sampled per event
+ * type, with bodies capped at messageflow.logging.max-body-chars and phone numbers, email addresses
+ * and credentials masked. Errors are logged by the callers and are never sampled.
+ */
+@Component
+public class SendLogger {
+
+    public enum Mode { VERBOSE, STRUCTURED }
+
+    private static final Pattern EMAIL = Pattern.compile("[A-Za-z0-9._%+-]+@([A-Za-z0-9-]+\\.)+[A-Za-z]{2,}");
+    private static final Pattern PHONE = Pattern.compile("\\+?\\d[\\d ()-]{5,}(\\d{3})");
+    private static final Pattern CREDENTIAL = Pattern.compile(
+            "(?i)(\"?(?:authorization|application[-_]?key|api[-_]?key|password|secret|token)\"?\\s*[:=]\\s*\"?)[^\"\\s,}]+");
+
+    private final Mode mode;
+    private final double requestSampleRate;
+    private final double payloadSampleRate;
+    private final double responseSampleRate;
+    private final int maxBodyChars;
+
+    public SendLogger(@Value("${messageflow.logging.mode:verbose}") String mode,
+                      @Value("${messageflow.logging.sample.request:1.0}") double requestSampleRate,
+                      @Value("${messageflow.logging.sample.payload:0.01}") double payloadSampleRate,
+                      @Value("${messageflow.logging.sample.response:0.1}") double responseSampleRate,
+                      @Value("${messageflow.logging.max-body-chars:1024}") int maxBodyChars) {
+        this.mode = Mode.valueOf(mode.trim().toUpperCase());
+        this.requestSampleRate = requestSampleRate;
+        this.payloadSampleRate = payloadSampleRate;
+        this.responseSampleRate = responseSampleRate;
+        this.maxBodyChars = maxBodyChars;
+    }
+
+    public void smsRequest(Logger logger, SmsRequest request) {
+        if (mode == Mode.VERBOSE) {
+            logger.info("Phone numbers received: {}", request.getPhoneNumbers());
+            logger.info("Created SMS request: sender={}, message={}, phoneNumbers={}",
+                    request.getSender(), request.getMessage(), request.getPhoneNumbers());
+        } else if (sampled(logger, requestSampleRate)) {
+            // A templated SMS has no message until it is rendered
+            logger.info("event=sms.request sender={} recipients={} messageChars={}",
+                    request.getSender(), request.getPhoneNumbers().size(),
+                    request.getMessage() == null ? 0 : request.getMessage().length());
+        }
+    }
+
+    public void emailRequest(Logger logger, EmailRequest request) {
+        if (mode == Mode.VERBOSE) {
+            logger.info("Created Email request: subject={}, from={}, to={}",
+                    request.getSubject(), request.getFrom().getEmail(), request.getTo().size());
+        } else if (sampled(logger, requestSampleRate)) {
+            logger.info("event=email.request smtpAccount={} recipients={} attachments={}",
+                    request.getSmtpAccount(), request.getTo().size(),
+                    request.getAttachments() == null ? 0 : request.getAttachments().size());
+        }
+    }
+
+    public void credentials(Logger logger, String authorization, String applicationKey) {
+        if (mode == Mode.VERBOSE) {
+            logger.info("Headers set - Authorization: {}..., Application-Key: {}...",
+                    authorization.substring(0, Math.min(10, authorization.length())),
+                    applicationKey.substring(0, Math.min(10, applicationKey.length())));
+        }
+    }
+
+    public void payload(Logger logger, String channel, PayloadWriter.Payload payload, String url) {
+        if (mode == Mode.VERBOSE) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("{} API Request Payload: {}", label(channel), payload.asString());
+            }
+            logger.info("Sending {} byte payload to: {}", payload.contentLength(), url);
+        } else if (sampled(logger, payloadSampleRate)) {
+            logger.info("event={}.payload bytes={} body={}", channel, payload.contentLength(), body(payload.asString()));
+        }
+    }
+
+    public void response(Logger logger, String channel, int status, String content) {
+        if (mode == Mode.VERBOSE) {
+            logger.info("{} API Response Status: {}", label(channel), status);
+            logger.info("{} API Response Content: {}", label(channel), content);
+        } else if (status >= 400 || sampled(logger, responseSampleRate)) {
+            // Upstream errors are always logged
+            logger.info("event={}.response status={} body={}", channel, status, body(content));
+        }
+    }
+
+    /**
+     * Cap a body at max-body-chars and mask phone numbers, email addresses and credentials.
+     */
+    public String body(String text) {
+        if (text == null) {
+            return "null";
+        }
+
+        String capped = text;
+        if (text.length() > maxBodyChars) {
+            int end = maxBodyChars;
+            // Do not leave a partial, unmatchable email or phone number at the cut
+            while (end > 0 && isTokenChar(text.charAt(end - 1))) {
+                end--;
+            }
+            capped = text.substring(0, end) + "...(" + text.length() + " chars)";
+        }
+
+        String redacted = CREDENTIAL.matcher(capped).replaceAll("$1***");
+        redacted = EMAIL.matcher(redacted).replaceAll(match -> "***@" + match.group().substring(match.group().indexOf('@') + 1));
+        return PHONE.matcher(redacted).replaceAll("***$1");
+    }
+
+    private static boolean sampled(Logger logger, double rate) {
+        return logger.isInfoEnabled() && (rate >= 1.0 || ThreadLocalRandom.current().nextDouble() < rate);
+    }
+
+    private static boolean isTokenChar(char c) {
+        return Character.isLetterOrDigit(c) || "@.+-_%".indexOf(c) >= 0;
+    }
+
+    private static String label(String channel) {
+        return "sms".equals(channel) ? "SMS" : "Email";
+    }
+}
@@ -0,0 +1,105 @@
+package com.messageflow.api.services;
+
+import com.messageflow.client.utils.ClientMetrics;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * Micrometer meters for the send path, exposed through /actuator/metrics and /actuator/prometheus.
+ *
+ * - messageflow.upstream.requests: MessageFlow call latency, tagged by channel and status class
+ *   (2xx, 4xx, 5xx, or IO_ERROR when no response was received)
+ * - messageflow.upstream.in.flight: MessageFlow calls currently waiting for a response
+ * - messageflow.validation.failures: requests rejected by RequestValidator
+ *
+ * It is also the {@link ClientMetrics} of the client core's rate limiter, upstream guard, retry
+ * policy and idempotency cache.
+ *
+ * Endpoint latency and in-flight requests come from Spring Boot's http.server.requests and
+ * http.server.requests.active meters.
+ */
+@Component
+public class SendMetrics implements ClientMetrics {
+
+    public static final String IO_ERROR = "IO_ERROR";
+
+    // Descriptions of the client core's meters, shown by /actuator/prometheus
+    private static final Map<String, String> DESCRIPTIONS = Map.of(
+            "messageflow.upstream.rejected", "MessageFlow calls rejected without being sent",
+            "messageflow.upstream.circuit.state", "MessageFlow circuit breaker state (0 closed, 1 half-open, 2 open)",
+            "messageflow.upstream.concurrency.limit", "Current adaptive limit on concurrent MessageFlow calls",
+            "messageflow.retry.budget.exhausted", "Retryable failures returned because the retry budget was empty");
+
+    private final MeterRegistry registry;
+    private final Map<String, AtomicInteger> upstreamInFlight;
+    private final Map<String, Counter> validationFailures;
+
+    public SendMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.upstreamInFlight = Map.of("sms", new AtomicInteger(), "email", new AtomicInteger());
+        this.validationFailures = Map.of(
+                "sms", validationCounter(registry, "sms"),
+                "email", validationCounter(registry, "email"));
+
+        upstreamInFlight.forEach((channel, count) -> Gauge.builder("messageflow.upstream.in.flight", count, AtomicInteger::get)
+                .description("MessageFlow calls waiting for a response")
+                .tag("channel", channel)
+                .register(registry));
+    }
+
+    private static Counter validationCounter(MeterRegistry registry, String channel) {
+        return Counter.builder("messageflow.validation.failures")
+                .description("Requests rejected by required-field validation")
+                .tag("channel", channel)
+                .register(registry);
+    }
+
+    /**
+     * Start timing a MessageFlow call. Every call must be finished with {@link #stopUpstream}.
+     */
+    public Timer.Sample startUpstream(String channel) {
+        upstreamInFlight.get(channel).incrementAndGet();
+        return Timer.start(registry);
+    }
+
+    public void stopUpstream(Timer.Sample sample, String channel, String status) {
+        upstreamInFlight.get(channel).decrementAndGet();
+        sample.stop(Timer.builder("messageflow.upstream.requests")
+                .description("MessageFlow API call latency")
+                .tag("channel", channel)
+                .tag("status", status)
+                .publishPercentileHistogram()
+                .register(registry));
+    }
+
+    public void validationFailure(String channel) {
+        validationFailures.get(channel).increment();
+    }
+
+    @Override
+    public void increment(String name, String... tags) {
+        Counter.builder(name).description(DESCRIPTIONS.get(name)).tags(tags).register(registry).increment();
+    }
+
+    @Override
+    public void record(String name, long nanos, String... tags) {
+        registry.timer(name, tags).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void gauge(String name, LongSupplier value, String... tags) {
+        Gauge.builder(name, value::getAsLong).description(DESCRIPTIONS.get(name)).tags(tags).register(registry);
+    }
+
+    public static String statusClass(int statusCode) {
+        return (statusCode / 100) + "xx";
+    }
+}
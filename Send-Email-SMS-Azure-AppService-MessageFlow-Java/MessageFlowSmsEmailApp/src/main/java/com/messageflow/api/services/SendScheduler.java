@@ -0,0 +1,376 @@
+package com.messageflow.api.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.messageflow.api.models.EmailRequest;
+import com.messageflow.api.models.JobStatus;
+import com.messageflow.api.models.SmsRequest;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Holds SMS and email sends until their sendAt time, then queues them as async jobs on the
+ * {@link JobService}.
+ *
+ * Pending sends live in a hierarchical timing wheel: 4 levels of 512 slots, where a slot of level
+ * 0 covers one tick of messageflow.scheduler.tick-ms and a slot of each next level covers a whole
+ * turn of the level below. A send goes into the lowest level whose range reaches its tick, and is
+ * moved down a level when the wheel below turns onto its slot (cascading). Slots are intrusive
+ * linked lists, so scheduling and cancelling are O(1) however many sends are pending, and each send
+ * costs one small entry holding its serialized request.
+ *
+ * A single thread advances the wheel tick by tick and queues the due sends in batches of
+ * messageflow.scheduler.batch-size, so a burst of sends due at the same time cannot hold the lock
+ * for long. Sends are released within about one tick of their sendAt.
+ *
+ * With messageflow.outbox.enabled, each send is journaled in the {@link Outbox} when it is
+ * scheduled and marked done when it is cancelled; once due, its job record replaces it. Sends
+ * still waiting when the instance stopped are put back on the wheel on startup, and those whose
+ * time passed meanwhile are queued at once. Without the outbox, pending sends are held in memory
+ * only and are lost when the instance stops.
+ */
+@Component
+public class SendScheduler {
+
+    private static final Logger logger = LoggerFactory.getLogger(SendScheduler.class);
+
+    private static final int WHEEL_BITS = 9;
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    private static final int LEVELS = 4;
+
+    private static final byte SMS = 1;
+    private static final byte EMAIL = 2;
+
+    private final JobService jobService;
+    private final Outbox outbox;
+    private final ObjectMapper objectMapper;
+    private final long tickMillis;
+    private final int batchSize;
+    private final int maxPending;
+    private final Counter cancelled;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    // Sentinel head of each slot; guarded by lock, like the links of every entry
+    private final Entry[][] wheels = new Entry[LEVELS][WHEEL_SIZE];
+    private final Map<UUID, Entry> entries = new ConcurrentHashMap<>();
+    // Next tick to release, and whether the upper levels have already cascaded onto it
+    private long currentTick;
+    private boolean cascaded;
+    private volatile boolean running = true;
+
+    private final Thread worker;
+
+    public SendScheduler(JobService jobService,
+                         Outbox outbox,
+                         ObjectMapper objectMapper,
+                         MeterRegistry meterRegistry,
+                         @Value("${messageflow.scheduler.tick-ms:100}") long tickMs,
+                         @Value("${messageflow.scheduler.batch-size:1000}") int batchSize,
+                         @Value("${messageflow.scheduler.max-pending:1000000}") int maxPending) {
+        this.jobService = jobService;
+        this.outbox = outbox;
+        this.objectMapper = objectMapper;
+        this.tickMillis = Math.max(1, tickMs);
+        this.batchSize = Math.max(1, batchSize);
+        this.maxPending = maxPending;
+        this.cancelled = Counter.builder("messageflow.scheduler.cancelled")
+                .description("Scheduled sends cancelled before their send time")
+                .register(meterRegistry);
+        Gauge.builder("messageflow.scheduler.pending", entries, Map::size)
+                .description("Scheduled sends waiting for their send time")
+                .register(meterRegistry);
+
+        for (Entry[] wheel : wheels) {
+            for (int slot = 0; slot < WHEEL_SIZE; slot++) {
+                Entry head = new Entry(null, (byte) 0, 0, 0, 0, null);
+                head.prev = head;
+                head.next = head;
+                wheel[slot] = head;
+            }
+        }
+        this.currentTick = Math.floorDiv(System.currentTimeMillis(), tickMillis);
+
+        List<Outbox.Entry> recovered = outbox.recoverScheduled();
+        for (Outbox.Entry recoveredEntry : recovered) {
+            Entry entry = new Entry(recoveredEntry.id(), "sms".equals(recoveredEntry.channel()) ? SMS : EMAIL,
+                    Math.floorDiv(recoveredEntry.sendAt(), tickMillis), recoveredEntry.sendAt(),
+                    recoveredEntry.submittedAt(), recoveredEntry.payload());
+            entries.put(entry.id, entry);
+            insert(entry);
+        }
+        if (!recovered.isEmpty()) {
+            logger.info("Restored {} scheduled sends from the outbox", recovered.size());
+        }
+
+        this.worker = Thread.ofPlatform().name("send-scheduler").daemon(true).start(this::run);
+        logger.info("Send scheduler: tick={}ms, batchSize={}, maxPending={}", tickMillis, this.batchSize, maxPending);
+    }
+
+    /**
+     * Hold an SMS until sendAt (epoch milliseconds). Returns the scheduled job, or null when
+     * messageflow.scheduler.max-pending sends are already waiting.
+     */
+    public JobStatus scheduleSms(SmsRequest request, long sendAt) {
+        if (outbox.isEnabled() && (request.getExternalId() == null || request.getExternalId().isEmpty())) {
+            // Same as JobService.submitSms: the externalId travels with the journaled request
+            request.setExternalId(UUID.randomUUID().toString());
+        }
+        return schedule(SMS, request, sendAt);
+    }
+
+    /**
+     * Hold an email until sendAt (epoch milliseconds). Returns the scheduled job, or null when
+     * messageflow.scheduler.max-pending sends are already waiting.
+     */
+    public JobStatus scheduleEmail(EmailRequest request, long sendAt) {
+        return schedule(EMAIL, request, sendAt);
+    }
+
+    /**
+     * The job of a send that is still waiting for its send time, or null.
+     */
+    public JobStatus getJob(String jobId) {
+        Entry entry = entry(jobId);
+        return entry != null ? entry.status() : null;
+    }
+
+    /**
+     * Cancel a send that is still waiting for its send time. Returns false when there is no such
+     * send, or it has already been queued.
+     */
+    public boolean cancel(String jobId) {
+        Entry entry = entry(jobId);
+        if (entry == null) {
+            return false;
+        }
+        lock.lock();
+        try {
+            if (entry.next == null) {
+                // Already taken off the wheel to be queued
+                return false;
+            }
+            unlink(entry);
+        } finally {
+            lock.unlock();
+        }
+        entries.remove(entry.id);
+        outbox.done(entry.id);
+        cancelled.increment();
+        return true;
+    }
+
+    private JobStatus schedule(byte channel, Object request, long sendAt) {
+        byte[] payload;
+        try {
+            payload = objectMapper.writeValueAsBytes(request);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        Entry entry = new Entry(UUID.randomUUID(), channel, Math.floorDiv(sendAt, tickMillis), sendAt,
+                System.currentTimeMillis(), payload);
+        // Journaled before the lock is taken, since in batch fsync mode this waits for the disk
+        outbox.appendScheduled(entry.id, entry.type(), entry.submittedAt, sendAt, payload);
+        lock.lock();
+        try {
+            if (entries.size() >= maxPending) {
+                outbox.done(entry.id);
+                logger.warn("Scheduler is full, rejecting {} job", entry.type());
+                return null;
+            }
+            entries.put(entry.id, entry);
+            insert(entry);
+        } finally {
+            lock.unlock();
+        }
+        return entry.status();
+    }
+
+    private Entry entry(String jobId) {
+        try {
+            return entries.get(UUID.fromString(jobId));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    // Called with lock held
+    private void insert(Entry entry) {
+        long delta = Math.max(0, entry.tick - currentTick);
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << (WHEEL_BITS * (level + 1))) {
+            level++;
+        }
+        // Sends already due go into the slot about to be released
+        long tick = Math.max(entry.tick, currentTick);
+        Entry head = wheels[level][(int) ((tick >>> (WHEEL_BITS * level)) & WHEEL_MASK)];
+        entry.prev = head.prev;
+        entry.next = head;
+        head.prev.next = entry;
+        head.prev = entry;
+    }
+
+    // Called with lock held
+    private static void unlink(Entry entry) {
+        entry.prev.next = entry.next;
+        entry.next.prev = entry.prev;
+        entry.prev = null;
+        entry.next = null;
+    }
+
+    private void run() {
+        List<Entry> due = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                long now = System.currentTimeMillis();
+                lock.lock();
+                try {
+                    advance(Math.floorDiv(now, tickMillis), due);
+                } finally {
+                    lock.unlock();
+                }
+
+                int queued = 0;
+                try {
+                    for (Entry entry : due) {
+                        if (!jobService.submitScheduled(entry.id, entry.type(), entry.submittedAt, entry.payload)) {
+                            return;
+                        }
+                        // Removed only once queued, so GET /jobs/{id} always finds the job in one place
+                        entries.remove(entry.id);
+                        queued++;
+                    }
+                } catch (RuntimeException e) {
+                    // Put the rest back on the wheel to be tried again on the next tick
+                    logger.error("Failed to queue {} due sends: {}", due.size() - queued, e.getMessage(), e);
+                    lock.lock();
+                    try {
+                        due.subList(queued, due.size()).forEach(this::insert);
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+
+                boolean caughtUp = due.size() < batchSize;
+                due.clear();
+                if (caughtUp) {
+                    TimeUnit.MILLISECONDS.sleep(tickMillis - Math.floorMod(System.currentTimeMillis(), tickMillis));
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Move the wheel forward to nowTick, taking off up to batchSize due sends. Called with lock held.
+     */
+    private void advance(long nowTick, List<Entry> due) {
+        if (entries.isEmpty() && currentTick < nowTick) {
+            // Nothing pending: skip the idle ticks
+            currentTick = nowTick;
+            cascaded = false;
+        }
+
+        while (currentTick <= nowTick) {
+            if (!cascaded) {
+                cascade(currentTick);
+                cascaded = true;
+            }
+
+            Entry head = wheels[0][(int) (currentTick & WHEEL_MASK)];
+            while (head.next != head) {
+                if (due.size() == batchSize) {
+                    return;
+                }
+                Entry entry = head.next;
+                unlink(entry);
+                due.add(entry);
+            }
+            currentTick++;
+            cascaded = false;
+        }
+    }
+
+    /**
+     * When tick starts a new turn of a level, move the sends of that level's next slot down into the
+     * levels below. The highest level goes first, so a send can fall through several levels at once.
+     */
+    private void cascade(long tick) {
+        for (int level = LEVELS - 1; level > 0; level--) {
+            if ((tick & ((1L << (WHEEL_BITS * level)) - 1)) != 0) {
+                continue;
+            }
+            Entry head = wheels[level][(int) ((tick >>> (WHEEL_BITS * level)) & WHEEL_MASK)];
+            Entry entry = head.next;
+            head.prev = head;
+            head.next = head;
+            while (entry != head) {
+                Entry next = entry.next;
+                insert(entry);
+                entry = next;
+            }
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        running = false;
+        worker.interrupt();
+        if (entries.isEmpty()) {
+            return;
+        }
+        if (outbox.isEnabled()) {
+            logger.info("Keeping {} scheduled sends that are not due yet in the outbox", entries.size());
+        } else {
+            logger.warn("Dropping {} scheduled sends that were not due yet", entries.size());
+        }
+    }
+
+    private static final class Entry {
+
+        private final UUID id;
+        private final byte channel;
+        private final long tick;
+        private final long sendAt;
+        private final long submittedAt;
+        private final byte[] payload;
+        private Entry prev;
+        private Entry next;
+
+        private Entry(UUID id, byte channel, long tick, long sendAt, long submittedAt, byte[] payload) {
+            this.id = id;
+            this.channel = channel;
+            this.tick = tick;
+            this.sendAt = sendAt;
+            this.submittedAt = submittedAt;
+            this.payload = payload;
+        }
+
+        private String type() {
+            return channel == SMS ? "sms" : "email";
+        }
+
+        private JobStatus status() {
+            JobStatus status = new JobStatus(id.toString(), type(), JobStatus.SCHEDULED, submittedAt);
+            status.setSendAt(sendAt);
+            return status;
+        }
+    }
+}
@@ -1,25 +1,30 @@
 package com.messageflow.api.services;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.messageflow.api.models.ChunkResult;
 import com.messageflow.api.models.SmsRequest;
 import com.messageflow.api.models.SmsResponse;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.HttpClientErrorException;
-import org.springframework.web.client.HttpServerErrorException;
 import org.springframework.web.client.RestTemplate;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 
 @Service
 public class SmsService {
 
     private static final Logger logger = LoggerFactory.getLogger(SmsService.class);
-    private static final String SMS_API_URL = "https://api.messageflow.com/v2.1/sms";
+    private static final String SMS_API_PATH = "/sms";
+
+    @Value("${messageflow.api.base-url:https://api.messageflow.com/v2.1}")
+    private String baseUrl;
 
     @Value("${messageflow.api.authorization}")
     private String authorization;
@@ -27,18 +32,117 @@ public class SmsService {
     @Value("${messageflow.api.application-key}")
     private String applicationKey;
 
+    @Value("${messageflow.fanout.sms-chunk-size:1000}")
+    private int chunkSize;
+
+    @Value("${messageflow.fanout.parallelism:4}")
+    private int fanOutParallelism;
+
     private final RestTemplate restTemplate;
     private final ObjectMapper objectMapper;
-
-    public SmsService(RestTemplate restTemplate, ObjectMapper objectMapper) {
+    private final ParallelDispatcher dispatcher;
+    private final PayloadWriter payloadWriter;
+    private final SendLogger sendLogger;
+    private final SendMetrics sendMetrics;
+    private final UpstreamGuard upstreamGuard;
+    private final RetryPolicy retryPolicy;
+    private final RateLimiter rateLimiter;
+    private final TemplateStore templateStore;
+
+    public SmsService(RestTemplate restTemplate, ObjectMapper objectMapper, ParallelDispatcher dispatcher,
+                      PayloadWriter payloadWriter, SendLogger sendLogger, SendMetrics sendMetrics,
+                      UpstreamGuard upstreamGuard, RetryPolicy retryPolicy, RateLimiter rateLimiter,
+                      TemplateStore templateStore) {
         this.restTemplate = restTemplate;
         this.objectMapper = objectMapper;
+        this.dispatcher = dispatcher;
+        this.payloadWriter = payloadWriter;
+        this.sendLogger = sendLogger;
+        this.sendMetrics = sendMetrics;
+        this.upstreamGuard = upstreamGuard;
+        this.retryPolicy = retryPolicy;
+        this.rateLimiter = rateLimiter;
+        this.templateStore = templateStore;
     }
 
+    /**
+     * Send an SMS. Recipient lists longer than messageflow.fanout.sms-chunk-size are split into
+     * chunks sent as separate upstream calls in parallel, and the outcomes merged into one response.
+     *
+     * With template, the stored template's message is rendered with vars into message first.
+     */
     public SmsResponse sendSms(SmsRequest request) {
-        try {
-            logger.info("SmsService.sendSms called with request: {}", objectMapper.writeValueAsString(request));
+        if (request.getTemplate() != null) {
+            try {
+                CompiledTemplate message = templateStore.get(request.getTemplate()).message();
+                if (message == null) {
+                    return new SmsResponse(false, "Template " + request.getTemplate() + " has no message");
+                }
+                request.setMessage(message.render(null, request.getVars()));
+            } catch (TemplateStore.TemplateException e) {
+                return new SmsResponse(false, e.getMessage());
+            }
+        }
+        // Local fields, not part of the MessageFlow payload, even when vars come without a template
+        request.setTemplate(null);
+        request.setVars(null);
+
+        if (retryPolicy.isEnabled() && (request.getExternalId() == null || request.getExternalId().isEmpty())) {
+            // Retried calls resend the same externalId, so MessageFlow can drop duplicates of a call that went through
+            request.setExternalId(UUID.randomUUID().toString());
+        }
 
+        List<String> phoneNumbers = request.getPhoneNumbers();
+        if (phoneNumbers == null || phoneNumbers.size() <= chunkSize) {
+            return sendChunk(request);
+        }
+
+        List<SmsRequest> chunks = new ArrayList<>();
+        for (int from = 0; from < phoneNumbers.size(); from += chunkSize) {
+            List<String> part = phoneNumbers.subList(from, Math.min(from + chunkSize, phoneNumbers.size()));
+            chunks.add(copyForChunk(request, part, chunks.size()));
+        }
+
+        logger.info("Splitting SMS to {} recipients into {} chunks of up to {}",
+                phoneNumbers.size(), chunks.size(), chunkSize);
+
+        List<SmsResponse> responses = dispatcher.dispatch(chunks, fanOutParallelism, this::sendChunk,
+                e -> new SmsResponse(false, "Error: " + e.getMessage(), e.getMessage()));
+
+        List<ChunkResult> chunkResults = new ArrayList<>(responses.size());
+        int failed = 0;
+        for (int i = 0; i < responses.size(); i++) {
+            SmsResponse response = responses.get(i);
+            chunkResults.add(new ChunkResult(i, chunks.get(i).getPhoneNumbers().size(),
+                    response.isSuccess(), response.getMessage(), response.getResponseContent()));
+            if (!response.isSuccess()) {
+                failed++;
+            }
+        }
+
+        SmsResponse merged = failed == 0
+                ? new SmsResponse(true, "SMS sent successfully in " + chunks.size() + " chunks")
+                : new SmsResponse(false, failed + " of " + chunks.size() + " chunks failed");
+        merged.setChunks(chunkResults);
+        return merged;
+    }
+
+    private SmsRequest copyForChunk(SmsRequest request, List<String> phoneNumbers, int chunkIndex) {
+        SmsRequest chunk = new SmsRequest(request.getSender(), request.getMessage(), phoneNumbers);
+        chunk.setValidity(request.getValidity());
+        chunk.setScheduleTime(request.getScheduleTime());
+        chunk.setType(request.getType());
+        chunk.setShortLink(request.getShortLink());
+        chunk.setWebhookUrl(request.getWebhookUrl());
+        if (request.getExternalId() != null) {
+            // Keep chunk IDs distinct so upstream does not treat chunks as duplicates of each other
+            chunk.setExternalId(request.getExternalId() + "-" + (chunkIndex + 1));
+        }
+        return chunk;
+    }
+
+    private SmsResponse sendChunk(SmsRequest request) {
+        try {
             // Validate configuration
             if (authorization == null || authorization.isEmpty()) {
                 throw new IllegalStateException("REST API authorization is missing in configuration");
@@ -53,52 +157,20 @@ public class SmsService {
             headers.set("Authorization", authorization);
             headers.set("Application-Key", applicationKey);
 
-            logger.info("Headers set - Authorization: {}..., Application-Key: {}...",
-                    authorization.substring(0, Math.min(10, authorization.length())),
-                    applicationKey.substring(0, Math.min(10, applicationKey.length())));
+            sendLogger.credentials(logger, authorization, applicationKey);
 
-            // Prepare payload
-            Map<String, Object> payload = new HashMap<>();
-            payload.put("sender", request.getSender());
-            payload.put("message", request.getMessage());
-            payload.put("phoneNumbers", request.getPhoneNumbers());
+            // Serialize the request once, straight into a pooled buffer that is written onto the wire
+            ResponseEntity<String> response;
+            try (PayloadWriter.Buffer payload = payloadWriter.write(request)) {
+                sendLogger.payload(logger, "sms", payload, baseUrl + SMS_API_PATH);
 
-            if (request.getValidity() != null) {
-                payload.put("validity", request.getValidity());
-            }
-            if (request.getScheduleTime() != null) {
-                payload.put("scheduleTime", request.getScheduleTime());
-            }
-            if (request.getType() != null) {
-                payload.put("type", request.getType());
-            }
-            if (request.getShortLink() != null) {
-                payload.put("shortLink", request.getShortLink());
-            }
-            if (request.getWebhookUrl() != null) {
-                payload.put("webhookUrl", request.getWebhookUrl());
-            }
-            if (request.getExternalId() != null) {
-                payload.put("externalId", request.getExternalId());
+                // Transient failures are retried with the same payload bytes
+                response = retryPolicy.execute("sms", request.getExternalId() != null, () -> callUpstream(payload, headers, request.getSender()));
             }
 
-            String jsonPayload = objectMapper.writeValueAsString(payload);
-
-            logger.info("SMS API Request Payload: {}", jsonPayload);
-            logger.info("Sending HTTP request to: {}", SMS_API_URL);
-
-            // Send request
-            HttpEntity<Map<String, Object>> entity = new HttpEntity<>(payload, headers);
-            ResponseEntity<String> response = restTemplate.exchange(
-                    SMS_API_URL,
-                    HttpMethod.POST,
-                    entity,
-                    String.class);
-
             String responseContent = response.getBody();
 
-            logger.info("SMS API Response Status: {}", response.getStatusCode());
-            logger.info("SMS API Response Content: {}", responseContent);
+            sendLogger.response(logger, "sms", response.getStatusCode().value(), responseContent);
 
             // Parse response
             if (response.getStatusCode() == HttpStatus.OK) {
@@ -116,12 +188,36 @@ public class SmsService {
                 return new SmsResponse(false, "HTTP Error: " + response.getStatusCode(), responseContent);
             }
 
-        } catch (HttpClientErrorException | HttpServerErrorException ex) {
-            logger.error("HTTP request failed: {}", ex.getMessage());
-            return new SmsResponse(false, "HTTP Error: " + ex.getStatusCode(), ex.getResponseBodyAsString());
+        } catch (UpstreamGuard.RejectedException ex) {
+            SmsResponse rejected = new SmsResponse(false, ex.getMessage());
+            rejected.setRetryAfterSeconds(ex.getRetryAfterSeconds());
+            return rejected;
         } catch (Exception ex) {
             logger.error("Error sending SMS: {}", ex.getMessage());
             return new SmsResponse(false, "Error: " + ex.getMessage(), ex.getMessage());
         }
     }
+
+    private ResponseEntity<String> callUpstream(PayloadWriter.Buffer payload, HttpHeaders headers, String sender) {
+        // Waits for the rate limits, then fails fast with RejectedException when a limit cannot be
+        // met in time, the circuit is open or the concurrency limit is reached
+        rateLimiter.acquire("sms", applicationKey, sender);
+        UpstreamGuard.Permit permit = upstreamGuard.acquire("sms");
+        Timer.Sample upstream = sendMetrics.startUpstream("sms");
+        String status = SendMetrics.IO_ERROR;
+        boolean failed = true;
+        try {
+            ResponseEntity<String> response = restTemplate.execute(
+                    baseUrl + SMS_API_PATH,
+                    HttpMethod.POST,
+                    payload.requestCallback(headers),
+                    PayloadWriter::readResponse);
+            status = SendMetrics.statusClass(response.getStatusCode().value());
+            failed = UpstreamGuard.isFailure(response.getStatusCode().value());
+            return response;
+        } finally {
+            permit.release(failed);
+            sendMetrics.stopUpstream(upstream, "sms", status);
+        }
+    }
 }
@@ -0,0 +1,250 @@
+package com.messageflow.api.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.messageflow.api.models.EmailRequest;
+import com.messageflow.api.models.EmailResponse;
+import com.messageflow.api.models.LineResult;
+import com.messageflow.api.models.SmsRequest;
+import com.messageflow.api.models.SmsResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * Processes NDJSON streams of SMS or email requests, one request per line.
+ *
+ * Lines are parsed and dispatched as they arrive. At most messageflow.stream.max-in-flight lines are
+ * sent upstream at the same time; once that limit is reached, reading from the client stops until
+ * a send completes, so memory use does not grow with the size of the stream. Each result is written
+ * back as one NDJSON line, in completion order, tagged with the line number it belongs to. Lines
+ * longer than messageflow.stream.max-line-chars are answered with an error and skipped without
+ * being buffered.
+ */
+@Service
+public class StreamService {
+
+    private static final Logger logger = LoggerFactory.getLogger(StreamService.class);
+    private static final byte NEWLINE = '\n';
+
+    private final SmsService smsService;
+    private final EmailService emailService;
+    private final RequestValidator requestValidator;
+    private final ParallelDispatcher dispatcher;
+    private final ObjectReader smsReader;
+    private final ObjectReader emailReader;
+    private final ObjectWriter resultWriter;
+    private final int maxInFlight;
+    private final int maxLineChars;
+
+    public StreamService(SmsService smsService,
+                         EmailService emailService,
+                         RequestValidator requestValidator,
+                         ParallelDispatcher dispatcher,
+                         ObjectMapper objectMapper,
+                         @Value("${messageflow.stream.max-in-flight:32}") int maxInFlight,
+                         @Value("${messageflow.stream.max-line-chars:1048576}") int maxLineChars) {
+        this.smsService = smsService;
+        this.emailService = emailService;
+        this.requestValidator = requestValidator;
+        this.dispatcher = dispatcher;
+        this.smsReader = objectMapper.readerFor(SmsRequest.class);
+        this.emailReader = objectMapper.readerFor(EmailRequest.class);
+        this.resultWriter = objectMapper.writerFor(LineResult.class);
+        this.maxInFlight = maxInFlight;
+        this.maxLineChars = maxLineChars;
+    }
+
+    public long streamSms(InputStream in, OutputStream out) throws IOException, InterruptedException {
+        return process(in, out, line -> {
+            SmsRequest request;
+            try {
+                request = smsReader.readValue(line);
+            } catch (JsonProcessingException e) {
+                return new SmsResponse(false, "Invalid JSON: " + e.getOriginalMessage());
+            }
+            String validationError = requestValidator.validateSms(request);
+            if (validationError != null) {
+                return new SmsResponse(false, validationError);
+            }
+            return smsService.sendSms(request);
+        }, message -> new SmsResponse(false, message));
+    }
+
+    public long streamEmail(InputStream in, OutputStream out) throws IOException, InterruptedException {
+        return process(in, out, line -> {
+            EmailRequest request;
+            try {
+                request = emailReader.readValue(line);
+            } catch (JsonProcessingException e) {
+                return new EmailResponse(false, "Invalid JSON: " + e.getOriginalMessage());
+            }
+            String validationError = requestValidator.validateEmail(request);
+            if (validationError != null) {
+                return new EmailResponse(false, validationError);
+            }
+            return emailService.sendEmail(request);
+        }, message -> new EmailResponse(false, message));
+    }
+
+    /**
+     * Returns the number of lines processed.
+     */
+    private long process(InputStream in, OutputStream out, Function<String, Object> send,
+                         Function<String, Object> failure) throws IOException, InterruptedException {
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        AtomicBoolean closed = new AtomicBoolean(false);
+        LineReader reader = new LineReader(new InputStreamReader(in, StandardCharsets.UTF_8), maxLineChars);
+
+        long lineNumber = 0;
+        try {
+            String line;
+            while (!closed.get() && (line = reader.next()) != null) {
+                lineNumber++;
+                if (reader.tooLong()) {
+                    writeResult(out, new LineResult(lineNumber,
+                            failure.apply("Line longer than " + maxLineChars + " characters")), closed);
+                    continue;
+                }
+                if (line.isBlank()) {
+                    continue;
+                }
+
+                inFlight.acquire();
+                long current = lineNumber;
+                String payload = line;
+                try {
+                    dispatcher.execute(() -> {
+                        try {
+                            Object result;
+                            try {
+                                result = send.apply(payload);
+                            } catch (Exception e) {
+                                logger.error("Error processing stream line {}: {}", current, e.getMessage());
+                                result = failure.apply("An error occurred: " + e.getMessage());
+                            }
+                            writeResult(out, new LineResult(current, result), closed);
+                        } finally {
+                            inFlight.release();
+                        }
+                    });
+                } catch (RuntimeException e) {
+                    inFlight.release();
+                    throw e;
+                }
+            }
+        } catch (Exception e) {
+            // Reading failed or was interrupted: the sends still running do not write their results
+            closed.set(true);
+            throw e;
+        } finally {
+            // Wait for the remaining sends, so that none writes to out after the response is completed
+            inFlight.acquireUninterruptibly(maxInFlight);
+            inFlight.release(maxInFlight);
+        }
+
+        synchronized (out) {
+            out.flush();
+        }
+        return lineNumber;
+    }
+
+    private void writeResult(OutputStream out, LineResult result, AtomicBoolean closed) {
+        if (closed.get()) {
+            return;
+        }
+        try {
+            byte[] json = resultWriter.writeValueAsBytes(result);
+            synchronized (out) {
+                out.write(json);
+                out.write(NEWLINE);
+                out.flush();
+            }
+        } catch (IOException e) {
+            logger.warn("Client disconnected from stream: {}", e.getMessage());
+            closed.set(true);
+        }
+    }
+
+    /**
+     * Reads lines of at most maxChars characters. The rest of a longer line is skipped as it is read,
+     * so a client cannot make the app buffer a line of any size.
+     */
+    private static final class LineReader {
+
+        private final Reader in;
+        private final int maxChars;
+        private final char[] buffer = new char[8192];
+        private final StringBuilder line = new StringBuilder();
+        private int position;
+        private int limit;
+        private boolean tooLong;
+
+        LineReader(Reader in, int maxChars) {
+            this.in = in;
+            this.maxChars = maxChars;
+        }
+
+        /**
+         * Returns the next line without its line terminator, or null at the end of the stream. A line
+         * that was too long is returned as an empty string, with tooLong() set.
+         */
+        String next() throws IOException {
+            line.setLength(0);
+            tooLong = false;
+            boolean read = false;
+            while (true) {
+                if (position == limit) {
+                    int count = in.read(buffer, 0, buffer.length);
+                    if (count < 0) {
+                        return read ? finish() : null;
+                    }
+                    position = 0;
+                    limit = count;
+                }
+                read = true;
+                int start = position;
+                while (position < limit && buffer[position] != '\n') {
+                    position++;
+                }
+                if (!tooLong) {
+                    if (position - start > maxChars - line.length()) {
+                        tooLong = true;
+                        line.setLength(0);
+                    } else {
+                        line.append(buffer, start, position - start);
+                    }
+                }
+                if (position < limit) {
+                    position++;
+                    return finish();
+                }
+            }
+        }
+
+        boolean tooLong() {
+            return tooLong;
+        }
+
+        private String finish() {
+            int length = line.length();
+            if (length > 0 && line.charAt(length - 1) == '\r') {
+                line.setLength(length - 1);
+            }
+            return line.toString();
+        }
+    }
+}
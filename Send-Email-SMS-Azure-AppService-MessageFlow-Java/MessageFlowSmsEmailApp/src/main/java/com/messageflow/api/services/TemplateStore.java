@@ -0,0 +1,305 @@
+package com.messageflow.api.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.messageflow.api.models.EmailRecipient;
+import com.messageflow.api.models.MessageTemplate;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Templates stored with PUT /templates/{id} and referenced by requests as content.template (email)
+ * or template (SMS).
+ *
+ * Each template is a JSON file in messageflow.templates.directory, so it survives restarts and, in
+ * a directory under /home, is shared by all App Service instances. Templates are compiled into a
+ * {@link CompiledTemplate} on first use and kept in an LRU cache of
+ * messageflow.templates.cache-size entries. A cached template is checked against its file at most
+ * every messageflow.templates.refresh-seconds, so a template changed through another instance is
+ * picked up within that time.
+ *
+ * An email whose template uses recipients' vars is sent as one upstream call per recipient, so
+ * such emails may have at most messageflow.templates.max-personalized-recipients recipients.
+ */
+@Component
+public class TemplateStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(TemplateStore.class);
+
+    private static final Pattern ID = Pattern.compile("[A-Za-z0-9._-]{1,128}");
+    private static final String SUFFIX = ".json";
+
+    private final ObjectMapper objectMapper;
+    private final Path directory;
+    private final long refreshNanos;
+    private final Counter loads;
+    private final Map<String, Compiled> cache;
+    private final int maxPersonalizedRecipients;
+
+    public TemplateStore(ObjectMapper objectMapper,
+                         MeterRegistry meterRegistry,
+                         @Value("${messageflow.templates.directory:templates}") String directory,
+                         @Value("${messageflow.templates.cache-size:1000}") int cacheSize,
+                         @Value("${messageflow.templates.refresh-seconds:60}") long refreshSeconds,
+                         @Value("${messageflow.templates.max-personalized-recipients:1000}") int maxPersonalizedRecipients) {
+        this.objectMapper = objectMapper;
+        this.directory = Path.of(directory);
+        this.refreshNanos = TimeUnit.SECONDS.toNanos(refreshSeconds);
+        this.maxPersonalizedRecipients = maxPersonalizedRecipients;
+        this.loads = Counter.builder("messageflow.templates.loads")
+                .description("Templates read from disk and compiled")
+                .register(meterRegistry);
+        int capacity = Math.max(1, cacheSize);
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Compiled> eldest) {
+                return size() > capacity;
+            }
+        };
+        Gauge.builder("messageflow.templates.cached", this, TemplateStore::cachedCount)
+                .description("Compiled templates in the cache")
+                .register(meterRegistry);
+    }
+
+    public static boolean isValidId(String id) {
+        return id != null && ID.matcher(id).matches();
+    }
+
+    /**
+     * The compiled template, from the cache or read from disk.
+     *
+     * @throws TemplateException when there is no such template or it cannot be read
+     */
+    public Compiled get(String id) {
+        if (!isValidId(id)) {
+            throw new TemplateException("Invalid template id: " + id);
+        }
+
+        Compiled compiled;
+        synchronized (cache) {
+            compiled = cache.get(id);
+        }
+        long now = System.nanoTime();
+        if (compiled != null && now - compiled.checkedAt < refreshNanos) {
+            return compiled;
+        }
+
+        try {
+            Path file = file(id);
+            long modified = Files.getLastModifiedTime(file).toMillis();
+            if (compiled != null && compiled.modified == modified) {
+                compiled.checkedAt = now;
+                return compiled;
+            }
+            compiled = compile(objectMapper.readValue(Files.readAllBytes(file), MessageTemplate.class), modified);
+            loads.increment();
+        } catch (NoSuchFileException e) {
+            evict(id);
+            throw new TemplateException("Unknown template: " + id);
+        } catch (IOException e) {
+            logger.error("Failed to read template {}: {}", id, e.getMessage());
+            throw new TemplateException("Template " + id + " cannot be read");
+        }
+
+        synchronized (cache) {
+            cache.put(id, compiled);
+        }
+        return compiled;
+    }
+
+    /**
+     * Check that an email to these recipients can be sent with the template.
+     *
+     * @throws TemplateException when the template uses recipients' vars and there are more than
+     *                           messageflow.templates.max-personalized-recipients recipients
+     */
+    public void checkRecipients(String id, Compiled template, List<EmailRecipient> to) {
+        if (to != null && to.size() > maxPersonalizedRecipients && template.isPersonalized(to)) {
+            throw new TemplateException("Template " + id + " uses recipients' vars, so an email may have at most "
+                    + maxPersonalizedRecipients + " recipients; split the request or use globalVars");
+        }
+    }
+
+    public boolean exists(String id) {
+        if (!isValidId(id)) {
+            return false;
+        }
+        synchronized (cache) {
+            if (cache.containsKey(id)) {
+                return true;
+            }
+        }
+        return Files.exists(file(id));
+    }
+
+    /**
+     * The stored template, or null.
+     */
+    public MessageTemplate read(String id) {
+        if (!isValidId(id)) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(Files.readAllBytes(file(id)), MessageTemplate.class);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Store a template, replacing any previous version. The file is written to a temporary file
+     * and moved into place, so a concurrent reader never sees a partial template.
+     */
+    public void put(String id, MessageTemplate template) {
+        if (!isValidId(id)) {
+            throw new TemplateException("Invalid template id: " + id);
+        }
+        try {
+            Files.createDirectories(directory);
+            Path temporary = Files.createTempFile(directory, id, ".tmp");
+            try {
+                objectMapper.writeValue(temporary.toFile(), template);
+                Files.move(temporary, file(id), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+            Compiled compiled = compile(template, Files.getLastModifiedTime(file(id)).toMillis());
+            synchronized (cache) {
+                cache.put(id, compiled);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        logger.info("Stored template {}", id);
+    }
+
+    /**
+     * Delete a template. Returns false when there was no such template.
+     */
+    public boolean delete(String id) {
+        if (!isValidId(id)) {
+            return false;
+        }
+        evict(id);
+        try {
+            return Files.deleteIfExists(file(id));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void evict(String id) {
+        synchronized (cache) {
+            cache.remove(id);
+        }
+    }
+
+    private Path file(String id) {
+        return directory.resolve(id + SUFFIX);
+    }
+
+    private int cachedCount() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    private static Compiled compile(MessageTemplate template, long modified) {
+        return new Compiled(
+                template.getSubject() != null ? CompiledTemplate.compile(template.getSubject(), false) : null,
+                template.getHtml() != null ? CompiledTemplate.compile(template.getHtml(), true) : null,
+                template.getText() != null ? CompiledTemplate.compile(template.getText(), false) : null,
+                template.getMessage() != null ? CompiledTemplate.compile(template.getMessage(), false) : null,
+                modified);
+    }
+
+    /**
+     * The compiled parts of a template; parts that are not set in the template are null.
+     */
+    public static final class Compiled {
+
+        private final CompiledTemplate subject;
+        private final CompiledTemplate html;
+        private final CompiledTemplate text;
+        private final CompiledTemplate message;
+        private final long modified;
+        private volatile long checkedAt = System.nanoTime();
+
+        private Compiled(CompiledTemplate subject, CompiledTemplate html, CompiledTemplate text,
+                         CompiledTemplate message, long modified) {
+            this.subject = subject;
+            this.html = html;
+            this.text = text;
+            this.message = message;
+            this.modified = modified;
+        }
+
+        public CompiledTemplate subject() {
+            return subject;
+        }
+
+        public CompiledTemplate html() {
+            return html;
+        }
+
+        public CompiledTemplate text() {
+            return text;
+        }
+
+        public CompiledTemplate message() {
+            return message;
+        }
+
+        /**
+         * Whether the email parts reference any of the given variables.
+         */
+        public boolean emailUsesAny(Map<String, ?> vars) {
+            return (subject != null && subject.usesAny(vars))
+                    || (html != null && html.usesAny(vars))
+                    || (text != null && text.usesAny(vars));
+        }
+
+        /**
+         * Whether the email parts reference the vars of any of several recipients, so that each
+         * recipient needs a rendering of their own.
+         */
+        public boolean isPersonalized(List<EmailRecipient> to) {
+            if (to.size() > 1) {
+                for (EmailRecipient recipient : to) {
+                    if (emailUsesAny(recipient.getVars())) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * A request refers to a template that does not exist or cannot be used.
+     */
+    public static class TemplateException extends RuntimeException {
+
+        public TemplateException(String message) {
+            super(message);
+        }
+    }
+}
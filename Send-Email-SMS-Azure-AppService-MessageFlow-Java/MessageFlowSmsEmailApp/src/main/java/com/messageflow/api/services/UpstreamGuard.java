@@ -0,0 +1,71 @@
+package com.messageflow.api.services;
+
+import com.messageflow.client.utils.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * The client core's circuit breaker and adaptive concurrency limit around calls to the MessageFlow
+ * API, shared by the SMS and email services and configured with messageflow.upstream.breaker.*
+ * and messageflow.upstream.limit.*.
+ *
+ * The breaker opens when the share of failed calls (connection errors, 429, 5xx) or slow calls
+ * over the last window-size calls reaches its threshold, and rejects calls without contacting
+ * MessageFlow for open-seconds before letting half-open-calls probes through. Independently, a
+ * limit driven by upstream latency against its observed minimum caps concurrent calls; calls above
+ * it wait up to max-wait-ms for a slot, then are rejected instead of queueing behind a degraded
+ * upstream.
+ */
+@Component
+public class UpstreamGuard extends com.messageflow.client.utils.UpstreamGuard {
+
+    private static final Logger logger = LoggerFactory.getLogger(UpstreamGuard.class);
+
+    public UpstreamGuard(SendMetrics metrics,
+                         @Value("${messageflow.upstream.breaker.enabled:true}") boolean enabled,
+                         @Value("${messageflow.upstream.breaker.window-size:100}") int windowSize,
+                         @Value("${messageflow.upstream.breaker.minimum-calls:20}") int minimumCalls,
+                         @Value("${messageflow.upstream.breaker.failure-rate-threshold:50}") int failureRateThreshold,
+                         @Value("${messageflow.upstream.breaker.slow-call-rate-threshold:80}") int slowCallRateThreshold,
+                         @Value("${messageflow.upstream.breaker.slow-call-ms:3000}") long slowCallMs,
+                         @Value("${messageflow.upstream.breaker.open-seconds:30}") long openSeconds,
+                         @Value("${messageflow.upstream.breaker.half-open-calls:5}") int halfOpenCalls,
+                         @Value("${messageflow.upstream.limit.initial:100}") int initialLimit,
+                         @Value("${messageflow.upstream.limit.min:5}") int minLimit,
+                         @Value("${messageflow.upstream.limit.max:200}") int maxLimit,
+                         @Value("${messageflow.upstream.limit.backoff-ratio:0.9}") double backoffRatio,
+                         @Value("${messageflow.upstream.limit.rtt-tolerance:2.0}") double rttTolerance,
+                         @Value("${messageflow.upstream.limit.max-wait-ms:100}") long maxWaitMs) {
+        super(config(enabled, windowSize, minimumCalls, failureRateThreshold, slowCallRateThreshold, slowCallMs,
+                openSeconds, halfOpenCalls, initialLimit, minLimit, maxLimit, backoffRatio, rttTolerance, maxWaitMs), metrics);
+
+        logger.info("Upstream guard: enabled={}, failureRate={}%, slowCallRate={}% (>{}ms), open={}s, limit={} [{}..{}]",
+                enabled, failureRateThreshold, slowCallRateThreshold, slowCallMs, openSeconds,
+                initialLimit, minLimit, maxLimit);
+    }
+
+    private static Config.UpstreamConfig config(boolean enabled, int windowSize, int minimumCalls,
+                                                int failureRateThreshold, int slowCallRateThreshold,
+                                                long slowCallMs, long openSeconds, int halfOpenCalls,
+                                                int initialLimit, int minLimit, int maxLimit, double backoffRatio,
+                                                double rttTolerance, long maxWaitMs) {
+        Config.UpstreamConfig config = new Config.UpstreamConfig();
+        config.setEnabled(enabled);
+        config.setWindowSize(windowSize);
+        config.setMinimumCalls(minimumCalls);
+        config.setFailureRateThreshold(failureRateThreshold);
+        config.setSlowCallRateThreshold(slowCallRateThreshold);
+        config.setSlowCallMs(slowCallMs);
+        config.setOpenSeconds(openSeconds);
+        config.setHalfOpenCalls(halfOpenCalls);
+        config.setLimitInitial(initialLimit);
+        config.setLimitMin(minLimit);
+        config.setLimitMax(maxLimit);
+        config.setLimitBackoffRatio(backoffRatio);
+        config.setLimitRttTolerance(rttTolerance);
+        config.setLimitMaxWaitMs(maxWaitMs);
+        return config;
+    }
+}
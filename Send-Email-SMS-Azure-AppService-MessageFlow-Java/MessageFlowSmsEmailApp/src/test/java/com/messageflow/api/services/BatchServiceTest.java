@@ -0,0 +1,102 @@
+package com.messageflow.api.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.messageflow.api.models.EmailRequest;
+import com.messageflow.api.models.EmailResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class BatchServiceTest {
+
+    private static final long MAX_REQUEST_BYTES = 3000;
+    private static final long MAX_IN_FLIGHT_BYTES = 8192;
+
+    private final PayloadWriter payloadWriter = mock(PayloadWriter.class);
+    private final RetryPolicy retryPolicy = mock(RetryPolicy.class);
+    private final ParallelDispatcher dispatcher = new ParallelDispatcher(new MockEnvironment());
+    private final AttachmentGuard attachmentGuard =
+            new AttachmentGuard(new SimpleMeterRegistry(), MAX_REQUEST_BYTES, MAX_IN_FLIGHT_BYTES);
+    private BatchService batchService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        EmailService emailService = new EmailService(mock(RestTemplate.class), new ObjectMapper(), dispatcher,
+                payloadWriter, mock(SendLogger.class), mock(SendMetrics.class), mock(UpstreamGuard.class),
+                retryPolicy, mock(RateLimiter.class), mock(TemplateStore.class), mock(AttachmentStore.class),
+                attachmentGuard);
+        ReflectionTestUtils.setField(emailService, "chunkSize", 500);
+        ReflectionTestUtils.setField(emailService, "authorization", "token");
+        ReflectionTestUtils.setField(emailService, "applicationKey", "key");
+
+        when(payloadWriter.write(any(), anyList())).thenAnswer(call -> mock(PayloadWriter.Payload.class));
+        when(retryPolicy.execute(anyString(), anyBoolean(), any())).thenReturn(ResponseEntity.ok("{\"message\":\"Email sent\"}"));
+
+        batchService = new BatchService(null, emailService, mock(RequestValidator.class), dispatcher, 4);
+    }
+
+    @AfterEach
+    void shutdown() {
+        dispatcher.shutdown();
+    }
+
+    // An email with one inline attachment of about attachmentBytes decoded bytes
+    private static EmailRequest email(int attachmentBytes) {
+        EmailRequest request = new EmailRequest();
+        request.setSubject("Terms");
+        request.setAttachments(List.of(Map.of(
+                "fileName", "terms.pdf",
+                "fileMimeType", "application/pdf",
+                "fileContent", "A".repeat(attachmentBytes / 3 * 4))));
+        return request;
+    }
+
+    @Test
+    void rejectsBatchedEmailsWithAttachmentsOverTheLimit() throws Exception {
+        List<EmailResponse> responses = batchService.sendEmailBatch(List.of(email(1500), email(6000)));
+
+        assertTrue(responses.get(0).isSuccess());
+        assertFalse(responses.get(1).isSuccess());
+        assertEquals("An error occurred: Attachments exceed the limit of " + MAX_REQUEST_BYTES + " bytes",
+                responses.get(1).getMessage());
+        verify(payloadWriter, times(1)).write(any(), anyList());
+    }
+
+    @Test
+    void rejectsBatchedEmailsWhileTheAttachmentBudgetIsInUse() throws Exception {
+        // 6 KiB of the 8 KiB budget in use, less than the 3 KiB of the email left
+        try (AttachmentGuard.Permit first = attachmentGuard.acquire(MAX_REQUEST_BYTES);
+             AttachmentGuard.Permit second = attachmentGuard.acquire(MAX_REQUEST_BYTES)) {
+            List<EmailResponse> responses = batchService.sendEmailBatch(List.of(email(2500)));
+
+            assertFalse(responses.get(0).isSuccess());
+            assertEquals(1, responses.get(0).getRetryAfterSeconds());
+        }
+
+        List<EmailResponse> responses = batchService.sendEmailBatch(List.of(email(2500)));
+
+        assertTrue(responses.get(0).isSuccess());
+        assertNull(responses.get(0).getRetryAfterSeconds());
+    }
+}
@@ -0,0 +1,233 @@
+package com.messageflow.api.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OutboxTest {
+
+    // Segments are 1 MB, so five of these fill one
+    private static final int LARGE_PAYLOAD = 200 * 1024;
+    // Length, CRC32C, type, job id and submittedAt
+    private static final int RECORD_OVERHEAD = 8 + 1 + 16 + 8;
+
+    @TempDir
+    Path directory;
+
+    private final List<Outbox> opened = new ArrayList<>();
+
+    @AfterEach
+    void closeAll() {
+        opened.forEach(Outbox::close);
+    }
+
+    private Outbox open(String fsync) {
+        Outbox outbox = new Outbox(new SimpleMeterRegistry(), true, directory.toString(), 1, fsync, 10);
+        opened.add(outbox);
+        return outbox;
+    }
+
+    private Outbox reopen(Outbox outbox) {
+        outbox.close();
+        opened.remove(outbox);
+        return open("none");
+    }
+
+    private static byte[] payload(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] payload(int size, int fill) {
+        byte[] payload = new byte[size];
+        Arrays.fill(payload, (byte) fill);
+        return payload;
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.sorted().toList();
+        }
+    }
+
+    private static List<UUID> ids(List<Outbox.Entry> entries) {
+        return entries.stream().map(Outbox.Entry::id).toList();
+    }
+
+    @Test
+    void recoversSendsNotMarkedDone() {
+        Outbox outbox = open("batch");
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        UUID third = UUID.randomUUID();
+        outbox.append(first, "sms", 1, payload("{\"sender\":\"a\"}"));
+        outbox.append(second, "email", 2, payload("{\"subject\":\"b\"}"));
+        outbox.append(third, "sms", 3, payload("{\"sender\":\"c\"}"));
+        outbox.done(second);
+
+        List<Outbox.Entry> recovered = reopen(outbox).recover();
+
+        assertEquals(List.of(first, third), ids(recovered));
+        Outbox.Entry entry = recovered.get(1);
+        assertEquals("sms", entry.channel());
+        assertEquals(3, entry.submittedAt());
+        assertFalse(entry.scheduled());
+        assertArrayEquals(payload("{\"sender\":\"c\"}"), entry.payload());
+    }
+
+    @Test
+    void recoveredSendsAreReturnedOnce() {
+        Outbox outbox = open("none");
+        outbox.append(UUID.randomUUID(), "sms", 1, payload("x"));
+
+        Outbox reopened = reopen(outbox);
+        assertEquals(1, reopened.recover().size());
+        assertTrue(reopened.recover().isEmpty());
+    }
+
+    @Test
+    void stopsReplayAtTornRecord() throws IOException {
+        Outbox outbox = open("none");
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        outbox.append(first, "sms", 1, payload("first"));
+        outbox.append(second, "sms", 2, payload("second"));
+        outbox.close();
+        opened.remove(outbox);
+
+        // Flip the last payload byte of the second record, as if the crash tore it
+        Path segment = segments().get(0);
+        int offset = RECORD_OVERHEAD + "first".length() + RECORD_OVERHEAD + "second".length() - 1;
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(1);
+            channel.read(buffer, offset);
+            buffer.put(0, (byte) ~buffer.get(0));
+            channel.write(buffer.rewind(), offset);
+        }
+
+        Outbox reopened = open("none");
+        assertEquals(List.of(first), ids(reopened.recover()));
+
+        // The torn segment is not appended to; new records go to a new segment and replay
+        UUID third = UUID.randomUUID();
+        reopened.append(third, "email", 3, payload("third"));
+        assertEquals(List.of(first, third), ids(reopen(reopened).recover()));
+    }
+
+    @Test
+    void ignoresGarbageAfterLastRecord() throws IOException {
+        Outbox outbox = open("none");
+        UUID id = UUID.randomUUID();
+        outbox.append(id, "sms", 1, payload("only"));
+        outbox.close();
+        opened.remove(outbox);
+
+        // A length that points past the end of the segment
+        Path segment = segments().get(0);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(4).putInt(0, Integer.MAX_VALUE), RECORD_OVERHEAD + "only".length());
+        }
+
+        assertEquals(List.of(id), ids(open("none").recover()));
+    }
+
+    @Test
+    void deletesSegmentsOnceAllTheirSendsAreDone() throws IOException {
+        Outbox outbox = open("none");
+        List<UUID> ids = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            UUID id = UUID.randomUUID();
+            ids.add(id);
+            outbox.append(id, "email", i, payload(LARGE_PAYLOAD, i));
+        }
+        List<Path> before = segments();
+        assertEquals(2, before.size());
+
+        // Done out of order: the oldest segment goes only once all five of its sends are done
+        for (int i = 4; i >= 1; i--) {
+            outbox.done(ids.get(i));
+        }
+        assertEquals(before, segments());
+        outbox.done(ids.get(0));
+        assertEquals(before.subList(1, 2), segments());
+
+        assertEquals(ids.subList(5, 7), ids(reopen(outbox).recover()));
+    }
+
+    @Test
+    void compactsSparseSegmentIntoCurrentOne() throws IOException {
+        Outbox outbox = open("none");
+        List<UUID> ids = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            UUID id = UUID.randomUUID();
+            ids.add(id);
+            outbox.append(id, "email", i, payload(LARGE_PAYLOAD, i));
+        }
+        for (int i = 1; i < 5; i++) {
+            outbox.done(ids.get(i));
+        }
+        Path oldest = segments().get(0);
+
+        // Rolling to a new segment copies the one live send forward and deletes the old segment
+        UUID next = UUID.randomUUID();
+        outbox.append(next, "sms", 5, payload(LARGE_PAYLOAD, 5));
+        List<Path> after = segments();
+        assertEquals(1, after.size());
+        assertFalse(after.contains(oldest));
+
+        List<Outbox.Entry> recovered = reopen(outbox).recover();
+        assertEquals(List.of(ids.get(0), next), ids(recovered));
+        assertArrayEquals(payload(LARGE_PAYLOAD, 0), recovered.get(0).payload());
+        assertArrayEquals(payload(LARGE_PAYLOAD, 5), recovered.get(1).payload());
+    }
+
+    @Test
+    void recoversScheduledSendsSeparately() {
+        Outbox outbox = open("none");
+        UUID scheduled = UUID.randomUUID();
+        UUID released = UUID.randomUUID();
+        UUID cancelled = UUID.randomUUID();
+        outbox.appendScheduled(scheduled, "sms", 1, 5_000, payload("scheduled"));
+        outbox.appendScheduled(released, "email", 2, 6_000, payload("released"));
+        outbox.appendScheduled(cancelled, "sms", 3, 7_000, payload("cancelled"));
+        // Released: the job record replaces the scheduled one
+        outbox.append(released, "email", 2, payload("released"));
+        outbox.done(cancelled);
+
+        Outbox reopened = reopen(outbox);
+        List<Outbox.Entry> pendingScheduled = reopened.recoverScheduled();
+        assertEquals(List.of(scheduled), ids(pendingScheduled));
+        assertTrue(pendingScheduled.get(0).scheduled());
+        assertEquals(5_000, pendingScheduled.get(0).sendAt());
+        assertEquals("sms", pendingScheduled.get(0).channel());
+        assertArrayEquals(payload("scheduled"), pendingScheduled.get(0).payload());
+        assertEquals(List.of(released), ids(reopened.recover()));
+    }
+
+    @Test
+    void disabledOutboxWritesNothing() throws IOException {
+        Outbox outbox = new Outbox(new SimpleMeterRegistry(), false, directory.toString(), 1, "batch", 10);
+        outbox.append(UUID.randomUUID(), "sms", 1, payload("x"));
+
+        assertTrue(outbox.recover().isEmpty());
+        assertTrue(segments().isEmpty());
+    }
+}
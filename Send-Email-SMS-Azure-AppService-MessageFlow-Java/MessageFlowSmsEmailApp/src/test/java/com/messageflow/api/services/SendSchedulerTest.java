@@ -0,0 +1,206 @@
+package com.messageflow.api.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.messageflow.api.models.EmailRequest;
+import com.messageflow.api.models.JobStatus;
+import com.messageflow.api.models.SmsRequest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class SendSchedulerTest {
+
+    // Level 0 of the wheel covers 512 ticks of 1 ms, so later sends start on level 1 and cascade
+    private static final long TICK_MS = 1;
+    // Sends are released within about one tick; allow for a slow test machine
+    private static final long LATE_MS = 250;
+
+    @TempDir
+    Path directory;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final JobService jobService = mock(JobService.class);
+    // Release time of each queued job, in release order
+    private final Map<String, Long> released = new ConcurrentHashMap<>();
+    private final List<String> releaseOrder = new CopyOnWriteArrayList<>();
+    private final List<SendScheduler> schedulers = new ArrayList<>();
+    private final List<Outbox> outboxes = new ArrayList<>();
+
+    @BeforeEach
+    void recordReleases() {
+        when(jobService.submitScheduled(any(UUID.class), anyString(), anyLong(), any(byte[].class))).thenAnswer(call -> {
+            String jobId = call.getArgument(0, UUID.class).toString();
+            released.put(jobId, System.currentTimeMillis());
+            releaseOrder.add(jobId);
+            return true;
+        });
+    }
+
+    @AfterEach
+    void closeAll() {
+        schedulers.forEach(SendScheduler::close);
+        outboxes.forEach(Outbox::close);
+    }
+
+    private Outbox outbox(boolean enabled) {
+        Outbox outbox = new Outbox(new SimpleMeterRegistry(), enabled, directory.toString(), 1, "none", 10);
+        outboxes.add(outbox);
+        return outbox;
+    }
+
+    private SendScheduler scheduler(Outbox outbox, int batchSize, int maxPending) {
+        SendScheduler scheduler = new SendScheduler(jobService, outbox, objectMapper, new SimpleMeterRegistry(),
+                TICK_MS, batchSize, maxPending);
+        schedulers.add(scheduler);
+        return scheduler;
+    }
+
+    private SendScheduler scheduler() {
+        return scheduler(outbox(false), 1000, 1000);
+    }
+
+    private static SmsRequest sms(String message) {
+        SmsRequest request = new SmsRequest();
+        request.setSender("Sender");
+        request.setMessage(message);
+        request.setPhoneNumbers(List.of("48500000001"));
+        return request;
+    }
+
+    private void awaitReleased(int count, long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (released.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, released.size());
+    }
+
+    private void assertReleasedOnTime(JobStatus job) {
+        long at = released.get(job.getJobId());
+        assertTrue(at >= job.getSendAt(), "released " + (job.getSendAt() - at) + " ms early");
+        assertTrue(at < job.getSendAt() + LATE_MS, "released " + (at - job.getSendAt()) + " ms late");
+    }
+
+    @Test
+    void releasesSendsAtTheirTimeAcrossWheelLevels() throws InterruptedException {
+        SendScheduler scheduler = scheduler();
+        long now = System.currentTimeMillis();
+
+        // 700 ms and 1200 ms wait in different slots of level 1 and cascade when level 0 turns onto them
+        JobStatus late = scheduler.scheduleEmail(new EmailRequest(), now + 1200);
+        JobStatus cascaded = scheduler.scheduleSms(sms("cascaded"), now + 700);
+        JobStatus soon = scheduler.scheduleSms(sms("soon"), now + 100);
+        JobStatus past = scheduler.scheduleSms(sms("past"), now - 60_000);
+
+        assertEquals(JobStatus.SCHEDULED, late.getStatus());
+        assertEquals(now + 1200, late.getSendAt());
+        assertNotNull(scheduler.getJob(late.getJobId()));
+
+        awaitReleased(4, 5000);
+        assertEquals(List.of(past.getJobId(), soon.getJobId(), cascaded.getJobId(), late.getJobId()), releaseOrder);
+        assertReleasedOnTime(soon);
+        assertReleasedOnTime(cascaded);
+        assertReleasedOnTime(late);
+        assertNull(scheduler.getJob(late.getJobId()));
+    }
+
+    @Test
+    void releasesSendsDueAtTheSameTimeInBatches() throws InterruptedException {
+        SendScheduler scheduler = scheduler(outbox(false), 3, 1000);
+        long sendAt = System.currentTimeMillis() + 600;
+        for (int i = 0; i < 10; i++) {
+            scheduler.scheduleSms(sms("batch " + i), sendAt);
+        }
+
+        awaitReleased(10, 5000);
+    }
+
+    @Test
+    void cancelledSendIsNotReleased() throws InterruptedException {
+        SendScheduler scheduler = scheduler();
+        JobStatus cancelled = scheduler.scheduleSms(sms("cancelled"), System.currentTimeMillis() + 200);
+        JobStatus kept = scheduler.scheduleSms(sms("kept"), System.currentTimeMillis() + 300);
+
+        assertTrue(scheduler.cancel(cancelled.getJobId()));
+        assertFalse(scheduler.cancel(cancelled.getJobId()));
+        assertNull(scheduler.getJob(cancelled.getJobId()));
+
+        awaitReleased(1, 5000);
+        assertTrue(released.containsKey(kept.getJobId()));
+        assertFalse(scheduler.cancel(kept.getJobId()));
+        assertFalse(scheduler.cancel("not-a-job-id"));
+    }
+
+    @Test
+    void rejectsSendsBeyondMaxPending() {
+        SendScheduler scheduler = scheduler(outbox(false), 1000, 2);
+        long sendAt = System.currentTimeMillis() + 60_000;
+
+        assertNotNull(scheduler.scheduleSms(sms("1"), sendAt));
+        assertNotNull(scheduler.scheduleSms(sms("2"), sendAt));
+        assertNull(scheduler.scheduleSms(sms("3"), sendAt));
+    }
+
+    @Test
+    void releasesSerializedRequest() throws InterruptedException, IOException {
+        List<byte[]> payloads = new CopyOnWriteArrayList<>();
+        when(jobService.submitScheduled(any(UUID.class), anyString(), anyLong(), any(byte[].class))).thenAnswer(call -> {
+            payloads.add(call.getArgument(3, byte[].class));
+            released.put(call.getArgument(0, UUID.class).toString(), System.currentTimeMillis());
+            return true;
+        });
+        scheduler().scheduleSms(sms("payload"), System.currentTimeMillis());
+
+        awaitReleased(1, 5000);
+        assertEquals("payload", objectMapper.readValue(payloads.get(0), SmsRequest.class).getMessage());
+    }
+
+    @Test
+    void restoresScheduledSendsFromOutbox() throws InterruptedException {
+        Outbox outbox = outbox(true);
+        SendScheduler scheduler = scheduler(outbox, 1000, 1000);
+        long now = System.currentTimeMillis();
+        JobStatus restored = scheduler.scheduleSms(sms("restored"), now + 1500);
+        JobStatus cancelled = scheduler.scheduleSms(sms("cancelled"), now + 1500);
+        scheduler.cancel(cancelled.getJobId());
+
+        scheduler.close();
+        schedulers.remove(scheduler);
+        outbox.close();
+        outboxes.remove(outbox);
+        assertTrue(released.isEmpty());
+
+        SendScheduler restarted = scheduler(outbox(true), 1000, 1000);
+        JobStatus job = restarted.getJob(restored.getJobId());
+        assertNotNull(job);
+        assertEquals(JobStatus.SCHEDULED, job.getStatus());
+        assertEquals(now + 1500, job.getSendAt());
+        assertEquals(restored.getSubmittedAt(), job.getSubmittedAt());
+        assertNull(restarted.getJob(cancelled.getJobId()));
+
+        awaitReleased(1, 5000);
+        assertReleasedOnTime(job);
+    }
+}
@@ -0,0 +1,100 @@
+package com.messageflow.api.services;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.messageflow.api.models.SmsRequest;
+import com.messageflow.api.models.SmsResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class StreamServiceTest {
+
+    private static final int MAX_LINE_CHARS = 100;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final SmsService smsService = mock(SmsService.class);
+    private final ParallelDispatcher dispatcher = new ParallelDispatcher(new MockEnvironment());
+    private final StreamService streamService = new StreamService(smsService, mock(EmailService.class),
+            mock(RequestValidator.class), dispatcher, objectMapper, 4, MAX_LINE_CHARS);
+
+    @AfterEach
+    void shutdown() {
+        dispatcher.shutdown();
+    }
+
+    @Test
+    void rejectsLinesLongerThanTheLimitAndGoesOn() throws Exception {
+        when(smsService.sendSms(any(SmsRequest.class))).thenReturn(new SmsResponse(true, "SMS sent successfully"));
+        String tooLong = "{\"message\":\"" + "x".repeat(MAX_LINE_CHARS) + "\"}";
+        String body = "{}\r\n" + tooLong + "\n\n{}";
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        long lines = streamService.streamSms(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)), out);
+
+        assertEquals(4, lines);
+        Map<Long, JsonNode> results = new HashMap<>();
+        for (String line : out.toString(StandardCharsets.UTF_8).split("\n")) {
+            JsonNode result = objectMapper.readTree(line);
+            results.put(result.get("line").asLong(), result.get("result"));
+        }
+        assertEquals(3, results.size());
+        assertTrue(results.get(1L).get("success").asBoolean());
+        assertFalse(results.get(2L).get("success").asBoolean());
+        assertEquals("Line longer than 100 characters", results.get(2L).get("message").asText());
+        assertTrue(results.get(4L).get("success").asBoolean());
+        verify(smsService, times(2)).sendSms(any(SmsRequest.class));
+    }
+
+    @Test
+    void waitsForRunningSendsWithoutWritingWhenReadingFails() throws Exception {
+        CountDownLatch readFailed = new CountDownLatch(1);
+        AtomicBoolean sent = new AtomicBoolean();
+        when(smsService.sendSms(any(SmsRequest.class))).thenAnswer(call -> {
+            readFailed.await(5, TimeUnit.SECONDS);
+            Thread.sleep(50);
+            sent.set(true);
+            return new SmsResponse(true, "SMS sent successfully");
+        });
+        InputStream in = new InputStream() {
+            private final InputStream first = new ByteArrayInputStream("{}\n".getBytes(StandardCharsets.UTF_8));
+
+            @Override
+            public int read() throws IOException {
+                int b = first.read();
+                if (b < 0) {
+                    readFailed.countDown();
+                    throw new IOException("Connection reset");
+                }
+                return b;
+            }
+        };
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        assertThrows(IOException.class, () -> streamService.streamSms(in, out));
+
+        assertTrue(sent.get());
+        assertEquals(0, out.size());
+    }
+}
@@ -1,30 +1,68 @@
 package com.messageflow.function;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
 import com.microsoft.azure.functions.*;
 import com.microsoft.azure.functions.annotation.AuthorizationLevel;
+import com.microsoft.azure.functions.annotation.BindingName;
 import com.microsoft.azure.functions.annotation.FunctionName;
 import com.microsoft.azure.functions.annotation.HttpTrigger;
-import com.messageflow.function.models.EmailRequest;
-import com.messageflow.function.models.EmailResponse;
-import com.messageflow.function.services.EmailService;
-import com.messageflow.function.utils.Config;
+import com.microsoft.azure.functions.annotation.QueueOutput;
+import com.microsoft.azure.functions.annotation.QueueTrigger;
+import com.messageflow.client.MessageFlowClient;
+import com.messageflow.client.models.EmailRequest;
+import com.messageflow.client.models.EmailResponse;
+import com.messageflow.client.services.EmailService;
+import com.messageflow.client.utils.IdempotencyCache;
+import com.messageflow.client.utils.Json;
+import com.messageflow.client.utils.Metrics;
+import com.messageflow.client.utils.SendLog;
 
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * Azure Functions with HTTP Trigger for sending emails via MessageFlow API
+ * Azure Functions with HTTP and Storage Queue Triggers for sending emails via MessageFlow API
  */
 public class EmailFunction {
-    private static EmailService emailService;
-    private static final Gson gson = new Gson();
+    private static final String QUEUE = "messageflow-email";
+    private static final String POISON_QUEUE = QUEUE + "-poison";
+
+    private static final Gson gson = Json.gson();
+    private static final Metrics metrics = Metrics.get();
+    private static final AtomicInteger inFlight = new AtomicInteger();
+
+    // Built on the first invocation by emailService(), not when the worker loads the class, so
+    // loading the function and serving the metrics endpoint do not wait for configuration and
+    // the HTTP client. Both come from the worker's MessageFlowClient, which an app that also hosts
+    // the SMS trigger shares with it. idempotencyCache is written before the volatile emailService.
+    private static volatile EmailService emailService;
+    private static IdempotencyCache idempotencyCache;
 
     static {
-        try {
-            Config config = Config.loadConfig();
-            emailService = new EmailService(config);
-        } catch (Exception e) {
-            System.err.println("Failed to initialize Email service: " + e.getMessage());
+        metrics.gauge("messageflow.function.in.flight", inFlight::get, "function", "email");
+    }
+
+    /**
+     * The Email service, or null when it could not be created; the next call tries again, so
+     * a worker started before its configuration was complete recovers without a restart.
+     */
+    private static EmailService emailService() {
+        EmailService service = emailService;
+        if (service != null) {
+            return service;
+        }
+        synchronized (EmailFunction.class) {
+            if (emailService == null) {
+                try {
+                    MessageFlowClient client = MessageFlowClient.shared();
+                    idempotencyCache = client.getIdempotencyCache();
+                    emailService = client.getEmailService();
+                } catch (Exception e) {
+                    System.err.println("Failed to initialize Email service: " + e.getMessage());
+                }
+            }
+            return emailService;
         }
     }
 
@@ -40,8 +78,76 @@ public class EmailFunction {
             HttpRequestMessage<Optional<String>> request,
             final ExecutionContext context) {
 
+        long start = System.nanoTime();
+        inFlight.incrementAndGet();
+        HttpResponseMessage response = null;
+        try {
+            response = handle(request, context);
+            return response;
+        } finally {
+            inFlight.decrementAndGet();
+            int status = response != null ? response.getStatus().value() : 500;
+            metrics.timer("messageflow.function.requests", "function", "email", "status", Metrics.statusClass(status))
+                    .recordSince(start);
+            if (status == HttpStatus.BAD_REQUEST.value()) {
+                metrics.increment("messageflow.validation.failures", "channel", "email");
+            }
+        }
+    }
+
+    /**
+     * This function listens at endpoint "/api/MessageFlowEmailMetrics" and returns the metrics
+     * recorded by this worker as JSON.
+     */
+    @FunctionName("MessageFlowEmailMetrics")
+    public HttpResponseMessage metrics(
+            @HttpTrigger(
+                    name = "req",
+                    methods = {HttpMethod.GET},
+                    authLevel = AuthorizationLevel.FUNCTION)
+            HttpRequestMessage<Optional<String>> request,
+            final ExecutionContext context) {
+
+        return request.createResponseBuilder(HttpStatus.OK)
+                .header("Content-Type", "application/json")
+                .body(gson.toJson(metrics.snapshot()))
+                .build();
+    }
+
+    /**
+     * This function sends the email requests put on the "messageflow-email" Storage queue. The
+     * host fetches messages in batches of extensions.queues.batchSize (host.json) and runs them
+     * concurrently, all over the worker's MessageFlowClient.
+     *
+     * Messages that can never be sent (not JSON, or a required field missing) are moved to
+     * "messageflow-email-poison" at once, and so are emails split into chunks of which only some
+     * were sent, since sending the message again would repeat the chunks that went through. Any
+     * other failed send, including rejections by a rate limit or the open circuit, throws, so the
+     * host makes the message visible again after visibilityTimeout and moves it to the same poison
+     * queue after maxDequeueCount attempts.
+     */
+    @FunctionName("MessageFlowEmailQueueTrigger")
+    public void queue(
+            @QueueTrigger(name = "message", queueName = QUEUE, connection = "AzureWebJobsStorage") String message,
+            @BindingName("Id") String id,
+            @BindingName("DequeueCount") long dequeueCount,
+            @QueueOutput(name = "poison", queueName = POISON_QUEUE, connection = "AzureWebJobsStorage")
+            OutputBinding<String> poison,
+            final ExecutionContext context) {
+
+        long start = System.nanoTime();
+        String result = "retry";
+        try {
+            result = handle(message, id, dequeueCount, poison, context);
+        } finally {
+            metrics.timer("messageflow.queue.messages", "channel", "email", "result", result).recordSince(start);
+        }
+    }
+
+    private HttpResponseMessage handle(HttpRequestMessage<Optional<String>> request, ExecutionContext context) {
         context.getLogger().info("MessageFlow Email HTTP trigger function processed a request.");
 
+        EmailService emailService = emailService();
         if (emailService == null) {
             EmailResponse errorResponse = new EmailResponse(
                     false,
@@ -70,16 +176,19 @@ public class EmailFunction {
                         .build();
             }
 
-            context.getLogger().info("Received Email request data: " + body);
+            SendLog sendLog = emailService.getSendLog();
+            sendLog.log(context.getLogger(), SendLog.Event.REQUEST,
+                    () -> "Received Email request data: " + body, null);
 
             // Parse request
             EmailRequest emailRequest = gson.fromJson(body, EmailRequest.class);
 
             // Validate required fields
-            if (emailRequest.getSubject() == null || emailRequest.getSubject().isEmpty()) {
+            String error = validationError(emailRequest);
+            if (error != null) {
                 EmailResponse errorResponse = new EmailResponse(
                         false,
-                        "Missing required field: subject",
+                        error,
                         ""
                 );
                 return request.createResponseBuilder(HttpStatus.BAD_REQUEST)
@@ -88,61 +197,28 @@ public class EmailFunction {
                         .build();
             }
 
-            if (emailRequest.getSmtpAccount() == null || emailRequest.getSmtpAccount().isEmpty()) {
-                EmailResponse errorResponse = new EmailResponse(
-                        false,
-                        "Missing required field: smtpAccount",
-                        ""
-                );
-                return request.createResponseBuilder(HttpStatus.BAD_REQUEST)
-                        .header("Content-Type", "application/json")
-                        .body(gson.toJson(errorResponse))
-                        .build();
-            }
+            sendLog.log(context.getLogger(), SendLog.Event.REQUEST,
+                    () -> "Created Email request: subject=" + emailRequest.getSubject() +
+                            ", from=" + emailRequest.getFrom().getEmail(),
+                    () -> "event=email.request smtpAccount=" + emailRequest.getSmtpAccount() +
+                            " recipients=" + emailRequest.getTo().size());
 
-            if (emailRequest.getFrom() == null) {
-                EmailResponse errorResponse = new EmailResponse(
-                        false,
-                        "Missing required field: from",
-                        ""
-                );
-                return request.createResponseBuilder(HttpStatus.BAD_REQUEST)
-                        .header("Content-Type", "application/json")
-                        .body(gson.toJson(errorResponse))
-                        .build();
-            }
+            // Send Email, unless the same email was already sent or is being sent
+            String key = idempotencyCache.key("email", IdempotencyCache.header(request.getHeaders()),
+                    null, body);
+            EmailResponse response = idempotencyCache.execute(key, () -> emailService.sendEmail(emailRequest), EmailResponse::isDelivered);
 
-            if (emailRequest.getTo() == null || emailRequest.getTo().isEmpty()) {
-                EmailResponse errorResponse = new EmailResponse(
-                        false,
-                        "Missing required field: to (must be a non-empty array)",
-                        ""
-                );
-                return request.createResponseBuilder(HttpStatus.BAD_REQUEST)
+            if (response.getRetryAfterSeconds() != null) {
+                return request.createResponseBuilder(HttpStatus.SERVICE_UNAVAILABLE)
                         .header("Content-Type", "application/json")
-                        .body(gson.toJson(errorResponse))
+                        .header("Retry-After", String.valueOf(response.getRetryAfterSeconds()))
+                        .body(gson.toJson(response))
                         .build();
             }
 
-            if (emailRequest.getContent() == null) {
-                EmailResponse errorResponse = new EmailResponse(
-                        false,
-                        "Missing required field: content",
-                        ""
-                );
-                return request.createResponseBuilder(HttpStatus.BAD_REQUEST)
-                        .header("Content-Type", "application/json")
-                        .body(gson.toJson(errorResponse))
-                        .build();
-            }
-
-            context.getLogger().info("Created Email request: subject=" + emailRequest.getSubject() +
-                    ", from=" + emailRequest.getFrom().getEmail());
-
-            // Send Email
-            EmailResponse response = emailService.sendEmail(emailRequest);
-
-            HttpStatus status = response.isSuccess() ? HttpStatus.OK : HttpStatus.INTERNAL_SERVER_ERROR;
+            // 207 when only some chunks were sent, so clients do not resend the whole request
+            HttpStatus status = response.isSuccess() ? HttpStatus.OK
+                    : response.isDelivered() ? HttpStatus.MULTI_STATUS : HttpStatus.INTERNAL_SERVER_ERROR;
 
             return request.createResponseBuilder(status)
                     .header("Content-Type", "application/json")
@@ -162,4 +238,81 @@ public class EmailFunction {
                     .build();
         }
     }
+
+    private String handle(String message, String id, long dequeueCount, OutputBinding<String> poison,
+                          ExecutionContext context) {
+        context.getLogger().info("MessageFlow Email queue trigger function processed message " + id +
+                " (dequeue count " + dequeueCount + ").");
+
+        EmailService emailService = emailService();
+        if (emailService == null) {
+            throw new IllegalStateException("Email service is not available. Please check configuration.");
+        }
+
+        SendLog sendLog = emailService.getSendLog();
+        sendLog.log(context.getLogger(), SendLog.Event.REQUEST,
+                () -> "Received Email queue message: " + message, null);
+
+        EmailRequest emailRequest;
+        String error;
+        try {
+            emailRequest = gson.fromJson(message, EmailRequest.class);
+            error = emailRequest != null ? validationError(emailRequest) : "Message is empty";
+        } catch (JsonParseException e) {
+            emailRequest = null;
+            error = "Message is not a valid email request: " + e.getMessage();
+        }
+        if (error != null) {
+            context.getLogger().warning("Moving Email queue message " + id + " to " + POISON_QUEUE + ": " + error);
+            metrics.increment("messageflow.validation.failures", "channel", "email");
+            poison.setValue(message);
+            return "poison";
+        }
+
+        EmailRequest request = emailRequest;
+        String key = idempotencyCache.key("email", id, null, message);
+        EmailResponse response = idempotencyCache.execute(key, () -> emailService.sendEmail(request), EmailResponse::isDelivered);
+
+        // Rejected before anything was sent. Not waited out here: the invocation would hold one of
+        // the host's batchSize slots, and while the circuit is open every message of the batch
+        // would. The host tries again after visibilityTimeout, which outlasts the open period.
+        if (response.getRetryAfterSeconds() != null && !response.isDelivered()) {
+            metrics.increment("messageflow.queue.rejected", "channel", "email");
+            throw new IllegalStateException("Email queue message " + id + " rejected, retry after " +
+                    response.getRetryAfterSeconds() + " s: " + response.getMessage());
+        }
+
+        if (!response.isSuccess()) {
+            if (response.isDelivered()) {
+                context.getLogger().warning("Moving Email queue message " + id + " to " + POISON_QUEUE +
+                        ": " + response.getMessage() + "; the other chunks were sent");
+                poison.setValue(message);
+                return "poison";
+            }
+            throw new IllegalStateException("Failed to send Email queue message " + id + ": " + response.getMessage());
+        }
+        return "sent";
+    }
+
+    /**
+     * The error message for the first missing required field, or null when the request is complete.
+     */
+    private static String validationError(EmailRequest emailRequest) {
+        if (emailRequest.getSubject() == null || emailRequest.getSubject().isEmpty()) {
+            return "Missing required field: subject";
+        }
+        if (emailRequest.getSmtpAccount() == null || emailRequest.getSmtpAccount().isEmpty()) {
+            return "Missing required field: smtpAccount";
+        }
+        if (emailRequest.getFrom() == null) {
+            return "Missing required field: from";
+        }
+        if (emailRequest.getTo() == null || emailRequest.getTo().isEmpty()) {
+            return "Missing required field: to (must be a non-empty array)";
+        }
+        if (emailRequest.getContent() == null) {
+            return "Missing required field: content";
+        }
+        return null;
+    }
 }
@@ -1,30 +1,68 @@
 package com.messageflow.function;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
 import com.microsoft.azure.functions.*;
 import com.microsoft.azure.functions.annotation.AuthorizationLevel;
+import com.microsoft.azure.functions.annotation.BindingName;
 import com.microsoft.azure.functions.annotation.FunctionName;
 import com.microsoft.azure.functions.annotation.HttpTrigger;
-import com.messageflow.function.models.SmsRequest;
-import com.messageflow.function.models.SmsResponse;
-import com.messageflow.function.services.SmsService;
-import com.messageflow.function.utils.Config;
+import com.microsoft.azure.functions.annotation.QueueOutput;
+import com.microsoft.azure.functions.annotation.QueueTrigger;
+import com.messageflow.client.MessageFlowClient;
+import com.messageflow.client.models.SmsRequest;
+import com.messageflow.client.models.SmsResponse;
+import com.messageflow.client.services.SmsService;
+import com.messageflow.client.utils.IdempotencyCache;
+import com.messageflow.client.utils.Json;
+import com.messageflow.client.utils.Metrics;
+import com.messageflow.client.utils.SendLog;
 
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * Azure Functions with HTTP Trigger for sending SMS via MessageFlow API
+ * Azure Functions with HTTP and Storage Queue Triggers for sending SMS via MessageFlow API
  */
 public class SmsFunction {
-    private static SmsService smsService;
-    private static final Gson gson = new Gson();
+    private static final String QUEUE = "messageflow-sms";
+    private static final String POISON_QUEUE = QUEUE + "-poison";
+
+    private static final Gson gson = Json.gson();
+    private static final Metrics metrics = Metrics.get();
+    private static final AtomicInteger inFlight = new AtomicInteger();
+
+    // Built on the first invocation by smsService(), not when the worker loads the class, so
+    // loading the function and serving the metrics endpoint do not wait for configuration and
+    // the HTTP client. Both come from the worker's MessageFlowClient, which an app that also hosts
+    // the email trigger shares with it. idempotencyCache is written before the volatile smsService.
+    private static volatile SmsService smsService;
+    private static IdempotencyCache idempotencyCache;
 
     static {
-        try {
-            Config config = Config.loadConfig();
-            smsService = new SmsService(config);
-        } catch (Exception e) {
-            System.err.println("Failed to initialize SMS service: " + e.getMessage());
+        metrics.gauge("messageflow.function.in.flight", inFlight::get, "function", "sms");
+    }
+
+    /**
+     * The SMS service, or null when it could not be created; the next call tries again, so
+     * a worker started before its configuration was complete recovers without a restart.
+     */
+    private static SmsService smsService() {
+        SmsService service = smsService;
+        if (service != null) {
+            return service;
+        }
+        synchronized (SmsFunction.class) {
+            if (smsService == null) {
+                try {
+                    MessageFlowClient client = MessageFlowClient.shared();
+                    idempotencyCache = client.getIdempotencyCache();
+                    smsService = client.getSmsService();
+                } catch (Exception e) {
+                    System.err.println("Failed to initialize SMS service: " + e.getMessage());
+                }
+            }
+            return smsService;
         }
     }
 
@@ -40,8 +78,75 @@ public class SmsFunction {
             HttpRequestMessage<Optional<String>> request,
             final ExecutionContext context) {
 
+        long start = System.nanoTime();
+        inFlight.incrementAndGet();
+        HttpResponseMessage response = null;
+        try {
+            response = handle(request, context);
+            return response;
+        } finally {
+            inFlight.decrementAndGet();
+            int status = response != null ? response.getStatus().value() : 500;
+            metrics.timer("messageflow.function.requests", "function", "sms", "status", Metrics.statusClass(status))
+                    .recordSince(start);
+            if (status == HttpStatus.BAD_REQUEST.value()) {
+                metrics.increment("messageflow.validation.failures", "channel", "sms");
+            }
+        }
+    }
+
+    /**
+     * This function listens at endpoint "/api/MessageFlowSmsMetrics" and returns the metrics
+     * recorded by this worker as JSON.
+     */
+    @FunctionName("MessageFlowSmsMetrics")
+    public HttpResponseMessage metrics(
+            @HttpTrigger(
+                    name = "req",
+                    methods = {HttpMethod.GET},
+                    authLevel = AuthorizationLevel.FUNCTION)
+            HttpRequestMessage<Optional<String>> request,
+            final ExecutionContext context) {
+
+        return request.createResponseBuilder(HttpStatus.OK)
+                .header("Content-Type", "application/json")
+                .body(gson.toJson(metrics.snapshot()))
+                .build();
+    }
+
+    /**
+     * This function sends the SMS requests put on the "messageflow-sms" Storage queue. The host
+     * fetches messages in batches of extensions.queues.batchSize (host.json) and runs them
+     * concurrently, all over the worker's MessageFlowClient.
+     *
+     * Messages that can never be sent (not JSON, or a required field missing) are moved to
+     * "messageflow-sms-poison" at once, and so are messages split into chunks of which only some
+     * were sent. Any other failed send, including rejections by a rate limit or the open circuit,
+     * throws, so the host makes the message visible again after visibilityTimeout and moves it to
+     * the same poison queue after maxDequeueCount attempts.
+     */
+    @FunctionName("MessageFlowSmsQueueTrigger")
+    public void queue(
+            @QueueTrigger(name = "message", queueName = QUEUE, connection = "AzureWebJobsStorage") String message,
+            @BindingName("Id") String id,
+            @BindingName("DequeueCount") long dequeueCount,
+            @QueueOutput(name = "poison", queueName = POISON_QUEUE, connection = "AzureWebJobsStorage")
+            OutputBinding<String> poison,
+            final ExecutionContext context) {
+
+        long start = System.nanoTime();
+        String result = "retry";
+        try {
+            result = handle(message, id, dequeueCount, poison, context);
+        } finally {
+            metrics.timer("messageflow.queue.messages", "channel", "sms", "result", result).recordSince(start);
+        }
+    }
+
+    private HttpResponseMessage handle(HttpRequestMessage<Optional<String>> request, ExecutionContext context) {
         context.getLogger().info("MessageFlow SMS HTTP trigger function processed a request.");
 
+        SmsService smsService = smsService();
         if (smsService == null) {
             SmsResponse errorResponse = new SmsResponse(
                     false,
@@ -70,16 +175,19 @@ public class SmsFunction {
                         .build();
             }
 
-            context.getLogger().info("Received SMS request data: " + body);
+            SendLog sendLog = smsService.getSendLog();
+            sendLog.log(context.getLogger(), SendLog.Event.REQUEST,
+                    () -> "Received SMS request data: " + body, null);
 
             // Parse request
             SmsRequest smsRequest = gson.fromJson(body, SmsRequest.class);
 
             // Validate required fields
-            if (smsRequest.getSender() == null || smsRequest.getSender().isEmpty()) {
+            String error = validationError(smsRequest);
+            if (error != null) {
                 SmsResponse errorResponse = new SmsResponse(
                         false,
-                        "Missing required field: sender",
+                        error,
                         ""
                 );
                 return request.createResponseBuilder(HttpStatus.BAD_REQUEST)
@@ -88,38 +196,30 @@ public class SmsFunction {
                         .build();
             }
 
-            if (smsRequest.getMessage() == null || smsRequest.getMessage().isEmpty()) {
-                SmsResponse errorResponse = new SmsResponse(
-                        false,
-                        "Missing required field: message",
-                        ""
-                );
-                return request.createResponseBuilder(HttpStatus.BAD_REQUEST)
-                        .header("Content-Type", "application/json")
-                        .body(gson.toJson(errorResponse))
-                        .build();
-            }
+            sendLog.log(context.getLogger(), SendLog.Event.REQUEST,
+                    () -> "Created SMS request: sender=" + smsRequest.getSender() +
+                            ", message=" + smsRequest.getMessage() +
+                            ", phoneNumbers=" + String.join(", ", smsRequest.getPhoneNumbers()),
+                    () -> "event=sms.request sender=" + smsRequest.getSender() +
+                            " recipients=" + smsRequest.getPhoneNumbers().size() +
+                            " messageChars=" + smsRequest.getMessage().length());
 
-            if (smsRequest.getPhoneNumbers() == null || smsRequest.getPhoneNumbers().isEmpty()) {
-                SmsResponse errorResponse = new SmsResponse(
-                        false,
-                        "Missing required field: phoneNumbers (must be a non-empty array)",
-                        ""
-                );
-                return request.createResponseBuilder(HttpStatus.BAD_REQUEST)
+            // Send SMS, unless the same SMS was already sent or is being sent
+            String key = idempotencyCache.key("sms", IdempotencyCache.header(request.getHeaders()),
+                    smsRequest.getExternalId(), body);
+            SmsResponse response = idempotencyCache.execute(key, () -> smsService.sendSms(smsRequest), SmsResponse::isDelivered);
+
+            if (response.getRetryAfterSeconds() != null) {
+                return request.createResponseBuilder(HttpStatus.SERVICE_UNAVAILABLE)
                         .header("Content-Type", "application/json")
-                        .body(gson.toJson(errorResponse))
+                        .header("Retry-After", String.valueOf(response.getRetryAfterSeconds()))
+                        .body(gson.toJson(response))
                         .build();
             }
 
-            context.getLogger().info("Created SMS request: sender=" + smsRequest.getSender() +
-                    ", message=" + smsRequest.getMessage() +
-                    ", phoneNumbers=" + String.join(", ", smsRequest.getPhoneNumbers()));
-
-            // Send SMS
-            SmsResponse response = smsService.sendSms(smsRequest);
-
-            HttpStatus status = response.isSuccess() ? HttpStatus.OK : HttpStatus.INTERNAL_SERVER_ERROR;
+            // 207 when only some chunks were sent, so clients do not resend the whole request
+            HttpStatus status = response.isSuccess() ? HttpStatus.OK
+                    : response.isDelivered() ? HttpStatus.MULTI_STATUS : HttpStatus.INTERNAL_SERVER_ERROR;
 
             return request.createResponseBuilder(status)
                     .header("Content-Type", "application/json")
@@ -139,4 +239,81 @@ public class SmsFunction {
                     .build();
         }
     }
+
+    private String handle(String message, String id, long dequeueCount, OutputBinding<String> poison,
+                          ExecutionContext context) {
+        context.getLogger().info("MessageFlow SMS queue trigger function processed message " + id +
+                " (dequeue count " + dequeueCount + ").");
+
+        SmsService smsService = smsService();
+        if (smsService == null) {
+            throw new IllegalStateException("SMS service is not available. Please check configuration.");
+        }
+
+        SendLog sendLog = smsService.getSendLog();
+        sendLog.log(context.getLogger(), SendLog.Event.REQUEST,
+                () -> "Received SMS queue message: " + message, null);
+
+        SmsRequest smsRequest;
+        String error;
+        try {
+            smsRequest = gson.fromJson(message, SmsRequest.class);
+            error = smsRequest != null ? validationError(smsRequest) : "Message is empty";
+        } catch (JsonParseException e) {
+            smsRequest = null;
+            error = "Message is not a valid SMS request: " + e.getMessage();
+        }
+        if (error != null) {
+            context.getLogger().warning("Moving SMS queue message " + id + " to " + POISON_QUEUE + ": " + error);
+            metrics.increment("messageflow.validation.failures", "channel", "sms");
+            poison.setValue(message);
+            return "poison";
+        }
+
+        // A message redelivered after its visibility timeout resends the same externalId, so
+        // MessageFlow can drop it if the first delivery went through
+        if (smsRequest.getExternalId() == null || smsRequest.getExternalId().isEmpty()) {
+            smsRequest.setExternalId(id);
+        }
+
+        SmsRequest request = smsRequest;
+        String key = idempotencyCache.key("sms", id, request.getExternalId(), message);
+        SmsResponse response = idempotencyCache.execute(key, () -> smsService.sendSms(request), SmsResponse::isDelivered);
+
+        // Rejected before anything was sent. Not waited out here: the invocation would hold one of
+        // the host's batchSize slots, and while the circuit is open every message of the batch
+        // would. The host tries again after visibilityTimeout, which outlasts the open period.
+        if (response.getRetryAfterSeconds() != null && !response.isDelivered()) {
+            metrics.increment("messageflow.queue.rejected", "channel", "sms");
+            throw new IllegalStateException("SMS queue message " + id + " rejected, retry after " +
+                    response.getRetryAfterSeconds() + " s: " + response.getMessage());
+        }
+
+        if (!response.isSuccess()) {
+            if (response.isDelivered()) {
+                context.getLogger().warning("Moving SMS queue message " + id + " to " + POISON_QUEUE +
+                        ": " + response.getMessage() + "; the other chunks were sent");
+                poison.setValue(message);
+                return "poison";
+            }
+            throw new IllegalStateException("Failed to send SMS queue message " + id + ": " + response.getMessage());
+        }
+        return "sent";
+    }
+
+    /**
+     * The error message for the first missing required field, or null when the request is complete.
+     */
+    private static String validationError(SmsRequest smsRequest) {
+        if (smsRequest.getSender() == null || smsRequest.getSender().isEmpty()) {
+            return "Missing required field: sender";
+        }
+        if (smsRequest.getMessage() == null || smsRequest.getMessage().isEmpty()) {
+            return "Missing required field: message";
+        }
+        if (smsRequest.getPhoneNumbers() == null || smsRequest.getPhoneNumbers().isEmpty()) {
+            return "Missing required field: phoneNumbers (must be a non-empty array)";
+        }
+        return null;
+    }
 }
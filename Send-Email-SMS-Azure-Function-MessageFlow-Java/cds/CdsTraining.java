@@ -0,0 +1,186 @@
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Training run for the AppCDS archive of a packaged function (mvn package -Pstartup).
+ *
+ * Usage: java -XX:ArchiveClassesAtExit=app.jsa CdsTraining.java stagingDirectory triggerClass requestJson
+ *
+ * Loads the function jar and its lib/ directory from the staging directory through a
+ * URLClassLoader, as the Functions Java worker does, and calls every HTTP trigger of triggerClass
+ * with requestJson and with an empty body. The service sends to an in-process stub upstream,
+ * configured through a config.json written to the working directory. Every class loaded on the
+ * way ends up in the archive.
+ *
+ * It is run from source so that no class comes from the application class path: the archive then
+ * does not depend on the class path, which is the worker jar at run time. Classes loaded through
+ * the URLClassLoader are archived with the checksum of their jar and used by whichever class
+ * loader loads the same jar later.
+ */
+public class CdsTraining {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 3) {
+            System.err.println("Usage: CdsTraining stagingDirectory triggerClass requestJson");
+            System.exit(2);
+        }
+        Path staging = Path.of(args[0]);
+        String triggerClass = args[1];
+        String requestJson = args[2];
+
+        HttpServer upstream = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        upstream.createContext("/", exchange -> {
+            exchange.getRequestBody().transferTo(OutputStream.nullOutputStream());
+            byte[] response = "{\"message\":\"ok\"}".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response);
+            }
+        });
+        upstream.start();
+
+        int failures = 0;
+        try {
+            Files.writeString(Path.of("config.json"), "{\"restApi\":{"
+                    + "\"authorization\":\"cds-training\","
+                    + "\"application_key\":\"cds-training\","
+                    + "\"base_url\":\"http://127.0.0.1:" + upstream.getAddress().getPort() + "\"}}");
+
+            ClassLoader loader = new URLClassLoader(jars(staging), ClassLoader.getPlatformClassLoader());
+            Class<?> requestType = loader.loadClass("com.microsoft.azure.functions.HttpRequestMessage");
+            Class<?> contextType = loader.loadClass("com.microsoft.azure.functions.ExecutionContext");
+            Class<?> trigger = loader.loadClass(triggerClass);
+            Object function = trigger.getConstructor().newInstance();
+
+            for (Method method : trigger.getMethods()) {
+                Class<?>[] parameters = method.getParameterTypes();
+                if (Modifier.isStatic(method.getModifiers()) || parameters.length != 2
+                        || parameters[0] != requestType || parameters[1] != contextType) {
+                    continue;
+                }
+                for (String body : new String[] {requestJson, ""}) {
+                    Object response = method.invoke(function, request(loader, body), context(loader, method.getName()));
+                    Object statusType = response.getClass().getMethod("getStatus").invoke(response);
+                    Object status = statusType.getClass().getMethod("value").invoke(statusType);
+                    System.out.println("CDS training: " + method.getName() + (body.isEmpty() ? " (empty body)" : "")
+                            + " -> " + status);
+                    if (!body.isEmpty() && !Integer.valueOf(200).equals(status)) {
+                        failures++;
+                    }
+                }
+            }
+        } finally {
+            upstream.stop(0);
+        }
+
+        // The archive is written when the JVM exits; exit explicitly, the function leaves
+        // client threads behind
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    private static URL[] jars(Path staging) throws IOException {
+        List<URL> urls = new ArrayList<>();
+        try (Stream<Path> files = Stream.concat(Files.list(staging), Files.list(staging.resolve("lib")))) {
+            for (Path file : (Iterable<Path>) files.filter(f -> f.toString().endsWith(".jar")).sorted()::iterator) {
+                urls.add(file.toUri().toURL());
+            }
+        }
+        return urls.toArray(new URL[0]);
+    }
+
+    private static Object request(ClassLoader loader, String body) throws ClassNotFoundException {
+        Class<?> methodType = loader.loadClass("com.microsoft.azure.functions.HttpMethod");
+        return proxy(loader, "com.microsoft.azure.functions.HttpRequestMessage", (self, method, args) -> switch (method.getName()) {
+            case "getUri" -> URI.create("http://localhost:7071/api/cds-training");
+            case "getHttpMethod" -> enumValue(methodType, "POST");
+            case "getHeaders" -> Map.of("content-type", "application/json");
+            case "getQueryParameters" -> Map.of();
+            case "getBody" -> Optional.of(body);
+            case "createResponseBuilder" -> responseBuilder(loader, args[0]);
+            default -> objectMethod(self, method, args);
+        });
+    }
+
+    private static Object responseBuilder(ClassLoader loader, Object initialStatus) {
+        Map<String, String> headers = new HashMap<>();
+        Object[] state = {initialStatus, null};
+        return proxy(loader, "com.microsoft.azure.functions.HttpResponseMessage$Builder", (self, method, args) -> switch (method.getName()) {
+            case "status" -> {
+                state[0] = args[0];
+                yield self;
+            }
+            case "header" -> {
+                headers.put((String) args[0], (String) args[1]);
+                yield self;
+            }
+            case "body" -> {
+                state[1] = args[0];
+                yield self;
+            }
+            case "build" -> proxy(loader, "com.microsoft.azure.functions.HttpResponseMessage", (response, m, a) -> switch (m.getName()) {
+                case "getStatus" -> state[0];
+                case "getHeader" -> headers.get((String) a[0]);
+                case "getBody" -> state[1];
+                default -> objectMethod(response, m, a);
+            });
+            default -> objectMethod(self, method, args);
+        });
+    }
+
+    private static Object context(ClassLoader loader, String functionName) {
+        Logger logger = Logger.getLogger("cds.training");
+        logger.setLevel(Level.WARNING);
+        return proxy(loader, "com.microsoft.azure.functions.ExecutionContext", (self, method, args) -> switch (method.getName()) {
+            case "getLogger" -> logger;
+            case "getInvocationId" -> "cds-training";
+            case "getFunctionName" -> functionName;
+            default -> objectMethod(self, method, args);
+        });
+    }
+
+    private static Object proxy(ClassLoader loader, String interfaceName, InvocationHandler handler) {
+        try {
+            return Proxy.newProxyInstance(loader, new Class<?>[] {loader.loadClass(interfaceName)}, handler);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Object enumValue(Class<?> type, String name) {
+        return Enum.valueOf((Class) type, name);
+    }
+
+    // Object methods and any accessor the training does not need
+    private static Object objectMethod(Object self, Method method, Object[] args) {
+        return switch (method.getName()) {
+            case "equals" -> self == args[0];
+            case "hashCode" -> System.identityHashCode(self);
+            case "toString" -> method.getDeclaringClass().getSimpleName();
+            default -> null;
+        };
+    }
+}